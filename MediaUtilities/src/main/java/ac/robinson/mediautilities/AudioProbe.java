@@ -0,0 +1,542 @@
+/*
+ *  Copyright (C) 2020 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediautilities;
+
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ac.robinson.util.AndroidUtilities;
+import ac.robinson.util.IOUtilities;
+import androidx.annotation.NonNull;
+
+/**
+ * Reads the format and duration of M4A, MP3 and WAV files from their headers alone, without decoding any audio or
+ * parsing sample tables: for M4A the moov box's mdhd and stsd boxes; for MP3 the first frame header plus any Xing, Info,
+ * LAME or VBRI header; and for WAV the fmt and data chunks. Results are cached, and are re-read if a file's size or
+ * modification time changes.
+ */
+public final class AudioProbe {
+
+	private static final String LOG_TAG = "AudioProbe";
+
+	public static final String CODEC_PCM = "pcm";
+
+	private static final int CACHE_SIZE = 256; // entries are small - this is more than most narratives contain
+	private static final int MP3_SYNC_SEARCH_SIZE = 64 * 1024; // how far to look for a .mp3 file's first frame
+	private static final int MP3_CBR_CHECK_FRAMES = 8; // headerless MP3s are treated as CBR if these frames all match
+
+	public static class AudioInfo {
+		public final AudioUtilities.AudioType mType;
+		public final String mCodec; // the M4A sample entry type (e.g., mp4a), MP3 layer (e.g., mp3) or CODEC_PCM for WAV
+		public final int mSampleRate;
+		public final int mChannelCount;
+		public final int mSampleSize; // in bits, as decoded - always 16 for MP3
+		public final long mDurationMs; // -1 if unknown
+
+		private final long mFileLength;
+		private final long mLastModified;
+
+		AudioInfo(AudioUtilities.AudioType type, String codec, int sampleRate, int channelCount, int sampleSize,
+				  long durationMs, long fileLength, long lastModified) {
+			mType = type;
+			mCodec = codec;
+			mSampleRate = sampleRate;
+			mChannelCount = channelCount;
+			mSampleSize = sampleSize;
+			mDurationMs = durationMs;
+			mFileLength = fileLength;
+			mLastModified = lastModified;
+		}
+
+		@NonNull
+		@Override
+		public String toString() {
+			return this.getClass().getName() + "[" + mType + "," + mCodec + "," + mSampleRate + "," + mChannelCount + "," +
+					mSampleSize + "," + mDurationMs + "]";
+		}
+	}
+
+	private static final Map<String, AudioInfo> sAudioInfoCache = new LinkedHashMap<String, AudioInfo>(16, 0.75f,
+			true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, AudioInfo> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private AudioProbe() {
+	}
+
+	/**
+	 * Get the format and duration of an audio file. The type of the file is detected from its contents rather than its
+	 * extension, except that an MP3 stream is only searched for (rather than expected straight after any ID3 tags) in
+	 * files with an MP3 extension, so that other types of file are not mistaken for MP3s.
+	 *
+	 * @param audioFile the file to read
+	 * @return the file's properties, or null if it is not a supported type or could not be read
+	 */
+	public static AudioInfo getAudioInfo(File audioFile) {
+		String path = audioFile.getAbsolutePath();
+		long fileLength = audioFile.length();
+		long lastModified = audioFile.lastModified();
+
+		AudioInfo audioInfo;
+		synchronized (sAudioInfoCache) {
+			audioInfo = sAudioInfoCache.get(path);
+		}
+		if (audioInfo != null && audioInfo.mFileLength == fileLength && audioInfo.mLastModified == lastModified) {
+			return audioInfo;
+		}
+
+		// read outside the lock so that other files aren't held up - reading the same file twice is harmless
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(audioFile, "r");
+			boolean mp3Extension = AndroidUtilities.arrayContains(MediaUtilities.MP3_FILE_EXTENSIONS,
+					IOUtilities.getFileExtension(audioFile.getName()));
+			audioInfo = readAudioInfo(file, fileLength, lastModified, mp3Extension);
+		} catch (IOException e) {
+			audioInfo = null;
+		} finally {
+			IOUtilities.closeStream(file);
+		}
+
+		synchronized (sAudioInfoCache) {
+			if (audioInfo != null) {
+				sAudioInfoCache.put(path, audioInfo);
+			} else {
+				sAudioInfoCache.remove(path);
+			}
+		}
+		if (audioInfo == null) {
+			Log.d(LOG_TAG, "Unable to read audio format of " + path);
+		}
+		return audioInfo;
+	}
+
+	private static AudioInfo readAudioInfo(RandomAccessFile file, long fileLength, long lastModified,
+										   boolean mp3Extension) throws IOException {
+		if (fileLength < 12) {
+			return null;
+		}
+		byte[] header = new byte[12];
+		file.readFully(header);
+
+		if (isType(header, 0, "RIFF") && isType(header, 8, "WAVE")) {
+			return readWAV(file, fileLength, lastModified);
+		}
+		if (isType(header, 4, "ftyp") || isType(header, 4, "moov") || isType(header, 4, "mdat") ||
+				isType(header, 4, "free") || isType(header, 4, "skip") || isType(header, 4, "wide")) {
+			return readMP4(file, fileLength, lastModified);
+		}
+		return readMP3(file, fileLength, lastModified, mp3Extension);
+	}
+
+	private static boolean isType(byte[] buffer, int offset, String type) {
+		for (int i = 0; i < 4; i++) {
+			if (buffer[offset + i] != type.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int getBigEndianInt(byte[] buffer, int offset) {
+		return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16) | ((buffer[offset + 2] & 0xff) << 8) |
+				(buffer[offset + 3] & 0xff);
+	}
+
+	private static int getLittleEndianInt(byte[] buffer, int offset) {
+		return ((buffer[offset + 3] & 0xff) << 24) | ((buffer[offset + 2] & 0xff) << 16) |
+				((buffer[offset + 1] & 0xff) << 8) | (buffer[offset] & 0xff);
+	}
+
+	private static int getLittleEndianShort(byte[] buffer, int offset) {
+		return ((buffer[offset + 1] & 0xff) << 8) | (buffer[offset] & 0xff);
+	}
+
+	// ---------------------------------------------------------------------------------------------------------------
+	// M4A: the first sound track's mdhd (duration) and stsd (format) boxes
+
+	private static final int BOX_MOOV = 0x6d6f6f76;
+	private static final int BOX_MVHD = 0x6d766864;
+	private static final int BOX_MVEX = 0x6d766578;
+	private static final int BOX_MEHD = 0x6d656864;
+	private static final int BOX_TRAK = 0x7472616b;
+	private static final int BOX_MDIA = 0x6d646961;
+	private static final int BOX_MDHD = 0x6d646864;
+	private static final int BOX_HDLR = 0x68646c72;
+	private static final int BOX_MINF = 0x6d696e66;
+	private static final int BOX_STBL = 0x7374626c;
+	private static final int BOX_STSD = 0x73747364;
+	private static final int HANDLER_SOUND = 0x736f756e;
+
+	/**
+	 * Find the first box of the given type between start and end, leaving the file positioned at its contents.
+	 *
+	 * @return the offset of the end of the box, or -1 if there is no such box
+	 */
+	private static long findBox(RandomAccessFile file, long start, long end, int type) throws IOException {
+		long offset = start;
+		while (offset + 8 <= end) {
+			file.seek(offset);
+			long size = file.readInt() & 0xffffffffL;
+			int boxType = file.readInt();
+			int headerSize = 8;
+			if (size == 1) {
+				size = file.readLong();
+				headerSize = 16;
+			} else if (size == 0) {
+				size = end - offset; // the box extends to the end of its parent (or the file)
+			}
+			if (size < headerSize || offset + size > end) {
+				return -1; // invalid, or truncated
+			}
+			if (boxType == type) {
+				return offset + size;
+			}
+			offset += size;
+		}
+		return -1;
+	}
+
+	private static AudioInfo readMP4(RandomAccessFile file, long fileLength, long lastModified) throws IOException {
+		long moovEnd = findBox(file, 0, fileLength, BOX_MOOV);
+		if (moovEnd < 0) {
+			return null;
+		}
+		long moovStart = file.getFilePointer();
+
+		long trakEnd = moovStart;
+		while ((trakEnd = findBox(file, trakEnd, moovEnd, BOX_TRAK)) >= 0) {
+			long trakStart = file.getFilePointer();
+			long mdiaEnd = findBox(file, trakStart, trakEnd, BOX_MDIA);
+			if (mdiaEnd < 0) {
+				continue;
+			}
+			long mdiaStart = file.getFilePointer();
+
+			if (findBox(file, mdiaStart, mdiaEnd, BOX_HDLR) < 0) {
+				continue;
+			}
+			file.skipBytes(8); // version, flags and pre-defined
+			if (file.readInt() != HANDLER_SOUND) {
+				continue;
+			}
+
+			if (findBox(file, mdiaStart, mdiaEnd, BOX_MDHD) < 0) {
+				continue;
+			}
+			int version = file.readUnsignedByte();
+			file.skipBytes(version == 1 ? 19 : 11); // flags, creation and modification time
+			long timeScale = file.readInt() & 0xffffffffL;
+			long duration = version == 1 ? file.readLong() : file.readInt() & 0xffffffffL;
+			if (version == 0 && duration == 0xffffffffL) {
+				duration = 0; // unknown
+			}
+
+			long minfEnd = findBox(file, mdiaStart, mdiaEnd, BOX_MINF);
+			long stblEnd = minfEnd < 0 ? -1 : findBox(file, file.getFilePointer(), minfEnd, BOX_STBL);
+			long stsdEnd = stblEnd < 0 ? -1 : findBox(file, file.getFilePointer(), stblEnd, BOX_STSD);
+			if (stsdEnd < 0 || file.getFilePointer() + 8 + 36 > stsdEnd) {
+				continue;
+			}
+			file.skipBytes(8); // version, flags and entry count
+			byte[] entry = new byte[36]; // the first sample entry's header (size, type) and audio fields
+			file.readFully(entry);
+			String codec = new String(entry, 4, 4, "ISO-8859-1");
+			int channelCount = ((entry[24] & 0xff) << 8) | (entry[25] & 0xff);
+			int sampleSize = ((entry[26] & 0xff) << 8) | (entry[27] & 0xff);
+			int sampleRate = ((entry[32] & 0xff) << 8) | (entry[33] & 0xff); // 16.16 fixed point
+
+			long durationMs;
+			if (duration > 0 && timeScale > 0) {
+				durationMs = duration * 1000 / timeScale;
+			} else {
+				durationMs = getFragmentedMP4Duration(file, moovStart, moovEnd);
+			}
+
+			return new AudioInfo(AudioUtilities.AudioType.M4A, codec, sampleRate, channelCount, sampleSize, durationMs,
+					fileLength, lastModified);
+		}
+		return null;
+	}
+
+	/**
+	 * Fragmented files usually have no duration in their tracks' mdhd boxes, but may give the overall duration in mehd.
+	 */
+	private static long getFragmentedMP4Duration(RandomAccessFile file, long moovStart, long moovEnd) throws IOException {
+		if (findBox(file, moovStart, moovEnd, BOX_MVHD) < 0) {
+			return -1;
+		}
+		int version = file.readUnsignedByte();
+		file.skipBytes(version == 1 ? 19 : 11); // flags, creation and modification time
+		long timeScale = file.readInt() & 0xffffffffL;
+
+		long mvexEnd = findBox(file, moovStart, moovEnd, BOX_MVEX);
+		if (mvexEnd < 0 || findBox(file, file.getFilePointer(), mvexEnd, BOX_MEHD) < 0) {
+			return -1;
+		}
+		version = file.readUnsignedByte();
+		file.skipBytes(3); // flags
+		long duration = version == 1 ? file.readLong() : file.readInt() & 0xffffffffL;
+		return duration > 0 && timeScale > 0 ? duration * 1000 / timeScale : -1;
+	}
+
+	// ---------------------------------------------------------------------------------------------------------------
+	// MP3: the first frame header, and the frame count from a Xing/Info or VBRI header (or from the frames themselves)
+
+	private static final int[][] MP3_BITRATES = { // kbps, indexed by [MPEG-1 layer 1-3, MPEG-2/2.5 layer 1, 2/3][index]
+			{ 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448 },
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384 },
+			{ 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 },
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256 },
+			{ 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 }
+	};
+	private static final int[] MP3_SAMPLE_RATES = { 44100, 48000, 32000 }; // MPEG-1; halved for 2, quartered for 2.5
+
+	private static class MP3FrameHeader {
+		int mVersion; // 1, 2, or 25 for MPEG-2.5
+		int mLayer;
+		int mBitrate; // kbps
+		int mSampleRate;
+		int mChannelCount;
+		int mSamplesPerFrame;
+		int mFrameLength; // in bytes, including the header
+
+		/**
+		 * @return whether the given four bytes are a valid frame header (free-format bitrates are not supported)
+		 */
+		boolean parse(int header) {
+			if ((header & 0xffe00000) != 0xffe00000) {
+				return false;
+			}
+			int versionBits = (header >> 19) & 0x3;
+			int layerBits = (header >> 17) & 0x3;
+			int bitrateIndex = (header >> 12) & 0xf;
+			int sampleRateIndex = (header >> 10) & 0x3;
+			if (versionBits == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+				return false;
+			}
+
+			mVersion = versionBits == 3 ? 1 : versionBits == 2 ? 2 : 25;
+			mLayer = 4 - layerBits;
+			mBitrate = MP3_BITRATES[mVersion == 1 ? mLayer - 1 : mLayer == 1 ? 3 : 4][bitrateIndex];
+			mSampleRate = MP3_SAMPLE_RATES[sampleRateIndex] / (mVersion == 1 ? 1 : mVersion == 2 ? 2 : 4);
+			mChannelCount = ((header >> 6) & 0x3) == 3 ? 1 : 2;
+			int padding = (header >> 9) & 0x1;
+			if (mLayer == 1) {
+				mSamplesPerFrame = 384;
+				mFrameLength = (12000 * mBitrate / mSampleRate + padding) * 4;
+			} else {
+				mSamplesPerFrame = mLayer == 3 && mVersion != 1 ? 576 : 1152;
+				mFrameLength = mSamplesPerFrame / 8 * 1000 * mBitrate / mSampleRate + padding;
+			}
+			return true;
+		}
+
+		boolean isSameStream(MP3FrameHeader other) {
+			return mVersion == other.mVersion && mLayer == other.mLayer && mSampleRate == other.mSampleRate;
+		}
+	}
+
+	private static int readInt(RandomAccessFile file, long offset) throws IOException {
+		file.seek(offset);
+		return file.readInt();
+	}
+
+	/**
+	 * Read an MP3's properties. Its first frame must be straight after any ID3 tags unless searchForSync is set, in
+	 * which case the start of the audio is searched for one (some files have junk or an unrecognised tag before the
+	 * stream). Either way, the frame must be followed by another frame of the same stream, so a file with only one
+	 * frame (or whose contents just happen to look like a frame header) is not treated as an MP3.
+	 */
+	private static AudioInfo readMP3(RandomAccessFile file, long fileLength, long lastModified, boolean searchForSync)
+			throws IOException {
+		// skip any ID3v2 tags (there may be more than one) and ignore any ID3v1 tag at the end
+		long audioStart = 0;
+		byte[] tagHeader = new byte[10];
+		while (audioStart + 10 <= fileLength) {
+			file.seek(audioStart);
+			file.readFully(tagHeader);
+			if (tagHeader[0] != 'I' || tagHeader[1] != 'D' || tagHeader[2] != '3') {
+				break;
+			}
+			int tagSize = ((tagHeader[6] & 0x7f) << 21) | ((tagHeader[7] & 0x7f) << 14) | ((tagHeader[8] & 0x7f) << 7) |
+					(tagHeader[9] & 0x7f);
+			audioStart += 10 + tagSize + ((tagHeader[5] & 0x10) != 0 ? 10 : 0); // flag 0x10: footer present
+		}
+		if (audioStart >= fileLength) {
+			return null;
+		}
+		long audioEnd = fileLength;
+		if (fileLength - 128 >= audioStart) {
+			file.seek(fileLength - 128);
+			file.readFully(tagHeader, 0, 3);
+			if (tagHeader[0] == 'T' && tagHeader[1] == 'A' && tagHeader[2] == 'G') {
+				audioEnd -= 128;
+			}
+		}
+
+		// find the first frame - a sync word followed by another frame of the same stream, to avoid false matches
+		byte[] buffer = new byte[(int) Math.min(searchForSync ? MP3_SYNC_SEARCH_SIZE : 4, audioEnd - audioStart)];
+		file.seek(audioStart);
+		file.readFully(buffer);
+		MP3FrameHeader frame = new MP3FrameHeader();
+		MP3FrameHeader nextFrame = new MP3FrameHeader();
+		long frameStart = -1;
+		for (int i = 0; i + 4 <= buffer.length; i++) {
+			if ((buffer[i] & 0xff) != 0xff || !frame.parse(getBigEndianInt(buffer, i))) {
+				continue;
+			}
+			long next = audioStart + i + frame.mFrameLength;
+			if (next + 4 <= audioEnd && nextFrame.parse(readInt(file, next)) && nextFrame.isSameStream(frame)) {
+				frameStart = audioStart + i;
+				break;
+			}
+		}
+		if (frameStart < 0) {
+			return null;
+		}
+
+		// look for a VBR header in the first frame: Xing (VBR) or Info (CBR), optionally with LAME's encoder delay and
+		// padding, or Fraunhofer's VBRI
+		byte[] frameData = new byte[(int) Math.min(frame.mFrameLength, audioEnd - frameStart)];
+		file.seek(frameStart);
+		file.readFully(frameData);
+		long frameCount = -1;
+		long trimmedSamples = 0;
+		int xingOffset = 4 + (frame.mVersion == 1 ? (frame.mChannelCount == 1 ? 17 : 32) :
+				(frame.mChannelCount == 1 ? 9 : 17));
+		if (frameData.length >= xingOffset + 8 &&
+				(isType(frameData, xingOffset, "Xing") || isType(frameData, xingOffset, "Info"))) {
+			int flags = getBigEndianInt(frameData, xingOffset + 4);
+			int position = xingOffset + 8;
+			if ((flags & 0x1) != 0 && frameData.length >= position + 4) {
+				frameCount = getBigEndianInt(frameData, position) & 0xffffffffL;
+				position += 4;
+			}
+			position += ((flags & 0x2) != 0 ? 4 : 0) + ((flags & 0x4) != 0 ? 100 : 0) + ((flags & 0x8) != 0 ? 4 : 0);
+			if (frameData.length >= position + 24 && (isType(frameData, position, "LAME") ||
+					isType(frameData, position, "Lavf") || isType(frameData, position, "Lavc"))) {
+				int delayAndPadding = ((frameData[position + 21] & 0xff) << 16) |
+						((frameData[position + 22] & 0xff) << 8) | (frameData[position + 23] & 0xff);
+				trimmedSamples = (delayAndPadding >> 12) + (delayAndPadding & 0xfff);
+			}
+		} else if (frameData.length >= 4 + 32 + 18 && isType(frameData, 4 + 32, "VBRI")) {
+			frameCount = getBigEndianInt(frameData, 4 + 32 + 14) & 0xffffffffL;
+		}
+
+		long durationMs;
+		if (frameCount >= 0) {
+			long sampleCount = Math.max(0, frameCount * frame.mSamplesPerFrame - trimmedSamples);
+			durationMs = sampleCount * 1000 / frame.mSampleRate;
+		} else {
+			durationMs = getMP3FrameDuration(file, frameStart, audioEnd, frame);
+		}
+
+		// output from the MP3 converter is always 16-bit (see MP3toPCMConverter)
+		return new AudioInfo(AudioUtilities.AudioType.MP3, "mp" + frame.mLayer, frame.mSampleRate, frame.mChannelCount,
+				16, durationMs, fileLength, lastModified);
+	}
+
+	/**
+	 * Get the duration of an MP3 without a VBR header. If its first few frames have the same bitrate it is assumed to be
+	 * CBR and the duration is calculated from the file's length; otherwise each frame's header is read in turn.
+	 */
+	private static long getMP3FrameDuration(RandomAccessFile file, long frameStart, long audioEnd,
+											MP3FrameHeader firstFrame) throws IOException {
+		MP3FrameHeader frame = new MP3FrameHeader();
+		long offset = frameStart;
+		long sampleCount = 0;
+		int frameCount = 0;
+		boolean constantBitrate = true;
+		try {
+			while (offset + 4 <= audioEnd && frame.parse(readInt(file, offset)) && frame.isSameStream(firstFrame)) {
+				if (frame.mBitrate != firstFrame.mBitrate) {
+					constantBitrate = false;
+				}
+				sampleCount += frame.mSamplesPerFrame;
+				offset += frame.mFrameLength;
+				frameCount += 1;
+				if (constantBitrate && frameCount == MP3_CBR_CHECK_FRAMES) {
+					return (audioEnd - frameStart) * 8 / firstFrame.mBitrate;
+				}
+			}
+		} catch (EOFException ignored) {
+		}
+		return sampleCount * 1000 / firstFrame.mSampleRate;
+	}
+
+	// ---------------------------------------------------------------------------------------------------------------
+	// WAV: the fmt and data chunks
+
+	private static AudioInfo readWAV(RandomAccessFile file, long fileLength, long lastModified) throws IOException {
+		String codec = null;
+		int channelCount = 0;
+		int sampleRate = 0;
+		int sampleSize = 0;
+		int blockAlign = 0;
+
+		byte[] chunkHeader = new byte[8];
+		long offset = 12;
+		while (offset + 8 <= fileLength) {
+			file.seek(offset);
+			file.readFully(chunkHeader);
+			long chunkLength = getLittleEndianInt(chunkHeader, 4) & 0xffffffffL;
+			offset += 8;
+
+			if (isType(chunkHeader, 0, "fmt ")) {
+				if (chunkLength < 16 || chunkLength > 1024) {
+					return null;
+				}
+				byte[] fmt = new byte[(int) chunkLength];
+				file.readFully(fmt);
+				int format = getLittleEndianShort(fmt, 0);
+				if (format == 0xfffe && chunkLength >= 26) {
+					format = getLittleEndianShort(fmt, 24); // WAVE_FORMAT_EXTENSIBLE: the start of the sub-format GUID
+				}
+				codec = format == 1 ? CODEC_PCM : "0x" + Integer.toHexString(format);
+				channelCount = getLittleEndianShort(fmt, 2);
+				sampleRate = getLittleEndianInt(fmt, 4);
+				blockAlign = getLittleEndianShort(fmt, 12);
+				sampleSize = getLittleEndianShort(fmt, 14);
+
+			} else if (isType(chunkHeader, 0, "data")) {
+				if (codec == null || sampleRate <= 0 || blockAlign <= 0) {
+					return null; // no (valid) fmt chunk before the data
+				}
+				long dataLength = Math.min(chunkLength, fileLength - offset); // the length is often wrong if truncated
+				return new AudioInfo(AudioUtilities.AudioType.WAV, codec, sampleRate, channelCount, sampleSize,
+						dataLength / blockAlign * 1000 / sampleRate, fileLength, lastModified);
+			}
+
+			offset += chunkLength + (chunkLength & 1); // chunks are word-aligned
+		}
+		return null;
+	}
+}
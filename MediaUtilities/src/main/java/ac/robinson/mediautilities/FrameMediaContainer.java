@@ -133,7 +133,10 @@ public class FrameMediaContainer {
 				// playback; now it is less of an issue, but it still helps for dividing other media over long-running
 				// audio items, so we continue to check lengths where appropriate
 				if (validateAudioLengths) {
-					int audioDuration = IOUtilities.getAudioFileLength(mediaFile);
+					// read from the file's headers if possible - MediaPlayer is far slower, but supports more formats
+					AudioProbe.AudioInfo audioInfo = AudioProbe.getAudioInfo(mediaFile);
+					int audioDuration = audioInfo != null && audioInfo.mDurationMs > 0 ? (int) audioInfo.mDurationMs :
+							IOUtilities.getAudioFileLength(mediaFile);
 					if (audioDuration > 0) {
 						preciseDuration = audioDuration;
 					}
@@ -52,6 +52,7 @@ import ac.robinson.mov.MP4toPCMConverter;
 import ac.robinson.mov.WAVtoPCMConverter;
 import ac.robinson.mov.WAVtoPCMConverter.WAVConfiguration;
 import ac.robinson.util.AndroidUtilities;
+import ac.robinson.util.BitmapPool;
 import ac.robinson.util.BitmapUtilities;
 import ac.robinson.util.IOUtilities;
 import ac.robinson.util.ImageCacheUtilities;
@@ -108,12 +109,20 @@ public class MOVUtilities {
 		int audioBitmapLeft = Math.round((outputWidth - audioBitmapSize) / 2f);
 		int audioBitmapTop = Math.round((outputHeight - audioBitmapSize) / 2f);
 
+		// frame images are loaded one at a time and discarded after drawing, so their bitmaps can be reused
+		BitmapPool imageBitmapPool = BitmapPool.createForFrameSize(outputWidth, outputHeight,
+				ImageCacheUtilities.mBitmapFactoryOptions.inPreferredConfig);
 		Bitmap imageBitmap;
 		SVG audioSVG = null;
 		JPEGMovWriter outputFileWriter = null;
 		ArrayList<File> filesToDelete = new ArrayList<>();
 		try {
 			outputFileWriter = new JPEGMovWriter(outputFile);
+			outputFileWriter.setFastStart(MediaUtilities.MOV_USE_FAST_START);
+			outputFileWriter.setRepeatFrameSamples(MediaUtilities.MOV_REPEAT_FRAME_SAMPLES);
+			outputFileWriter.setAudioEditLists(MediaUtilities.MOV_USE_AUDIO_EDIT_LISTS);
+			// encode frames in the background (in parallel) while the next frame is drawn
+			outputFileWriter.setEncoderThreadCount(Runtime.getRuntime().availableProcessors());
 
 			// find all the story audio - *all* audio must be added before any frames (takes a *long* time)
 			// resampling audio is slowest, but most compatible with external players other than QuickTime
@@ -123,13 +132,14 @@ public class MOVUtilities {
 			// Player (hence this is not a user editable preference)
 			if (audioResamplingRate != 0) {
 				AudioUtilities.CombinedAudioTrack resampledAudioTrack = AudioUtilities.createCombinedNarrativeAudioTrack(
-						framesToSend, audioResamplingRate, outputFile.getParentFile());
+						framesToSend, audioResamplingRate, outputFile.getParentFile(),
+						settings.containsKey(MediaUtilities.KEY_BUFFER_AUDIO_TO_FILE));
 
-				if (resampledAudioTrack.mCombinedPCMFile != null) {
+				if (resampledAudioTrack.hasAudio()) {
 					AudioInputStream pcmAudioStream;
 					try {
-						// output from converters and/or SSRC is mono signed 16-bit little-endian integers
-						pcmAudioStream = new AudioInputStream(new FileInputStream(resampledAudioTrack.mCombinedPCMFile),
+						// output from converters and/or SSRC is stereo signed 16-bit little-endian integers
+						pcmAudioStream = new AudioInputStream(resampledAudioTrack.getCombinedPCMStream(),
 								resampledAudioTrack.mCombinedPCMAudioFormat,
 								(long) (resampledAudioTrack.mCombinedPCMAudioFormat.getFrameRate() *
 										(resampledAudioTrack.mCombinedPCMDurationMs / 1000f)));
@@ -142,13 +152,12 @@ public class MOVUtilities {
 					}
 				}
 
+				resampledAudioTrack.release();
 				filesToDelete.addAll(resampledAudioTrack.mTemporaryFilesToDelete);
 
 			} else {
 				if (MediaUtilities.MOV_USE_SEGMENTED_AUDIO) {
-					ArrayList<File> segmentFiles = addNarrativeAudioAsSegmentedTrack(framesToSend, outputFile.getParentFile(),
-							outputFileWriter);
-					filesToDelete.addAll(segmentFiles);
+					addNarrativeAudioAsSegmentedTrack(framesToSend, outputFileWriter);
 				} else {
 					ArrayList<File> individualFiles = addNarrativeAudioAsIndividualTracks(framesToSend,
 							outputFile.getParentFile(),
@@ -173,12 +182,13 @@ public class MOVUtilities {
 				if (frame.mImagePath != null) {
 					// scale image size to make sure it is small enough to fit in the container
 					imageBitmap = BitmapUtilities.loadAndCreateScaledBitmap(frame.mImagePath, outputWidth, outputHeight,
-							BitmapUtilities.ScalingLogic.FIT, true);
+							BitmapUtilities.ScalingLogic.FIT, true, imageBitmapPool);
 
 					if (imageBitmap != null) {
 						imageBitmapLeft = Math.round((outputWidth - imageBitmap.getWidth()) / 2f);
 						imageBitmapTop = Math.round((outputHeight - imageBitmap.getHeight()) / 2f);
 						baseCanvas.drawBitmap(imageBitmap, imageBitmapLeft, imageBitmapTop, basePaint);
+						imageBitmapPool.put(imageBitmap);
 
 						imageLoaded = true;
 					}
@@ -216,6 +226,7 @@ public class MOVUtilities {
 			fileError = true; // these are the only places where errors really matter
 			Log.d(LOG_TAG, "Error creating MOV file - Throwable: " + t.getLocalizedMessage());
 		} finally {
+			imageBitmapPool.clear();
 			if (outputFileWriter != null) {
 				try {
 					outputFileWriter.close(!fileError);
@@ -379,14 +390,11 @@ public class MOVUtilities {
 		return filesToDelete;
 	}
 
-	private static ArrayList<File> addNarrativeAudioAsSegmentedTrack(ArrayList<FrameMediaContainer> framesToSend,
-																	 File tempDirectory, JPEGMovWriter outputFileWriter) {
+	private static void addNarrativeAudioAsSegmentedTrack(ArrayList<FrameMediaContainer> framesToSend,
+														  JPEGMovWriter outputFileWriter) {
 
 		Log.d(LOG_TAG, "Exporting segmented MOV audio");
 
-		// the list of files to be deleted after they've been written to the movie
-		ArrayList<File> filesToDelete = new ArrayList<>();
-
 		// see how many tracks we need to create - one per stream, but need to separate formats
 		ArrayList<String> fileTypes = new ArrayList<>();
 		ArrayList<Integer> fileCounts = new ArrayList<>();
@@ -442,28 +450,26 @@ public class MOVUtilities {
 			}
 		}
 
-		// add the separate track types
+		// add the separate track types - each is decoded on demand as the movie is written, so the decoding of all
+		// tracks is shared between the available threads
+		int parallelism = Math.max(1, AudioUtilities.getDecodingParallelism() / Math.max(1, fileTracks.size()));
 		for (String currentTrackType : fileTracks) {
-			File inputAudioFile;
-			File outputPCMFile = null;
-			BufferedOutputStream outputPCMStream = null;
-			boolean audioWritten = false;
-			File currentPCMFile = null;
-			BufferedOutputStream currentPCMStream = null;
-			AudioFormat audioFormat = null;
+			if (Thread.currentThread().isInterrupted()) {
+				break; // export has been cancelled
+			}
 
-			long audioTotalDuration = 0;
+			// get the available tracks of the right type from each frame, then remove when done - items are placed
+			// back to back in the track's audio stream, and the positioning information moves them to their frames
+			ArrayList<PCMPipeline.PCMItem> trackItems = new ArrayList<>();
 			ArrayList<Float> audioOffsetsList = new ArrayList<>();
 			ArrayList<Float> audioStartsList = new ArrayList<>();
 			ArrayList<Float> audioLengthsList = new ArrayList<>();
-
-			// get the available tracks of the right type from each frame, then remove when done
+			long audioTotalDuration = 0;
 			long frameStartTime = 0;
 			for (FrameMediaContainer frame : framesToSend) {
 
 				boolean audioFound = false;
-				boolean decodingError = false;
-				AudioUtilities.AudioType currentAudioType = AudioUtilities.AudioType.NONE;
+				AudioUtilities.AudioType currentAudioType;
 
 				int audioId = -1;
 				for (String audioPath : frame.mAudioPaths) {
@@ -495,164 +501,19 @@ public class MOVUtilities {
 						continue;
 					}
 
-					// if we get here it's the right type of audio, so begin to get pcm from the compressed source
-					inputAudioFile = new File(audioPath);
+					// if we get here it's the right type of audio - decoding is done (in parallel) as the track is written
 					audioFound = true;
-
-					// we combine all tracks to one pcm file
-					if (outputPCMFile == null) {
-						try {
-							// only create one master file, shared between all audio files of the right type
-							outputPCMFile = File.createTempFile(inputAudioFile.getName(), "all.pcm", tempDirectory);
-							filesToDelete.add(outputPCMFile); // deleted after the rest of the movie has been written
-							outputPCMStream = new BufferedOutputStream(new FileOutputStream(outputPCMFile));
-						} catch (Exception e) {
-							IOUtilities.closeStream(outputPCMStream);
-							if (outputPCMFile != null) {
-								outputPCMFile.delete();
-							}
-							outputPCMFile = null;
-							Log.d(LOG_TAG, "Error creating segmented MOV audio track - couldn't create base " + currentTrackType +
-									" file");
-							continue;
-						}
-					}
-
-					// ...but do it per-track, so that one corrupt track doesn't break everything
-					try {
-						currentPCMFile = File.createTempFile(inputAudioFile.getName(), ".pcm", tempDirectory);
-						currentPCMStream = new BufferedOutputStream(new FileOutputStream(currentPCMFile));
-					} catch (Exception e) {
-						IOUtilities.closeStream(currentPCMStream);
-						if (currentPCMFile != null) {
-							currentPCMFile.delete();
-						}
-						Log.d(LOG_TAG,
-								"Error creating segmented MOV audio track - couldn't create individual " + currentTrackType +
-										" file");
-						continue;
-					}
-
-					// begin to convert the compressed audio
-					// TODO: we assume that if we load, say, one MP3 at 44100Hz Joint-Stereo VBR then any other MP3s
-					// TODO: will be in the same format - i.e., no resampling or other adjustments are taken. At the
-					// TODO: moment, this means that loading multiple tracks of different formats leads to the first
-					// TODO: one being output correctly, and others being, e.g., slowed down or sped up.
-					if (currentAudioType == AudioUtilities.AudioType.M4A) {
-						RandomAccessFile inputRandomAccessFile = null;
-						try {
-
-							// first we need to extract PCM audio from the M4A file
-							inputRandomAccessFile = new RandomAccessFile(inputAudioFile, "r");
-							MP4toPCMConverter pcmConverter = new MP4toPCMConverter(inputRandomAccessFile);
-							pcmConverter.convertFile(currentPCMStream, true);
-
-							// get the format - output from PCM converter is mono signed little-endian integers
-							if (audioFormat == null) { // TODO: we assume all MP4 components are the same
-								// format
-								audioFormat = new AudioFormat(pcmConverter.getSampleRate(), pcmConverter.getSampleSize(), 1, true,
-										false);
-								Log.d(LOG_TAG,
-										"Outputting M4A: " + pcmConverter.getSampleRate() + ", " + pcmConverter.getSampleSize() +
-												", 1, signed, little endian");
-							}
-
-						} catch (IOException e) {
-							decodingError = true;
-							Log.d(LOG_TAG, "Error creating segmented M4A audio track - IOException: " + e.getLocalizedMessage());
-						} catch (Exception e) {
-							decodingError = true;
-							Log.d(LOG_TAG, "Error creating segmented M4A audio track - general Exception");
-						} finally {
-							IOUtilities.closeStream(inputRandomAccessFile);
-						}
-
-					} else if (currentAudioType == AudioUtilities.AudioType.MP3) {
-						try {
-
-							// first we need to extract PCM audio from the MP3 file
-							MP3Configuration mp3Config = new MP3Configuration();
-							MP3toPCMConverter.convertFile(inputAudioFile, currentPCMStream, mp3Config);
-
-							// get the format - output from PCM converter is mono signed 16-bit little-endian integers
-							if (audioFormat == null) { // TODO: we assume all MP3 components are the same
-								// format
-								audioFormat = new AudioFormat(mp3Config.sampleFrequency, mp3Config.sampleSize,
-										mp3Config.numberOfChannels, true, false);
-								Log.d(LOG_TAG,
-										"Outputting MP3: " + mp3Config.sampleFrequency + ", " + mp3Config.sampleSize + ", " +
-												mp3Config.numberOfChannels + ", signed, little endian");
-							}
-
-						} catch (IOException e) {
-							decodingError = true;
-							Log.d(LOG_TAG, "Error creating segmented MP3 audio track - IOException: " + e.getLocalizedMessage());
-						} catch (Exception e) {
-							decodingError = true;
-							Log.d(LOG_TAG, "Error creating segmented MP3 audio track - general Exception");
-						}
-
-					} else if (currentAudioType == AudioUtilities.AudioType.WAV) {
-						try {
-
-							// first we need to extract PCM audio from the WAV file
-							WAVConfiguration wavConfig = new WAVConfiguration();
-							WAVtoPCMConverter.convertFile(inputAudioFile, currentPCMStream, wavConfig);
-
-							// get the format - output is mono signed little-endian integers
-							if (audioFormat == null) { // TODO: we assume all WAV components are the same
-								// format
-								audioFormat = new AudioFormat(wavConfig.sampleFrequency, wavConfig.sampleSize,
-										wavConfig.numberOfChannels, true, false);
-								Log.d(LOG_TAG,
-										"Outputting WAV: " + wavConfig.sampleFrequency + ", " + wavConfig.sampleSize + ", " +
-												wavConfig.numberOfChannels + ", signed, little endian");
-							}
-
-						} catch (IOException e) {
-							decodingError = true;
-							Log.d(LOG_TAG, "Error creating segmented WAV audio track - IOException: " + e.getLocalizedMessage());
-						} catch (Exception e) {
-							decodingError = true;
-							Log.d(LOG_TAG, "Error creating segmented WAV audio track - general Exception");
-						}
-
-					}
-
-					// if successful, combine the streams and store locations
-					IOUtilities.closeStream(currentPCMStream);
-					if (!decodingError) {
-						// copy from input file to pcmStream - don't use IOUtilities so we can keep outputPCMStream open
-						InputStream in = null;
-						try {
-							in = new FileInputStream(currentPCMFile);
-							byte[] buf = new byte[IOUtilities.IO_BUFFER_SIZE];
-							int len;
-							while ((len = in.read(buf)) > 0) {
-								outputPCMStream.write(buf, 0, len);
-							}
-							audioWritten = true;
-						} catch (IOException e) {
-							Log.d(LOG_TAG, "Error creating segmented MOV audio track - combining failed");
-						} finally {
-							IOUtilities.closeStream(in);
-						}
-
-						// store the positioning information
-						int audioDuration = frame.mAudioDurations.get(audioId);
-						audioOffsetsList.add(frameStartTime / 1000f);
-						audioStartsList.add(audioTotalDuration / 1000f);
-						audioLengthsList.add(audioDuration / 1000f);
-						audioTotalDuration += audioDuration;
-					}
-					if (currentPCMFile != null) {
-						currentPCMFile.delete();
-					}
-
+					long audioDuration = frame.mAudioDurations.get(audioId);
+					trackItems.add(new PCMPipeline.PCMItem(new File(audioPath), currentAudioType, audioTotalDuration,
+							audioDuration));
+					audioOffsetsList.add(frameStartTime / 1000f);
+					audioStartsList.add(audioTotalDuration / 1000f);
+					audioLengthsList.add(audioDuration / 1000f);
+					audioTotalDuration += audioDuration;
 					break; // we're done with this frame - we only ever add one audio track to the stream per frame
 				}
 
-				// we've processed this file (any error that occurred is irrelevant now - remove track anyway)
+				// we've processed this file (any error that occurs later is irrelevant here - remove track anyway)
 				if (audioFound) {
 					frame.mAudioPaths.remove(audioId);
 					frame.mAudioDurations.remove(audioId);
@@ -662,32 +523,50 @@ public class MOVUtilities {
 				frameStartTime += frame.mFrameMaxDuration;
 			}
 
-			// finally, write the combined track to the MOV (pcmAudioStream is closed in MovWriter)
-			IOUtilities.closeStream(outputPCMStream);
-			if (audioWritten && audioFormat != null) { // only write if at least one part of the stream succeeded
-				AudioInputStream pcmAudioStream;
-				try {
-					pcmAudioStream = new AudioInputStream(new FileInputStream(outputPCMFile), audioFormat,
-							(long) (audioFormat.getFrameRate() * (audioTotalDuration / 1000f)));
-
-					int arraySize = audioOffsetsList.size();
-					float[] audioOffsets = new float[arraySize];
-					float[] audioStarts = new float[arraySize];
-					float[] audioLengths = new float[arraySize];
-					for (int j = 0; j < arraySize; j++) {
-						audioOffsets[j] = audioOffsetsList.get(j);
-						audioStarts[j] = audioStartsList.get(j);
-						audioLengths[j] = audioLengthsList.get(j);
-					}
+			// the track's format is that of its first readable item - any others that differ are resampled to match
+			AudioFormat audioFormat = null;
+			for (PCMPipeline.PCMItem item : trackItems) {
+				AudioProbe.AudioInfo audioInfo = AudioProbe.getAudioInfo(item.mFile);
+				if (audioInfo != null && audioInfo.mSampleRate > 0) {
+					audioFormat = new AudioFormat(audioInfo.mSampleRate, 16, 1, true, false);
+					break;
+				}
+			}
+			if (audioFormat == null) { // only write if at least one part of the stream can be decoded
+				Log.d(LOG_TAG, "Error creating segmented MOV audio track - no readable " + currentTrackType + " files");
+				continue;
+			}
+			Log.d(LOG_TAG, "Outputting " + currentTrackType + ": " + audioFormat.getSampleRate() + ", " +
+					audioFormat.getSampleSizeInBits() + ", " + audioFormat.getChannels() + ", signed, little endian");
+
+			// each item fills exactly its segment of the stream, so that the positions above are correct whatever the
+			// length of the decoded audio (items that can't be decoded are silent)
+			ArrayList<ArrayList<PCMPipeline.PCMItem>> pipelineTracks = new ArrayList<>();
+			pipelineTracks.add(trackItems);
+			PCMPipeline pcmPipeline = new PCMPipeline(pipelineTracks, audioFormat, true);
+
+			// finally, write the track to the MOV (pcmAudioStream is closed in MovWriter)
+			InputStream pcmStream = pcmPipeline.open(parallelism);
+			try {
+				AudioInputStream pcmAudioStream = new AudioInputStream(pcmStream, audioFormat,
+						(long) (audioFormat.getFrameRate() * (audioTotalDuration / 1000f)));
+
+				int arraySize = audioOffsetsList.size();
+				float[] audioOffsets = new float[arraySize];
+				float[] audioStarts = new float[arraySize];
+				float[] audioLengths = new float[arraySize];
+				for (int j = 0; j < arraySize; j++) {
+					audioOffsets[j] = audioOffsetsList.get(j);
+					audioStarts[j] = audioStartsList.get(j);
+					audioLengths[j] = audioLengthsList.get(j);
+				}
 
-					outputFileWriter.addSegmentedAudioTrack(pcmAudioStream, audioOffsets, audioStarts, audioLengths);
+				outputFileWriter.addSegmentedAudioTrack(pcmAudioStream, audioOffsets, audioStarts, audioLengths);
 
-				} catch (Exception e) {
-					Log.d(LOG_TAG, "Error creating segmented MOV audio track - couldn't create final MOV track");
-				}
+			} catch (Exception e) {
+				IOUtilities.closeStream(pcmStream);
+				Log.d(LOG_TAG, "Error creating segmented MOV audio track - couldn't create final MOV track");
 			}
 		}
-
-		return filesToDelete;
 	}
 }
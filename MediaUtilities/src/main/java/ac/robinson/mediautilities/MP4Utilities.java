@@ -53,11 +53,13 @@ public class MP4Utilities {
 
 		try {
 			AudioUtilities.CombinedAudioTrack resampledAudioTrack = AudioUtilities.createCombinedNarrativeAudioTrack(framesToSend,
-					audioResamplingRate, outputFile.getParentFile());
+					audioResamplingRate, outputFile.getParentFile(),
+					settings.containsKey(MediaUtilities.KEY_BUFFER_AUDIO_TO_FILE));
 
 			MP4Encoder mp4Encoder = new MP4Encoder();
 			fileError = !mp4Encoder.createMP4(res, outputFile, framesToSend, resampledAudioTrack, settings);
 
+			resampledAudioTrack.release();
 			filesToDelete.addAll(resampledAudioTrack.mTemporaryFilesToDelete);
 
 		} catch (Throwable t) {
@@ -26,6 +26,9 @@ public class MediaUtilities {
 
 	// class options
 	public static final boolean MOV_USE_SEGMENTED_AUDIO = true;
+	public static final boolean MOV_USE_FAST_START = true; // moov before mdat, so playback can start before download ends
+	public static final boolean MOV_REPEAT_FRAME_SAMPLES = true; // false = one sample per frame, but some players skip
+	public static final boolean MOV_USE_AUDIO_EDIT_LISTS = false; // true = smaller, but some players (VLC) lose audio
 
 	// file extensions (including dots)
 	// .sync.jpg is to counter Android's ridiculous incoming filename filtering
@@ -89,4 +92,5 @@ public class MediaUtilities {
 	public static final int KEY_AUDIO_RESOURCE_ID = 15;
 	public static final int KEY_RESAMPLE_AUDIO = 16;
 	public static final int KEY_RESIZE_VIDEO = 17;
+	public static final int KEY_BUFFER_AUDIO_TO_FILE = 18; // decode audio to a temporary file first (very long narratives)
 }
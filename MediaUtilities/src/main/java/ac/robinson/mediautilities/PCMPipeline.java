@@ -0,0 +1,871 @@
+/*
+ *  Copyright (C) 2020 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediautilities;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.util.Log;
+
+import com.bric.audio.AudioFormat;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import ac.robinson.mov.MP3toPCMConverter;
+import ac.robinson.mov.MP4toPCMConverter;
+import ac.robinson.mov.WAVtoPCMConverter;
+import ac.robinson.mp4.AudioToPCMConverter;
+import ac.robinson.util.IOUtilities;
+import androidx.annotation.NonNull;
+import vavi.sound.pcm.resampling.ssrc.SSRC;
+
+/**
+ * A pull-based pipeline that combines narrative audio items into a single PCM stream in the given output format (mono
+ * or stereo, signed little-endian). Items are decoded (and resampled, if needed) in parallel on a bounded pool of
+ * background threads into bounded buffers; stereo items keep both channels when the output is stereo, and mono items
+ * are played on both. Items on the same track are joined in timeline order with silence between them, and parallel
+ * tracks are averaged. Nothing is written to disk, and memory use is bounded by the buffer size of each active
+ * stage.
+ * <p>
+ * With fixed item lengths (used for segmented tracks, where each item's position in the stream must be known before
+ * any audio is decoded) every item lasts exactly its nominal duration: longer audio is cut short, and shorter (or
+ * unreadable) audio is padded with silence.
+ * <p>
+ * Each call to {@link #open()} returns a new, independent stream that starts from the beginning of the audio.
+ */
+class PCMPipeline {
+
+	private static final String LOG_TAG = "PCMPipeline";
+
+	private static final int PIPE_BUFFER_SIZE = 64 * 1024; // bytes buffered between decoding and resampling stages
+	private static final int READ_AHEAD_BUFFER_SIZE = 2 * 1024 * 1024; // per item: about 10s of 16-bit stereo at 48kHz
+	private static final int CHUNK_SIZE = IOUtilities.IO_BUFFER_SIZE;
+
+	static class PCMItem {
+		final File mFile;
+		final AudioUtilities.AudioType mType;
+		final long mStartTimeMs;
+		final long mDurationMs;
+
+		PCMItem(File file, AudioUtilities.AudioType type, long startTimeMs, long durationMs) {
+			mFile = file;
+			mType = type;
+			mStartTimeMs = startTimeMs;
+			mDurationMs = durationMs;
+		}
+	}
+
+	private final ArrayList<ArrayList<PCMItem>> mTracks;
+	private final AudioFormat mOutputFormat;
+	private final boolean mFixedItemLengths;
+
+	/**
+	 * @param tracks       the items to play on each parallel track, in timeline order
+	 * @param outputFormat the format of the combined stream - must be mono or stereo, signed, little-endian and 16-bit
+	 */
+	PCMPipeline(ArrayList<ArrayList<PCMItem>> tracks, AudioFormat outputFormat) {
+		this(tracks, outputFormat, false);
+	}
+
+	/**
+	 * @param fixedItemLengths whether to cut or pad every item to exactly its nominal duration, rather than playing
+	 *                         all of its audio (the default)
+	 */
+	PCMPipeline(ArrayList<ArrayList<PCMItem>> tracks, AudioFormat outputFormat, boolean fixedItemLengths) {
+		mTracks = tracks;
+		mOutputFormat = outputFormat;
+		mFixedItemLengths = fixedItemLengths;
+	}
+
+	/**
+	 * @return the nominal duration of the combined audio, assuming all items decode successfully.
+	 */
+	long getDurationMs() {
+		long duration = 0;
+		for (ArrayList<PCMItem> track : mTracks) {
+			if (track.size() > 0) {
+				PCMItem lastItem = track.get(track.size() - 1);
+				duration = Math.max(duration, lastItem.mStartTimeMs + lastItem.mDurationMs);
+			}
+		}
+		return duration;
+	}
+
+	/**
+	 * Open a new stream of the combined audio. Decoding starts on demand as the stream is read, with a few items on each
+	 * track decoded ahead in parallel; closing the stream stops any background decoding that is still in progress.
+	 */
+	InputStream open() {
+		return open(AudioUtilities.getDecodingParallelism());
+	}
+
+	/**
+	 * As {@link #open()}, but decoding at most the given number of items at once (across all tracks, though each track
+	 * always decodes at least one).
+	 */
+	@SuppressLint("NewApi") // the resampling pool is only created on API 21+
+	InputStream open(int parallelism) {
+		// each track decodes its current item plus some of the following items, using at most two tasks per item
+		// (decoding and resampling) - the pool is large enough that tasks never wait for a thread, as they block when
+		// their output buffer is full and so could otherwise hold up the item that is actually being read
+		int trackCount = mTracks.size();
+		int itemsPerTrack = Math.max(1, parallelism / trackCount);
+		final ExecutorService executor = AudioUtilities.createDecodingExecutor(2 * itemsPerTrack * trackCount);
+
+		// resampling is the slowest stage, so each resampler also filters its channels and blocks in parallel (its output
+		// is identical whatever the number of threads)
+		final ForkJoinPool resamplingPool = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && parallelism > 1 ?
+				new ForkJoinPool(parallelism) : null;
+
+		InputStream combinedStream;
+		if (trackCount == 1) {
+			combinedStream = new TrackInputStream(mTracks.get(0), executor, resamplingPool, itemsPerTrack); // most common
+		} else {
+			InputStream[] trackStreams = new InputStream[trackCount];
+			for (int i = 0; i < trackCount; i++) {
+				trackStreams[i] = new TrackInputStream(mTracks.get(i), executor, resamplingPool, itemsPerTrack);
+			}
+			combinedStream = new MixingInputStream(trackStreams);
+		}
+
+		return new FilterInputStream(combinedStream) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					executor.shutdownNow();
+					if (resamplingPool != null) {
+						resamplingPool.shutdownNow();
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Start decoding an item in the background, returning a stream of its PCM in our output format, or null if the
+	 * item's format could not be read. Any later decoding error is reported when reading the returned stream.
+	 */
+	private InputStream startItem(final PCMItem item, ExecutorService executor, ForkJoinPool resamplingPool) {
+		Log.d(LOG_TAG, "Processing " + item.mFile.getAbsolutePath());
+
+		// read the format first so that all stages can start at once - items that will be resampled only need a small
+		// buffer between decoding and resampling; the final stage has a larger buffer so it can get ahead of playback
+		try {
+			// output from each of the PCM converters is signed little-endian integers - stereo items are kept as stereo
+			// if that is our output format; anything else is downmixed to mono
+			final boolean stereoOutput = mOutputFormat.getChannels() == 2;
+			final PCMWriter decoder;
+			final int sourceSampleRate;
+			final int sourceSampleSize;
+			final int sourceChannels;
+			switch (item.mType) {
+				case M4A:
+					// use the native methods if present
+					if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+						final AudioToPCMConverter pcmConverter = new AudioToPCMConverter(item.mFile);
+						sourceSampleRate = pcmConverter.getSampleRate();
+						sourceSampleSize = pcmConverter.getSampleSize();
+						sourceChannels = stereoOutput && pcmConverter.getChannelCount() == 2 ? 2 : 1;
+						decoder = output -> pcmConverter.convertFile(output, sourceChannels == 1);
+					} else {
+						final RandomAccessFile inputRandomAccessFile = new RandomAccessFile(item.mFile, "r");
+						final MP4toPCMConverter pcmConverter;
+						try {
+							pcmConverter = new MP4toPCMConverter(inputRandomAccessFile);
+						} catch (IOException e) {
+							IOUtilities.closeStream(inputRandomAccessFile);
+							throw e;
+						}
+						sourceSampleRate = pcmConverter.getSampleRate();
+						sourceSampleSize = pcmConverter.getSampleSize();
+						sourceChannels = stereoOutput && pcmConverter.getChannelCount() == 2 ? 2 : 1;
+						decoder = output -> {
+							try {
+								pcmConverter.convertFile(output, sourceChannels == 1);
+							} finally {
+								IOUtilities.closeStream(inputRandomAccessFile);
+							}
+						};
+					}
+					break;
+
+				case MP3:
+					AudioProbe.AudioInfo mp3Info = AudioProbe.getAudioInfo(item.mFile);
+					if (mp3Info == null || mp3Info.mType != AudioUtilities.AudioType.MP3) {
+						throw new IOException("Unable to read MP3 file format");
+					}
+					sourceSampleRate = mp3Info.mSampleRate;
+					sourceSampleSize = mp3Info.mSampleSize;
+					sourceChannels = stereoOutput && mp3Info.mChannelCount == 2 ? 2 : 1;
+					decoder = output -> {
+						MP3toPCMConverter.MP3Configuration mp3Configuration = new MP3toPCMConverter.MP3Configuration();
+						mp3Configuration.forceMono = sourceChannels == 1;
+						MP3toPCMConverter.convertFile(item.mFile, output, mp3Configuration);
+					};
+					break;
+
+				case WAV:
+					AudioProbe.AudioInfo wavInfo = AudioProbe.getAudioInfo(item.mFile);
+					if (wavInfo == null || wavInfo.mType != AudioUtilities.AudioType.WAV) {
+						throw new IOException("Unable to read WAV file format");
+					} else if (!AudioProbe.CODEC_PCM.equals(wavInfo.mCodec)) {
+						throw new IOException("Unsupported WAV file encoding (only 16-bit PCM is supported)");
+					}
+					sourceSampleRate = wavInfo.mSampleRate;
+					sourceSampleSize = wavInfo.mSampleSize;
+					sourceChannels = stereoOutput && wavInfo.mChannelCount == 2 ? 2 : 1;
+					decoder = output -> {
+						WAVtoPCMConverter.WAVConfiguration wavConfiguration = new WAVtoPCMConverter.WAVConfiguration();
+						wavConfiguration.forceMono = sourceChannels == 1;
+						WAVtoPCMConverter.convertFile(item.mFile, output, wavConfiguration);
+					};
+					break;
+
+				default:
+					return null;
+			}
+
+			// if the sample rate or sample size don't match our output, convert the audio
+			int outputSampleRate = (int) mOutputFormat.getSampleRate();
+			int outputSampleSize = mOutputFormat.getSampleSizeInBits();
+			InputStream pcmStream;
+			if (sourceSampleRate > 0 && sourceSampleSize > 0 && sourceSampleRate != outputSampleRate) {
+				Log.d(LOG_TAG, "Resampling " + item.mType + " audio");
+				pcmStream = startResampler(executor, resamplingPool, startWriter(executor, decoder, PIPE_BUFFER_SIZE),
+						sourceSampleRate, sourceSampleSize, sourceChannels);
+			} else if (sourceSampleSize > 0 && sourceSampleSize != outputSampleSize) {
+				pcmStream = new SampleSizeInputStream(startWriter(executor, decoder, READ_AHEAD_BUFFER_SIZE),
+						sourceSampleSize / 8);
+			} else {
+				pcmStream = startWriter(executor, decoder, READ_AHEAD_BUFFER_SIZE);
+			}
+			if (stereoOutput && sourceChannels == 1) {
+				pcmStream = new MonoToStereoInputStream(pcmStream); // after resampling, which is then half the work
+			}
+
+			Log.d(LOG_TAG, "Outputting " + item.mType + ": " + outputSampleRate + ", " + outputSampleSize + " from " +
+					sourceSampleRate + ", " + sourceSampleSize + ", " + sourceChannels + " channel(s)");
+			return pcmStream;
+
+		} catch (Exception e) {
+			Log.d(LOG_TAG, "Error creating combined " + item.mType + " audio track: " + e.getLocalizedMessage());
+			return null;
+		}
+	}
+
+	private InputStream startResampler(ExecutorService executor, final ForkJoinPool resamplingPool,
+									   final InputStream source, final int sourceSampleRate, final int sourceSampleSize,
+									   final int channels) {
+		final int outputSampleRate = (int) mOutputFormat.getSampleRate();
+		final int outputSampleSize = mOutputFormat.getSampleSizeInBits();
+		return startWriter(executor, output -> {
+			InputStream resampler = null;
+			try {
+				// streamed in a single pass - a look-ahead limiter rather than a second pass is used to avoid clipping
+				resampler = new SSRC.Stream(source, ByteOrder.LITTLE_ENDIAN, sourceSampleRate, outputSampleRate,
+						sourceSampleSize, outputSampleSize, channels, 0, 0, 0, false, resamplingPool);
+				byte[] buffer = new byte[CHUNK_SIZE];
+				int count;
+				while ((count = resampler.read(buffer, 0, buffer.length)) >= 0) {
+					output.write(buffer, 0, count);
+				}
+			} finally {
+				IOUtilities.closeStream(resampler);
+				IOUtilities.closeStream(source); // also stops decoding if we were closed early
+			}
+		}, READ_AHEAD_BUFFER_SIZE);
+	}
+
+	private interface PCMWriter {
+		void writePCM(OutputStream output) throws Exception;
+	}
+
+	/**
+	 * Run a push-style PCM writer (e.g., one of our converters) as a background task, returning a stream of its output.
+	 * The writer blocks once maxBufferSize bytes are waiting to be read.
+	 */
+	private static InputStream startWriter(ExecutorService executor, final PCMWriter writer, int maxBufferSize) {
+		final PipedPCMInputStream pipe = new PipedPCMInputStream(Math.min(PIPE_BUFFER_SIZE, maxBufferSize), maxBufferSize);
+		try {
+			executor.execute(() -> {
+				Throwable writerError = null;
+				try {
+					writer.writePCM(pipe.getOutputStream());
+				} catch (Throwable t) {
+					writerError = t;
+				} finally {
+					pipe.closeWriter(writerError);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pipe.closeWriter(e); // the stream has already been closed
+		}
+		return pipe;
+	}
+
+	/**
+	 * @return the number of bytes of output audio that last for the given duration, rounded up to a whole frame (i.e.,
+	 * one sample for each channel).
+	 */
+	private long getByteCount(long durationMs) {
+		int frameSize = mOutputFormat.getFrameSize();
+		long byteCount = ((long) mOutputFormat.getSampleRate() * frameSize * Math.max(0, durationMs)) / 1000;
+		return byteCount + (frameSize - byteCount % frameSize) % frameSize;
+	}
+
+	/**
+	 * Read until len bytes have been read or the end of the stream is reached.
+	 *
+	 * @return the number of bytes read, or -1 if the stream has ended.
+	 */
+	private static int readFully(InputStream input, byte[] b, int off, int len) throws IOException {
+		int total = 0;
+		while (total < len) {
+			int count = input.read(b, off + total, len - total);
+			if (count < 0) {
+				break;
+			}
+			total += count;
+		}
+		return total == 0 && len > 0 ? -1 : total;
+	}
+
+	/**
+	 * The bytes of a single audio track: each item's PCM in turn, with silence to pad any gaps between them (i.e.,
+	 * frames that don't have sound) and, with fixed item lengths, to pad each item to its nominal duration. Reads
+	 * always fill the buffer unless the track has ended.
+	 */
+	private class TrackInputStream extends InputStream {
+		private final ArrayList<PCMItem> mItems;
+		private final ExecutorService mExecutor;
+		private final ForkJoinPool mResamplingPool;
+		private final int mMaxItemsInProgress;
+		private int mNextItemToStart;
+		private final LinkedList<PCMItem> mStartedItems = new LinkedList<>();
+		private final LinkedList<InputStream> mStartedItemStreams = new LinkedList<>(); // null if an item failed to start
+		private long mNominalEndMs;
+
+		private long mSilenceRemaining;
+		private InputStream mCurrentItem;
+		private long mCurrentItemBytes;
+		private long mCurrentItemMaxBytes;
+		private boolean mClosed;
+
+		TrackInputStream(ArrayList<PCMItem> items, ExecutorService executor, ForkJoinPool resamplingPool,
+						 int maxItemsInProgress) {
+			mItems = items;
+			mExecutor = executor;
+			mResamplingPool = resamplingPool;
+			mMaxItemsInProgress = maxItemsInProgress;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(@NonNull byte[] b, int off, int len) throws IOException {
+			if (mClosed) {
+				throw new IOException("Stream closed");
+			}
+			int total = 0;
+			while (total < len) {
+				if (mSilenceRemaining > 0) {
+					int count = (int) Math.min(len - total, mSilenceRemaining);
+					Arrays.fill(b, off + total, off + total + count, (byte) 0);
+					mSilenceRemaining -= count;
+					total += count;
+
+				} else if (mCurrentItem != null) {
+					int count;
+					try {
+						count = mCurrentItemBytes < mCurrentItemMaxBytes ? mCurrentItem.read(b, off + total,
+								(int) Math.min(len - total, mCurrentItemMaxBytes - mCurrentItemBytes)) : -1;
+					} catch (IOException e) {
+						// once an item has started we keep whatever audio it produced
+						Log.d(LOG_TAG, "Error creating combined audio track - item truncated: " + e.getLocalizedMessage());
+						count = -1;
+					}
+					if (count > 0) {
+						mCurrentItemBytes += count;
+						total += count;
+					} else {
+						IOUtilities.closeStream(mCurrentItem);
+						mCurrentItem = null;
+						if (mFixedItemLengths) {
+							mSilenceRemaining = mCurrentItemMaxBytes - mCurrentItemBytes; // pad to the nominal duration
+						} else {
+							// pad to a whole number of frames (i.e., one sample for each channel)
+							int frameSize = mOutputFormat.getFrameSize();
+							mSilenceRemaining = (frameSize - mCurrentItemBytes % frameSize) % frameSize;
+						}
+					}
+
+				} else if (!openNextItem()) {
+					break;
+				}
+			}
+			return total == 0 && len > 0 ? -1 : total;
+		}
+
+		private boolean openNextItem() {
+			while (true) {
+				// keep the following items decoding in the background while this one is read
+				while (mStartedItems.size() < mMaxItemsInProgress && mNextItemToStart < mItems.size()) {
+					PCMItem item = mItems.get(mNextItemToStart);
+					mNextItemToStart += 1;
+					mStartedItems.add(item);
+					mStartedItemStreams.add(startItem(item, mExecutor, mResamplingPool));
+				}
+				if (mStartedItems.isEmpty()) {
+					return false;
+				}
+
+				PCMItem item = mStartedItems.removeFirst();
+				InputStream itemStream = waitForAudio(item, mStartedItemStreams.removeFirst());
+				if (itemStream == null) {
+					continue; // a corrupt item doesn't break everything - it is just skipped
+				}
+
+				// pad any gaps in audio (i.e., frames that don't have sound) with silence
+				long silenceNeeded = getByteCount(item.mStartTimeMs - mNominalEndMs);
+				Log.d(LOG_TAG, "Adding " + silenceNeeded / mOutputFormat.getFrameSize() + " frames of silence");
+
+				mSilenceRemaining = silenceNeeded;
+				mCurrentItem = itemStream;
+				mCurrentItemBytes = 0;
+				mCurrentItemMaxBytes = mFixedItemLengths ? getByteCount(item.mDurationMs) : Long.MAX_VALUE;
+				mNominalEndMs = item.mStartTimeMs + item.mDurationMs;
+				return true;
+			}
+		}
+
+		/**
+		 * Wait for the first chunk of an item's audio, so that items that fail straight away are skipped entirely
+		 * rather than being added as silence.
+		 *
+		 * @return a stream of the item's audio, or null if it could not be decoded.
+		 */
+		private InputStream waitForAudio(PCMItem item, InputStream itemStream) {
+			if (itemStream == null) {
+				return null;
+			}
+			try {
+				byte[] firstChunk = new byte[CHUNK_SIZE];
+				int firstChunkLength = Math.max(0, itemStream.read(firstChunk, 0, firstChunk.length));
+				if (firstChunkLength < firstChunk.length) {
+					//noinspection ResultOfMethodCallIgnored
+					itemStream.read(); // rethrows any decoding error
+				}
+				return new PrefixedInputStream(firstChunk, firstChunkLength, itemStream);
+			} catch (IOException e) {
+				IOUtilities.closeStream(itemStream);
+				Log.d(LOG_TAG, "Error creating combined " + item.mType + " audio track: " + e.getLocalizedMessage());
+				return null;
+			}
+		}
+
+		@Override
+		public void close() {
+			mClosed = true;
+			IOUtilities.closeStream(mCurrentItem);
+			mCurrentItem = null;
+			for (InputStream itemStream : mStartedItemStreams) {
+				IOUtilities.closeStream(itemStream);
+			}
+			mStartedItems.clear();
+			mStartedItemStreams.clear();
+		}
+	}
+
+	/**
+	 * Base class for streams that produce their output a chunk at a time. Reads always fill the buffer unless the stream
+	 * has ended.
+	 */
+	private abstract static class ChunkedInputStream extends InputStream {
+		private final byte[] mChunk = new byte[CHUNK_SIZE];
+		private int mChunkPosition;
+		private int mChunkLength;
+		private boolean mEnded;
+
+		/**
+		 * @return the number of bytes written to chunk, or -1 at the end of the stream.
+		 */
+		abstract int fillChunk(byte[] chunk) throws IOException;
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(@NonNull byte[] b, int off, int len) throws IOException {
+			int total = 0;
+			while (total < len) {
+				if (mChunkPosition >= mChunkLength) {
+					if (mEnded) {
+						break;
+					}
+					mChunkPosition = 0;
+					mChunkLength = fillChunk(mChunk);
+					if (mChunkLength <= 0) {
+						mChunkLength = 0;
+						mEnded = true;
+						break;
+					}
+				}
+				int count = Math.min(len - total, mChunkLength - mChunkPosition);
+				System.arraycopy(mChunk, mChunkPosition, b, off + total, count);
+				mChunkPosition += count;
+				total += count;
+			}
+			return total == 0 && len > 0 ? -1 : total;
+		}
+	}
+
+	/**
+	 * Averages two or more tracks of 16-bit little-endian PCM. Tracks that end early are treated as silence.
+	 */
+	private static class MixingInputStream extends ChunkedInputStream {
+		private final InputStream[] mTracks;
+		private final byte[][] mTrackBuffers;
+		private final boolean[] mTrackEnded;
+		private final short[] mSamples;
+
+		MixingInputStream(InputStream[] tracks) {
+			mTracks = tracks;
+			mTrackBuffers = new byte[tracks.length][CHUNK_SIZE];
+			mTrackEnded = new boolean[tracks.length];
+			mSamples = new short[tracks.length];
+		}
+
+		@Override
+		int fillChunk(byte[] chunk) throws IOException {
+			int bytesToMix = 0;
+			for (int t = 0; t < mTracks.length; t++) {
+				if (mTrackEnded[t]) {
+					Arrays.fill(mTrackBuffers[t], (byte) 0); // pad tracks that have ended with silence
+					continue;
+				}
+				int count = Math.max(0, readFully(mTracks[t], mTrackBuffers[t], 0, CHUNK_SIZE));
+				if (count < CHUNK_SIZE) {
+					mTrackEnded[t] = true;
+					Arrays.fill(mTrackBuffers[t], count, CHUNK_SIZE, (byte) 0);
+				}
+				bytesToMix = Math.max(bytesToMix, count);
+			}
+			if (bytesToMix <= 0) {
+				return -1;
+			}
+			bytesToMix += bytesToMix % 2;
+
+			// average the buffers - see: https://stackoverflow.com/questions/3816446/
+			short averageValue;
+			for (int i = 0; i < bytesToMix; i += 2) {
+				for (int t = 0; t < mTracks.length; t++) {
+					mSamples[t] = (short) (((mTrackBuffers[t][i + 1] & 0xff) << 8) | (mTrackBuffers[t][i] & 0xff));
+				}
+				if (mTracks.length == 2) {
+					averageValue = (short) ((mSamples[0] >> 1) + (mSamples[1] >> 1) + (mSamples[0] & mSamples[1] & 0x1));
+				} else if (mTracks.length == 3) {
+					averageValue = (short) ((mSamples[0] >> 1) + (mSamples[1] >> 1) + (mSamples[2] >> 1) +
+							(mSamples[0] & mSamples[1] & mSamples[2] & 0x1));
+				} else {
+					int sum = 0;
+					for (short sample : mSamples) {
+						sum += sample;
+					}
+					averageValue = (short) (sum / mSamples.length);
+				}
+
+				// our output is little-endian
+				chunk[i] = (byte) (averageValue & 0xff);
+				chunk[i + 1] = (byte) ((averageValue >> 8) & 0xff);
+			}
+			return bytesToMix;
+		}
+
+		@Override
+		public void close() {
+			for (InputStream track : mTracks) {
+				IOUtilities.closeStream(track);
+			}
+		}
+	}
+
+	/**
+	 * Converts little-endian PCM of another sample size (unsigned if 8-bit; signed otherwise) to signed 16-bit.
+	 */
+	private static class SampleSizeInputStream extends ChunkedInputStream {
+		private final InputStream mSource;
+		private final int mBytesPerSample;
+		private final byte[] mSourceBuffer;
+
+		SampleSizeInputStream(InputStream source, int bytesPerSample) {
+			mSource = source;
+			mBytesPerSample = Math.max(1, bytesPerSample);
+			mSourceBuffer = new byte[(CHUNK_SIZE / 2) * mBytesPerSample];
+		}
+
+		@Override
+		int fillChunk(byte[] chunk) throws IOException {
+			int count = readFully(mSource, mSourceBuffer, 0, mSourceBuffer.length);
+			int samples = count / mBytesPerSample;
+			if (samples <= 0) {
+				return -1;
+			}
+			for (int s = 0, i = 0; s < samples; s++, i += mBytesPerSample) {
+				if (mBytesPerSample == 1) {
+					int value = ((mSourceBuffer[i] & 0xff) - 128) << 8;
+					chunk[s * 2] = (byte) (value & 0xff);
+					chunk[s * 2 + 1] = (byte) ((value >> 8) & 0xff);
+				} else {
+					chunk[s * 2] = mSourceBuffer[i + mBytesPerSample - 2]; // keep the most significant 16 bits
+					chunk[s * 2 + 1] = mSourceBuffer[i + mBytesPerSample - 1];
+				}
+			}
+			return samples * 2;
+		}
+
+		@Override
+		public void close() {
+			IOUtilities.closeStream(mSource);
+		}
+	}
+
+	/**
+	 * Plays mono 16-bit PCM on both channels of a stereo stream.
+	 */
+	private static class MonoToStereoInputStream extends ChunkedInputStream {
+		private final InputStream mSource;
+		private final byte[] mSourceBuffer = new byte[CHUNK_SIZE / 2];
+
+		MonoToStereoInputStream(InputStream source) {
+			mSource = source;
+		}
+
+		@Override
+		int fillChunk(byte[] chunk) throws IOException {
+			int samples = readFully(mSource, mSourceBuffer, 0, mSourceBuffer.length) / 2;
+			if (samples <= 0) {
+				return -1;
+			}
+			for (int s = 0, i = 0; s < samples; s++, i += 4) {
+				chunk[i] = chunk[i + 2] = mSourceBuffer[s * 2];
+				chunk[i + 1] = chunk[i + 3] = mSourceBuffer[s * 2 + 1];
+			}
+			return samples * 4;
+		}
+
+		@Override
+		public void close() {
+			IOUtilities.closeStream(mSource);
+		}
+	}
+
+	/**
+	 * Returns the given bytes, then the rest of the source stream. Reads always fill the buffer unless the stream has
+	 * ended.
+	 */
+	static class PrefixedInputStream extends InputStream {
+		private final byte[] mPrefix;
+		private final int mPrefixLength;
+		private int mPrefixPosition;
+		private final InputStream mSource;
+
+		PrefixedInputStream(byte[] prefix, int prefixLength, InputStream source) {
+			mPrefix = prefix;
+			mPrefixLength = prefixLength;
+			mSource = source;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(@NonNull byte[] b, int off, int len) throws IOException {
+			int total = Math.min(len, mPrefixLength - mPrefixPosition);
+			if (total > 0) {
+				System.arraycopy(mPrefix, mPrefixPosition, b, off, total);
+				mPrefixPosition += total;
+			} else {
+				total = 0;
+			}
+			if (total < len) {
+				int count = readFully(mSource, b, off + total, len - total);
+				if (count > 0) {
+					total += count;
+				}
+			}
+			return total == 0 && len > 0 ? -1 : total;
+		}
+
+		@Override
+		public void close() {
+			IOUtilities.closeStream(mSource);
+		}
+	}
+
+	/**
+	 * A bounded buffer between a writer thread and a reader. The buffer grows as needed up to its maximum size, after
+	 * which the writer blocks until there is space; the reader
+	 * blocks until its buffer can be filled completely or the writer has finished. Any error on the writer's side is
+	 * passed on to the reader, and closing the reader makes any further writes fail (stopping the writer).
+	 */
+	private static class PipedPCMInputStream extends InputStream {
+		private byte[] mBuffer;
+		private final int mMaxBufferSize;
+		private int mReadPosition;
+		private int mAvailable;
+		private boolean mWriterClosed;
+		private boolean mReaderClosed;
+		private Throwable mWriterError;
+
+		private final OutputStream mOutputStream = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[]{ (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(@NonNull byte[] b, int off, int len) throws IOException {
+				writeFromWriter(b, off, len);
+			}
+		};
+
+		PipedPCMInputStream(int initialBufferSize, int maxBufferSize) {
+			mBuffer = new byte[initialBufferSize];
+			mMaxBufferSize = Math.max(initialBufferSize, maxBufferSize);
+		}
+
+		OutputStream getOutputStream() {
+			return mOutputStream;
+		}
+
+		private synchronized void writeFromWriter(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (mAvailable == mBuffer.length && mBuffer.length < mMaxBufferSize) {
+					growBuffer();
+				}
+				while (mAvailable == mBuffer.length && !mReaderClosed) {
+					waitForPipe();
+				}
+				if (mReaderClosed) {
+					throw new IOException("Pipe closed");
+				}
+				int writePosition = (mReadPosition + mAvailable) % mBuffer.length;
+				int count = Math.min(len, Math.min(mBuffer.length - mAvailable, mBuffer.length - writePosition));
+				System.arraycopy(b, off, mBuffer, writePosition, count);
+				mAvailable += count;
+				off += count;
+				len -= count;
+				notifyAll();
+			}
+		}
+
+		private void growBuffer() {
+			byte[] newBuffer = new byte[Math.min(mMaxBufferSize, mBuffer.length * 2)];
+			int firstPart = Math.min(mAvailable, mBuffer.length - mReadPosition);
+			System.arraycopy(mBuffer, mReadPosition, newBuffer, 0, firstPart);
+			System.arraycopy(mBuffer, 0, newBuffer, firstPart, mAvailable - firstPart);
+			mBuffer = newBuffer;
+			mReadPosition = 0;
+		}
+
+		synchronized void closeWriter(Throwable error) {
+			mWriterClosed = true;
+			mWriterError = error;
+			notifyAll();
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public synchronized int read(@NonNull byte[] b, int off, int len) throws IOException {
+			int total = 0;
+			while (total < len) {
+				while (mAvailable == 0 && !mWriterClosed && !mReaderClosed) {
+					waitForPipe();
+				}
+				if (mReaderClosed) {
+					throw new IOException("Pipe closed");
+				}
+				if (mAvailable == 0) {
+					if (total == 0 && mWriterError != null) {
+						throw new IOException(mWriterError.getLocalizedMessage(), mWriterError);
+					}
+					break; // return what we have - any error will be reported on the next read
+				}
+				int count = Math.min(len - total, Math.min(mAvailable, mBuffer.length - mReadPosition));
+				System.arraycopy(mBuffer, mReadPosition, b, off + total, count);
+				mReadPosition = (mReadPosition + count) % mBuffer.length;
+				mAvailable -= count;
+				total += count;
+				notifyAll();
+			}
+			return total == 0 && len > 0 ? -1 : total;
+		}
+
+		@Override
+		public synchronized int available() {
+			return mAvailable;
+		}
+
+		@Override
+		public synchronized void close() {
+			mReaderClosed = true;
+			notifyAll();
+		}
+
+		private void waitForPipe() throws InterruptedIOException {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for PCM data");
+			}
+		}
+	}
+}
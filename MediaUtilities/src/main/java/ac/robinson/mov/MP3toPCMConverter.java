@@ -25,6 +25,7 @@ import net.javazoom.jl.decoder.BitstreamException;
 import net.javazoom.jl.decoder.Decoder;
 import net.javazoom.jl.decoder.DecoderException;
 import net.javazoom.jl.decoder.Header;
+import net.javazoom.jl.decoder.Obuffer;
 import net.javazoom.jl.decoder.SampleBuffer;
 
 import java.io.BufferedInputStream;
@@ -34,6 +35,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import ac.robinson.util.IOUtilities;
 import androidx.annotation.NonNull;
@@ -47,6 +50,7 @@ public class MP3toPCMConverter {
 		public int sampleFrequency = 0;
 		public int sampleSize = 0;
 		public int numberOfChannels = 0;
+		public boolean forceMono = true; // if false, stereo input is output as interleaved stereo rather than averaged
 
 		@NonNull
 		@Override
@@ -79,6 +83,25 @@ public class MP3toPCMConverter {
 	 */
 	public static void convertFile(File input, OutputStream output, MP3Configuration config, int startMs, int endMs)
 			throws IOException {
+		convert(input, output, null, config, startMs, endMs);
+	}
+
+	/**
+	 * Convert an MP3 input file to PCM, writing directly to a channel (e.g., a FileChannel) rather than a stream
+	 *
+	 * @param input   the input MP3 file
+	 * @param output  a channel to write the PCM to
+	 * @param config  an MP3Configuration instance that will be configured with the stream's properties
+	 * @param startMs time to start reading the MP3 from, 0 for the start
+	 * @param endMs   time to stop reading the MP3 from, or -1 for the end
+	 */
+	public static void convertFile(File input, WritableByteChannel output, MP3Configuration config, int startMs,
+			int endMs) throws IOException {
+		convert(input, null, output, config, startMs, endMs);
+	}
+
+	private static void convert(File input, OutputStream outputStream, WritableByteChannel outputChannel,
+			MP3Configuration config, int startMs, int endMs) throws IOException {
 		float totalMs = 0;
 		boolean seeking = true;
 
@@ -89,6 +112,11 @@ public class MP3toPCMConverter {
 			Decoder decoder = new Decoder();
 			SampleBuffer outputPCM;
 
+			// every frame is converted into this buffer, then written in one call (mono output is never larger than
+			// OBUFFERSIZE bytes, as that is the maximum number of 16-bit samples in a single frame across 2 channels)
+			byte[] frameBytes = new byte[config.forceMono ? Obuffer.OBUFFERSIZE : 2 * Obuffer.OBUFFERSIZE];
+			ByteBuffer frameBuffer = outputChannel != null ? ByteBuffer.wrap(frameBytes) : null;
+
 			boolean done = false;
 			while (!done) {
 				Header frameHeader = bitstream.readFrame();
@@ -107,29 +135,18 @@ public class MP3toPCMConverter {
 						if (config.sampleFrequency == 0) {
 							config.sampleFrequency = outputPCM.getSampleFrequency();
 							config.sampleSize = 16; // output should always be 16-bit, even if, say, 24 or 32-bit input
-							config.numberOfChannels = 1; // outputPCM.getChannelCount(); // see mono/stereo fix, below
+							config.numberOfChannels = config.forceMono ? 1 : outputPCM.getChannelCount(); // see below
 						}
 
-						// always output in mono, as mixing mono and stereo MP3s is fairly common amongst our users
-						// (e.g, audio track + dictaphone output), and this is an easy fix (i.e., average to 1 channel)
-						boolean mono = outputPCM.getChannelCount() == 1;
-
-						// for mono inputs the buffer is half-full - earlier versions had a bug here where the for loop
-						// was "optimised" into a foreach, but this meant that we had outputs of half silence for mono
-						// audio, as the whole buffer was always used in the output
-						short[] pcm = outputPCM.getBuffer();
-						for (int i = 0, n = outputPCM.getBufferLength(); i < n; i += 1) {
-							if (mono) {
-								output.write(pcm[i] & 0xff); // little-endian
-								output.write((pcm[i] >> 8) & 0xff);
-								// output.write(pcm[i] & 0xff); // big-endian
-							} else {
-								// see: https://stackoverflow.com/questions/3816446/
-								short average = (short) ((pcm[i] >> 1) + (pcm[i + 1] >> 1) + (pcm[i] & pcm[i + 1] & 0x1));
-								output.write(average & 0xff);
-								output.write((average >> 8) & 0xff);
-								i += 1;
+						int frameLength = getPCM(outputPCM, frameBytes, config.forceMono);
+						if (outputChannel != null) {
+							frameBuffer.clear();
+							frameBuffer.limit(frameLength);
+							while (frameBuffer.hasRemaining()) {
+								outputChannel.write(frameBuffer);
 							}
+						} else {
+							outputStream.write(frameBytes, 0, frameLength);
 						}
 					}
 
@@ -150,6 +167,45 @@ public class MP3toPCMConverter {
 		}
 	}
 
+	/**
+	 * Convert a decoded frame to 16-bit little-endian PCM, downmixed to mono if requested
+	 *
+	 * @param pcm       the decoded frame
+	 * @param output    the array to write to, which must be at least Obuffer.OBUFFERSIZE bytes long (twice that if
+	 *                  not forcing mono)
+	 * @param forceMono whether to average stereo input to mono
+	 * @return the number of bytes written to output
+	 */
+	private static int getPCM(SampleBuffer pcm, byte[] output, boolean forceMono) {
+		// by default, output in mono, as mixing mono and stereo MP3s is fairly common amongst our users
+		// (e.g, audio track + dictaphone output), and this is an easy fix (i.e., average to 1 channel)
+		// for mono inputs the buffer is half-full - earlier versions had a bug here where the for loop
+		// was "optimised" into a foreach, but this meant that we had outputs of half silence for mono
+		// audio, as the whole buffer was always used in the output
+		short[] samples = pcm.getBuffer();
+		int sampleCount = pcm.getBufferLength();
+		int position = 0;
+		if (pcm.getChannelCount() == 1 || !forceMono) {
+			for (int i = 0; i < sampleCount; i++) {
+				int sample = samples[i];
+				output[position] = (byte) sample; // little-endian
+				output[position + 1] = (byte) (sample >> 8);
+				position += 2;
+			}
+		} else {
+			for (int i = 0; i < sampleCount; i += 2) {
+				// see: https://stackoverflow.com/questions/3816446/
+				int left = samples[i];
+				int right = samples[i + 1];
+				int average = (left >> 1) + (right >> 1) + (left & right & 0x1);
+				output[position] = (byte) average;
+				output[position + 1] = (byte) (average >> 8);
+				position += 2;
+			}
+		}
+		return position;
+	}
+
 	public static void getFileConfig(File input, MP3Configuration config) throws IOException {
 		float totalMs = 0;
 		boolean seeking = true;
@@ -21,6 +21,7 @@
 package ac.robinson.mov;
 
 import net.sourceforge.jaad.aac.Decoder;
+import net.sourceforge.jaad.aac.OutputSpec;
 import net.sourceforge.jaad.aac.SampleBuffer;
 import net.sourceforge.jaad.mp4.MP4Container;
 import net.sourceforge.jaad.mp4.api.AudioTrack;
@@ -38,7 +39,8 @@ public class MP4toPCMConverter {
 	private final AudioTrack track;
 
 	public MP4toPCMConverter(RandomAccessFile input) throws IOException {
-		final MP4Container cont = new MP4Container(input);
+		// we always decode the whole file, which is faster when it is memory-mapped than when read through a window
+		final MP4Container cont = new MP4Container(input, true);
 		final Movie movie = cont.getMovie();
 
 		final List<Track> tracks = movie.getTracks(AudioTrack.AudioCodec.AAC);
@@ -57,32 +59,26 @@ public class MP4toPCMConverter {
 		return track.getSampleSize();
 	}
 
+	public int getChannelCount() {
+		return track.getChannelCount();
+	}
+
 	public void convertFile(OutputStream output, boolean forceMono) throws IOException {
 		final Decoder dec = new Decoder(track.getDecoderSpecificInfo());
 		Frame audioFrame;
 		final SampleBuffer buf = new SampleBuffer();
 		int channelCount = track.getChannelCount();
 
+		// we need little endian 16-bit PCM, downmixed from stereo to mono if requested - the decoder writes this
+		// directly into the (reused) sample buffer
+		final OutputSpec outputSpec = new OutputSpec(false, forceMono && channelCount == 2 ?
+				OutputSpec.ChannelLayout.MONO_DOWNMIX : OutputSpec.ChannelLayout.INTERLEAVED,
+				OutputSpec.SampleType.PCM_16_BIT);
+
 		while (track.hasMoreFrames()) {
 			audioFrame = track.readNextFrame();
-			dec.decodeFrame(audioFrame.getData(), buf);
-			buf.setBigEndian(false); // we need little endian
-			byte[] data = buf.getData();
-
-			if (forceMono && channelCount == 2) {
-				// Downmix stereo to mono (16-bit PCM)
-				byte[] monoData = new byte[data.length / 2];
-				for (int i = 0, j = 0; i < data.length; i += 4, j += 2) {
-					int left = (data[i + 1] << 8) | (data[i] & 0xFF);
-					int right = (data[i + 3] << 8) | (data[i + 2] & 0xFF);
-					int mono = (left + right) / 2;
-					monoData[j] = (byte) (mono & 0xFF);
-					monoData[j + 1] = (byte) ((mono >> 8) & 0xFF);
-				}
-				output.write(monoData);
-			} else {
-				output.write(data);
-			}
+			dec.decodeFrame(audioFrame.getData(), buf, outputSpec);
+			output.write(buf.getData());
 		}
 	}
 }
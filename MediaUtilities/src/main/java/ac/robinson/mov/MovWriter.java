@@ -21,13 +21,12 @@ package ac.robinson.mov;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
 import android.util.Log;
 
 import com.bric.audio.AudioFormat;
 import com.bric.audio.AudioInputStream;
 import com.bric.audio.AudioSystem;
-import com.bric.audio.CombinedAudioInputStream;
-import com.bric.audio.SilentAudioInputStream;
 import com.bric.io.MeasuredOutputStream;
 import com.bric.qt.io.Atom;
 import com.bric.qt.io.ChunkOffsetAtom;
@@ -50,19 +49,35 @@ import com.bric.qt.io.TrackHeaderAtom;
 import com.bric.qt.io.VideoMediaInformationHeaderAtom;
 import com.bric.qt.io.VideoSampleDescriptionEntry;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 
+import ac.robinson.util.BitmapPool;
 import ac.robinson.util.BitmapUtilities;
 import ac.robinson.util.IOUtilities;
+import ac.robinson.util.ThreadUtilities;
 
 /**
  * This writes a QuickTime MOV file as a series of images, and interleaves optional PCM (uncompressed) audio.
@@ -72,9 +87,12 @@ import ac.robinson.util.IOUtilities;
  * file, but it is free of painful legal implications that come with the MPEG-4 standard. (And it is worlds easier to
  * implement.)
  * <p>
- * This actually writes to a movie file in 2 passes: the first pass writes all the video and audio data to a
- * <code>FileOutputStream</code>. When <code>close()</code> is called, the movie structure is added and a
- * <code>RandomAccessFile</code> is used to correctly set the size headers.
+ * This actually writes to a movie file in 2 passes: the first pass writes all the video and audio data to a buffered
+ * stream over the file's <code>FileChannel</code>. When <code>close()</code> is called, the movie structure is added
+ * (serialised in memory and written to the channel in one operation) and the same channel is used to correctly set the
+ * size headers. If fast start is enabled (see
+ * <code>setFastStart()</code>), the media data is then shifted along in place so that the movie structure can be
+ * written before it, which means players can begin playback without first reading the entire file.
  *
  * @name JPEGMovWriter
  * @title Movies: Writing MOV Files Without QuickTime
@@ -92,6 +110,15 @@ public abstract class MovWriter {
 
 	public static final long DEFAULT_TIME_SCALE = 30;
 
+	// the size of the blocks used when moving the media data to make room for the movie atom at the start of the file
+	private static final int RELOCATION_BUFFER_SIZE = 256 * 1024;
+
+	// the size of the buffer between the movie data (much of which is written in small pieces) and the file
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+	// frames being encoded in the background (copies and encoded data) may use no more than this fraction of the heap
+	private static final int MAX_HEAP_DIVISOR_FOR_PENDING_FRAMES = 8;
+
 	private static class VideoSample {
 		final int duration;
 		final long fileLength;
@@ -120,6 +147,17 @@ public abstract class MovWriter {
 		ChunkOffsetAtom stco = new ChunkOffsetAtom();
 		SyncSampleAtom stss = new SyncSampleAtom();
 
+		/**
+		 * Whether to repeat each frame's sample once per time unit (see <code>setRepeatFrameSamples()</code>).
+		 */
+		boolean repeatFrameSamples = true;
+
+		/**
+		 * The frames whose data has already been written, keyed by the digest of their encoded data, so that identical
+		 * frames (e.g., an image that spans several narrative frames) are only stored once.
+		 */
+		private final HashMap<ByteBuffer, VideoSample> writtenFrames = new HashMap<>();
+
 		void writeToMoovRoot(ParentAtom moovRoot, int trackIndex) {
 			ParentAtom trakAtom = new ParentAtom("trak");
 			moovRoot.add(trakAtom);
@@ -166,66 +204,71 @@ public abstract class MovWriter {
 			stbl.add(stss);
 		}
 
-		int samplesInCurrentChunk = 0;
-		long durationOfCurrentChunk = 0;
-		int currentChunkIndex = 0;
+		long durationSinceAudioWritten = 0;
 
 		private void addSample(VideoSample sample) throws IOException {
 			samples.add(sample);
 			totalDuration += sample.duration;
 
-			// we only really need one sample size here, but YouTube/VLC skip frames fairly regularly, so we need to
-			// make sure that we've got enough frames so that this doesn't matter; this is done by repeatedly referring
-			// to the same entry in the chunk table
-			// TODO: can we somehow make stss work instead of duplicating these entries?
-			stts.addSampleTime(sample.duration, 1, true);
-			for (int i = 0; i < sample.duration; i++) {
-				stsz.addSampleSize(sample.fileLength);
-			}
-			stss.addSample(sample.duration);
-
-			// now decide if the addition of this sample concluded a chunk of samples:
-			samplesInCurrentChunk++;
-			durationOfCurrentChunk += sample.duration;
-			if (durationOfCurrentChunk >= DEFAULT_TIME_SCALE) {
-				closeChunk();
+			// every sample is its own chunk, so its data can be anywhere in the file (which is what allows identical
+			// frames to share data); we only really need one sample per frame, but YouTube/VLC skip frames fairly
+			// regularly, so by default we make sure that we've got enough frames so that this doesn't matter - this is
+			// done by repeating the sample once per time unit, repeatedly referring to the same data in the chunk table
+			int repetitions = repeatFrameSamples ? sample.duration : 1;
+			stts.addSampleTime(repetitions, repeatFrameSamples ? 1 : sample.duration, repeatFrameSamples);
+			stsz.addSampleSizes(sample.fileLength, repetitions);
+			stss.addSample(repetitions);
+			stsc.addChunk(stco.getChunkOffsetCount() + 1, 1, 1); // only the first call actually adds an entry
+			stco.addChunkOffsets(sample.dataStart, repetitions);
+
+			// interleave audio with the video roughly once per second
+			durationSinceAudioWritten += sample.duration;
+			if (durationSinceAudioWritten >= DEFAULT_TIME_SCALE) {
+				writeInterleavedAudio();
 			}
 		}
 
 		void close() throws IOException {
-			closeChunk();
+			if (durationSinceAudioWritten > 0) {
+				writeInterleavedAudio();
+			}
 		}
 
-		private void closeChunk() throws IOException {
-			if (samplesInCurrentChunk > 0) {
-				stsc.addChunk(currentChunkIndex + 1, samplesInCurrentChunk, 1);
-
-				// we only really need one sample size here, but YouTube/VLC skips frames fairly regularly, so we need
-				// to make sure that we've got enough frames so that this doesn't matter; this is done by repeatedly
-				// referring to the same entry in the chunk table
-				// TODO: can we somehow make stss work instead of duplicating these entries?
-				VideoSample sample = samples.get(samples.size() - samplesInCurrentChunk);
-				for (int i = 0; i < sample.duration; i++) {
-					stco.addChunkOffset(sample.dataStart);
-				}
-
-				for (AudioTrack audio : audioTracks) {
-					audio.writeAudio(durationOfCurrentChunk);
-				}
+		private void writeInterleavedAudio() throws IOException {
+			for (AudioTrack audio : audioTracks) {
+				audio.writeAudio(durationSinceAudioWritten);
+			}
+			durationSinceAudioWritten = 0;
+		}
 
-				// reset variables
-				currentChunkIndex++;
-				samplesInCurrentChunk = 0;
-				durationOfCurrentChunk = 0;
+		/**
+		 * Add a frame whose encoded data is in frameData, only writing the data if an identical frame has not already
+		 * been written (otherwise the new sample refers to the existing data).
+		 *
+		 * @param duration   the duration of the frame, relative to DEFAULT_TIME_SCALE
+		 * @param frameData  the encoded frame
+		 * @param dataDigest a digest of the encoded frame
+		 */
+		void addFrameData(int duration, ByteArrayOutputStream frameData, byte[] dataDigest) throws IOException {
+			ByteBuffer frameKey = ByteBuffer.wrap(dataDigest);
+			VideoSample existingSample = writtenFrames.get(frameKey);
+			VideoSample sample;
+			if (existingSample != null && existingSample.fileLength == frameData.size()) {
+				sample = new VideoSample(duration, existingSample.dataStart, existingSample.fileLength);
+			} else {
+				sample = new VideoSample(duration, out.getBytesWritten(), frameData.size());
+				frameData.writeTo(out);
+				writtenFrames.put(frameKey, sample);
 			}
+			addSample(sample);
 		}
 
-		void addFrame(int duration, File imageFile) throws IOException {
+		void addFrame(int duration, File imageFile, FrameBuffer frameBuffer) throws IOException {
 			BitmapFactory.Options imageOptions = BitmapUtilities.getImageDimensions(imageFile.getAbsolutePath());
 			validateSize(imageOptions.outWidth, imageOptions.outHeight);
-			long byteSize = write(out, imageFile);
-			VideoSample sample = new VideoSample(duration, out.getBytesWritten() - byteSize, byteSize);
-			addSample(sample);
+			write(frameBuffer.startFrame(), imageFile);
+			frameBuffer.finishFrame();
+			addFrameData(duration, frameBuffer.data, frameBuffer.dataDigest);
 		}
 
 		void validateSize(int width, int height) {
@@ -253,6 +296,49 @@ public abstract class MovWriter {
 		}
 	}
 
+	/**
+	 * A reusable buffer for an encoded frame, and a digest of the buffer's contents (used to detect identical frames).
+	 */
+	private static class FrameBuffer {
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		final MessageDigest digest;
+		byte[] dataDigest;
+
+		FrameBuffer() throws IOException {
+			try {
+				digest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException("Unable to create frame digest", e);
+			}
+		}
+
+		OutputStream startFrame() {
+			data.reset();
+			digest.reset();
+			dataDigest = null;
+			return new DigestOutputStream(data, digest);
+		}
+
+		void finishFrame() {
+			dataDigest = digest.digest();
+		}
+	}
+
+	/**
+	 * A frame that has been submitted for encoding, but not yet written to the movie.
+	 */
+	private static class PendingFrame {
+		final int duration;
+		final FrameBuffer buffer;
+		final FutureTask<Void> encoding;
+
+		PendingFrame(int duration, FrameBuffer buffer, FutureTask<Void> encoding) {
+			this.duration = duration;
+			this.buffer = buffer;
+			this.encoding = encoding;
+		}
+	}
+
 	private class AudioTrack {
 
 		/**
@@ -281,21 +367,66 @@ public abstract class MovWriter {
 		int sampleMultiplier;
 
 		/**
-		 * Whether to use an Edit List (or a silent track) to arrange the audio
+		 * Whether to use an Edit List (or silent chunks) to arrange the audio
 		 **/
-		boolean useEditList = false; // edit lists will be used for multi-part audio regardless of this value
+		boolean useEditList;
 		float[] audioOffsets;
 		float[] audioStarts;
 		float[] audioLengths;
 
+		/**
+		 * The value of every byte of a silent sample, and the length (in samples) of the shared silent chunk.
+		 */
+		byte silenceValue;
+		long silentChunkSamples;
+
+		/**
+		 * Runs of silence shorter than this (in samples) are written as data rather than referenced, as each reference
+		 * adds a chunk to the sample tables.
+		 */
+		long minSilentReferenceSamples;
+
+		/**
+		 * Where the shared silent chunk was written, or -1 if it has not been written yet.
+		 */
+		long silentChunkOffset = -1;
+
+		/**
+		 * The position in the movie's audio timeline: the segment we are writing, how much silence is still to be added
+		 * before it starts, how much of its data remains and how far we have read through the AudioInputStream.
+		 */
+		int segmentIndex = -1;
+		long segmentSilenceRemaining;
+		long segmentSamplesRemaining;
+		long timelineSamples;
+		long streamSamples;
+
+		/**
+		 * Data written to the file that has not yet been added to the chunk tables, and silence that has not yet been
+		 * added at all (silence is only added when we know how long it lasts, so that a long run can be referenced).
+		 */
+		long pendingChunkBytes;
+		long pendingSilentSamples;
+
+		byte[] block;
+		byte[] silentBlock;
+
 		/**
 		 * audioOffsets specifies where in the movie file each audio segment should be played; audioStarts and audioEnds
 		 * specify where in the audio file each segment is located. Each *must* be at least 1 value in length
 		 **/
-		AudioTrack(AudioInputStream audio, float[] audioOffsets, float[] audioStarts, float[] audioLengths) throws IOException {
+		AudioTrack(AudioInputStream audio, float[] audioOffsets, float[] audioStarts, float[] audioLengths,
+				   boolean useEditList) throws IOException {
+			// an open-ended segment lasts until the audio runs out, so nothing can be played after it
+			for (int i = 0; i < audioLengths.length - 1; i++) {
+				if (Float.isInfinite(audioLengths[i])) {
+					throw new IllegalArgumentException("only the last audio segment can be open-ended");
+				}
+			}
 			this.audioOffsets = audioOffsets;
 			this.audioStarts = audioStarts;
 			this.audioLengths = audioLengths;
+			this.useEditList = useEditList;
 
 			// hmm... I'm not sure that this logic has ever been tested, but it seems appropriate:
 			AudioFormat audioFormat = audio.getFormat();
@@ -322,48 +453,43 @@ public abstract class MovWriter {
 			sampleMultiplier = audioIn.getFormat().getSampleSizeInBits() / 8 * numberOfChannels;
 			reverseBytePairs = bitsPerSample > 8 && (!audioIn.getFormat().isBigEndian());
 
-			if (!useEditList) {
-				/*
-				 * Previously I tried using an EditAtom to change when an audio track began playing, but that only
-				 * worked for about 1 audio track (when other audio tracks were added to the test: QT Player could play
-				 * the movie back fine but a MovieExporter would drop other tracks).
-				 *
-				 * This approach is simple: start every sound at t=0, and pad the AudioInputStream with silence until
-				 * it's supposed to start.
-				 *
-				 * TODO: A better approach is to only write one small chunk of silence, and then use the chunk lookup
-				 * tables to continually reference the same silent chunk of data. This will dramatically improve file
-				 * size if you position an audio very late in the movie.
-				 *
-				 */
-				// 25-Nov-12: using EditAtom instead, as smaller file sizes are more desirable (especially when
-				// creating a narrative with sounds toward the end)
-				// TODO: use the chunk table approach mentioned above, as we've done for audio, because some players
-				// (VLC, for example) have very poor edit list handling, and usually just give up (meaning we lose
-				// audio)
-				if (audioOffsets.length == 1) {
-					if (audioOffsets[0] > 0) {
-						long silentSamples = (long) (audioOffsets[0] * audioIn.getFormat().getFrameRate());
-						AudioInputStream silence = new SilentAudioInputStream(audioIn.getFormat(), silentSamples);
-						audioIn = new CombinedAudioInputStream(silence, audioIn);
-						Log.d(LOG_TAG, "Padding audio with silence");
-					}
-					Log.d(LOG_TAG, "Using input audio unedited");
-				} else {
-					Log.d(LOG_TAG, "Forcing use of edit list");
-					useEditList = true;
-				}
-			}
+			/*
+			 * Previously I tried using an EditAtom to change when an audio track began playing, but that only
+			 * worked for about 1 audio track (when other audio tracks were added to the test: QT Player could play
+			 * the movie back fine but a MovieExporter would drop other tracks). Some players (VLC, for example) also
+			 * have very poor edit list handling, and usually just give up (meaning we lose audio).
+			 *
+			 * So by default every track starts at t=0, and any silence (before the audio starts, or between
+			 * segments) is added by using the chunk lookup tables to repeatedly reference one small chunk of silent
+			 * data. This costs a few bytes per second of silence, rather than the full data rate.
+			 */
+			silenceValue = bitsPerSample == 8 && AudioFormat.Encoding.PCM_UNSIGNED.equals(audioIn.getFormat()
+					.getEncoding()) ? (byte) 0x80 : (byte) 0;
+			silentChunkSamples = Math.max(1, myTimeScale);
+			minSilentReferenceSamples = Math.max(1, myTimeScale / 4);
+			block = new byte[4096 - (4096 % sampleMultiplier)];
+			silentBlock = new byte[block.length];
+			Arrays.fill(silentBlock, silenceValue);
+			Log.d(LOG_TAG, useEditList ? "Using edit list for audio" : "Using silent chunks for audio");
 		}
 
 		long getDuration() {
 			if (useEditList) {
 				int editSizeIndex = audioOffsets.length - 1;
-				return (long) (((audioOffsets[editSizeIndex] + audioLengths[editSizeIndex]) * DEFAULT_TIME_SCALE) + .5);
+				return (long) (((audioOffsets[editSizeIndex] + getEditLength(editSizeIndex)) * DEFAULT_TIME_SCALE) + .5);
 			}
 			return totalDurationInMovieTimeScale;
 		}
 
+		/**
+		 * The length of the given segment in seconds, limited to the audio data that is actually available (the length
+		 * of a track that lasts until its audio runs out is infinite).
+		 */
+		float getEditLength(int segment) {
+			float availableLength = Math.max(0, (float) totalSamples / myTimeScale - audioStarts[segment]);
+			return Math.min(audioLengths[segment], availableLength);
+		}
+
 		void writeToMoovRoot(ParentAtom moovRoot, int trackIndex) {
 			ParentAtom trakAtom = new ParentAtom("trak");
 			moovRoot.add(trakAtom);
@@ -378,9 +504,10 @@ public abstract class MovWriter {
 						editListAtom.addEditListTableEntry((int) ((audioOffsets[i] - previousOffset) * DEFAULT_TIME_SCALE), -1,
 								1f);
 					}
-					editListAtom.addEditListTableEntry((int) (audioLengths[i] * DEFAULT_TIME_SCALE),
+					float editLength = getEditLength(i);
+					editListAtom.addEditListTableEntry((int) (editLength * DEFAULT_TIME_SCALE),
 							(int) (audioStarts[i] * myTimeScale), 1f);
-					previousOffset = audioOffsets[i] + audioLengths[i];
+					previousOffset = audioOffsets[i] + editLength;
 				}
 				editAtom.add(editListAtom);
 				trakAtom.add(editAtom);
@@ -433,47 +560,206 @@ public abstract class MovWriter {
 		boolean writeAudio(long time) throws IOException {
 			long durationInMyTimeScale = (time * myTimeScale) / DEFAULT_TIME_SCALE;
 
-			long byteCount = durationInMyTimeScale * sampleMultiplier;
+			long samplesWritten = 0;
+			while (samplesWritten < durationInMyTimeScale) {
+				long samplesToWrite = durationInMyTimeScale - samplesWritten;
+				if (segmentSilenceRemaining > 0) {
+					long silentSamples = Math.min(samplesToWrite, segmentSilenceRemaining);
+					pendingSilentSamples += silentSamples;
+					segmentSilenceRemaining -= silentSamples;
+					samplesWritten += silentSamples;
+				} else if (segmentSamplesRemaining > 0) {
+					long dataSamples = writeSamples(Math.min(samplesToWrite, segmentSamplesRemaining));
+					if (dataSamples == 0) {
+						segmentIndex = audioOffsets.length; // the stream has run out - no later segments can be read
+						segmentSamplesRemaining = 0;
+						break;
+					}
+					segmentSamplesRemaining -= dataSamples;
+					samplesWritten += dataSamples;
+				} else if (!startNextSegment()) {
+					break;
+				}
+			}
+
+			// other tracks' data will follow, so any data we have written must become a chunk now
+			flushChunk();
+			return samplesWritten > 0;
+		}
 
-			byteCount = write(out, audioIn, byteCount, reverseBytePairs);
-			if (byteCount > 0) {
-				closeChunk(byteCount);
+		/**
+		 * Move on to the next segment of the timeline: in edit list mode the stream is written exactly as it is; in
+		 * silent chunk mode we pad each segment with silence until it is supposed to start, and skip any audio data
+		 * between segments.
+		 *
+		 * @return false if there are no more segments
+		 */
+		private boolean startNextSegment() throws IOException {
+			if (useEditList) {
+				if (segmentIndex >= 0) {
+					return false;
+				}
+				segmentIndex = 0;
+				segmentSamplesRemaining = Long.MAX_VALUE;
 				return true;
 			}
-			return false;
+
+			segmentIndex++;
+			if (segmentIndex >= audioOffsets.length) {
+				return false;
+			}
+			long segmentStart = (long) (audioOffsets[segmentIndex] * myTimeScale);
+			segmentSilenceRemaining = Math.max(0, segmentStart - timelineSamples);
+			segmentSamplesRemaining = Float.isInfinite(audioLengths[segmentIndex]) ? Long.MAX_VALUE :
+					(long) (audioLengths[segmentIndex] * myTimeScale);
+			timelineSamples = segmentSamplesRemaining == Long.MAX_VALUE ? Long.MAX_VALUE :
+					timelineSamples + segmentSilenceRemaining + segmentSamplesRemaining; // open-ended: never overflow
+
+			long samplesToSkip = (long) (audioStarts[segmentIndex] * myTimeScale) - streamSamples;
+			while (samplesToSkip > 0) {
+				long samplesToRead = Math.min(block.length / sampleMultiplier, samplesToSkip);
+				int bytesRead = readSamples((int) samplesToRead * sampleMultiplier);
+				if (bytesRead <= 0) {
+					break;
+				}
+				samplesToSkip -= bytesRead / sampleMultiplier;
+			}
+			return true;
+		}
+
+		/**
+		 * Copy up to maxSamples of audio from the stream to the file. Blocks of the stream that are completely silent
+		 * are not written, but are added to the pending silence instead.
+		 *
+		 * @return the number of samples read from the stream
+		 */
+		private long writeSamples(long maxSamples) throws IOException {
+			long samplesRead = 0;
+			while (samplesRead < maxSamples) {
+				long samplesToRead = Math.min(block.length / sampleMultiplier, maxSamples - samplesRead);
+				int bytesRead = readSamples((int) samplesToRead * sampleMultiplier);
+				if (bytesRead <= 0) {
+					break;
+				}
+				if (isSilent(block, bytesRead)) {
+					pendingSilentSamples += bytesRead / sampleMultiplier;
+				} else {
+					flushSilence();
+					if (reverseBytePairs) {
+						reverseBytePairs(block, bytesRead);
+					}
+					out.write(block, 0, bytesRead);
+					pendingChunkBytes += bytesRead;
+				}
+				samplesRead += bytesRead / sampleMultiplier;
+			}
+			return samplesRead;
+		}
+
+		/**
+		 * Read up to the given number of bytes (which must be a multiple of sampleMultiplier) into our block.
+		 *
+		 * @return the number of bytes read (always a whole number of samples), or -1 at the end of the stream.
+		 */
+		private int readSamples(int bytesToRead) throws IOException {
+			int bytesRead = 0;
+			while (bytesRead < bytesToRead) {
+				int k = audioIn.read(block, bytesRead, bytesToRead - bytesRead);
+				if (k == -1) {
+					break;
+				}
+				bytesRead += k;
+			}
+			bytesRead -= bytesRead % sampleMultiplier; // a partial sample can only happen at the end of the stream
+			streamSamples += bytesRead / sampleMultiplier;
+			return bytesRead > 0 ? bytesRead : -1;
+		}
+
+		private boolean isSilent(byte[] data, int length) {
+			for (int i = 0; i < length; i++) {
+				if (data[i] != silenceValue) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Add any pending silence to the track - short runs as data in the current chunk; longer runs as references to
+		 * the shared silent chunk.
+		 */
+		private void flushSilence() throws IOException {
+			if (pendingSilentSamples <= 0) {
+				return;
+			}
+			if (pendingSilentSamples < minSilentReferenceSamples) {
+				long silentBytes = pendingSilentSamples * sampleMultiplier;
+				while (silentBytes > 0) {
+					int length = (int) Math.min(silentBlock.length, silentBytes);
+					out.write(silentBlock, 0, length);
+					silentBytes -= length;
+				}
+				pendingChunkBytes += pendingSilentSamples * sampleMultiplier;
+			} else {
+				flushChunk();
+				if (silentChunkOffset < 0) {
+					long silentChunkBytes = silentChunkSamples * sampleMultiplier;
+					for (long written = 0; written < silentChunkBytes; written += silentBlock.length) {
+						out.write(silentBlock, 0, (int) Math.min(silentBlock.length, silentChunkBytes - written));
+					}
+					silentChunkOffset = out.getBytesWritten() - silentChunkBytes;
+				}
+				long silentSamples = pendingSilentSamples;
+				while (silentSamples > 0) {
+					long chunkSamples = Math.min(silentSamples, silentChunkSamples);
+					addChunk(silentChunkOffset, chunkSamples);
+					silentSamples -= chunkSamples;
+				}
+			}
+			pendingSilentSamples = 0;
+		}
+
+		/**
+		 * Add the data written since the last chunk as a new chunk.
+		 */
+		private void flushChunk() {
+			if (pendingChunkBytes > 0) {
+				addChunk(out.getBytesWritten() - pendingChunkBytes, pendingChunkBytes / sampleMultiplier);
+				pendingChunkBytes = 0;
+			}
 		}
 
 		void close() throws IOException {
+			flushSilence();
+			flushChunk();
+
 			stts.addSampleTime(totalSamples, 1, true);
 
 			stsz.setSampleSize(1);
 			stsz.setSampleCount(totalSamples);
 			stsz.setSizeTable(null);
-
-			audioIn.close();
 		}
 
-		private void closeChunk(long chunkSizeInBytes) {
-			if (chunkSizeInBytes <= 0) {
-				throw new IllegalArgumentException("chunkSizeInBytes = " + chunkSizeInBytes);
+		private void addChunk(long dataStart, long samples) {
+			if (samples <= 0) {
+				throw new IllegalArgumentException("samples = " + samples);
 			}
 
-			long dataStart = out.getBytesWritten() - chunkSizeInBytes;
-
-			stsc.addChunk(currentChunkIndex + 1, chunkSizeInBytes / sampleMultiplier, 1);
+			stsc.addChunk(currentChunkIndex + 1, samples, 1);
 			stco.addChunkOffset(dataStart);
 			currentChunkIndex++;
 
-			long samplesWritten = chunkSizeInBytes / sampleMultiplier;
-			totalSamples += samplesWritten;
-			totalDurationInMovieTimeScale += samplesWritten * DEFAULT_TIME_SCALE / myTimeScale;
+			totalSamples += samples;
+			totalDurationInMovieTimeScale = totalSamples * DEFAULT_TIME_SCALE / myTimeScale;
 		}
 	}
 
 	/**
-	 * The output stream we write the movie data to.
+	 * The output stream we write the movie data to, and the channel it writes to (which is also used to write the movie
+	 * structure and to update the file's headers when closing).
 	 */
 	private final MeasuredOutputStream out;
+	private final FileChannel channel;
 
 	/**
 	 * The file we're writing to.
@@ -485,6 +771,36 @@ public abstract class MovWriter {
 	 */
 	private boolean closed = false;
 
+	/**
+	 * Whether to write the movie atom before the media data when closing.
+	 */
+	private boolean fastStart = false;
+
+	/**
+	 * Whether to position audio using edit lists rather than references to silent chunks.
+	 */
+	private boolean useAudioEditLists = false;
+
+	/**
+	 * The background threads used to encode frames, or null to encode frames on the thread that adds them.
+	 */
+	private ExecutorService encoderExecutor;
+	private int encoderThreadCount = 1;
+
+	/**
+	 * Frames that are being encoded, in the order they were added. Frames are written to the movie in this order (and
+	 * only by the thread that adds frames), so chunk offsets are the same as if frames were encoded one at a time.
+	 */
+	private final ArrayDeque<PendingFrame> pendingFrames = new ArrayDeque<>();
+	private int maxPendingFrames = 1;
+	private boolean pendingFramesLimited;
+
+	/**
+	 * Encoded frame buffers that can be reused, and a pool of bitmaps to hold copies of frames while they are encoded.
+	 */
+	private final ArrayDeque<FrameBuffer> spareFrameBuffers = new ArrayDeque<>();
+	private BitmapPool frameCopyPool;
+
 	/**
 	 * The video track.
 	 */
@@ -498,7 +814,7 @@ public abstract class MovWriter {
 	/**
 	 * Constructs a new <code>MovWriter</code>.
 	 * <p>
-	 * By constructing this object a <code>FileOutputStream</code> is opened for the destination file. It remains open
+	 * By constructing this object a <code>FileChannel</code> is opened for the destination file. It remains open
 	 * until <code>close()</code> is called or this object is finalized.
 	 *
 	 * @param file the file data is written to. It is strongly recommended that this file name end with ".mov" (or
@@ -506,8 +822,10 @@ public abstract class MovWriter {
 	 */
 	public MovWriter(File file) throws IOException {
 		dest = file;
-		file.createNewFile();
-		out = new MeasuredOutputStream(new FileOutputStream(file));
+		RandomAccessFile raf = new RandomAccessFile(file, "rw"); // readable, so that fast start can move the media data
+		raf.setLength(0);
+		channel = raf.getChannel(); // closing the channel (via out) also closes raf
+		out = new MeasuredOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), OUTPUT_BUFFER_SIZE));
 
 		// create the file type atom - must be the first atom; essential for playback in, e.g., VLC
 		// see: http://developer.apple.com/library/mac/#documentation/QuickTime/QTFF/QTFFChap1/qtff1.html
@@ -550,8 +868,10 @@ public abstract class MovWriter {
 	 * @param audioOffsets where in the movie each segment of the audio track should be played. Values *must* increase
 	 *                     throughout the array, and the array *must* be at least 1 value in length
 	 * @param audioStarts  where in the audio track each segment starts
-	 * @param audioLengths the length of each segment in the audio track
+	 * @param audioLengths the length of each segment in the audio track - only the last segment can be infinite (i.e.,
+	 *                     lasting until the audio runs out)
 	 * @throws RuntimeException if you invoke this method after calling <code>addFrame()</code> or <code>close()</code>.
+	 * @throws IllegalArgumentException if a segment other than the last is open-ended.
 	 */
 	public synchronized void addSegmentedAudioTrack(AudioInputStream audio, float[] audioOffsets, float[] audioStarts,
 													float[] audioLengths) throws IOException {
@@ -559,12 +879,12 @@ public abstract class MovWriter {
 			throw new RuntimeException("this writer has already been closed");
 		}
 
-		if (!videoTrack.isEmpty()) {
+		if (isVideoStarted()) {
 			throw new RuntimeException("cannot add audio after video data has been started");
 		}
 		AudioTrack newTrack;
 
-		newTrack = new AudioTrack(audio, audioOffsets, audioStarts, audioLengths);
+		newTrack = new AudioTrack(audio, audioOffsets, audioStarts, audioLengths, useAudioEditLists);
 
 		AudioTrack[] newTracks = new AudioTrack[audioTracks.length + 1];
 		System.arraycopy(audioTracks, 0, newTracks, 0, audioTracks.length);
@@ -616,7 +936,7 @@ public abstract class MovWriter {
 			throw new RuntimeException("this writer has already been closed");
 		}
 
-		if (!videoTrack.isEmpty()) {
+		if (isVideoStarted()) {
 			throw new RuntimeException("cannot add audio after video data has been started");
 		}
 		AudioTrack newTrack;
@@ -627,7 +947,7 @@ public abstract class MovWriter {
 		}
 		newTrack = new AudioTrack(audio, new float[]{ startTime }, new float[]{ 0 }, new float[]{
 				endTime - startTime
-		});
+		}, useAudioEditLists);
 
 		AudioTrack[] newTracks = new AudioTrack[audioTracks.length + 1];
 		System.arraycopy(audioTracks, 0, newTracks, 0, audioTracks.length);
@@ -660,21 +980,134 @@ public abstract class MovWriter {
 	 *                 JPEGMovWriter may consult this map to determine the image quality of the JPEG it writes.
 	 */
 	public synchronized void addFrame(float duration, Bitmap bi, Map<String, Object> settings) throws IOException {
+		int relativeDuration = startFrame(duration, bi.getWidth(), bi.getHeight());
+		if (encoderExecutor != null && frameCopyPool == null) {
+			long frameSize = (long) bi.getWidth() * bi.getHeight() * 4;
+			frameCopyPool = new BitmapPool((int) Math.min(maxPendingFrames * frameSize, Integer.MAX_VALUE));
+		}
+
+		// frames are usually drawn on a reused canvas, so if encoding in the background we need to copy the frame
+		final Bitmap frame = encoderExecutor != null ? copyFrame(bi) : bi;
+		queueFrame(relativeDuration, out -> {
+			try {
+				writeFrame(out, frame, settings);
+			} finally {
+				if (frame != bi) {
+					frameCopyPool.put(frame);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Encodes a frame to the given OutputStream - used for frames that are not Bitmaps.
+	 */
+	interface FrameEncoder {
+		void encode(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * Adds a frame of the given size that is encoded by the given encoder, in the same way as (and subject to the same
+	 * limits on frames in progress as) <code>addFrame(float, Bitmap, Map)</code>. The encoder is called on a background
+	 * thread if <code>setEncoderThreadCount()</code> has been used to enable background encoding, so it must not depend
+	 * on anything the caller changes after this method returns.
+	 */
+	synchronized void addFrame(float duration, int width, int height, FrameEncoder encoder) throws IOException {
+		queueFrame(startFrame(duration, width, height), encoder);
+	}
+
+	/**
+	 * Check that a frame can be added, and wait until there is room for it among the frames in progress.
+	 *
+	 * @return the frame's duration in the movie's time scale
+	 */
+	private int startFrame(float duration, int width, int height) throws IOException {
 		if (closed) {
 			throw new IllegalArgumentException("this writer has already been closed");
 		}
-		int relativeDuration = (int) (duration * DEFAULT_TIME_SCALE + .5);
+		videoTrack.validateSize(width, height);
+		if (encoderExecutor != null && !pendingFramesLimited) {
+			// now we know the frame size we can limit the memory used by frames in progress (copies and encoded data)
+			long frameSize = (long) width * height * 4;
+			long maxFrames = Runtime.getRuntime().maxMemory() / MAX_HEAP_DIVISOR_FOR_PENDING_FRAMES / (2 * frameSize);
+			maxPendingFrames = (int) Math.max(1, Math.min(encoderThreadCount + 1, maxFrames));
+			pendingFramesLimited = true;
+		}
+
+		// backpressure: wait for the oldest frames to be encoded (and write them) before starting any more
+		while (pendingFrames.size() >= maxPendingFrames) {
+			writeNextPendingFrame();
+		}
+		return (int) (duration * DEFAULT_TIME_SCALE + .5);
+	}
+
+	/**
+	 * Encode a frame in the background (or straight away, if there are no background threads) and add it to the frames
+	 * that are waiting to be written.
+	 */
+	private void queueFrame(int relativeDuration, final FrameEncoder encoder) throws IOException {
+		final FrameBuffer frameBuffer = spareFrameBuffers.isEmpty() ? new FrameBuffer() : spareFrameBuffers.pop();
+		FutureTask<Void> encoding = new FutureTask<>(() -> {
+			encoder.encode(frameBuffer.startFrame());
+			frameBuffer.finishFrame();
+			return null;
+		});
+		pendingFrames.add(new PendingFrame(relativeDuration, frameBuffer, encoding));
 
-		videoTrack.validateSize(bi.getWidth(), bi.getHeight());
-		long startPosition = out.getBytesWritten();
-		writeFrame(out, bi, settings);
-		long byteSize = out.getBytesWritten() - startPosition;
-		VideoSample sample = new VideoSample(relativeDuration, out.getBytesWritten() - byteSize, byteSize);
-		videoTrack.addSample(sample);
+		if (encoderExecutor != null) {
+			encoderExecutor.execute(encoding);
+		} else {
+			encoding.run();
+			writeNextPendingFrame();
+		}
 	}
 
+	/**
+	 * Encode a frame to the given OutputStream. If <code>setEncoderThreadCount()</code> has been used to enable
+	 * background encoding, this method is called concurrently from several threads (each with a different frame and
+	 * stream), so subclasses must not modify any shared state here.
+	 */
 	protected abstract void writeFrame(OutputStream out, Bitmap image, Map<String, Object> settings) throws IOException;
 
+	private Bitmap copyFrame(Bitmap frame) {
+		Bitmap.Config config = frame.getConfig() != null ? frame.getConfig() : Bitmap.Config.ARGB_8888;
+		Bitmap frameCopy = frameCopyPool.get(frame.getWidth(), frame.getHeight(), config);
+		if (frameCopy == null) {
+			return frame.copy(config, true); // mutable, so that it can be returned to the pool
+		}
+		new Canvas(frameCopy).drawBitmap(frame, 0, 0, null);
+		return frameCopy;
+	}
+
+	/**
+	 * Wait for the oldest pending frame to finish encoding, then write it to the movie.
+	 */
+	private void writeNextPendingFrame() throws IOException {
+		PendingFrame pendingFrame = pendingFrames.poll();
+		try {
+			pendingFrame.encoding.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a frame to be encoded");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException("Unable to encode frame", cause);
+		}
+		videoTrack.addFrameData(pendingFrame.duration, pendingFrame.buffer.data, pendingFrame.buffer.dataDigest);
+		spareFrameBuffers.push(pendingFrame.buffer);
+	}
+
+	private boolean isVideoStarted() {
+		return !videoTrack.isEmpty() || !pendingFrames.isEmpty();
+	}
+
 	/**
 	 * Adds an image to this animation.
 	 * <p>
@@ -695,8 +1128,87 @@ public abstract class MovWriter {
 			throw new IllegalArgumentException("this writer has already been closed");
 		}
 
+		// image files are copied directly (in order), so must wait until all frames in progress have been written
+		while (!pendingFrames.isEmpty()) {
+			writeNextPendingFrame();
+		}
+
 		int relativeTime = (int) (duration * DEFAULT_TIME_SCALE + .5);
-		videoTrack.addFrame(relativeTime, image);
+		FrameBuffer frameBuffer = spareFrameBuffers.isEmpty() ? new FrameBuffer() : spareFrameBuffers.pop();
+		videoTrack.addFrame(relativeTime, image, frameBuffer);
+		spareFrameBuffers.push(frameBuffer);
+	}
+
+	/**
+	 * Set the number of background threads to use for encoding frames. By default (and when threadCount is 1) frames
+	 * are encoded on the thread that calls <code>addFrame()</code>, which blocks until the frame has been written. With
+	 * more threads, <code>addFrame()</code> copies the frame and returns as soon as it has been queued for encoding (up
+	 * to a limit on the number of frames in progress), so the caller can prepare the next frame while previous frames
+	 * are encoded in parallel. Frames are always written to the movie in the order they were added. Must be called
+	 * before adding frames.
+	 *
+	 * @param threadCount the number of frames to encode at once
+	 */
+	public synchronized void setEncoderThreadCount(int threadCount) {
+		if (isVideoStarted()) {
+			throw new RuntimeException("cannot change encoder threads after video data has been started");
+		}
+		if (encoderExecutor != null) {
+			encoderExecutor.shutdown();
+			encoderExecutor = null;
+		}
+		encoderThreadCount = Math.max(1, threadCount);
+		if (encoderThreadCount > 1) {
+			encoderExecutor = ThreadUtilities.createBackgroundExecutor("MovFrameEncoding-", encoderThreadCount);
+		}
+	}
+
+	/**
+	 * Set whether the movie structure ("moov" atom) should be placed before the media data ("mdat" atom) in the output
+	 * file. Players (and streaming web viewers in particular) can begin playback of a file in this "fast start" layout
+	 * as soon as they have read its start, rather than after reading the entire file. Enabling this makes
+	 * <code>close()</code> slower, as the media data must be moved along to make room for the movie structure (though
+	 * this is done in place, without needing any extra storage). Must be called before <code>close()</code>.
+	 *
+	 * @param fastStart true to place the movie structure at the start of the file; false (the default) to place it at
+	 *                  the end
+	 */
+	public synchronized void setFastStart(boolean fastStart) {
+		if (closed) {
+			throw new IllegalArgumentException("this writer has already been closed");
+		}
+		this.fastStart = fastStart;
+	}
+
+	/**
+	 * Set whether each frame should be repeated once per time unit (1 / DEFAULT_TIME_SCALE seconds) in the sample
+	 * tables. Some players (YouTube and VLC, for example) skip frames fairly regularly, and can miss a still image
+	 * completely if it is stored as a single long sample. Repeating frames costs nothing in media data (all repetitions
+	 * refer to the same data), but makes the movie's sample tables much larger. Must be called before adding frames.
+	 *
+	 * @param repeatFrameSamples true (the default) to repeat each frame; false to store each frame as one sample
+	 */
+	public synchronized void setRepeatFrameSamples(boolean repeatFrameSamples) {
+		if (isVideoStarted()) {
+			throw new RuntimeException("cannot change frame repetition after video data has been started");
+		}
+		videoTrack.repeatFrameSamples = repeatFrameSamples;
+	}
+
+	/**
+	 * Set how audio tracks that do not start at the beginning of the movie (or that are made up of several segments) are
+	 * positioned. By default, any silence is added by repeatedly referring to one shared chunk of silent data in the
+	 * track's sample tables, which costs a few bytes per second of silence and plays back in every player. Edit lists
+	 * make the sample tables smaller still, but some players (VLC, for example) handle them poorly and may drop the
+	 * audio. Must be called before adding audio.
+	 *
+	 * @param useAudioEditLists true to position audio using edit lists; false (the default) to use silent chunks
+	 */
+	public synchronized void setAudioEditLists(boolean useAudioEditLists) {
+		if (audioTracks.length > 0) {
+			throw new RuntimeException("cannot change audio positioning after audio has been added");
+		}
+		this.useAudioEditLists = useAudioEditLists;
 	}
 
 	/**
@@ -721,7 +1233,12 @@ public abstract class MovWriter {
 		}
 
 		long mdatSize;
+		ParentAtom moovRoot;
+		long moovSize = 0;
 		try {
+			while (!pendingFrames.isEmpty()) {
+				writeNextPendingFrame();
+			}
 			videoTrack.close();
 			if (writeRemainingAudio) {
 				while (true) {
@@ -743,7 +1260,7 @@ public abstract class MovWriter {
 
 			mdatSize = out.getBytesWritten() - 32; // -32 for ftyp header
 
-			ParentAtom moovRoot = new ParentAtom("moov");
+			moovRoot = new ParentAtom("moov");
 
 			long totalDuration = videoTrack.totalDuration;
 			for (AudioTrack audio : audioTracks) {
@@ -757,31 +1274,95 @@ public abstract class MovWriter {
 				audioTracks[a].writeToMoovRoot(moovRoot, a + 2);
 			}
 
-			moovRoot.write(out);
+			if (fastStart) {
+				// chunk offsets are 32-bit, so we can only move the media data if they will all still fit afterwards
+				moovSize = moovRoot.getSize();
+				long maxChunkOffset = videoTrack.stco.getMaxChunkOffset();
+				for (AudioTrack audio : audioTracks) {
+					maxChunkOffset = Math.max(maxChunkOffset, audio.stco.getMaxChunkOffset());
+				}
+				if (maxChunkOffset + moovSize > 0xffffffffL) {
+					Log.d(LOG_TAG, "Movie too large for fast start - writing movie atom after media data");
+					moovSize = 0;
+				}
+			}
+			if (moovSize > 0) {
+				videoTrack.stco.offsetChunks(moovSize);
+				for (AudioTrack audio : audioTracks) {
+					audio.stco.offsetChunks(moovSize);
+				}
+			}
+			ByteBuffer moovBuffer = moovRoot.toByteBuffer();
+			if (moovSize > 0 && moovBuffer.remaining() != moovSize) {
+				throw new IOException("Movie atom size changed when moving media data (" + moovSize + " expected; " +
+						moovBuffer.remaining() + " written)");
+			}
+			out.flush();
+
+			// very last step: we have to rewrite the first
+			// 4 bytes of this file now that we can conclusively say
+			// how big the "mdat" atom is:
+			ByteBuffer mdatSizeBuffer = ByteBuffer.allocate(8);
+			mdatSizeBuffer.putLong(mdatSize); // big-endian, as required
+			mdatSizeBuffer.flip();
+			writeFully(channel, mdatSizeBuffer, 32 + 8); // 32 for ftyp atom; 8 for mdat header
+
+			if (moovSize > 0) {
+				writeMoovBeforeMdat(channel, moovBuffer);
+			} else {
+				writeFully(channel, moovBuffer, channel.size());
+			}
 		} finally {
+			if (encoderExecutor != null) {
+				encoderExecutor.shutdown(); // any frames still encoding (after an error) are simply discarded
+			}
+			// audio can be a live stream (e.g., from PCMPipeline) whose background decoding only stops when it is closed
+			for (AudioTrack audio : audioTracks) {
+				IOUtilities.closeStream(audio.audioIn);
+			}
 			out.close();
 		}
+	}
 
-		// very last step: we have to rewrite the first
-		// 4 bytes of this file now that we can conclusively say
-		// how big the "mdat" atom is:
+	/**
+	 * Move the mdat atom (which currently runs from just after the ftyp atom to the end of the file) along by moovSize
+	 * bytes, and write the moov atom into the space this creates. Blocks are copied starting from the end of the file so
+	 * that the data can be moved in place, reading and writing each byte only once.
+	 *
+	 * @param channel a channel for the file, which must not yet contain a moov atom
+	 * @param moov    the serialised moov atom, with chunk offsets that already account for the move
+	 */
+	private static void writeMoovBeforeMdat(FileChannel channel, ByteBuffer moov) throws IOException {
+		final long mdatStart = 32; // 32 for ftyp atom
+		final long moovSize = moov.remaining();
+		ByteBuffer buffer = ByteBuffer.allocate(RELOCATION_BUFFER_SIZE);
+		long position = channel.size();
+		while (position > mdatStart) {
+			int blockSize = (int) Math.min(buffer.capacity(), position - mdatStart);
+			position -= blockSize;
+
+			buffer.clear();
+			buffer.limit(blockSize);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					throw new IOException("Unexpected end of file when moving media data");
+				}
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer, position + moovSize + buffer.position());
+			}
+		}
 
-		RandomAccessFile raf = null;
-		try {
-			raf = new RandomAccessFile(dest, "rw");
-			raf.seek(32 + 8); // 32 for ftyp atom; 8 for mdat header
-			byte[] array = new byte[8];
-			array[0] = (byte) ((mdatSize >> 56) & 0xff);
-			array[1] = (byte) ((mdatSize >> 48) & 0xff);
-			array[2] = (byte) ((mdatSize >> 40) & 0xff);
-			array[3] = (byte) ((mdatSize >> 32) & 0xff);
-			array[4] = (byte) ((mdatSize >> 24) & 0xff);
-			array[5] = (byte) ((mdatSize >> 16) & 0xff);
-			array[6] = (byte) ((mdatSize >> 8) & 0xff);
-			array[7] = (byte) (mdatSize & 0xff);
-			raf.write(array);
-		} finally {
-			IOUtilities.closeStream(raf);
+		writeFully(channel, moov, mdatStart);
+	}
+
+	/**
+	 * Write the remainder of a buffer to a channel, starting at the given position in the file.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
 		}
 	}
 
@@ -792,7 +1373,7 @@ public abstract class MovWriter {
 	 * @param file the file to write
 	 * @return the number of bytes written.
 	 */
-	protected static synchronized long write(OutputStream out, File file) throws IOException {
+	protected static long write(OutputStream out, File file) throws IOException {
 		FileInputStream in = null;
 		try {
 			in = new FileInputStream(file);
@@ -810,7 +1391,7 @@ public abstract class MovWriter {
 	 * @param reverseBytePairs whether every two bytes should be switched (to convert from one endian to another)
 	 * @return the number of bytes written.
 	 */
-	protected static synchronized long write(OutputStream out, InputStream in, boolean reverseBytePairs) throws IOException {
+	protected static long write(OutputStream out, InputStream in, boolean reverseBytePairs) throws IOException {
 		byte[] block = new byte[4096];
 
 		long written = 0;
@@ -838,7 +1419,7 @@ public abstract class MovWriter {
 	 * @param reverseBytePairs whether every two bytes should be switched (to convert from one endian to another)
 	 * @return the number of bytes written.
 	 */
-	protected static synchronized long write(OutputStream out, InputStream in, long maxBytes, boolean reverseBytePairs)
+	protected static long write(OutputStream out, InputStream in, long maxBytes, boolean reverseBytePairs)
 			throws IOException {
 		byte[] block = new byte[4096];
 
@@ -34,6 +34,7 @@ public final class WAVtoPCMConverter {
 		public int sampleFrequency = 0;
 		public int sampleSize = 0;
 		public int numberOfChannels = 0;
+		public boolean forceMono = true; // if false, stereo input is output as interleaved stereo rather than averaged
 
 		@NonNull
 		@Override
@@ -100,14 +101,14 @@ public final class WAVtoPCMConverter {
 						throw new IOException("Bad WAV file: data chunk before fmt chunk");
 					}
 
-					// always output in mono, as mixing mono and stereo WAVs is fairly common amongst our users
+					// by default, output in mono, as mixing mono and stereo WAVs is fairly common amongst our users
 					// (e.g, audio track + dictaphone output), and this is an easy fix (i.e., average to 1 channel)
-					boolean mono = config.numberOfChannels == 1;
+					boolean unchanged = config.numberOfChannels == 1 || !config.forceMono;
 
 					int numSamples;
 					byte[] buffer = new byte[IOUtilities.IO_BUFFER_SIZE];
 					while ((numSamples = inputWAVStream.read(buffer)) > 0) {
-						if (mono) {
+						if (unchanged) {
 							output.write(buffer, 0, numSamples);
 						} else {
 							if (config.sampleSize == 8) {
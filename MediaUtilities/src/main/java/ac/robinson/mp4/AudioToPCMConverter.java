@@ -20,6 +20,7 @@
 
 package ac.robinson.mp4;
 
+import android.media.AudioFormat;
 import android.media.MediaCodec;
 import android.media.MediaExtractor;
 import android.media.MediaFormat;
@@ -73,11 +74,18 @@ public class AudioToPCMConverter {
     }
 
     public int getSampleSize() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            return audioFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)
-                    ? audioFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) : 16; // key not present = 16 bit
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && audioFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)) {
+            // the key holds an encoding constant rather than a number of bits
+            switch (audioFormat.getInteger(MediaFormat.KEY_PCM_ENCODING)) {
+                case AudioFormat.ENCODING_PCM_8BIT:
+                    return 8;
+                case AudioFormat.ENCODING_PCM_FLOAT:
+                    return 32;
+                default:
+                    return 16;
+            }
         }
-        return 16;
+        return 16; // key not present = 16 bit
     }
 
     public int getChannelCount() {
@@ -95,64 +103,67 @@ public class AudioToPCMConverter {
         codec.configure(audioFormat, null, null, 0);
         codec.start();
 
-        ByteBuffer[] inputBuffers = codec.getInputBuffers();
-        ByteBuffer[] outputBuffers = codec.getOutputBuffers();
-        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
-
-        boolean inputEOS = false;
-        boolean outputEOS = false;
-        int channelCount = getChannelCount();
-
-        while (!outputEOS) {
-            if (!inputEOS) {
-                int inputBufferId = codec.dequeueInputBuffer(10000);
-                if (inputBufferId >= 0) {
-                    ByteBuffer inputBuffer = inputBuffers[inputBufferId];
-                    int sampleSize = extractor.readSampleData(inputBuffer, 0);
-                    if (sampleSize < 0) {
-                        codec.queueInputBuffer(inputBufferId, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                        inputEOS = true;
-                    } else {
-                        long presentationTimeUs = extractor.getSampleTime();
-                        codec.queueInputBuffer(inputBufferId, 0, sampleSize, presentationTimeUs, 0);
-                        extractor.advance();
+        try {
+            ByteBuffer[] inputBuffers = codec.getInputBuffers();
+            ByteBuffer[] outputBuffers = codec.getOutputBuffers();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+            boolean inputEOS = false;
+            boolean outputEOS = false;
+            int channelCount = getChannelCount();
+
+            while (!outputEOS) {
+                if (!inputEOS) {
+                    int inputBufferId = codec.dequeueInputBuffer(10000);
+                    if (inputBufferId >= 0) {
+                        ByteBuffer inputBuffer = inputBuffers[inputBufferId];
+                        int sampleSize = extractor.readSampleData(inputBuffer, 0);
+                        if (sampleSize < 0) {
+                            codec.queueInputBuffer(inputBufferId, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputEOS = true;
+                        } else {
+                            long presentationTimeUs = extractor.getSampleTime();
+                            codec.queueInputBuffer(inputBufferId, 0, sampleSize, presentationTimeUs, 0);
+                            extractor.advance();
+                        }
                     }
                 }
-            }
 
-            int outputBufferId = codec.dequeueOutputBuffer(info, 10000);
-            if (outputBufferId >= 0) {
-                ByteBuffer outputBuffer = outputBuffers[outputBufferId];
-                byte[] chunk = new byte[info.size];
-                outputBuffer.get(chunk);
-                outputBuffer.clear();
-
-                if (forceMono && channelCount == 2) {
-                    // Downmix stereo to mono (16-bit PCM)
-                    byte[] monoChunk = new byte[chunk.length / 2];
-                    for (int i = 0, j = 0; i < chunk.length; i += 4, j += 2) {
-                        // Little-endian: [L0][L1][R0][R1]
-                        int left = (chunk[i + 1] << 8) | (chunk[i] & 0xFF);
-                        int right = (chunk[i + 3] << 8) | (chunk[i + 2] & 0xFF);
-                        int mono = (left + right) / 2;
-                        monoChunk[j] = (byte) (mono & 0xFF);
-                        monoChunk[j + 1] = (byte) ((mono >> 8) & 0xFF);
+                int outputBufferId = codec.dequeueOutputBuffer(info, 10000);
+                if (outputBufferId >= 0) {
+                    ByteBuffer outputBuffer = outputBuffers[outputBufferId];
+                    byte[] chunk = new byte[info.size];
+                    outputBuffer.get(chunk);
+                    outputBuffer.clear();
+
+                    if (forceMono && channelCount == 2) {
+                        // Downmix stereo to mono (16-bit PCM)
+                        byte[] monoChunk = new byte[chunk.length / 2];
+                        for (int i = 0, j = 0; i < chunk.length; i += 4, j += 2) {
+                            // Little-endian: [L0][L1][R0][R1]
+                            int left = (chunk[i + 1] << 8) | (chunk[i] & 0xFF);
+                            int right = (chunk[i + 3] << 8) | (chunk[i + 2] & 0xFF);
+                            int mono = (left + right) / 2;
+                            monoChunk[j] = (byte) (mono & 0xFF);
+                            monoChunk[j + 1] = (byte) ((mono >> 8) & 0xFF);
+                        }
+                        output.write(monoChunk);
+                    } else {
+                        output.write(chunk);
                     }
-                    output.write(monoChunk);
-                } else {
-                    output.write(chunk);
-                }
 
-                codec.releaseOutputBuffer(outputBufferId, false);
+                    codec.releaseOutputBuffer(outputBufferId, false);
 
-                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                    outputEOS = true;
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        outputEOS = true;
+                    }
                 }
             }
+        } finally {
+            // also reached if our output is closed early (e.g., when a streamed export is cancelled)
+            codec.stop();
+            codec.release();
+            extractor.release();
         }
-
-        codec.stop();
-        codec.release();
-        extractor.release();
     }
 }
\ No newline at end of file
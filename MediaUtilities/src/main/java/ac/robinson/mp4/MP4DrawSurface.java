@@ -44,6 +44,7 @@ import java.util.Map;
 import ac.robinson.mediautilities.FrameMediaContainer;
 import ac.robinson.mediautilities.MediaUtilities;
 import ac.robinson.util.AndroidUtilities;
+import ac.robinson.util.BitmapPool;
 import ac.robinson.util.BitmapUtilities;
 
 // Based on examples at http://bigflake.com/mediacodec/CameraToMpegTest.java.txt and http://magroune.net/?p=63
@@ -71,6 +72,7 @@ class MP4DrawSurface {
 	private final Bitmap mCurrentFrameBitmap;
 	private final Canvas mCurrentFrameCanvas;
 	private final Paint mCurrentFramePaint;
+	private final BitmapPool mImageBitmapPool; // frame images are discarded after drawing, so their bitmaps can be reused
 	private SVG mAudioSVG;
 
 	private final FloatBuffer mCubeTextureCoordinates;
@@ -142,6 +144,7 @@ class MP4DrawSurface {
 		mCurrentFrameBitmap = Bitmap.createBitmap(mCanvasWidth, mCanvasHeight, Bitmap.Config.ARGB_8888);
 		mCurrentFrameCanvas = new Canvas(mCurrentFrameBitmap);
 		mCurrentFramePaint = BitmapUtilities.getPaint(Color.WHITE, 1); // note: colour/size changed later when used
+		mImageBitmapPool = BitmapPool.createForFrameSize(mCanvasWidth, mCanvasHeight, Bitmap.Config.ARGB_8888);
 
 		// TODO: load appropriate settings here
 
@@ -297,12 +300,13 @@ class MP4DrawSurface {
 			if (nextFrame.mImagePath != null) {
 				// scale image size to make sure it is small enough to fit in the container
 				Bitmap imageBitmap = BitmapUtilities.loadAndCreateScaledBitmap(nextFrame.mImagePath, mCanvasWidth, mCanvasHeight,
-						BitmapUtilities.ScalingLogic.FIT, true);
+						BitmapUtilities.ScalingLogic.FIT, true, mImageBitmapPool);
 
 				if (imageBitmap != null) {
 					int imageBitmapLeft = Math.round((mCanvasWidth - imageBitmap.getWidth()) / 2f);
 					int imageBitmapTop = Math.round((mCanvasHeight - imageBitmap.getHeight()) / 2f);
 					mCurrentFrameCanvas.drawBitmap(imageBitmap, imageBitmapLeft, imageBitmapTop, mCurrentFramePaint);
+					mImageBitmapPool.put(imageBitmap);
 
 					imageLoaded = true;
 				}
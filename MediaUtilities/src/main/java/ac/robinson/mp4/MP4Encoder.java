@@ -35,7 +35,6 @@ import android.util.Log;
 import com.bric.audio.AudioInputStream;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -124,8 +123,9 @@ public class MP4Encoder {
 		final int requestedOutputWidth = (Integer) settings.get(MediaUtilities.KEY_OUTPUT_WIDTH);
 		final int requestedOutputHeight = (Integer) settings.get(MediaUtilities.KEY_OUTPUT_HEIGHT);
 
-		boolean hasAudio = combinedAudioTrack.mCombinedPCMFile != null;
+		boolean hasAudio = combinedAudioTrack.hasAudio();
 		int audioSampleRate = hasAudio ? (int) combinedAudioTrack.mCombinedPCMAudioFormat.getSampleRate() : 0;
+		int audioChannelCount = hasAudio ? combinedAudioTrack.mCombinedPCMAudioFormat.getChannels() : 0;
 		AudioInputStream audioInputStream = null;
 
 		long totalDuration = 0;
@@ -153,7 +153,7 @@ public class MP4Encoder {
 		try {
 			// initialise - throws IOException if either audio or video encoders couldn't be created
 			Point actualOutputSize = prepareEncoder(outputFile, requestedOutputWidth, requestedOutputHeight, iFrameInterval,
-					audioSampleRate, allowResizingVideo);
+					audioSampleRate, audioChannelCount, allowResizingVideo);
 			if (actualOutputSize.x != requestedOutputWidth || actualOutputSize.y != requestedOutputHeight) {
 				Log.d(LOG_TAG, "Unable to create video at requested size " + requestedOutputWidth + "x" + requestedOutputHeight +
 						"; setting " + "size to " + actualOutputSize.x + "x" + actualOutputSize.y);
@@ -167,15 +167,13 @@ public class MP4Encoder {
 				// use audio buffer size that means audio blocks are the same length as video ones (for simpler synchronisation)
 				// alternative: AudioRecord.getMinBufferSize(audioSampleRate, CHANNEL_CONFIG, AUDIO_FORMAT);
 				// TODO: will this be okay for all devices, sample rates and frame rates? (e.g., low frame rates will overflow)
-				mAudioBufferSize = audioSampleRate * 2 / FRAME_RATE;
+				mAudioBufferSize = (audioSampleRate / FRAME_RATE) * 2 * audioChannelCount;
 				mAudioInputBuffer = new byte[mAudioBufferSize];
 
-				// default input is PCM, mono, 16-bit (i.e., 2 bytes per sample (or 'frame')) at 44100 samples per second
-				// AudioFormat audioFormat = new AudioFormat(audioSampleRate, 16, 1, true, false);
-				// PCM 'frame' is 2 bytes (e.g., see AudioFormat: ((sampleSizeInBits + 7) / 8) * channels); length in frames is
-				// therefore file size / 2
-				audioInputStream = new AudioInputStream(new FileInputStream(combinedAudioTrack.mCombinedPCMFile),
-						combinedAudioTrack.mCombinedPCMAudioFormat, combinedAudioTrack.mCombinedPCMFile.length() / 2);
+				// input is PCM, stereo, 16-bit (i.e., 2 bytes per sample; 4 per 'frame') at the track's sample rate
+				// AudioFormat audioFormat = new AudioFormat(audioSampleRate, 16, 2, true, false);
+				// the stream is decoded as we read it, so its length is not known in advance - read until it ends
+				audioInputStream = combinedAudioTrack.getCombinedPCMStream();
 			}
 
 			long startTime = System.nanoTime();
@@ -246,7 +244,7 @@ public class MP4Encoder {
 
 				// add this frame's audio (or silence)
 				if (hasAudio) {
-					sendAudioToEncoder(audioInputStream, audioSampleRate, mEndOfOutputReached);
+					sendAudioToEncoder(audioInputStream, audioSampleRate, audioChannelCount, mEndOfOutputReached);
 
 					if (mEndOfOutputReached) {
 						// make sure that the last video frame is presented at the same time as the last audio frame's end
@@ -300,7 +298,8 @@ public class MP4Encoder {
 	/**
 	 * Sends the next chunk of the PCM audio file to the encoder
 	 */
-	private void sendAudioToEncoder(AudioInputStream audioInputStream, int sampleRate, boolean endOfStream) {
+	private void sendAudioToEncoder(AudioInputStream audioInputStream, int sampleRate, int channelCount,
+									boolean endOfStream) {
 		try {
 			ByteBuffer[] inputBuffers = mAudioEncoder.getInputBuffers();
 			int inputBufferIndex = mAudioEncoder.dequeueInputBuffer(-1); // no timeout (to keep video/audio in sync)
@@ -328,7 +327,7 @@ public class MP4Encoder {
 				mAudioEncoder.queueInputBuffer(inputBufferIndex, 0, inputLength, mAudioPresentationTimeUs,
 						endOfStream ? MediaCodec.BUFFER_FLAG_END_OF_STREAM : 0);
 
-				long inputTime = (long) (1000000 / (sampleRate / (float) inputLength) / 2f); // chunk length, microseconds
+				long inputTime = (long) (1000000 / (sampleRate / (float) inputLength) / (2f * channelCount)); // chunk, us
 				mAudioPresentationTimeUs += inputTime;
 			}
 		} catch (Throwable t) {
@@ -431,7 +430,7 @@ public class MP4Encoder {
 	 * An audioSampleRate value <= 0 indicates that there is no audio stream
 	 */
 	private Point prepareEncoder(File outputFile, int videoWidth, int videoHeight, int iFrameInterval, int audioSampleRate,
-								 boolean resizeVideo) throws IOException {
+								 int audioChannelCount, boolean resizeVideo) throws IOException {
 		mVideoBufferInfo = new MediaCodec.BufferInfo();
 		mVideoTrackInfo = new TrackInfo();
 
@@ -511,7 +510,7 @@ public class MP4Encoder {
 			audioFormat.setString(MediaFormat.KEY_MIME, AUDIO_MIME_TYPE);
 			audioFormat.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
 			audioFormat.setInteger(MediaFormat.KEY_SAMPLE_RATE, audioSampleRate);
-			audioFormat.setInteger(MediaFormat.KEY_CHANNEL_COUNT, 1); // TODO: currently always mono; add stereo?
+			audioFormat.setInteger(MediaFormat.KEY_CHANNEL_COUNT, audioChannelCount);
 			audioFormat.setInteger(MediaFormat.KEY_BIT_RATE, (int) (audioSampleRate *
 					(128000 / 44100f))); // TODO: will this always be okay (i.e., scaling bitrate based on typical 44.1kHz rate?
 			audioFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, 16384); // TODO: *always* 16kB?
@@ -0,0 +1,139 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.util;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+
+/**
+ * A pool of mutable bitmaps that can be reused when decoding (via BitmapFactory.Options.inBitmap) or scaling images, so
+ * that repeatedly loading images of a similar size (e.g., when exporting a narrative) does not allocate a new bitmap
+ * each time. Reusing a bitmap of a different size requires Bitmap.reconfigure(), so before KitKat the pool is never
+ * used: put() ignores all bitmaps and get() always returns null.
+ * <p>
+ * Bitmaps that are put into the pool must not be used again by the caller.
+ */
+public class BitmapPool {
+
+	// a pooled bitmap may be up to this many times larger than requested - any larger and we would waste too much memory
+	private static final int MAX_SIZE_MULTIPLE = 2;
+
+	// when sizing a pool for frames, allow this many frames' worth of bitmaps (a decoded image may be larger than a frame)
+	private static final int FRAME_POOL_SIZE_MULTIPLE = 6;
+
+	// but never use more than this fraction of the heap
+	private static final int MAX_HEAP_DIVISOR = 8;
+
+	private final SizeBucketedPool<Bitmap> mPool;
+
+	public BitmapPool(int maxSizeBytes) {
+		mPool = new SizeBucketedPool<>(maxSizeBytes);
+	}
+
+	/**
+	 * Create a pool that is large enough to hold the bitmaps used to load and scale images into frames of the given
+	 * size (see BitmapUtilities.loadAndCreateScaledBitmap).
+	 */
+	public static BitmapPool createForFrameSize(int frameWidth, int frameHeight, Bitmap.Config config) {
+		long frameSize = (long) frameWidth * frameHeight * getBytesPerPixel(config);
+		long maxSize = Math.min(FRAME_POOL_SIZE_MULTIPLE * frameSize, Runtime.getRuntime().maxMemory() / MAX_HEAP_DIVISOR);
+		return new BitmapPool((int) Math.min(maxSize, Integer.MAX_VALUE));
+	}
+
+	public static boolean isSupported() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+	}
+
+	/**
+	 * Get a bitmap from the pool, reconfigured to the given size and configuration, with all pixels cleared.
+	 *
+	 * @return a pooled bitmap, or null if there is no suitable bitmap in the pool
+	 */
+	public Bitmap get(int width, int height, Bitmap.Config config) {
+		Bitmap bitmap = getForDecoding(width, height, config);
+		if (bitmap != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			bitmap.reconfigure(width, height, config);
+			bitmap.eraseColor(Color.TRANSPARENT);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Get a bitmap from the pool that is large enough to be used as BitmapFactory.Options.inBitmap when decoding an image
+	 * of (up to) the given size. The bitmap's contents and dimensions are left as they are - the decoder replaces both.
+	 *
+	 * @return a pooled bitmap, or null if there is no suitable bitmap in the pool
+	 */
+	public Bitmap getForDecoding(int width, int height, Bitmap.Config config) {
+		if (!isSupported() || width <= 0 || height <= 0) {
+			return null;
+		}
+		long sizeBytes = (long) width * height * getBytesPerPixel(config);
+		if (sizeBytes > mPool.getMaxSize()) {
+			return null;
+		}
+		return mPool.get((int) sizeBytes, (int) Math.min(sizeBytes * MAX_SIZE_MULTIPLE, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Return a bitmap to the pool so that it can be reused. Bitmaps that cannot be reused (null, recycled or immutable
+	 * bitmaps, or any bitmap before KitKat) are ignored and left for the garbage collector.
+	 */
+	public void put(Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && bitmap != null && !bitmap.isRecycled() &&
+				bitmap.isMutable()) {
+			mPool.put(bitmap, bitmap.getAllocationByteCount());
+		}
+	}
+
+	/**
+	 * Remove all bitmaps from the pool (they are not recycled, as the pool does not know whether they are still drawn).
+	 */
+	public void clear() {
+		mPool.clear();
+	}
+
+	public int getHitCount() {
+		return mPool.getHitCount();
+	}
+
+	public int getMissCount() {
+		return mPool.getMissCount();
+	}
+
+	static int getBytesPerPixel(Bitmap.Config config) {
+		if (config == null) {
+			return 4; // BitmapFactory's default is ARGB_8888
+		}
+		switch (config) {
+			case ALPHA_8:
+				return 1;
+			case RGB_565:
+			case ARGB_4444:
+				return 2;
+			case ARGB_8888:
+				return 4;
+			default:
+				return 8; // RGBA_F16 (and be conservative with any other newer configurations)
+		}
+	}
+}
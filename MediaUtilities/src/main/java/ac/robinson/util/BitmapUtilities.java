@@ -84,6 +84,16 @@ public class BitmapUtilities {
 	// if using an ImageView etc, remember that the size is zero initially before inflation
 	public static Bitmap loadAndCreateScaledBitmap(String imagePath, int dstWidth, int dstHeight, ScalingLogic scalingLogic,
 												   boolean rotateImage) {
+		return loadAndCreateScaledBitmap(imagePath, dstWidth, dstHeight, scalingLogic, rotateImage, null);
+	}
+
+	/**
+	 * As loadAndCreateScaledBitmap(), but reusing bitmaps from (and returning the intermediate decoded bitmap to) the
+	 * given pool. The returned bitmap may itself be put into the pool once the caller has finished drawing it, so
+	 * loading a series of similarly-sized images needs no new allocations after the first few.
+	 */
+	public static Bitmap loadAndCreateScaledBitmap(String imagePath, int dstWidth, int dstHeight, ScalingLogic scalingLogic,
+												   boolean rotateImage, BitmapPool bitmapPool) {
 
 		Matrix imageMatrix = null;
 		if (rotateImage) {
@@ -94,8 +104,24 @@ public class BitmapUtilities {
 			}
 		}
 
-		Bitmap unscaledBitmap = decodeFile(imagePath, dstWidth, dstHeight, scalingLogic);
-		return createScaledBitmap(unscaledBitmap, dstWidth, dstHeight, scalingLogic, imageMatrix);
+		Bitmap unscaledBitmap = decodeFile(imagePath, dstWidth, dstHeight, scalingLogic, bitmapPool);
+		if (bitmapPool == null || unscaledBitmap == null) {
+			return createScaledBitmap(unscaledBitmap, dstWidth, dstHeight, scalingLogic, imageMatrix);
+		}
+
+		// the decoded bitmap is ours, so if sampling has already produced exactly the right size we can return it as-is
+		int unscaledWidth = unscaledBitmap.getWidth();
+		int unscaledHeight = unscaledBitmap.getHeight();
+		Rect srcRect = calculateSrcRect(unscaledWidth, unscaledHeight, dstWidth, dstHeight, scalingLogic);
+		Rect dstRect = calculateDstRect(unscaledWidth, unscaledHeight, dstWidth, dstHeight, scalingLogic);
+		if ((imageMatrix == null || imageMatrix.isIdentity()) && srcRect.width() == unscaledWidth &&
+				srcRect.height() == unscaledHeight && dstRect.width() == unscaledWidth && dstRect.height() == unscaledHeight) {
+			return unscaledBitmap;
+		}
+
+		Bitmap scaledBitmap = createScaledBitmap(unscaledBitmap, dstWidth, dstHeight, scalingLogic, imageMatrix, bitmapPool);
+		bitmapPool.put(unscaledBitmap);
+		return scaledBitmap;
 	}
 
 	public static Bitmap loadAndCreateScaledResource(Resources res, int resId, int dstWidth, int dstHeight,
@@ -245,6 +271,22 @@ public class BitmapUtilities {
 	 * @return Decoded bitmap
 	 */
 	public static Bitmap decodeFile(String imagePath, int dstWidth, int dstHeight, ScalingLogic scalingLogic) {
+		return decodeFile(imagePath, dstWidth, dstHeight, scalingLogic, null);
+	}
+
+	/**
+	 * Utility function for decoding an image file, reusing a bitmap from the given pool (if possible) to hold the
+	 * decoded image. The decoded bitmap is mutable, so it can be returned to the pool after use.
+	 *
+	 * @param imagePath    the file path of the image
+	 * @param dstWidth     Width of destination area
+	 * @param dstHeight    Height of destination area
+	 * @param scalingLogic Logic to use to avoid image stretching
+	 * @param bitmapPool   the pool to take the bitmap from, or null to always allocate a new bitmap
+	 * @return Decoded bitmap
+	 */
+	public static Bitmap decodeFile(String imagePath, int dstWidth, int dstHeight, ScalingLogic scalingLogic,
+									BitmapPool bitmapPool) {
 		if (dstWidth <= 0 || dstHeight <= 0) {
 			return null;
 		}
@@ -253,6 +295,30 @@ public class BitmapUtilities {
 		BitmapFactory.decodeFile(imagePath, options);
 		options.inJustDecodeBounds = false;
 		options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, dstWidth, dstHeight, scalingLogic);
+		if (bitmapPool == null || options.outWidth <= 0 || options.outHeight <= 0) {
+			return BitmapFactory.decodeFile(imagePath, options);
+		}
+
+		// decoders round the sample size down to a power of two, so we do the same in order to predict the decoded size
+		// (rounding the size up, as decoders differ in how they round partial pixels) and find a large enough bitmap
+		options.inSampleSize = Integer.highestOneBit(Math.max(1, options.inSampleSize));
+		options.inPreferredConfig = ImageCacheUtilities.mBitmapFactoryOptions.inPreferredConfig;
+		options.inMutable = true;
+		int decodedWidth = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+		int decodedHeight = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+		options.inBitmap = bitmapPool.getForDecoding(decodedWidth, decodedHeight, options.inPreferredConfig);
+		if (options.inBitmap != null) {
+			try {
+				Bitmap decodedBitmap = BitmapFactory.decodeFile(imagePath, options);
+				if (decodedBitmap != null) {
+					return decodedBitmap;
+				}
+			} catch (IllegalArgumentException ignored) {
+				// the decoder couldn't reuse this bitmap - decode into a new one instead
+			}
+			bitmapPool.put(options.inBitmap);
+			options.inBitmap = null;
+		}
 		return BitmapFactory.decodeFile(imagePath, options);
 	}
 
@@ -293,21 +359,48 @@ public class BitmapUtilities {
 	 */
 	public static Bitmap createScaledBitmap(Bitmap unscaledBitmap, int dstWidth, int dstHeight, ScalingLogic scalingLogic,
 											Matrix imageMatrix) {
+		return createScaledBitmap(unscaledBitmap, dstWidth, dstHeight, scalingLogic, imageMatrix, null);
+	}
+
+	/**
+	 * Utility function for creating a scaled version of an existing bitmap, reusing a bitmap from the given pool (if
+	 * possible) to hold the result. The original bitmap is not modified or returned to the pool.
+	 *
+	 * @param unscaledBitmap Bitmap to scale
+	 * @param dstWidth       Wanted width of destination bitmap
+	 * @param dstHeight      Wanted height of destination bitmap
+	 * @param scalingLogic   Logic to use to avoid image stretching
+	 * @param imageMatrix    Transformation (e.g., rotation) to apply before scaling, or null for none
+	 * @param bitmapPool     the pool to take the bitmap from, or null to always allocate a new bitmap
+	 * @return New scaled bitmap object
+	 */
+	public static Bitmap createScaledBitmap(Bitmap unscaledBitmap, int dstWidth, int dstHeight, ScalingLogic scalingLogic,
+											Matrix imageMatrix, BitmapPool bitmapPool) {
 		if (unscaledBitmap == null) {
 			return null;
 		}
-		if (imageMatrix == null) {
-			unscaledBitmap = Bitmap.createBitmap(unscaledBitmap, 0, 0, unscaledBitmap.getWidth(), unscaledBitmap.getHeight());
-		} else {
-			unscaledBitmap = Bitmap.createBitmap(unscaledBitmap, 0, 0, unscaledBitmap.getWidth(), unscaledBitmap.getHeight(),
-					imageMatrix, true);
+
+		// rather than creating a transformed copy of the original and then scaling that, we combine both into one draw
+		Matrix drawMatrix = imageMatrix == null ? new Matrix() : new Matrix(imageMatrix);
+		RectF transformedBounds = new RectF(0, 0, unscaledBitmap.getWidth(), unscaledBitmap.getHeight());
+		drawMatrix.mapRect(transformedBounds);
+		drawMatrix.postTranslate(-transformedBounds.left, -transformedBounds.top);
+		int transformedWidth = Math.round(transformedBounds.width());
+		int transformedHeight = Math.round(transformedBounds.height());
+
+		Rect srcRect = calculateSrcRect(transformedWidth, transformedHeight, dstWidth, dstHeight, scalingLogic);
+		Rect dstRect = calculateDstRect(transformedWidth, transformedHeight, dstWidth, dstHeight, scalingLogic);
+		Matrix scaleMatrix = new Matrix();
+		scaleMatrix.setRectToRect(new RectF(srcRect), new RectF(dstRect), Matrix.ScaleToFit.FILL);
+		drawMatrix.postConcat(scaleMatrix);
+
+		Bitmap.Config config = ImageCacheUtilities.mBitmapFactoryOptions.inPreferredConfig;
+		Bitmap scaledBitmap = bitmapPool != null ? bitmapPool.get(dstRect.width(), dstRect.height(), config) : null;
+		if (scaledBitmap == null) {
+			scaledBitmap = Bitmap.createBitmap(dstRect.width(), dstRect.height(), config);
 		}
-		Rect srcRect = calculateSrcRect(unscaledBitmap.getWidth(), unscaledBitmap.getHeight(), dstWidth, dstHeight, scalingLogic);
-		Rect dstRect = calculateDstRect(unscaledBitmap.getWidth(), unscaledBitmap.getHeight(), dstWidth, dstHeight, scalingLogic);
-		Bitmap scaledBitmap = Bitmap.createBitmap(dstRect.width(), dstRect.height(),
-				ImageCacheUtilities.mBitmapFactoryOptions.inPreferredConfig);
 		Canvas canvas = new Canvas(scaledBitmap);
-		canvas.drawBitmap(unscaledBitmap, srcRect, dstRect, new Paint(Paint.FILTER_BITMAP_FLAG));
+		canvas.drawBitmap(unscaledBitmap, drawMatrix, new Paint(Paint.FILTER_BITMAP_FLAG));
 		return scaledBitmap;
 	}
 
@@ -18,14 +18,17 @@ package ac.robinson.util;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.LruCache;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.InputStream;
-import java.lang.ref.SoftReference;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ac.robinson.view.FastBitmapDrawable;
 
@@ -34,8 +37,29 @@ public class ImageCacheUtilities {
 	public static final FastBitmapDrawable NULL_DRAWABLE = new FastBitmapDrawable(null);
 	public static final FastBitmapDrawable LOADING_DRAWABLE = new FastBitmapDrawable(null);
 
-	// TODO: Use a concurrent HashMap to support multiple threads
-	private static final HashMap<String, SoftReference<FastBitmapDrawable>> sArtCache = new HashMap<>();
+	// by default, icons may use up to 1/8 of the heap - see setMemoryCacheSize to change this
+	private static final int DEFAULT_MEMORY_CACHE_DIVISOR = 8;
+
+	// an in-memory LRU cache of icons, limited by the total size of their bitmaps; icons that are evicted (or that have
+	// not yet been loaded) are read from the icon files in the cache directory, which act as a second-level cache
+	private static volatile LruCache<String, FastBitmapDrawable> sArtCache =
+			createMemoryCache((int) Math.min(Runtime.getRuntime().maxMemory() / DEFAULT_MEMORY_CACHE_DIVISOR,
+					Integer.MAX_VALUE));
+
+	// icons that are currently being loaded from the cache directory, so that simultaneous requests share one decode;
+	// also used as the lock that keeps loading consistent with deleting or replacing icons
+	private static final PendingLoads<String, FastBitmapDrawable> sPendingLoads =
+			new PendingLoads<String, FastBitmapDrawable>() {
+				@Override
+				protected void onLoaded(String key, FastBitmapDrawable value) {
+					sArtCache.put(key, value);
+				}
+			};
+
+	// kept separately from the LruCache's own counts, which include manual clearing and are lost on resizing
+	private static final AtomicInteger sHitCount = new AtomicInteger();
+	private static final AtomicInteger sMissCount = new AtomicInteger();
+	private static final AtomicInteger sEvictionCount = new AtomicInteger();
 
 	// TODO: use these for most/all bitmap operations
 	public static final BitmapFactory.Options mBitmapFactoryOptions;
@@ -48,6 +72,71 @@ public class ImageCacheUtilities {
 	private ImageCacheUtilities() {
 	}
 
+	private static LruCache<String, FastBitmapDrawable> createMemoryCache(int maxSizeBytes) {
+		return new LruCache<String, FastBitmapDrawable>(Math.max(1, maxSizeBytes)) {
+			@Override
+			protected int sizeOf(String key, FastBitmapDrawable value) {
+				Bitmap bitmap = value.getBitmap();
+				return bitmap != null ? getBitmapByteCount(bitmap) : 1; // NULL_DRAWABLE and LOADING_DRAWABLE
+			}
+
+			@Override
+			protected void entryRemoved(boolean evicted, String key, FastBitmapDrawable oldValue,
+										FastBitmapDrawable newValue) {
+				if (evicted) {
+					sEvictionCount.incrementAndGet(); // icons that are removed or replaced are not evictions
+				}
+			}
+		};
+	}
+
+	private static int getBitmapByteCount(Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return bitmap.getAllocationByteCount(); // may be larger than getByteCount() if the bitmap has been reused
+		}
+		return bitmap.getByteCount();
+	}
+
+	/**
+	 * Set the maximum total size of the bitmaps kept in the in-memory icon cache (by default, 1/8 of the maximum heap
+	 * size). Existing icons are kept, most recently used first, until the new size is reached; any others are counted
+	 * as evictions.
+	 *
+	 * @param maxSizeBytes the maximum size of the cache, in bytes
+	 */
+	public static void setMemoryCacheSize(int maxSizeBytes) {
+		LruCache<String, FastBitmapDrawable> newCache = createMemoryCache(maxSizeBytes);
+		synchronized (sPendingLoads) {
+			for (Map.Entry<String, FastBitmapDrawable> entry : sArtCache.snapshot().entrySet()) {
+				newCache.put(entry.getKey(), entry.getValue()); // snapshot is ordered least to most recently used
+			}
+			sArtCache = newCache;
+		}
+	}
+
+	/**
+	 * @return the number of times an icon was found in the in-memory cache
+	 */
+	public static int getCacheHitCount() {
+		return sHitCount.get();
+	}
+
+	/**
+	 * @return the number of times an icon was not in the in-memory cache, and so was loaded from the cache directory
+	 * (or found by another thread that was loading it at the same time)
+	 */
+	public static int getCacheMissCount() {
+		return sMissCount.get();
+	}
+
+	/**
+	 * @return the number of icons that have been removed from the in-memory cache to stay within its maximum size (but
+	 * not those removed by deleteCachedIcon or cleanupCache)
+	 */
+	public static int getCacheEvictionCount() {
+		return sEvictionCount.get();
+	}
+
 	public static boolean addIconToCache(File cacheDirectory, String cacheId, Bitmap bitmap, Bitmap.CompressFormat cacheType,
 										 int cacheQuality) {
 		if (bitmap == null) {
@@ -84,12 +173,17 @@ public class ImageCacheUtilities {
 	 * @param id The id of the drawable to delete from the cache
 	 */
 	public static void deleteCachedIcon(String id) {
-		sArtCache.remove(id);
+		synchronized (sPendingLoads) {
+			sPendingLoads.cancel(id); // any icon that is currently being loaded will not be cached
+			sArtCache.remove(id);
+		}
 	}
 
 	public static void setLoadingIcon(String id) {
-		sArtCache.remove(id);
-		sArtCache.put(id, new SoftReference<>(LOADING_DRAWABLE));
+		synchronized (sPendingLoads) {
+			sPendingLoads.cancel(id);
+			sArtCache.put(id, LOADING_DRAWABLE);
+		}
 	}
 
 	/**
@@ -102,40 +196,47 @@ public class ImageCacheUtilities {
 	 * @return The drawable identified by id or defaultIcon
 	 */
 	public static FastBitmapDrawable getCachedIcon(File cacheDirectory, String id, FastBitmapDrawable defaultIcon) {
-		FastBitmapDrawable drawable = null;
-
-		SoftReference<FastBitmapDrawable> reference = sArtCache.get(id);
-		if (reference != null) {
-			drawable = reference.get();
-		}
-
+		FastBitmapDrawable drawable = sArtCache.get(id);
 		if (drawable == null) {
-			final Bitmap bitmap = loadIcon(cacheDirectory, id);
-			if (bitmap != null) {
-				drawable = new FastBitmapDrawable(bitmap);
-			} else {
-				drawable = NULL_DRAWABLE;
-			}
-
-			sArtCache.put(id, new SoftReference<>(drawable));
+			sMissCount.incrementAndGet();
+			drawable = loadCachedIcon(cacheDirectory, id);
+		} else {
+			sHitCount.incrementAndGet();
 		}
-
 		return drawable == NULL_DRAWABLE ? defaultIcon : drawable;
 	}
 
+	/**
+	 * Load an icon from the cache directory and add it to the in-memory cache. If another thread is already loading the
+	 * same icon then its result is used rather than decoding the icon again.
+	 */
+	private static FastBitmapDrawable loadCachedIcon(final File cacheDirectory, final String id) {
+		try {
+			return sPendingLoads.load(id, () -> {
+				final Bitmap bitmap = loadIcon(cacheDirectory, id);
+				return bitmap != null ? new FastBitmapDrawable(bitmap) : NULL_DRAWABLE;
+			});
+		} catch (ExecutionException e) {
+			return NULL_DRAWABLE; // not cached, so will be tried again next time
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return NULL_DRAWABLE;
+		}
+	}
+
 	/**
 	 * Removes all the callbacks from the drawables stored in the memory cache. This method must be called from the
 	 * onDestroy() method of any activity using the cached drawables. Failure to do so will result in the entire
 	 * activity being leaked.
 	 */
 	public static void cleanupCache() {
-		for (SoftReference<FastBitmapDrawable> reference : sArtCache.values()) {
-			final FastBitmapDrawable drawable = reference.get();
-			if (drawable != null) {
-				drawable.setCallback(null);
+		synchronized (sPendingLoads) {
+			sPendingLoads.cancelAll();
+			for (Map.Entry<String, FastBitmapDrawable> entry : sArtCache.snapshot().entrySet()) {
+				entry.getValue().setCallback(null);
+				sArtCache.remove(entry.getKey()); // rather than evictAll(), which would count as evictions
 			}
 		}
-		sArtCache.clear();
 	}
 
 	private static Bitmap loadIcon(File cacheDirectory, String id) {
@@ -143,8 +244,11 @@ public class ImageCacheUtilities {
 		if (file.exists()) {
 			InputStream stream = null;
 			try {
+				// icons may be loaded on several threads at once, and decoding writes to its options, so can't share them
+				BitmapFactory.Options options = new BitmapFactory.Options();
+				options.inPreferredConfig = mBitmapFactoryOptions.inPreferredConfig;
 				stream = new FileInputStream(file);
-				return BitmapFactory.decodeStream(stream, null, mBitmapFactoryOptions);
+				return BitmapFactory.decodeStream(stream, null, options);
 			} catch (FileNotFoundException e) {
 				// Ignore
 			} finally {
@@ -0,0 +1,119 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.util;
+
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Bookkeeping for values (typically bitmaps) that are being loaded on several threads. Simultaneous requests for the
+ * same key share one load, and a load's result is only delivered to onLoaded() if its key was not cancelled while it
+ * was loading (for example, because the item was deleted or replaced), so that stale results are dropped. This class
+ * has no Android dependencies - see ImageCacheUtilities for its use.
+ * <p>
+ * All methods synchronize on the object itself, so callers can hold its lock to keep other state (such as a cache)
+ * consistent with cancelling loads.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value
+ */
+public class PendingLoads<K, V> {
+
+	private final HashMap<K, FutureTask<V>> mLoads = new HashMap<>();
+
+	/**
+	 * Load the value for a key, or wait for the result if another thread is already loading it. The loader is run on
+	 * the calling thread, and only one loader is run at a time for each key.
+	 *
+	 * @param key    the key to load
+	 * @param loader creates the value; only called if no other thread is loading the same key
+	 * @return the loaded value
+	 * @throws ExecutionException   if the loader threw an exception (in which case nothing is passed to onLoaded())
+	 * @throws InterruptedException if the thread was interrupted while waiting for another thread's load
+	 */
+	public V load(K key, Callable<V> loader) throws ExecutionException, InterruptedException {
+		FutureTask<V> loadTask;
+		boolean isLoader = false;
+		synchronized (this) {
+			loadTask = mLoads.get(key);
+			if (loadTask == null) {
+				loadTask = new FutureTask<>(loader);
+				mLoads.put(key, loadTask);
+				isLoader = true;
+			}
+		}
+
+		if (!isLoader) {
+			return loadTask.get();
+		}
+
+		loadTask.run();
+		try {
+			V value = loadTask.get();
+			synchronized (this) {
+				// don't deliver the result if the key was cancelled (or cancelled and loaded again) while we were loading
+				if (mLoads.get(key) == loadTask) {
+					mLoads.remove(key);
+					onLoaded(key, value);
+				}
+			}
+			return value;
+		} catch (ExecutionException e) {
+			synchronized (this) {
+				if (mLoads.get(key) == loadTask) {
+					mLoads.remove(key);
+				}
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Cancel the load of a key, if any: threads that are waiting for it still receive its value, but it is not passed
+	 * to onLoaded(), and the next request for the key starts a new load.
+	 */
+	public synchronized void cancel(K key) {
+		mLoads.remove(key);
+	}
+
+	/**
+	 * Cancel all loads - see cancel(K).
+	 */
+	public synchronized void cancelAll() {
+		mLoads.clear();
+	}
+
+	/**
+	 * @return whether the given key is currently being loaded (and has not been cancelled)
+	 */
+	public synchronized boolean isLoading(K key) {
+		return mLoads.containsKey(key);
+	}
+
+	/**
+	 * Called (with this object's lock held) with the result of each load that was not cancelled. The default
+	 * implementation does nothing.
+	 */
+	protected void onLoaded(K key, V value) {
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bookkeeping for a pool of reusable objects (typically bitmaps) that are grouped into buckets by their size in bytes.
+ * Requests are served from the smallest bucket that is large enough, and the least recently added objects are evicted
+ * when the total size of the pool exceeds its limit. This class has no Android dependencies - see BitmapPool for the
+ * bitmap-specific parts.
+ *
+ * @param <T> the type of object held in the pool; objects are compared by identity
+ */
+public class SizeBucketedPool<T> {
+
+	private final int mMaxSizeBytes;
+	private int mSizeBytes;
+
+	// objects available for reuse, keyed by their size, and the same objects in the order they were added (for eviction)
+	private final TreeMap<Integer, ArrayDeque<T>> mBuckets = new TreeMap<>();
+	private final LinkedHashMap<IdentityKey<T>, Integer> mInsertionOrder = new LinkedHashMap<>();
+
+	private int mHitCount;
+	private int mMissCount;
+	private int mEvictionCount;
+
+	public SizeBucketedPool(int maxSizeBytes) {
+		if (maxSizeBytes < 0) {
+			throw new IllegalArgumentException("Maximum pool size must not be negative");
+		}
+		mMaxSizeBytes = maxSizeBytes;
+	}
+
+	/**
+	 * Add an object to the pool so that it can be reused by a later call to get(). Objects larger than the maximum
+	 * size of the pool are not added; objects that are already in the pool are ignored.
+	 *
+	 * @param item      the object to add
+	 * @param sizeBytes the size of the object
+	 * @return true if the object was added to the pool; false otherwise
+	 */
+	public synchronized boolean put(T item, int sizeBytes) {
+		if (item == null || sizeBytes <= 0 || sizeBytes > mMaxSizeBytes) {
+			return false;
+		}
+		IdentityKey<T> key = new IdentityKey<>(item);
+		if (mInsertionOrder.containsKey(key)) {
+			return false; // returning an object twice would hand it out to two callers
+		}
+
+		ArrayDeque<T> bucket = mBuckets.get(sizeBytes);
+		if (bucket == null) {
+			bucket = new ArrayDeque<>();
+			mBuckets.put(sizeBytes, bucket);
+		}
+		bucket.addLast(item);
+		mInsertionOrder.put(key, sizeBytes);
+		mSizeBytes += sizeBytes;
+
+		trimToSize(mMaxSizeBytes);
+		return true;
+	}
+
+	/**
+	 * Remove and return an object whose size is between minSizeBytes and maxSizeBytes (inclusive), preferring the
+	 * smallest such object and, within a size, the most recently added one.
+	 *
+	 * @return a pooled object, or null if there is no object of a suitable size
+	 */
+	public synchronized T get(int minSizeBytes, int maxSizeBytes) {
+		Map.Entry<Integer, ArrayDeque<T>> entry = mBuckets.ceilingEntry(minSizeBytes);
+		if (entry == null || entry.getKey() > maxSizeBytes) {
+			mMissCount += 1;
+			return null;
+		}
+
+		ArrayDeque<T> bucket = entry.getValue();
+		T item = bucket.pollLast();
+		if (bucket.isEmpty()) {
+			mBuckets.remove(entry.getKey());
+		}
+		mInsertionOrder.remove(new IdentityKey<>(item));
+		mSizeBytes -= entry.getKey();
+		mHitCount += 1;
+		return item;
+	}
+
+	/**
+	 * Evict the least recently added objects until the total size of the pool is no more than maxSizeBytes.
+	 */
+	public synchronized void trimToSize(int maxSizeBytes) {
+		Iterator<Map.Entry<IdentityKey<T>, Integer>> iterator = mInsertionOrder.entrySet().iterator();
+		while (mSizeBytes > maxSizeBytes && iterator.hasNext()) {
+			Map.Entry<IdentityKey<T>, Integer> eldest = iterator.next();
+			iterator.remove();
+
+			int sizeBytes = eldest.getValue();
+			ArrayDeque<T> bucket = mBuckets.get(sizeBytes);
+			Iterator<T> bucketIterator = bucket.iterator(); // oldest first, so the evicted item is usually found at once
+			while (bucketIterator.hasNext()) {
+				if (bucketIterator.next() == eldest.getKey().mItem) {
+					bucketIterator.remove();
+					break;
+				}
+			}
+			if (bucket.isEmpty()) {
+				mBuckets.remove(sizeBytes);
+			}
+			mSizeBytes -= sizeBytes;
+			mEvictionCount += 1;
+			onEvicted(eldest.getKey().mItem);
+		}
+	}
+
+	/**
+	 * Remove all objects from the pool.
+	 */
+	public void clear() {
+		trimToSize(-1);
+	}
+
+	/**
+	 * Called (with the pool's lock held) for each object that is evicted from the pool. The default implementation does
+	 * nothing.
+	 */
+	protected void onEvicted(T item) {
+	}
+
+	public synchronized int getSize() {
+		return mSizeBytes;
+	}
+
+	public int getMaxSize() {
+		return mMaxSizeBytes;
+	}
+
+	public synchronized int getCount() {
+		return mInsertionOrder.size();
+	}
+
+	public synchronized int getHitCount() {
+		return mHitCount;
+	}
+
+	public synchronized int getMissCount() {
+		return mMissCount;
+	}
+
+	public synchronized int getEvictionCount() {
+		return mEvictionCount;
+	}
+
+	// wraps pooled objects so that the insertion order map does not depend on their equals() and hashCode() methods
+	private static final class IdentityKey<T> {
+		private final T mItem;
+
+		private IdentityKey(T item) {
+			mItem = item;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof IdentityKey && ((IdentityKey<?>) o).mItem == mItem;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(mItem);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.util;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThreadUtilities {
+
+	/**
+	 * Create a pool of (at most) threadCount daemon threads, named namePrefix followed by a number. Idle threads are not
+	 * kept alive, so the pool does not need to be shut down if all of its tasks have finished, and its threads never
+	 * prevent the process exiting (e.g., if an export is abandoned) - use shutdownNow() to cancel any tasks that are
+	 * still in progress.
+	 */
+	public static ThreadPoolExecutor createBackgroundExecutor(final String namePrefix, int threadCount) {
+		final AtomicInteger threadNumber = new AtomicInteger(1);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
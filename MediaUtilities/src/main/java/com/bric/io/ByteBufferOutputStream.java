@@ -0,0 +1,50 @@
+package com.bric.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import androidx.annotation.NonNull;
+
+/**
+ * This <code>OutputStream</code> writes data into a <code>ByteBuffer</code>, starting at the buffer's current
+ * position. The buffer is not resized: writing more data than the buffer has room for throws an
+ * <code>IOException</code>.
+ * <P>
+ * This can be used to serialise something whose size is known in advance (such as an atom) in memory, so that it can
+ * be written to a <code>FileChannel</code> in a single operation.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+	private final ByteBuffer buffer;
+
+	public ByteBufferOutputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public void write(@NonNull byte[] b, int off, int len) throws IOException {
+		try {
+			buffer.put(b, off, len);
+		} catch (BufferOverflowException e) {
+			throw new IOException("buffer full (" + buffer.remaining() + " byte(s) remaining; " + len + " written)");
+		}
+	}
+
+	@Override
+	public void write(@NonNull byte[] b) throws IOException {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			throw new IOException("buffer full");
+		}
+		buffer.put((byte) b);
+	}
+}
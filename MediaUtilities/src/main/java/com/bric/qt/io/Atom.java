@@ -25,11 +25,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.GregorianCalendar;
 import java.util.Vector;
 
+import com.bric.io.ByteBufferOutputStream;
 import com.bric.io.GuardedOutputStream;
 import com.bric.io.NullOutputStream;
 
@@ -113,11 +115,13 @@ public abstract class Atom implements TreeNode {
 		}
 	}
 
-	static byte[] array32 = new byte[32];
-	static byte[] array36 = new byte[36];
-	static double[][] matrix = new double[3][3];
+	/*
+	 * Note: the read and write helpers below use only local buffers (rather than shared static ones), so they do not
+	 * need to be synchronized, and atoms can be read or written on several threads at once (e.g., concurrent exports).
+	 */
 
-	protected synchronized static final PerspectiveTransform readMatrix(InputStream in) throws IOException {
+	protected static final PerspectiveTransform readMatrix(InputStream in) throws IOException {
+		double[][] matrix = new double[3][3];
 		matrix[0][0] = read16_16Float(in);
 		matrix[0][1] = read16_16Float(in);
 		matrix[0][2] = read2_30Float(in);
@@ -131,8 +135,8 @@ public abstract class Atom implements TreeNode {
 		return new PerspectiveTransform(matrix);
 	}
 
-	protected synchronized static final void writeMatrix(OutputStream out, PerspectiveTransform transform)
-			throws IOException {
+	protected static final void writeMatrix(OutputStream out, PerspectiveTransform transform) throws IOException {
+		double[][] matrix = new double[3][3];
 		transform.getMatrix(matrix);
 		write16_16Float(out, (float) matrix[0][0]);
 		write16_16Float(out, (float) matrix[0][1]);
@@ -157,24 +161,21 @@ public abstract class Atom implements TreeNode {
 			throw new EOFException();
 	}
 
-	static byte[] array1 = new byte[1];
-	static byte[] array2 = new byte[2];
-	static byte[] array3 = new byte[3];
-	static byte[] array4 = new byte[4];
-	static byte[] array6 = new byte[6];
-
-	protected synchronized static final int read16Int(InputStream in) throws IOException {
+	protected static final int read16Int(InputStream in) throws IOException {
+		byte[] array2 = new byte[2];
 		read(in, array2);
 		return ((array2[0] & 0xff) << 8) + (array2[1] & 0xff);
 	}
 
-	protected synchronized static final void write16Int(OutputStream out, long i) throws IOException {
+	protected static final void write16Int(OutputStream out, long i) throws IOException {
+		byte[] array2 = new byte[2];
 		array2[0] = (byte) ((i >> 8) & 0xff);
 		array2[1] = (byte) (i & 0xff);
 		out.write(array2);
 	}
 
-	protected synchronized static final void write48Int(OutputStream out, long i) throws IOException {
+	protected static final void write48Int(OutputStream out, long i) throws IOException {
+		byte[] array6 = new byte[6];
 		array6[0] = (byte) ((i >> 40) & 0xff);
 		array6[1] = (byte) ((i >> 32) & 0xff);
 		array6[2] = (byte) ((i >> 24) & 0xff);
@@ -184,19 +185,20 @@ public abstract class Atom implements TreeNode {
 		out.write(array6);
 	}
 
-	protected synchronized static final void write8Int(OutputStream out, int i) throws IOException {
-		array1[0] = (byte) (i & 0xff);
-		out.write(array1);
+	protected static final void write8Int(OutputStream out, int i) throws IOException {
+		out.write(i & 0xff);
 	}
 
-	protected synchronized static final void write24Int(OutputStream out, int i) throws IOException {
+	protected static final void write24Int(OutputStream out, int i) throws IOException {
+		byte[] array3 = new byte[3];
 		array3[0] = (byte) ((i >> 16) & 0xff);
 		array3[1] = (byte) ((i >> 8) & 0xff);
 		array3[2] = (byte) (i & 0xff);
 		out.write(array3);
 	}
 
-	public synchronized static final void write32Int(OutputStream out, long i) throws IOException {
+	public static final void write32Int(OutputStream out, long i) throws IOException {
+		byte[] array4 = new byte[4];
 		array4[0] = (byte) ((i >> 24) & 0xff);
 		array4[1] = (byte) ((i >> 16) & 0xff);
 		array4[2] = (byte) ((i >> 8) & 0xff);
@@ -204,13 +206,9 @@ public abstract class Atom implements TreeNode {
 		out.write(array4);
 	}
 
-	public synchronized static final void write32String(OutputStream out, String s) throws IOException {
-		if (s.length() == 0) {
-			array4[0] = 0;
-			array4[1] = 0;
-			array4[2] = 0;
-			array4[3] = 0;
-		} else {
+	public static final void write32String(OutputStream out, String s) throws IOException {
+		byte[] array4 = new byte[4];
+		if (s.length() != 0) {
 			array4[0] = (byte) (s.charAt(0));
 			array4[1] = (byte) (s.charAt(1));
 			array4[2] = (byte) (s.charAt(2));
@@ -219,18 +217,21 @@ public abstract class Atom implements TreeNode {
 		out.write(array4);
 	}
 
-	protected synchronized static final int read24Int(InputStream in) throws IOException {
+	protected static final int read24Int(InputStream in) throws IOException {
+		byte[] array3 = new byte[3];
 		read(in, array3);
 		long k = (((long) (array3[0] & 0xff)) << 16) + (((long) (array3[1] & 0xff)) << 8) + (array3[2] & 0xff);
 		return (int) k;
 	}
 
-	protected synchronized static final int read8Int(InputStream in) throws IOException {
+	protected static final int read8Int(InputStream in) throws IOException {
+		byte[] array1 = new byte[1];
 		read(in, array1);
 		return (array1[0] & 0xff);
 	}
 
-	protected synchronized static final long read32Int(InputStream in) throws IOException {
+	protected static final long read32Int(InputStream in) throws IOException {
+		byte[] array4 = new byte[4];
 		read(in, array4);
 		return create32Int(array4);
 	}
@@ -245,7 +246,8 @@ public abstract class Atom implements TreeNode {
 		return value;
 	}
 
-	protected synchronized static final String read32String(InputStream in) throws IOException {
+	protected static final String read32String(InputStream in) throws IOException {
+		byte[] array4 = new byte[4];
 		read(in, array4);
 		StringBuffer sb = new StringBuffer(4);
 		sb.append(((char) array4[0]));
@@ -255,7 +257,8 @@ public abstract class Atom implements TreeNode {
 		return sb.toString();
 	}
 
-	protected synchronized static final String read32BytePascalString(InputStream in) throws IOException {
+	protected static final String read32BytePascalString(InputStream in) throws IOException {
+		byte[] array32 = new byte[32];
 		read(in, array32);
 		int size = array32[0] & 0xff;
 		StringBuffer sb = new StringBuffer();
@@ -265,7 +268,8 @@ public abstract class Atom implements TreeNode {
 		return sb.toString();
 	}
 
-	protected synchronized static final void write32BytePascalString(OutputStream out, String s) throws IOException {
+	protected static final void write32BytePascalString(OutputStream out, String s) throws IOException {
+		byte[] array32 = new byte[32];
 		for (int a = 0; a < 32; a++) {
 			if (a == 0) {
 				array32[a] = (byte) s.length();
@@ -278,14 +282,15 @@ public abstract class Atom implements TreeNode {
 		out.write(array32);
 	}
 
-	protected synchronized static final long read48Int(InputStream in) throws IOException {
+	protected static final long read48Int(InputStream in) throws IOException {
+		byte[] array6 = new byte[6];
 		read(in, array6);
 		return (((long) (array6[0] & 0xff)) << 40) + (((long) (array6[1] & 0xff)) << 32)
 				+ (((long) (array6[2] & 0xff)) << 24) + (((long) (array6[3] & 0xff)) << 16)
 				+ (((long) (array6[4] & 0xff)) << 8) + (((long) (array6[5] & 0xff)) << 0);
 	}
 
-	protected synchronized static final float read16_16Float(InputStream in) throws IOException {
+	protected static final float read16_16Float(InputStream in) throws IOException {
 		long value = read32Int(in);
 		float multiplier = 1;
 		if ((value & 0x80000000) > 0) {
@@ -302,7 +307,7 @@ public abstract class Atom implements TreeNode {
 		return floatValue * multiplier;
 	}
 
-	protected synchronized static final float read16_16UnsignedFloat(InputStream in) throws IOException {
+	protected static final float read16_16UnsignedFloat(InputStream in) throws IOException {
 		int integerPart = read16Int(in);
 		int fractionPart = read16Int(in);
 
@@ -310,7 +315,7 @@ public abstract class Atom implements TreeNode {
 		return floatValue;
 	}
 
-	protected synchronized static final float read2_30Float(InputStream in) throws IOException {
+	protected static final float read2_30Float(InputStream in) throws IOException {
 		long value = read32Int(in);
 		long w = (value >> 30) & 0xff;
 		float multiplier = 1;
@@ -331,7 +336,7 @@ public abstract class Atom implements TreeNode {
 		return floatValue * multiplier;
 	}
 
-	protected synchronized static final float read8_8Float(InputStream in) throws IOException {
+	protected static final float read8_8Float(InputStream in) throws IOException {
 		long value = read16Int(in);
 		float multiplier = 1;
 		if ((value & 0x8000) > 0) {
@@ -348,7 +353,7 @@ public abstract class Atom implements TreeNode {
 		return floatValue * multiplier;
 	}
 
-	protected synchronized static final void write16_16Float(OutputStream out, float f) throws IOException {
+	protected static final void write16_16Float(OutputStream out, float f) throws IOException {
 		float v = (f >= 0) ? f : -f;
 
 		long wholePart = (long) v;
@@ -361,7 +366,7 @@ public abstract class Atom implements TreeNode {
 		write32Int(out, t);
 	}
 
-	protected synchronized static final void write16_16UnsignedFloat(OutputStream out, float f) throws IOException {
+	protected static final void write16_16UnsignedFloat(OutputStream out, float f) throws IOException {
 		if (f < 0)
 			throw new IllegalArgumentException(f + "<0");
 		long wholePart = (long) f;
@@ -370,7 +375,7 @@ public abstract class Atom implements TreeNode {
 		write32Int(out, t);
 	}
 
-	protected synchronized static final void write8_8Float(OutputStream out, float f) throws IOException {
+	protected static final void write8_8Float(OutputStream out, float f) throws IOException {
 		float v = (f >= 0) ? f : -f;
 
 		long wholePart = (long) v;
@@ -383,7 +388,7 @@ public abstract class Atom implements TreeNode {
 		write16Int(out, t);
 	}
 
-	protected synchronized static final void write2_30Float(OutputStream out, float f) throws IOException {
+	protected static final void write2_30Float(OutputStream out, float f) throws IOException {
 		float v = (f >= 0) ? f : -f;
 
 		long wholePart = (long) v;
@@ -420,7 +425,7 @@ public abstract class Atom implements TreeNode {
 	 *
 	 * @return the complete size of this atom.
 	 */
-	protected long getSize() {
+	public long getSize() {
 		GuardedOutputStream out = new GuardedOutputStream(new NullOutputStream(), Long.MAX_VALUE);
 		try {
 			writeContents(out);
@@ -468,11 +473,36 @@ public abstract class Atom implements TreeNode {
 	 * Write this atom to an OutputStream.
 	 */
 	public final void write(OutputStream out) throws IOException {
+		write(out, getSize());
+	}
+
+	/**
+	 * Write this atom to a new <code>ByteBuffer</code> of exactly the atom's size, so that it can be written to a
+	 * <code>FileChannel</code> in one operation rather than through a series of small writes.
+	 *
+	 * @return a buffer containing this atom, ready to be read (i.e., its position is 0 and its limit is the atom's size)
+	 */
+	public final ByteBuffer toByteBuffer() throws IOException {
+		long size = getSize();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("This atom is too large to be buffered (" + size + " bytes).");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		write(new ByteBufferOutputStream(buffer), size);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Write this atom to an OutputStream, given its size (as returned by <code>getSize()</code>). A parent atom
+	 * calculates the sizes of all of its descendants when its own size is calculated, so it can pass each child's size
+	 * here rather than measuring the same subtree again at every level.
+	 */
+	void write(OutputStream out, long size) throws IOException {
 		if (this.getClass().equals(EmptyAtom.class)) {
 			write32Int(out, 0);
 			return;
 		}
-		long size = getSize();
 		write32Int(out, size);
 		String id = getIdentifier();
 		write32String(out, id);
@@ -36,7 +36,7 @@ import androidx.annotation.NonNull;
 public class ChunkOffsetAtom extends LeafAtom {
 	int version = 0;
 	int flags = 0;
-	long[] offsetTable = new long[0];
+	LongRunTable offsetTable = new LongRunTable();
 
 	public ChunkOffsetAtom(int version, int flags) {
 		super(null);
@@ -49,15 +49,15 @@ public class ChunkOffsetAtom extends LeafAtom {
 	}
 
 	public long getChunkOffset(int index) {
-		return offsetTable[index];
+		return offsetTable.get(index);
 	}
 
 	public int getChunkOffsetCount() {
-		return offsetTable.length;
+		return offsetTable.size();
 	}
 
 	public void setChunkOffset(int index, long value) {
-		offsetTable[index] = value;
+		offsetTable.set(index, value);
 	}
 
 	public ChunkOffsetAtom(Atom parent, InputStream in) throws IOException {
@@ -65,29 +65,41 @@ public class ChunkOffsetAtom extends LeafAtom {
 		version = in.read();
 		flags = read24Int(in);
 		int arraySize = (int) read32Int(in);
-		offsetTable = new long[arraySize];
-		for (int a = 0; a < offsetTable.length; a++) {
-			offsetTable[a] = read32Int(in);
+		for (int a = 0; a < arraySize; a++) {
+			offsetTable.add(read32Int(in));
 		}
 	}
 
 	public void addChunkOffset(long offset) {
-		long[] newArray = new long[offsetTable.length + 1];
-		System.arraycopy(offsetTable, 0, newArray, 0, offsetTable.length);
-		newArray[newArray.length - 1] = offset;
-		offsetTable = newArray;
+		offsetTable.add(offset);
 	}
 
+	/**
+	 * Add a number of chunks that all refer to the same offset. Consecutive identical offsets are stored as a single
+	 * run, so this is cheap even for very large counts.
+	 *
+	 * @param offset     the offset of the chunk data in the file
+	 * @param numOffsets the number of chunk entries to add
+	 */
 	public void addChunkOffsets(long offset, int numOffsets) {
-		long[] newArray = new long[offsetTable.length + numOffsets];
-		// System.arraycopy(offsetTable, 0, newArray, 0, offsetTable.length); // crashes - buggy for large arrays?
-		for (int i = 0; i < offsetTable.length; i++) {
-			newArray[i] = offsetTable[i];
-		}
-		for (int i = 0; i < numOffsets; i++) {
-			newArray[newArray.length - i] = offset;
-		}
-		offsetTable = newArray;
+		offsetTable.add(offset, numOffsets);
+	}
+
+	/**
+	 * Move every chunk offset by the same amount - used when the media data is relocated within the file (for example,
+	 * to place the movie atom before it).
+	 *
+	 * @param delta the number of bytes to add to each offset
+	 */
+	public void offsetChunks(long delta) {
+		offsetTable.addToAll(delta);
+	}
+
+	/**
+	 * @return the largest chunk offset in this atom, or -1 if there are no chunks.
+	 */
+	public long getMaxChunkOffset() {
+		return offsetTable.size() == 0 ? -1 : offsetTable.getMaxValue();
 	}
 
 	@Override
@@ -96,38 +108,22 @@ public class ChunkOffsetAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
-		return 16 + offsetTable.length * 4;
+	public long getSize() {
+		return 16 + offsetTable.size() * 4L;
 	}
 
 	@Override
 	protected void writeContents(GuardedOutputStream out) throws IOException {
 		out.write(version);
 		write24Int(out, flags);
-		write32Int(out, offsetTable.length);
-		for (int a = 0; a < offsetTable.length; a++) {
-			write32Int(out, offsetTable[a]);
-		}
+		write32Int(out, offsetTable.size());
+		offsetTable.write32Ints(out);
 	}
 
 	@NonNull
 	@Override
 	public String toString() {
-		String entriesString;
-		if (offsetTable.length > 50 && ABBREVIATE) {
-			entriesString = "[ ... ]";
-		} else {
-			StringBuffer sb = new StringBuffer();
-			sb.append("[ ");
-			for (int a = 0; a < offsetTable.length; a++) {
-				if (a != 0) {
-					sb.append(", ");
-				}
-				sb.append(offsetTable[a]);
-			}
-			sb.append(" ]");
-			entriesString = sb.toString();
-		}
+		String entriesString = offsetTable.toString(ABBREVIATE);
 
 		return "ChunkOffsetAtom[ version=" + version + ", " + "flags=" + flags + ", " + "sizeTable=" + entriesString
 				+ "]";
@@ -68,7 +68,7 @@ public class DataReferenceAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		long sum = 16;
 		for (int a = 0; a < entries.length; a++) {
 			sum += entries[a].getSize();
@@ -111,7 +111,7 @@ public class EditListAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		return 16 + 12 * table.length;
 	}
 
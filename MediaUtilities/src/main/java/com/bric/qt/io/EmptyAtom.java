@@ -41,7 +41,7 @@ class EmptyAtom extends Atom {
 		return null;
 	}
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		return 0;
 	}
 	@Override
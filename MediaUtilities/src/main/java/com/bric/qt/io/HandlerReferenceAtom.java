@@ -101,7 +101,7 @@ public class HandlerReferenceAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		byte[] data = componentName.getBytes();
 		return 33 + data.length;
 	}
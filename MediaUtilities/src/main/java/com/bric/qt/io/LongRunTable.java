@@ -0,0 +1,200 @@
+package com.bric.qt.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A growable table of long values that stores consecutive repeated values as a single run. Used by the sample table
+ * atoms, where (particularly for our still-image movies) the same sample size or chunk offset is frequently repeated
+ * thousands of times. Storage grows by doubling, so appending is amortised constant time.
+ */
+class LongRunTable {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private long[] values;
+	private int[] runEnds; // the (exclusive) end index of each run, so that lookups can use a binary search
+	private int runCount;
+
+	LongRunTable() {
+		values = new long[INITIAL_CAPACITY];
+		runEnds = new int[INITIAL_CAPACITY];
+	}
+
+	LongRunTable(long[] table) {
+		this();
+		if (table != null) {
+			for (long value : table) {
+				add(value);
+			}
+		}
+	}
+
+	/**
+	 * @return the total number of values in this table (i.e., including all repetitions).
+	 */
+	int size() {
+		return runCount == 0 ? 0 : runEnds[runCount - 1];
+	}
+
+	/**
+	 * @return the number of distinct runs of values stored in this table.
+	 */
+	int getRunCount() {
+		return runCount;
+	}
+
+	void add(long value) {
+		add(value, 1);
+	}
+
+	void add(long value, int count) {
+		if (count <= 0) {
+			return;
+		}
+		if (runCount > 0 && values[runCount - 1] == value) {
+			runEnds[runCount - 1] += count;
+		} else {
+			insertRun(runCount, value, size() + count);
+		}
+	}
+
+	long get(int index) {
+		return values[findRun(index)];
+	}
+
+	void set(int index, long value) {
+		int run = findRun(index);
+		if (values[run] == value) {
+			return;
+		}
+		int runStart = run == 0 ? 0 : runEnds[run - 1];
+		int runEnd = runEnds[run];
+		if (runEnd - runStart == 1) {
+			values[run] = value;
+			return;
+		}
+
+		// split the existing run around the new value
+		if (index > runStart) {
+			insertRun(run, values[run], index);
+			run++;
+		}
+		insertRun(run, value, index + 1);
+		// the remainder of the original run (if any) is now at run + 1, and still ends at runEnd
+		if (runEnds[run + 1] == index + 1) {
+			removeRun(run + 1);
+		}
+	}
+
+	void clear() {
+		runCount = 0;
+	}
+
+	/**
+	 * Add the same amount to every value in this table. Runs are unaffected, so this is proportional to the number of
+	 * runs rather than the number of values.
+	 */
+	void addToAll(long delta) {
+		for (int r = 0; r < runCount; r++) {
+			values[r] += delta;
+		}
+	}
+
+	/**
+	 * @return the largest value in this table, or Long.MIN_VALUE if it is empty.
+	 */
+	long getMaxValue() {
+		long max = Long.MIN_VALUE;
+		for (int r = 0; r < runCount; r++) {
+			max = Math.max(max, values[r]);
+		}
+		return max;
+	}
+
+	/**
+	 * Write every value (including repetitions) as a 32-bit integer.
+	 */
+	void write32Ints(OutputStream out) throws IOException {
+		TableWriter writer = new TableWriter(out, size());
+		int start = 0;
+		for (int r = 0; r < runCount; r++) {
+			long value = values[r];
+			for (int i = start, end = runEnds[r]; i < end; i++) {
+				writer.write32Int(value);
+			}
+			start = runEnds[r];
+		}
+		writer.flush();
+	}
+
+	long[] toArray() {
+		long[] array = new long[size()];
+		int start = 0;
+		for (int r = 0; r < runCount; r++) {
+			for (int i = start, end = runEnds[r]; i < end; i++) {
+				array[i] = values[r];
+			}
+			start = runEnds[r];
+		}
+		return array;
+	}
+
+	String toString(boolean abbreviate) {
+		int size = size();
+		if (size > 50 && abbreviate) {
+			return "[ ... ]";
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("[ ");
+		for (int a = 0; a < size; a++) {
+			if (a != 0) {
+				sb.append(", ");
+			}
+			sb.append(get(a));
+		}
+		sb.append(" ]");
+		return sb.toString();
+	}
+
+	private int findRun(int index) {
+		if (index < 0 || index >= size()) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		int low = 0;
+		int high = runCount - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (runEnds[mid] <= index) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void insertRun(int position, long value, int runEnd) {
+		if (runCount == values.length) {
+			int newCapacity = values.length * 2;
+			long[] newValues = new long[newCapacity];
+			int[] newRunEnds = new int[newCapacity];
+			System.arraycopy(values, 0, newValues, 0, runCount);
+			System.arraycopy(runEnds, 0, newRunEnds, 0, runCount);
+			values = newValues;
+			runEnds = newRunEnds;
+		}
+		if (position < runCount) {
+			System.arraycopy(values, position, values, position + 1, runCount - position);
+			System.arraycopy(runEnds, position, runEnds, position + 1, runCount - position);
+		}
+		values[position] = value;
+		runEnds[position] = runEnd;
+		runCount++;
+	}
+
+	private void removeRun(int position) {
+		System.arraycopy(values, position + 1, values, position, runCount - position - 1);
+		System.arraycopy(runEnds, position + 1, runEnds, position, runCount - position - 1);
+		runCount--;
+	}
+}
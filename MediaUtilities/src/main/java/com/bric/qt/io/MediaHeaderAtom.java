@@ -63,7 +63,7 @@ public class MediaHeaderAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		return 32;
 	}
 
@@ -97,7 +97,7 @@ public class MovieHeaderAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		return 108;
 	}
 
@@ -72,12 +72,24 @@ public class ParentAtom extends Atom {
 		return children.size() == 0;
 	}
 
+	/**
+	 * The size of each child when this atom's size was last calculated. Every write begins by calculating the size of
+	 * the atom being written (which calculates the size of all of its descendants), so when this atom's contents are
+	 * written these sizes are up to date, and each child's subtree only needs to be measured once.
+	 */
+	private long[] childSizes;
+
 	@Override
-	protected long getSize() {
+	public long getSize() {
+		int childCount = children.size();
+		if (childSizes == null || childSizes.length != childCount) {
+			childSizes = new long[childCount];
+		}
 		long sum = 8;
-		for (int a = 0; a < children.size(); a++) {
+		for (int a = 0; a < childCount; a++) {
 			Atom atom = children.get(a);
-			sum += atom.getSize();
+			childSizes[a] = atom.getSize();
+			sum += childSizes[a];
 		}
 		return sum;
 	}
@@ -89,9 +101,14 @@ public class ParentAtom extends Atom {
 
 	@Override
 	protected void writeContents(GuardedOutputStream out) throws IOException {
+		boolean sizesKnown = childSizes != null && childSizes.length == children.size();
 		for (int a = 0; a < children.size(); a++) {
 			Atom atom = children.get(a);
-			atom.write(out);
+			if (sizesKnown) {
+				atom.write(out, childSizes[a]);
+			} else {
+				atom.write(out);
+			}
 		}
 	}
 }
@@ -70,7 +70,7 @@ public class SampleDescriptionAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		long sum = 16;
 		for (int a = 0; a < entries.length; a++) {
 			sum += entries[a].getSize();
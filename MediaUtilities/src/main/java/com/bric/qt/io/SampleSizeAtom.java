@@ -31,7 +31,7 @@ public class SampleSizeAtom extends LeafAtom {
 	int flags = 0;
 	long sampleSize = 0;
 	long sampleCount;
-	long[] sizeTable;
+	LongRunTable sizeTable; // null when every sample has the same size (sampleSize)
 
 	public SampleSizeAtom(int version, int flags, long sampleSize, int sampleCount, long[] table) {
 		super(null);
@@ -39,12 +39,12 @@ public class SampleSizeAtom extends LeafAtom {
 		this.flags = flags;
 		this.sampleSize = sampleSize;
 		this.sampleCount = sampleCount;
-		this.sizeTable = table;
+		this.sizeTable = table == null ? null : new LongRunTable(table);
 	}
 
 	public SampleSizeAtom() {
 		super(null);
-		sizeTable = new long[0];
+		sizeTable = new LongRunTable();
 	}
 
 	public SampleSizeAtom(Atom parent, GuardedInputStream in) throws IOException {
@@ -54,9 +54,9 @@ public class SampleSizeAtom extends LeafAtom {
 		sampleSize = read32Int(in);
 		sampleCount = read32Int(in);
 		if (in.isAtLimit() == false) {
-			sizeTable = new long[(int) sampleCount];
-			for (int a = 0; a < sizeTable.length; a++) {
-				sizeTable[a] = read32Int(in);
+			sizeTable = new LongRunTable();
+			for (long a = 0; a < sampleCount; a++) {
+				sizeTable.add(read32Int(in));
 			}
 		}
 	}
@@ -70,26 +70,25 @@ public class SampleSizeAtom extends LeafAtom {
 	}
 
 	public void setSizeTable(long[] sizeTable) {
-		this.sizeTable = sizeTable;
+		this.sizeTable = sizeTable == null ? null : new LongRunTable(sizeTable);
 	}
 
 	public void addSampleSize(long size) {
-		long[] newArray = new long[sizeTable.length + 1];
-		System.arraycopy(sizeTable, 0, newArray, 0, sizeTable.length);
-		newArray[newArray.length - 1] = size;
-		sizeTable = newArray;
+		addSampleSizes(size, 1);
 	}
 
+	/**
+	 * Add a number of samples that all have the same size. Consecutive identical sizes are stored as a single run, so
+	 * this is cheap even for very large counts.
+	 *
+	 * @param size     the size (in bytes) of each sample
+	 * @param numSizes the number of samples to add
+	 */
 	public void addSampleSizes(long size, int numSizes) {
-		long[] newArray = new long[sizeTable.length + numSizes];
-		// System.arraycopy(sizeTable, 0, newArray, 0, sizeTable.length); // crashes - buggy for large arrays?
-		for (int i = 0; i < sizeTable.length; i++) {
-			newArray[i] = sizeTable[i];
-		}
-		for (int i = 0; i < numSizes; i++) {
-			newArray[newArray.length - i] = size;
+		if (sizeTable == null) {
+			sizeTable = new LongRunTable();
 		}
-		sizeTable = newArray;
+		sizeTable.add(size, numSizes);
 	}
 
 	@Override
@@ -98,10 +97,10 @@ public class SampleSizeAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		if (sizeTable == null)
 			return 20;
-		return 20 + sizeTable.length * 4;
+		return 20 + sizeTable.size() * 4L;
 	}
 
 	@Override
@@ -112,10 +111,8 @@ public class SampleSizeAtom extends LeafAtom {
 		if (sizeTable == null) {
 			write32Int(out, sampleCount);
 		} else {
-			write32Int(out, sizeTable.length);
-			for (int a = 0; a < sizeTable.length; a++) {
-				write32Int(out, sizeTable[a]);
-			}
+			write32Int(out, sizeTable.size());
+			sizeTable.write32Ints(out);
 		}
 	}
 
@@ -124,20 +121,7 @@ public class SampleSizeAtom extends LeafAtom {
 	public String toString() {
 		String entriesString;
 		if (sizeTable != null) {
-			if (sizeTable.length > 50 && ABBREVIATE) {
-				entriesString = "[ ... ]";
-			} else {
-				StringBuffer sb = new StringBuffer();
-				sb.append("[ ");
-				for (int a = 0; a < sizeTable.length; a++) {
-					if (a != 0) {
-						sb.append(", ");
-					}
-					sb.append(sizeTable[a]);
-				}
-				sb.append(" ]");
-				entriesString = sb.toString();
-			}
+			entriesString = sizeTable.toString(ABBREVIATE);
 		} else {
 			entriesString = "undefined";
 		}
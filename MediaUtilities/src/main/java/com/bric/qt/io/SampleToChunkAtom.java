@@ -21,7 +21,6 @@ package com.bric.qt.io;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 
 import com.bric.io.GuardedOutputStream;
 
@@ -40,7 +39,12 @@ import androidx.annotation.NonNull;
 public class SampleToChunkAtom extends LeafAtom {
 	int version = 0;
 	int flags = 0;
-	SampleToChunkEntry[] entries = new SampleToChunkEntry[0];
+
+	// entries are stored as parallel arrays that grow by doubling; only the first entryCount values are valid
+	long[] firstChunks = new long[8];
+	long[] samplesPerChunks = new long[8];
+	long[] sampleDescriptionIDs = new long[8];
+	int entryCount;
 
 	public SampleToChunkAtom(int version, int flags) {
 		super(null);
@@ -56,39 +60,46 @@ public class SampleToChunkAtom extends LeafAtom {
 		super(parent);
 		version = in.read();
 		flags = read24Int(in);
-		int entryCount = (int) read32Int(in);
-		entries = new SampleToChunkEntry[entryCount];
-		for (int a = 0; a < entryCount; a++) {
-			entries[a] = new SampleToChunkEntry(in);
+		int count = (int) read32Int(in);
+		for (int a = 0; a < count; a++) {
+			long firstChunk = read32Int(in);
+			long samplesPerChunk = read32Int(in);
+			addEntry(firstChunk, samplesPerChunk, read32Int(in));
 		}
 	}
 
 	public void addChunk(long chunkIndex, long samplesPerChunk, long sampleDescriptionID) {
-		// TODO: this probably could use rewriting, but I'm not sure exactly how
-		// much of this object is supposed to be black-box implementation...
-		if (entries.length == 0) {
-			SampleToChunkEntry[] newArray = new SampleToChunkEntry[] { new SampleToChunkEntry(chunkIndex,
-					samplesPerChunk, sampleDescriptionID) };
-			entries = newArray;
-		} else {
-			for (int a = 0; a < entries.length; a++) {
-				if (entries[a].firstChunk <= chunkIndex
-						&& (a == entries.length - 1 || entries[a + 1].firstChunk > chunkIndex)) {
-					// this is where this chunk belongs:
-					if (entries[a].samplesPerChunk == samplesPerChunk
-							&& entries[a].sampleDescriptionID == sampleDescriptionID) {
-						// this new entry is implied; it doesn't need to be written.
-						return;
-					} else {
-						SampleToChunkEntry[] newTable = new SampleToChunkEntry[entries.length + 1];
-						System.arraycopy(entries, 0, newTable, 0, entries.length);
-						newTable[newTable.length - 1] = new SampleToChunkEntry(chunkIndex, samplesPerChunk,
-								sampleDescriptionID);
-						entries = newTable;
-					}
+		// chunks are almost always added in order, so search backwards from the most recent entry to find where this
+		// chunk belongs (entries are sorted by first chunk, so this is the same as the first match searching forwards)
+		for (int a = entryCount - 1; a >= 0; a--) {
+			if (firstChunks[a] <= chunkIndex) {
+				if (samplesPerChunks[a] == samplesPerChunk && sampleDescriptionIDs[a] == sampleDescriptionID) {
+					// this new entry is implied; it doesn't need to be written.
+					return;
 				}
+				break;
 			}
 		}
+		addEntry(chunkIndex, samplesPerChunk, sampleDescriptionID);
+	}
+
+	private void addEntry(long firstChunk, long samplesPerChunk, long sampleDescriptionID) {
+		if (entryCount == firstChunks.length) {
+			int newCapacity = firstChunks.length * 2;
+			long[] newFirstChunks = new long[newCapacity];
+			long[] newSamplesPerChunks = new long[newCapacity];
+			long[] newSampleDescriptionIDs = new long[newCapacity];
+			System.arraycopy(firstChunks, 0, newFirstChunks, 0, entryCount);
+			System.arraycopy(samplesPerChunks, 0, newSamplesPerChunks, 0, entryCount);
+			System.arraycopy(sampleDescriptionIDs, 0, newSampleDescriptionIDs, 0, entryCount);
+			firstChunks = newFirstChunks;
+			samplesPerChunks = newSamplesPerChunks;
+			sampleDescriptionIDs = newSampleDescriptionIDs;
+		}
+		firstChunks[entryCount] = firstChunk;
+		samplesPerChunks[entryCount] = samplesPerChunk;
+		sampleDescriptionIDs[entryCount] = sampleDescriptionID;
+		entryCount++;
 	}
 
 	@Override
@@ -97,18 +108,22 @@ public class SampleToChunkAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
-		return 16 + 12 * entries.length;
+	public long getSize() {
+		return 16 + 12L * entryCount;
 	}
 
 	@Override
 	protected void writeContents(GuardedOutputStream out) throws IOException {
 		out.write(version);
 		write24Int(out, flags);
-		write32Int(out, entries.length);
-		for (int a = 0; a < entries.length; a++) {
-			entries[a].write(out);
+		write32Int(out, entryCount);
+		TableWriter writer = new TableWriter(out, entryCount * 3L);
+		for (int a = 0; a < entryCount; a++) {
+			writer.write32Int(firstChunks[a]);
+			writer.write32Int(samplesPerChunks[a]);
+			writer.write32Int(sampleDescriptionIDs[a]);
 		}
+		writer.flush();
 	}
 
 	@NonNull
@@ -116,11 +131,12 @@ public class SampleToChunkAtom extends LeafAtom {
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		sb.append("[ ");
-		for (int a = 0; a < entries.length; a++) {
+		for (int a = 0; a < entryCount; a++) {
 			if (a != 0) {
 				sb.append(", ");
 			}
-			sb.append(entries[a].toString());
+			sb.append("[ ").append(firstChunks[a]).append(", ").append(samplesPerChunks[a]).append(", ").append(
+					sampleDescriptionIDs[a]).append("]");
 		}
 		sb.append(" ]");
 		String entriesString = sb.toString();
@@ -129,13 +145,13 @@ public class SampleToChunkAtom extends LeafAtom {
 				+ "]";
 	}
 
-	private SampleToChunkEntry getSampleToChunkEntry(int chunkIndex) {
-		for (int a = 0; a < entries.length - 1; a++) {
-			if (entries[a].firstChunk <= chunkIndex && chunkIndex < entries[a + 1].firstChunk) {
-				return entries[a];
+	private int getSampleToChunkEntry(int chunkIndex) {
+		for (int a = 0; a < entryCount - 1; a++) {
+			if (firstChunks[a] <= chunkIndex && chunkIndex < firstChunks[a + 1]) {
+				return a;
 			}
 		}
-		return entries[entries.length - 1];
+		return entryCount - 1;
 	}
 
 	/**
@@ -145,7 +161,7 @@ public class SampleToChunkAtom extends LeafAtom {
 	 * @return the sample description ID used in this chunk.
 	 */
 	public long getChunkSampleDescriptionID(int chunkIndex) {
-		return getSampleToChunkEntry(chunkIndex).sampleDescriptionID;
+		return sampleDescriptionIDs[getSampleToChunkEntry(chunkIndex)];
 	}
 
 	/**
@@ -155,34 +171,6 @@ public class SampleToChunkAtom extends LeafAtom {
 	 * @return how many samples are in a given chunk.
 	 */
 	public long getChunkSampleCount(int chunkIndex) {
-		return getSampleToChunkEntry(chunkIndex).samplesPerChunk;
-	}
-}
-
-class SampleToChunkEntry {
-	long firstChunk, samplesPerChunk, sampleDescriptionID;
-
-	public SampleToChunkEntry(long firstChunk, long samplesPerChunk, long sampleDescriptionID) {
-		this.firstChunk = firstChunk;
-		this.samplesPerChunk = samplesPerChunk;
-		this.sampleDescriptionID = sampleDescriptionID;
-	}
-
-	public SampleToChunkEntry(InputStream in) throws IOException {
-		firstChunk = Atom.read32Int(in);
-		samplesPerChunk = Atom.read32Int(in);
-		sampleDescriptionID = Atom.read32Int(in);
-	}
-
-	@NonNull
-	@Override
-	public String toString() {
-		return "[ " + firstChunk + ", " + samplesPerChunk + ", " + sampleDescriptionID + "]";
-	}
-
-	protected void write(OutputStream out) throws IOException {
-		Atom.write32Int(out, firstChunk);
-		Atom.write32Int(out, samplesPerChunk);
-		Atom.write32Int(out, sampleDescriptionID);
+		return samplesPerChunks[getSampleToChunkEntry(chunkIndex)];
 	}
 }
@@ -58,7 +58,7 @@ public class SoundMediaInformationHeaderAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		return 16;
 	}
 
@@ -11,7 +11,7 @@ public class SyncSampleAtom extends LeafAtom {
 	int version = 0;
 	int flags = 0;
 
-	long[] sampleTable = new long[0];
+	LongRunTable sampleTable = new LongRunTable(); // the number of samples between each sync sample
 
 	public SyncSampleAtom(int version, int flags) {
 		super(null);
@@ -24,10 +24,7 @@ public class SyncSampleAtom extends LeafAtom {
 	}
 
 	public void addSample(long sample) {
-		long[] newArray = new long[sampleTable.length + 1];
-		System.arraycopy(sampleTable, 0, newArray, 0, sampleTable.length);
-		newArray[newArray.length - 1] = sample;
-		sampleTable = newArray;
+		sampleTable.add(sample);
 	}
 
 	@Override
@@ -36,40 +33,29 @@ public class SyncSampleAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
-		return 16 + sampleTable.length * 4;
+	public long getSize() {
+		return 16 + sampleTable.size() * 4L;
 	}
 
 	@Override
 	protected void writeContents(GuardedOutputStream out) throws IOException {
 		out.write(version);
 		write24Int(out, flags);
-		write32Int(out, sampleTable.length);
+		int sampleCount = sampleTable.size();
+		write32Int(out, sampleCount);
+		TableWriter writer = new TableWriter(out, sampleCount);
 		long sampleNumber = 1; // the list starts at 1
-		for (int a = 0; a < sampleTable.length; a++) {
-			write32Int(out, sampleNumber);
-			sampleNumber += sampleTable[a];
+		for (int a = 0; a < sampleCount; a++) {
+			writer.write32Int(sampleNumber);
+			sampleNumber += sampleTable.get(a);
 		}
+		writer.flush();
 	}
 
 	@NonNull
 	@Override
 	public String toString() {
-		String entriesString;
-		if (sampleTable.length > 50 && ABBREVIATE) {
-			entriesString = "[ ... ]";
-		} else {
-			StringBuffer sb = new StringBuffer();
-			sb.append("[ ");
-			for (int a = 1; a < sampleTable.length; a++) {
-				if (a != 1) {
-					sb.append(", ");
-				}
-				sb.append(sampleTable[a]);
-			}
-			sb.append(" ]");
-			entriesString = sb.toString();
-		}
+		String entriesString = sampleTable.toString(ABBREVIATE);
 
 		return "SyncSampleAtom[ version=" + version + ", " + "flags=" + flags + ", " + "sampleTable=" + entriesString +
 				"]";
@@ -0,0 +1,48 @@
+package com.bric.qt.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the 32-bit values of a sample table in blocks, rather than making a separate write() call for every value
+ * (which, for an atom nested deep in the movie atom, passes through a chain of guarded streams each time). Each
+ * instance is used for writing a single table, so no state is shared between atoms or threads.
+ */
+class TableWriter {
+	private static final int MAX_BLOCK_SIZE = 8192;
+
+	private final OutputStream out;
+	private final byte[] block;
+	private int length;
+
+	/**
+	 * @param out        the stream to write to
+	 * @param valueCount the number of values that will be written (used to avoid allocating a large block for a small
+	 *                   table)
+	 */
+	TableWriter(OutputStream out, long valueCount) {
+		this.out = out;
+		block = new byte[(int) Math.max(4, Math.min(MAX_BLOCK_SIZE, valueCount * 4))];
+	}
+
+	void write32Int(long i) throws IOException {
+		if (length == block.length) {
+			flush();
+		}
+		block[length] = (byte) ((i >> 24) & 0xff);
+		block[length + 1] = (byte) ((i >> 16) & 0xff);
+		block[length + 2] = (byte) ((i >> 8) & 0xff);
+		block[length + 3] = (byte) (i & 0xff);
+		length += 4;
+	}
+
+	/**
+	 * Write any values that are still in the block. This must be called once all values have been written.
+	 */
+	void flush() throws IOException {
+		if (length > 0) {
+			out.write(block, 0, length);
+			length = 0;
+		}
+	}
+}
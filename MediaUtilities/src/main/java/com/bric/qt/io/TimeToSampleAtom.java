@@ -21,7 +21,6 @@ package com.bric.qt.io;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 
 import com.bric.io.GuardedOutputStream;
 
@@ -30,7 +29,12 @@ import androidx.annotation.NonNull;
 public class TimeToSampleAtom extends LeafAtom {
 	int version = 0;
 	int flags = 0;
-	TimeToSampleEntry[] table = new TimeToSampleEntry[0];
+
+	// each entry indicates that sampleCounts[i]-many consecutive samples have a duration of sampleDurations[i] (relative
+	// to the enclosing media's time scale); arrays grow by doubling, so only the first entryCount values are valid
+	long[] sampleCounts = new long[8];
+	long[] sampleDurations = new long[8];
+	int entryCount;
 
 	public TimeToSampleAtom(int version, int flags) {
 		super(null);
@@ -46,10 +50,10 @@ public class TimeToSampleAtom extends LeafAtom {
 		super(parent);
 		version = in.read();
 		flags = read24Int(in);
-		int entryCount = (int) read32Int(in);
-		table = new TimeToSampleEntry[entryCount];
-		for (int a = 0; a < table.length; a++) {
-			table[a] = new TimeToSampleEntry(in);
+		int count = (int) read32Int(in);
+		for (int a = 0; a < count; a++) {
+			long sampleCount = read32Int(in);
+			addEntry(sampleCount, read32Int(in));
 		}
 	}
 
@@ -59,18 +63,21 @@ public class TimeToSampleAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
-		return 16 + table.length * 8;
+	public long getSize() {
+		return 16 + entryCount * 8L;
 	}
 
 	@Override
 	protected void writeContents(GuardedOutputStream out) throws IOException {
 		out.write(version);
 		write24Int(out, flags);
-		write32Int(out, table.length);
-		for (int a = 0; a < table.length; a++) {
-			table[a].write(out);
+		write32Int(out, entryCount);
+		TableWriter writer = new TableWriter(out, entryCount * 2L);
+		for (int a = 0; a < entryCount; a++) {
+			writer.write32Int(sampleCounts[a]);
+			writer.write32Int(sampleDurations[a]);
 		}
+		writer.flush();
 	}
 
 	@NonNull
@@ -78,11 +85,11 @@ public class TimeToSampleAtom extends LeafAtom {
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		sb.append("[ ");
-		for (int a = 0; a < table.length; a++) {
+		for (int a = 0; a < entryCount; a++) {
 			if (a != 0) {
 				sb.append(", ");
 			}
-			sb.append(table[a].toString());
+			sb.append("[").append(sampleCounts[a]).append(", ").append(sampleDurations[a]).append("]");
 		}
 		sb.append(" ]");
 		String tableString = sb.toString();
@@ -107,51 +114,34 @@ public class TimeToSampleAtom extends LeafAtom {
 	 *            of the previous entry
 	 */
 	public void addSampleTime(long sampleCount, long duration, boolean forceNew) {
-		if (forceNew || table.length == 0 || table[table.length - 1].sampleDuration != duration) {
-			TimeToSampleEntry[] newTable = new TimeToSampleEntry[table.length + 1];
-			System.arraycopy(table, 0, newTable, 0, table.length);
-			newTable[newTable.length - 1] = new TimeToSampleEntry(sampleCount, duration);
-			table = newTable;
+		if (forceNew || entryCount == 0 || sampleDurations[entryCount - 1] != duration) {
+			addEntry(sampleCount, duration);
 		} else {
-			table[table.length - 1].sampleCount++;
+			sampleCounts[entryCount - 1] += sampleCount;
 		}
 	}
 
+	private void addEntry(long sampleCount, long duration) {
+		if (entryCount == sampleCounts.length) {
+			long[] newCounts = new long[sampleCounts.length * 2];
+			long[] newDurations = new long[sampleDurations.length * 2];
+			System.arraycopy(sampleCounts, 0, newCounts, 0, entryCount);
+			System.arraycopy(sampleDurations, 0, newDurations, 0, entryCount);
+			sampleCounts = newCounts;
+			sampleDurations = newDurations;
+		}
+		sampleCounts[entryCount] = sampleCount;
+		sampleDurations[entryCount] = duration;
+		entryCount++;
+	}
+
 	public long getDurationOfSample(long sampleIndex) {
-		for (int a = 0; a < table.length; a++) {
-			if (sampleIndex < table[a].sampleCount) {
-				return table[a].sampleDuration;
+		for (int a = 0; a < entryCount; a++) {
+			if (sampleIndex < sampleCounts[a]) {
+				return sampleDurations[a];
 			}
-			sampleIndex = sampleIndex - table[a].sampleCount;
+			sampleIndex = sampleIndex - sampleCounts[a];
 		}
 		throw new RuntimeException("Could not find a sample at index " + sampleIndex);
 	}
 }
-
-/**
- * This represents the duration of a series of samples. This indicates that <code>sampleCount</code>-many consecutive
- * samples have a duration of <code>sampleDuration</code>. (The duration is relative to an enclosing time scale.)
- */
-class TimeToSampleEntry {
-	long sampleCount, sampleDuration;
-
-	public TimeToSampleEntry(long count, long duration) {
-		this.sampleCount = count;
-		this.sampleDuration = duration;
-	}
-
-	public TimeToSampleEntry(InputStream in) throws IOException {
-		sampleCount = Atom.read32Int(in);
-		sampleDuration = Atom.read32Int(in);
-	}
-
-	@NonNull
-	public String toString() {
-		return "[" + sampleCount + ", " + sampleDuration + "]";
-	}
-
-	protected void write(OutputStream out) throws IOException {
-		Atom.write32Int(out, sampleCount);
-		Atom.write32Int(out, sampleDuration);
-	}
-}
@@ -89,7 +89,7 @@ public class TrackHeaderAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		return 92;
 	}
 
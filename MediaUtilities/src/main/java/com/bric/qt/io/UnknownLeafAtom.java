@@ -49,7 +49,7 @@ public class UnknownLeafAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		return 8 + data.length;
 	}
 
@@ -63,7 +63,7 @@ public class VideoMediaInformationHeaderAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		return 20;
 	}
 
@@ -46,7 +46,7 @@ class WindowLocationAtom extends LeafAtom {
 	}
 
 	@Override
-	protected long getSize() {
+	public long getSize() {
 		return 12;
 	}
 
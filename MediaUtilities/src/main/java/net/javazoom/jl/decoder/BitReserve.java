@@ -96,6 +96,40 @@ final class BitReserve {
 		return val;
 	}
 
+	/**
+	 * Read a number of bits from the bit stream without consuming them.
+	 *
+	 * @param N the number of bits to read
+	 */
+	public int hpeekbits(int N) {
+		int val = 0;
+
+		int pos = buf_byte_idx;
+		if (pos + N < BUFSIZE) {
+			while (N-- > 0) {
+				val <<= 1;
+				val |= ((buf[pos++] != 0) ? 1 : 0);
+			}
+		} else {
+			while (N-- > 0) {
+				val <<= 1;
+				val |= ((buf[pos] != 0) ? 1 : 0);
+				pos = (pos + 1) & BUFSIZE_MASK;
+			}
+		}
+		return val;
+	}
+
+	/**
+	 * Skip a number of bits in the bit stream (typically after {@link #hpeekbits(int)}).
+	 *
+	 * @param N the number of bits to skip
+	 */
+	public void hskipbits(int N) {
+		totbit += N;
+		buf_byte_idx = (buf_byte_idx + N) & BUFSIZE_MASK;
+	}
+
 	/*
 	  Read 1 bit from the bit stream.
 	 */
@@ -60,6 +60,17 @@ final class HuffmanCodeTables {
 	private int[][] val = null; /* decoder tree */
 	private int treelen; /* length of decoder tree */
 
+	/*
+	 * Lookup table indexed by the next LOOKUP_BITS bits of the stream, generated by walking the decoder tree. A
+	 * non-negative entry is a codeword that fits within those bits: (length << LOOKUP_LENGTH_SHIFT) | value. A negative
+	 * entry is the complement of (point << LOOKUP_LENGTH_SHIFT) | bits, the tree position reached after consuming those
+	 * bits, from which the walk continues a bit at a time (an entry of -1 means the walk starts again from the root).
+	 */
+	private static final int LOOKUP_BITS = 8;
+	private static final int LOOKUP_LENGTH_SHIFT = 16;
+	private static final int LOOKUP_VALUE_MASK = (1 << LOOKUP_LENGTH_SHIFT) - 1;
+	private int[] lookup = null;
+
 	private static int[][] ValTab0 = { { 0, 0 } // dummy
 	};
 
@@ -414,6 +425,47 @@ final class HuffmanCodeTables {
 		// hlen = HLEN;
 		val = VAL;
 		treelen = TREELEN;
+		if (treelen != 0)
+			lookup = createLookupTable(val);
+	}
+
+	/**
+	 * Generate the multi-bit lookup table for a decoder tree by following the same walk as huffman_decoder for every
+	 * possible sequence of LOOKUP_BITS bits.
+	 */
+	private static int[] createLookupTable(int[][] val) {
+		int[] table = new int[1 << LOOKUP_BITS];
+		for (int bits = 0; bits < table.length; bits++) {
+			int point = 0;
+			int consumed = 0;
+			int entry = -1;
+			while (true) {
+				if (point < 0 || point >= val.length) {
+					entry = -1; // let the tree walk report this (invalid) code in exactly the same way as before
+					break;
+				}
+				if (val[point][0] == 0) {
+					entry = (consumed << LOOKUP_LENGTH_SHIFT) | val[point][1];
+					break;
+				}
+				if (consumed == LOOKUP_BITS) {
+					entry = ~((point << LOOKUP_LENGTH_SHIFT) | consumed);
+					break;
+				}
+				int side = ((bits >>> (LOOKUP_BITS - 1 - consumed)) & 1) != 0 ? 1 : 0;
+				int next = point;
+				while (next >= 0 && next < val.length && val[next][side] >= MXOFF)
+					next += val[next][side];
+				if (next < 0 || next >= val.length) {
+					entry = -1;
+					break;
+				}
+				point = next + val[next][side];
+				consumed++;
+			}
+			table[bits] = entry;
+		}
+		return table;
 	}
 
 	/**
@@ -441,10 +493,31 @@ final class HuffmanCodeTables {
 		}
 
 		/* Lookup in Huffman table. */
+		int entry = h.lookup[br.hpeekbits(LOOKUP_BITS)];
+		if (entry >= 0) {
+			br.hskipbits(entry >>> LOOKUP_LENGTH_SHIFT);
+			x[0] = (entry & LOOKUP_VALUE_MASK) >>> 4;
+			y[0] = entry & 0xf;
+			error = 0;
+		} else {
+			// codeword is longer than the lookup table: continue walking the tree from where the table left off
+			entry = ~entry;
+			int consumed = entry & LOOKUP_VALUE_MASK;
+			br.hskipbits(consumed);
+			point = entry >>> LOOKUP_LENGTH_SHIFT;
+			level >>>= consumed;
+			error = walkTree(h, x, y, br, point, level);
+		}
 
-		/*
-		 * int bitsAvailable = 0; int bitIndex = 0; int bits[] = bitbuf;
-		 */
+		processSigns(h, x, y, v, w, br);
+		return error;
+	}
+
+	/**
+	 * Walk the decoder tree one bit at a time, starting from the given position.
+	 */
+	private static int walkTree(HuffmanCodeTables h, int[] x, int[] y, BitReserve br, int point, int level) {
+		int error = 1;
 		do {
 			if (h.val[point][0] == 0) { /* end of tree */
 				x[0] = h.val[point][1] >>> 4;
@@ -471,11 +544,10 @@ final class HuffmanCodeTables {
 			level >>>= 1;
 			// MDM: ht[0] is always 0;
 		} while ((level != 0) || (point < 0 /* ht[0].treelen */));
+		return error;
+	}
 
-		// put back any bits not consumed
-		/*
-		 * int unread = (bitsAvailable-bitIndex); if (unread>0) br.rewindNbits(unread);
-		 */
+	private static void processSigns(HuffmanCodeTables h, int[] x, int[] y, int[] v, int[] w, BitReserve br) {
 		/* Process sign encodings for quadruples tables. */
 		// System.out.println(h.tablename);
 		if (h.tablename0 == '3' && (h.tablename1 == '2' || h.tablename1 == '3')) {
@@ -518,7 +590,6 @@ final class HuffmanCodeTables {
 				if (br.hget1bit() != 0)
 					y[0] = -y[0];
 		}
-		return error;
 	}
 
 	public static void inithuff() {
@@ -867,32 +867,30 @@ final class LayerIIIDecoder implements FrameDecoder {
 
 		// Compute overall (global) scaling.
 
-		g_gain = (float) Math.pow(2.0, (0.25 * (gr_info.global_gain - 210.0)));
+		if (gr_info.global_gain >= 0 && gr_info.global_gain < global_gain_pow.length)
+			g_gain = global_gain_pow[gr_info.global_gain];
+		else
+			g_gain = (float) Math.pow(2.0, (0.25 * (gr_info.global_gain - 210.0)));
 
 		for (j = 0; j < nonzero[ch]; j++) {
 			// Modif E.B 02/22/99
 			int reste = j % SSLIMIT;
 			int quotien = (int) ((j - reste) / SSLIMIT);
-			if (is_1d[j] == 0)
+			int abv = is_1d[j];
+			if (abv == 0)
 				xr_1d[quotien][reste] = 0.0f;
-			else {
-				int abv = is_1d[j];
-				// Pow Array fix (11/17/04)
-				if (abv < t_43.length) {
-					if (is_1d[j] > 0)
-						xr_1d[quotien][reste] = g_gain * t_43[abv];
-					else {
-						if (-abv < t_43.length)
-							xr_1d[quotien][reste] = -g_gain * t_43[-abv];
-						else
-							xr_1d[quotien][reste] = -g_gain * (float) Math.pow(-abv, d43);
-					}
-				} else {
-					if (is_1d[j] > 0)
-						xr_1d[quotien][reste] = g_gain * (float) Math.pow(abv, d43);
-					else
-						xr_1d[quotien][reste] = -g_gain * (float) Math.pow(-abv, d43);
-				}
+			else if (abv > 0) {
+				// Pow Array fix (11/17/04) - t_43 covers all valid values; larger ones are only possible in corrupt data
+				if (abv < t_43.length)
+					xr_1d[quotien][reste] = g_gain * t_43[abv];
+				else
+					xr_1d[quotien][reste] = g_gain * (float) Math.pow(abv, d43);
+			} else {
+				abv = -abv;
+				if (abv < t_43.length)
+					xr_1d[quotien][reste] = -g_gain * t_43[abv];
+				else
+					xr_1d[quotien][reste] = -g_gain * (float) Math.pow(abv, d43);
 			}
 		}
 
@@ -1932,18 +1930,34 @@ final class LayerIIIDecoder implements FrameDecoder {
 			1.8626451492E-09f, 1.3170890160E-09f, 9.3132257462E-10f, 6.5854450798E-10f, 4.6566128731E-10f,
 			3.2927225399E-10f };
 
+	/**
+	 * |x|^(4/3) for every quantised value that can be coded: 15 from the Huffman tables plus up to 13 linbits (8206).
+	 */
 	public static final float[] t_43 = create_t_43();
 
 	static private float[] create_t_43() {
-		float[] t43 = new float[8192];
+		float[] t43 = new float[15 + (1 << 13)];
 		final double d43 = (4.0 / 3.0);
 
-		for (int i = 0; i < 8192; i++) {
+		for (int i = 0; i < t43.length; i++) {
 			t43[i] = (float) Math.pow(i, d43);
 		}
 		return t43;
 	}
 
+	/**
+	 * 2^(0.25 * (global_gain - 210)) for every value of the 8-bit global_gain field.
+	 */
+	public static final float[] global_gain_pow = create_global_gain_pow();
+
+	static private float[] create_global_gain_pow() {
+		float[] gain = new float[256];
+		for (int i = 0; i < gain.length; i++) {
+			gain[i] = (float) Math.pow(2.0, (0.25 * (i - 210.0)));
+		}
+		return gain;
+	}
+
 	public static final float[][] io = {
 			{ 1.0000000000E+00f, 8.4089641526E-01f, 7.0710678119E-01f, 5.9460355751E-01f, 5.0000000001E-01f,
 					4.2044820763E-01f, 3.5355339060E-01f, 2.9730177876E-01f, 2.5000000001E-01f, 2.1022410382E-01f,
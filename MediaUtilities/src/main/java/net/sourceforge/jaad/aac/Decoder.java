@@ -102,10 +102,25 @@ public class Decoder implements Constants {
 	 * @throws AACException if decoding fails
 	 */
 	public void decodeFrame(byte[] frame, SampleBuffer buffer) throws AACException {
+		decodeFrame(frame, buffer, null);
+	}
+
+	/**
+	 * Decodes one frame of AAC data in frame mode, writing the PCM data directly in the layout given by
+	 * <code>spec</code>. The buffer's data array is reused from one frame to the next whenever its size is unchanged,
+	 * so a single <code>SampleBuffer</code> should be kept for the whole stream.
+	 * 
+	 * @param frame the AAC frame
+	 * @param buffer a buffer to hold the decoded PCM data
+	 * @param spec the byte order, channel layout and sample type to output; if null, 16-bit interleaved samples are
+	 *            written in the buffer's current byte order
+	 * @throws AACException if decoding fails
+	 */
+	public void decodeFrame(byte[] frame, SampleBuffer buffer, OutputSpec spec) throws AACException {
 		if (frame != null)
 			in.setData(frame);
 		try {
-			decode(buffer);
+			decode(buffer, spec);
 		} catch (AACException e) {
 			if (!e.isEndOfStream())
 				throw e;
@@ -114,7 +129,7 @@ public class Decoder implements Constants {
 		}
 	}
 
-	private void decode(SampleBuffer buffer) throws AACException {
+	private void decode(SampleBuffer buffer, OutputSpec spec) throws AACException {
 		if (ADIFHeader.isPresent(in)) {
 			adifHeader = ADIFHeader.readHeader(in);
 			final PCE pce = adifHeader.getFirstPCE();
@@ -134,7 +149,10 @@ public class Decoder implements Constants {
 			// 2: spectral processing
 			syntacticElements.process(filterBank);
 			// 3: send to output buffer
-			syntacticElements.sendToOutput(buffer);
+			if (spec != null)
+				syntacticElements.sendToOutput(buffer, spec);
+			else
+				syntacticElements.sendToOutput(buffer);
 		} catch (AACException e) {
 			buffer.setData(new byte[0], 0, 0, 0, 0);
 			throw e;
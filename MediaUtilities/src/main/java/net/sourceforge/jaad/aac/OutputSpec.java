@@ -0,0 +1,87 @@
+/*
+ *  Copyright (C) 2011 in-somnia
+ * 
+ *  This file is part of JAAD.
+ * 
+ *  JAAD is free software; you can redistribute it and/or modify it 
+ *  under the terms of the GNU Lesser General Public License as 
+ *  published by the Free Software Foundation; either version 3 of the 
+ *  License, or (at your option) any later version.
+ *
+ *  JAAD is distributed in the hope that it will be useful, but WITHOUT 
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General 
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sourceforge.jaad.aac;
+
+/**
+ * Describes the PCM layout that <code>Decoder.decodeFrame(byte[], SampleBuffer, OutputSpec)</code> should write, so
+ * that decoded samples can be stored directly in the form the caller needs without any further conversion passes.
+ */
+public class OutputSpec {
+
+	public enum ChannelLayout {
+
+		/**
+		 * All decoded channels, interleaved.
+		 */
+		INTERLEAVED,
+		/**
+		 * A single channel containing the average of all decoded channels.
+		 */
+		MONO_DOWNMIX
+	}
+
+	public enum SampleType {
+
+		/**
+		 * Signed 16-bit integer samples, rounded and clipped.
+		 */
+		PCM_16_BIT(16),
+		/**
+		 * 32-bit IEEE float samples, scaled to the range -1.0 to 1.0 (but not clipped).
+		 */
+		PCM_FLOAT(32);
+		private final int bitsPerSample;
+
+		SampleType(int bitsPerSample) {
+			this.bitsPerSample = bitsPerSample;
+		}
+
+		public int getBitsPerSample() {
+			return bitsPerSample;
+		}
+	}
+
+	private final boolean bigEndian;
+	private final ChannelLayout channelLayout;
+	private final SampleType sampleType;
+
+	public OutputSpec(boolean bigEndian, ChannelLayout channelLayout, SampleType sampleType) {
+		this.bigEndian = bigEndian;
+		this.channelLayout = channelLayout;
+		this.sampleType = sampleType;
+	}
+
+	/**
+	 * Indicates the endianness for the data.
+	 * 
+	 * @return true if the data will be in big endian, false if it will be in little endian
+	 */
+	public boolean isBigEndian() {
+		return bigEndian;
+	}
+
+	public ChannelLayout getChannelLayout() {
+		return channelLayout;
+	}
+
+	public SampleType getSampleType() {
+		return sampleType;
+	}
+}
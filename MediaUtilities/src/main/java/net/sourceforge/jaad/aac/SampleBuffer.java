@@ -129,7 +129,16 @@ public class SampleBuffer {
 	}
 
 	public void setData(byte[] data, int sampleRate, int channels, int bitsPerSample, int bitsRead) {
+		setData(data, sampleRate, channels, bitsPerSample, bitsRead, bigEndian);
+	}
+
+	/**
+	 * Sets the buffer's data, which is already in the given byte order (unlike <code>setBigEndian</code>, the data is
+	 * not changed).
+	 */
+	public void setData(byte[] data, int sampleRate, int channels, int bitsPerSample, int bitsRead, boolean bigEndian) {
 		this.data = data;
+		this.bigEndian = bigEndian;
 		this.sampleRate = sampleRate;
 		this.channels = channels;
 		this.bitsPerSample = bitsPerSample;
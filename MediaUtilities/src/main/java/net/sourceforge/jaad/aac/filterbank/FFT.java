@@ -21,16 +21,23 @@ package net.sourceforge.jaad.aac.filterbank;
 
 import net.sourceforge.jaad.aac.AACException;
 
+/**
+ * Complex FFT over flat arrays of interleaved real and imaginary values. The input is reordered using a precomputed
+ * bit-reversal table, the bottom two radix-2 stages are combined into a single radix-4 round, and the remaining stages
+ * are processed two at a time (again as radix-4 passes) with their twiddle factors laid out in the order they are
+ * used. Every output value is calculated with exactly the same operations as the original radix-2 implementation.
+ */
 class FFT implements FFTTables {
 
 	private final int length;
-	private final float[][] roots;
-	private final float[][] rev;
-	private float[] a, b, c, d, e1, e2;
+	private final int[] reverse;
+	private final float[][] inverseTwiddles, forwardTwiddles;
+	private final float[] rev;
 
 	FFT(int length) throws AACException {
 		this.length = length;
 
+		final float[][] roots;
 		switch (length) {
 			case 64:
 				roots = FFT_TABLE_64;
@@ -48,24 +55,11 @@ class FFT implements FFTTables {
 				throw new AACException("unexpected FFT length: " + length);
 		}
 
-		// processing buffers
-		rev = new float[length][2];
-		a = new float[2];
-		b = new float[2];
-		c = new float[2];
-		d = new float[2];
-		e1 = new float[2];
-		e2 = new float[2];
-	}
-
-	void process(float[][] in, boolean forward) {
-		final int imOff = (forward ? 2 : 1);
-		final int scale = (forward ? length : 1);
-		// bit-reversal
+		// bit-reversal permutation
+		reverse = new int[length];
 		int ii = 0;
 		for (int i = 0; i < length; i++) {
-			rev[i][0] = in[ii][0];
-			rev[i][1] = in[ii][1];
+			reverse[i] = ii;
 			int k = length >> 1;
 			while (ii >= k && k > 0) {
 				ii -= k;
@@ -73,61 +67,158 @@ class FFT implements FFTTables {
 			}
 			ii += k;
 		}
+
+		// the tables only have the (negated) forward imaginary parts for the lengths the forward transform is used with
+		inverseTwiddles = createTwiddles(roots, 1);
+		forwardTwiddles = roots[0].length > 2 ? createTwiddles(roots, 2) : null;
+
+		// processing buffer
+		rev = new float[2 * length];
+	}
+
+	/**
+	 * Collect the roots used by each pass (see process) into a single array per pass: {re, im} for a radix-2 pass, or
+	 * {re1, im1, re2, im2, re3, im3} for each butterfly of a radix-4 pass.
+	 */
+	private float[][] createTwiddles(float[][] roots, int imOff) {
+		int passes = 0;
+		for (int i = 4; i < length; i <<= 2) {
+			passes++;
+		}
+		final float[][] twiddles = new float[passes][];
+		int pass = 0;
+		for (int i = 4; i < length; i <<= 2) {
+			final int m1 = length / (i << 1);
+			if ((i << 1) < length) {
+				final int m2 = length / (i << 2);
+				final float[] t = new float[6 * i];
+				for (int k = 0; k < i; k++) {
+					t[6 * k] = roots[k * m1][0];
+					t[6 * k + 1] = roots[k * m1][imOff];
+					t[6 * k + 2] = roots[k * m2][0];
+					t[6 * k + 3] = roots[k * m2][imOff];
+					t[6 * k + 4] = roots[(k + i) * m2][0];
+					t[6 * k + 5] = roots[(k + i) * m2][imOff];
+				}
+				twiddles[pass++] = t;
+			} else {
+				final float[] t = new float[2 * i];
+				for (int k = 0; k < i; k++) {
+					t[2 * k] = roots[k * m1][0];
+					t[2 * k + 1] = roots[k * m1][imOff];
+				}
+				twiddles[pass++] = t;
+			}
+		}
+		return twiddles;
+	}
+
+	void process(float[] in, boolean forward) {
+		final float[][] twiddles = forward ? forwardTwiddles : inverseTwiddles;
+		final float scale = (forward ? length : 1);
+
+		// bit-reversal
+		int r;
 		for (int i = 0; i < length; i++) {
-			in[i][0] = rev[i][0];
-			in[i][1] = rev[i][1];
+			r = reverse[i] << 1;
+			rev[2 * i] = in[r];
+			rev[2 * i + 1] = in[r + 1];
 		}
+		System.arraycopy(rev, 0, in, 0, 2 * length);
 
 		// bottom base-4 round
-		for (int i = 0; i < length; i += 4) {
-			a[0] = in[i][0] + in[i + 1][0];
-			a[1] = in[i][1] + in[i + 1][1];
-			b[0] = in[i + 2][0] + in[i + 3][0];
-			b[1] = in[i + 2][1] + in[i + 3][1];
-			c[0] = in[i][0] - in[i + 1][0];
-			c[1] = in[i][1] - in[i + 1][1];
-			d[0] = in[i + 2][0] - in[i + 3][0];
-			d[1] = in[i + 2][1] - in[i + 3][1];
-			in[i][0] = a[0] + b[0];
-			in[i][1] = a[1] + b[1];
-			in[i + 2][0] = a[0] - b[0];
-			in[i + 2][1] = a[1] - b[1];
-
-			e1[0] = c[0] - d[1];
-			e1[1] = c[1] + d[0];
-			e2[0] = c[0] + d[1];
-			e2[1] = c[1] - d[0];
+		float aRe, aIm, bRe, bIm, cRe, cIm, dRe, dIm;
+		for (int i = 0; i < 2 * length; i += 8) {
+			aRe = in[i] + in[i + 2];
+			aIm = in[i + 1] + in[i + 3];
+			bRe = in[i + 4] + in[i + 6];
+			bIm = in[i + 5] + in[i + 7];
+			cRe = in[i] - in[i + 2];
+			cIm = in[i + 1] - in[i + 3];
+			dRe = in[i + 4] - in[i + 6];
+			dIm = in[i + 5] - in[i + 7];
+			in[i] = aRe + bRe;
+			in[i + 1] = aIm + bIm;
+			in[i + 4] = aRe - bRe;
+			in[i + 5] = aIm - bIm;
+
 			if (forward) {
-				in[i + 1][0] = e2[0];
-				in[i + 1][1] = e2[1];
-				in[i + 3][0] = e1[0];
-				in[i + 3][1] = e1[1];
+				in[i + 2] = cRe + dIm;
+				in[i + 3] = cIm - dRe;
+				in[i + 6] = cRe - dIm;
+				in[i + 7] = cIm + dRe;
 			} else {
-				in[i + 1][0] = e1[0];
-				in[i + 1][1] = e1[1];
-				in[i + 3][0] = e2[0];
-				in[i + 3][1] = e2[1];
+				in[i + 2] = cRe - dIm;
+				in[i + 3] = cIm + dRe;
+				in[i + 6] = cRe + dIm;
+				in[i + 7] = cIm - dRe;
 			}
 		}
 
-		// iterations from bottom to top
-		int shift, m, km;
-		float rootRe, rootIm, zRe, zIm;
-		for (int i = 4; i < length; i <<= 1) {
-			shift = i << 1;
-			m = length / shift;
-			for (int j = 0; j < length; j += shift) {
-				for (int k = 0; k < i; k++) {
-					km = k * m;
-					rootRe = roots[km][0];
-					rootIm = roots[km][imOff];
-					zRe = in[i + j + k][0] * rootRe - in[i + j + k][1] * rootIm;
-					zIm = in[i + j + k][0] * rootIm + in[i + j + k][1] * rootRe;
-
-					in[i + j + k][0] = (in[j + k][0] - zRe) * scale;
-					in[i + j + k][1] = (in[j + k][1] - zIm) * scale;
-					in[j + k][0] = (in[j + k][0] + zRe) * scale;
-					in[j + k][1] = (in[j + k][1] + zIm) * scale;
+		// iterations from bottom to top, combining pairs of radix-2 stages
+		int pass = 0;
+		float[] t;
+		int p0, p1, p2, p3, tk;
+		float zRe, zIm, x0Re, x0Im, x1Re, x1Im, x2Re, x2Im, x3Re, x3Im;
+		for (int i = 4; i < length; i <<= 2) {
+			t = twiddles[pass++];
+			if ((i << 1) < length) {
+				final int shift = i << 2;
+				for (int j = 0; j < length; j += shift) {
+					for (int k = 0; k < i; k++) {
+						p0 = (j + k) << 1;
+						p1 = p0 + (i << 1);
+						p2 = p1 + (i << 1);
+						p3 = p2 + (i << 1);
+						tk = 6 * k;
+
+						// first stage: pairs (p0, p1) and (p2, p3)
+						zRe = in[p1] * t[tk] - in[p1 + 1] * t[tk + 1];
+						zIm = in[p1] * t[tk + 1] + in[p1 + 1] * t[tk];
+						x1Re = (in[p0] - zRe) * scale;
+						x1Im = (in[p0 + 1] - zIm) * scale;
+						x0Re = (in[p0] + zRe) * scale;
+						x0Im = (in[p0 + 1] + zIm) * scale;
+
+						zRe = in[p3] * t[tk] - in[p3 + 1] * t[tk + 1];
+						zIm = in[p3] * t[tk + 1] + in[p3 + 1] * t[tk];
+						x3Re = (in[p2] - zRe) * scale;
+						x3Im = (in[p2 + 1] - zIm) * scale;
+						x2Re = (in[p2] + zRe) * scale;
+						x2Im = (in[p2 + 1] + zIm) * scale;
+
+						// second stage: pairs (p0, p2) and (p1, p3)
+						zRe = x2Re * t[tk + 2] - x2Im * t[tk + 3];
+						zIm = x2Re * t[tk + 3] + x2Im * t[tk + 2];
+						in[p2] = (x0Re - zRe) * scale;
+						in[p2 + 1] = (x0Im - zIm) * scale;
+						in[p0] = (x0Re + zRe) * scale;
+						in[p0 + 1] = (x0Im + zIm) * scale;
+
+						zRe = x3Re * t[tk + 4] - x3Im * t[tk + 5];
+						zIm = x3Re * t[tk + 5] + x3Im * t[tk + 4];
+						in[p3] = (x1Re - zRe) * scale;
+						in[p3 + 1] = (x1Im - zIm) * scale;
+						in[p1] = (x1Re + zRe) * scale;
+						in[p1 + 1] = (x1Im + zIm) * scale;
+					}
+				}
+			} else {
+				// a single remaining radix-2 stage
+				final int shift = i << 1;
+				for (int j = 0; j < length; j += shift) {
+					for (int k = 0; k < i; k++) {
+						p0 = (j + k) << 1;
+						p1 = p0 + (i << 1);
+						tk = 2 * k;
+
+						zRe = in[p1] * t[tk] - in[p1 + 1] * t[tk + 1];
+						zIm = in[p1] * t[tk + 1] + in[p1 + 1] * t[tk];
+						in[p1] = (in[p0] - zRe) * scale;
+						in[p1 + 1] = (in[p0 + 1] - zIm) * scale;
+						in[p0] = (in[p0] + zRe) * scale;
+						in[p0 + 1] = (in[p0 + 1] + zIm) * scale;
+					}
 				}
 			}
 		}
@@ -24,43 +24,51 @@ import net.sourceforge.jaad.aac.AACException;
 class MDCT implements MDCTTables {
 
 	private final int N, N2, N4, N8;
-	private final float[][] sincos;
+	private final float[] sincos; // interleaved {cos, sin} pairs
 	private final FFT fft;
-	private final float[][] buf;
-	private final float[] tmp;
+	private final float[] buf; // interleaved complex values
 
 	MDCT(int length) throws AACException {
 		N = length;
 		N2 = length >> 1;
 		N4 = length >> 2;
 		N8 = length >> 3;
+		final float[][] table;
 		switch (length) {
 			case 2048:
-				sincos = MDCT_TABLE_2048;
+				table = MDCT_TABLE_2048;
 				break;
 			case 256:
-				sincos = MDCT_TABLE_128;
+				table = MDCT_TABLE_128;
 				break;
 			case 1920:
-				sincos = MDCT_TABLE_1920;
+				table = MDCT_TABLE_1920;
 				break;
 			case 240:
-				sincos = MDCT_TABLE_240;
+				table = MDCT_TABLE_240;
 			default:
 				throw new AACException("unsupported MDCT length: " + length);
 		}
+		sincos = new float[2 * N4];
+		for (int k = 0; k < N4; k++) {
+			sincos[2 * k] = table[k][0];
+			sincos[2 * k + 1] = table[k][1];
+		}
 		fft = new FFT(N4);
-		buf = new float[N4][2];
-		tmp = new float[2];
+		buf = new float[2 * N4];
 	}
 
 	void process(float[] in, int inOff, float[] out, int outOff) {
-		int k;
+		int k, n;
+		float c, s, re, im;
 
 		// pre-IFFT complex multiplication
 		for (k = 0; k < N4; k++) {
-			buf[k][1] = (in[inOff + 2 * k] * sincos[k][0]) + (in[inOff + N2 - 1 - 2 * k] * sincos[k][1]);
-			buf[k][0] = (in[inOff + N2 - 1 - 2 * k] * sincos[k][0]) - (in[inOff + 2 * k] * sincos[k][1]);
+			n = k << 1;
+			c = sincos[n];
+			s = sincos[n + 1];
+			buf[n + 1] = (in[inOff + n] * c) + (in[inOff + N2 - 1 - n] * s);
+			buf[n] = (in[inOff + N2 - 1 - n] * c) - (in[inOff + n] * s);
 		}
 
 		// complex IFFT, non-scaling
@@ -68,62 +76,65 @@ class MDCT implements MDCTTables {
 
 		// post-IFFT complex multiplication
 		for (k = 0; k < N4; k++) {
-			tmp[0] = buf[k][0];
-			tmp[1] = buf[k][1];
-			buf[k][1] = (tmp[1] * sincos[k][0]) + (tmp[0] * sincos[k][1]);
-			buf[k][0] = (tmp[0] * sincos[k][0]) - (tmp[1] * sincos[k][1]);
+			n = k << 1;
+			c = sincos[n];
+			s = sincos[n + 1];
+			re = buf[n];
+			im = buf[n + 1];
+			buf[n + 1] = (im * c) + (re * s);
+			buf[n] = (re * c) - (im * s);
 		}
 
-		// reordering
+		// reordering (buf[2 * k] is the real part of complex value k, and buf[2 * k + 1] the imaginary part)
 		for (k = 0; k < N8; k += 2) {
-			out[outOff + 2 * k] = buf[N8 + k][1];
-			out[outOff + 2 + 2 * k] = buf[N8 + 1 + k][1];
+			out[outOff + 2 * k] = buf[2 * (N8 + k) + 1];
+			out[outOff + 2 + 2 * k] = buf[2 * (N8 + 1 + k) + 1];
 
-			out[outOff + 1 + 2 * k] = -buf[N8 - 1 - k][0];
-			out[outOff + 3 + 2 * k] = -buf[N8 - 2 - k][0];
+			out[outOff + 1 + 2 * k] = -buf[2 * (N8 - 1 - k)];
+			out[outOff + 3 + 2 * k] = -buf[2 * (N8 - 2 - k)];
 
-			out[outOff + N4 + 2 * k] = buf[k][0];
-			out[outOff + N4 + 2 + 2 * k] = buf[1 + k][0];
+			out[outOff + N4 + 2 * k] = buf[2 * k];
+			out[outOff + N4 + 2 + 2 * k] = buf[2 * (1 + k)];
 
-			out[outOff + N4 + 1 + 2 * k] = -buf[N4 - 1 - k][1];
-			out[outOff + N4 + 3 + 2 * k] = -buf[N4 - 2 - k][1];
+			out[outOff + N4 + 1 + 2 * k] = -buf[2 * (N4 - 1 - k) + 1];
+			out[outOff + N4 + 3 + 2 * k] = -buf[2 * (N4 - 2 - k) + 1];
 
-			out[outOff + N2 + 2 * k] = buf[N8 + k][0];
-			out[outOff + N2 + 2 + 2 * k] = buf[N8 + 1 + k][0];
+			out[outOff + N2 + 2 * k] = buf[2 * (N8 + k)];
+			out[outOff + N2 + 2 + 2 * k] = buf[2 * (N8 + 1 + k)];
 
-			out[outOff + N2 + 1 + 2 * k] = -buf[N8 - 1 - k][1];
-			out[outOff + N2 + 3 + 2 * k] = -buf[N8 - 2 - k][1];
+			out[outOff + N2 + 1 + 2 * k] = -buf[2 * (N8 - 1 - k) + 1];
+			out[outOff + N2 + 3 + 2 * k] = -buf[2 * (N8 - 2 - k) + 1];
 
-			out[outOff + N2 + N4 + 2 * k] = -buf[k][1];
-			out[outOff + N2 + N4 + 2 + 2 * k] = -buf[1 + k][1];
+			out[outOff + N2 + N4 + 2 * k] = -buf[2 * k + 1];
+			out[outOff + N2 + N4 + 2 + 2 * k] = -buf[2 * (1 + k) + 1];
 
-			out[outOff + N2 + N4 + 1 + 2 * k] = buf[N4 - 1 - k][0];
-			out[outOff + N2 + N4 + 3 + 2 * k] = buf[N4 - 2 - k][0];
+			out[outOff + N2 + N4 + 1 + 2 * k] = buf[2 * (N4 - 1 - k)];
+			out[outOff + N2 + N4 + 3 + 2 * k] = buf[2 * (N4 - 2 - k)];
 		}
 	}
 
 	void processForward(float[] in, float[] out) {
-		int n, k;
+		int n, k, b;
+		float c, s, re, im;
 		// pre-FFT complex multiplication
 		for (k = 0; k < N8; k++) {
 			n = k << 1;
-			tmp[0] = in[N - N4 - 1 - n] + in[N - N4 + n];
-			tmp[1] = in[N4 + n] - in[N4 - 1 - n];
-
-			buf[k][0] = (tmp[0] * sincos[k][0]) + (tmp[1] * sincos[k][1]);
-			buf[k][1] = (tmp[1] * sincos[k][0]) - (tmp[0] * sincos[k][1]);
-
-			buf[k][0] *= N;
-			buf[k][1] *= N;
-
-			tmp[0] = in[N2 - 1 - n] - in[n];
-			tmp[1] = in[N2 + n] + in[N - 1 - n];
-
-			buf[k + N8][0] = (tmp[0] * sincos[k + N8][0]) + (tmp[1] * sincos[k + N8][1]);
-			buf[k + N8][1] = (tmp[1] * sincos[k + N8][0]) - (tmp[0] * sincos[k + N8][1]);
-
-			buf[k + N8][0] *= N;
-			buf[k + N8][1] *= N;
+			c = sincos[n];
+			s = sincos[n + 1];
+			re = in[N - N4 - 1 - n] + in[N - N4 + n];
+			im = in[N4 + n] - in[N4 - 1 - n];
+
+			buf[n] = ((re * c) + (im * s)) * N;
+			buf[n + 1] = ((im * c) - (re * s)) * N;
+
+			b = (k + N8) << 1;
+			c = sincos[b];
+			s = sincos[b + 1];
+			re = in[N2 - 1 - n] - in[n];
+			im = in[N2 + n] + in[N - 1 - n];
+
+			buf[b] = ((re * c) + (im * s)) * N;
+			buf[b + 1] = ((im * c) - (re * s)) * N;
 		}
 
 		// complex FFT, non-scaling
@@ -132,14 +143,16 @@ class MDCT implements MDCTTables {
 		// post-FFT complex multiplication
 		for (k = 0; k < N4; k++) {
 			n = k << 1;
+			c = sincos[n];
+			s = sincos[n + 1];
 
-			tmp[0] = (buf[k][0] * sincos[k][0]) + (buf[k][1] * sincos[k][1]);
-			tmp[1] = (buf[k][1] * sincos[k][0]) - (buf[k][0] * sincos[k][1]);
+			re = (buf[n] * c) + (buf[n + 1] * s);
+			im = (buf[n + 1] * c) - (buf[n] * s);
 
-			out[n] = -tmp[0];
-			out[N2 - 1 - n] = tmp[1];
-			out[N2 + n] = -tmp[1];
-			out[N - 1 - n] = tmp[0];
+			out[n] = -re;
+			out[N2 - 1 - n] = im;
+			out[N2 + n] = -im;
+			out[N - 1 - n] = re;
 		}
 	}
 }
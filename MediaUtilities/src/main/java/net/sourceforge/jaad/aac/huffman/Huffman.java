@@ -28,9 +28,112 @@ public class Huffman implements Codebooks {
 	private static final boolean[] UNSIGNED = { false, false, true, true, false, false, true, true, true, true, true };
 	private static final int QUAD_LEN = 4, PAIR_LEN = 2;
 
+	// codewords of up to LOOKUP_BITS are decoded with a single peek; longer ones need one further secondary lookup
+	private static final int LOOKUP_BITS = 9;
+	private static final int LENGTH_BITS = 5, LENGTH_MASK = (1 << LENGTH_BITS) - 1;
+
+	private static final LookupTable SF_TABLE = new LookupTable(HCB_SF);
+	private static final LookupTable[] SPECTRAL_TABLES = new LookupTable[CODEBOOKS.length];
+
+	static {
+		for (int i = 0; i < CODEBOOKS.length; i++) {
+			SPECTRAL_TABLES[i] = new LookupTable(CODEBOOKS[i]);
+		}
+	}
+
 	private Huffman() {
 	}
 
+	/**
+	 * A multi-bit lookup table built from one of the codebooks. Each entry holds the codebook offset and codeword
+	 * length for the bit pattern used as its index ((offset << LENGTH_BITS) | length). Patterns whose codeword is
+	 * longer than LOOKUP_BITS hold the (inverted) index of a secondary table that is addressed by the following bits.
+	 * Entries of zero are patterns that are not a valid codeword prefix, and are left to the linear search.
+	 */
+	private static final class LookupTable {
+
+		final int[][] table;
+		final int[] primary;
+		final int[][] secondary;
+		final int[] secondaryBits;
+		final int peekLength; // the most bits a lookup can peek at
+
+		LookupTable(int[][] table) {
+			this.table = table;
+			primary = new int[1 << LOOKUP_BITS];
+
+			// first pass: find the longest codeword behind each primary prefix that needs a secondary table
+			final int[] longest = new int[1 << LOOKUP_BITS];
+			int max = 0;
+			for (int[] entry : table) {
+				final int len = entry[0];
+				max = Math.max(max, len);
+				if (len > LOOKUP_BITS) {
+					final int prefix = entry[1] >>> (len - LOOKUP_BITS);
+					longest[prefix] = Math.max(longest[prefix], len - LOOKUP_BITS);
+				}
+			}
+			peekLength = Math.max(max, LOOKUP_BITS);
+			int secondaryCount = 0;
+			for (int prefix = 0; prefix < longest.length; prefix++) {
+				if (longest[prefix] > 0)
+					primary[prefix] = ~secondaryCount++;
+			}
+			secondary = new int[secondaryCount][];
+			secondaryBits = new int[secondaryCount];
+			for (int prefix = 0; prefix < longest.length; prefix++) {
+				if (longest[prefix] > 0) {
+					final int index = ~primary[prefix];
+					secondaryBits[index] = longest[prefix];
+					secondary[index] = new int[1 << longest[prefix]];
+				}
+			}
+
+			// second pass: fill every pattern that starts with each codeword - the linear search takes the first
+			// matching entry, so earlier entries must never be overwritten
+			for (int offset = 0; offset < table.length; offset++) {
+				final int len = table[offset][0];
+				final int cw = table[offset][1];
+				final int value = (offset << LENGTH_BITS) | len;
+				if (len <= LOOKUP_BITS) {
+					final int shift = LOOKUP_BITS - len;
+					final int start = cw << shift;
+					for (int i = start; i < start + (1 << shift); i++) {
+						if (primary[i] == 0)
+							primary[i] = value;
+					}
+				} else {
+					final int index = ~primary[cw >>> (len - LOOKUP_BITS)];
+					final int bits = secondaryBits[index];
+					final int[] sub = secondary[index];
+					final int shift = LOOKUP_BITS + bits - len;
+					final int start = (cw << shift) & ((1 << bits) - 1);
+					for (int i = start; i < start + (1 << shift); i++) {
+						if (sub[i] == 0)
+							sub[i] = value;
+					}
+				}
+			}
+		}
+	}
+
+	private static int findOffset(BitStream in, LookupTable lookup) throws AACException {
+		// near the end of the stream a peek could read past the buffer, so fall back to reading bit by bit
+		if (in.getBitsLeft() >= lookup.peekLength) {
+			int entry = lookup.primary[in.peekBits(LOOKUP_BITS)];
+			if (entry < 0) {
+				final int index = ~entry;
+				final int bits = lookup.secondaryBits[index];
+				entry = lookup.secondary[index][in.peekBits(LOOKUP_BITS + bits) & ((1 << bits) - 1)];
+			}
+			if (entry != 0) {
+				in.skipBits(entry & LENGTH_MASK);
+				return entry >>> LENGTH_BITS;
+			}
+		}
+		return findOffset(in, lookup.table);
+	}
+
 	private static int findOffset(BitStream in, int[][] table) throws AACException {
 		int off = 0;
 		int len = table[off][0];
@@ -68,7 +171,7 @@ public class Huffman implements Codebooks {
 	}
 
 	public static int decodeScaleFactor(BitStream in) throws AACException {
-		final int offset = findOffset(in, HCB_SF);
+		final int offset = findOffset(in, SF_TABLE);
 		return HCB_SF[offset][2];
 	}
 
@@ -76,7 +179,7 @@ public class Huffman implements Codebooks {
 		final int[][] HCB = CODEBOOKS[cb - 1];
 
 		// find index
-		final int offset = findOffset(in, HCB);
+		final int offset = findOffset(in, SPECTRAL_TABLES[cb - 1]);
 
 		// copy data
 		data[off] = HCB[offset][2];
@@ -22,6 +22,7 @@ package net.sourceforge.jaad.aac.syntax;
 import net.sourceforge.jaad.aac.AACException;
 import net.sourceforge.jaad.aac.ChannelConfiguration;
 import net.sourceforge.jaad.aac.DecoderConfig;
+import net.sourceforge.jaad.aac.OutputSpec;
 import net.sourceforge.jaad.aac.Profile;
 import net.sourceforge.jaad.aac.SampleBuffer;
 import net.sourceforge.jaad.aac.SampleFrequency;
@@ -34,6 +35,7 @@ import java.util.logging.Level;
 
 public class SyntacticElements implements Constants {
 
+	private static final float FLOAT_SCALE = 32768f; // float output is scaled from the 16-bit range to -1.0 to 1.0
 	// global properties
 	private DecoderConfig config;
 	private boolean sbrPresent, psPresent;
@@ -441,35 +443,92 @@ public class SyntacticElements implements Constants {
 	}
 
 	public void sendToOutput(SampleBuffer buffer) {
-		final boolean be = buffer.isBigEndian();
+		sendToOutput(buffer, buffer.isBigEndian(), false, false);
+	}
+
+	public void sendToOutput(SampleBuffer buffer, OutputSpec spec) {
+		sendToOutput(buffer, spec.isBigEndian(), spec.getChannelLayout() == OutputSpec.ChannelLayout.MONO_DOWNMIX,
+				spec.getSampleType() == OutputSpec.SampleType.PCM_FLOAT);
+	}
 
+	/**
+	 * Writes the decoded samples to the buffer's (reused, if the size is unchanged) data array in a single pass, in
+	 * the requested byte order, channel layout and sample type.
+	 */
+	private void sendToOutput(SampleBuffer buffer, boolean be, boolean mono, boolean floatSamples) {
 		final int chs = data.length;
 		final int mult = (sbrPresent) ? 2 : 1;
 		final int length = mult * config.getFrameLength();
 		final int freq = mult * config.getSampleFrequency().getFrequency();
 
+		final int outChs = mono ? 1 : chs;
+		final int bytesPerSample = floatSamples ? 4 : 2;
 		byte[] b = buffer.getData();
-		if (b.length != chs * length * 2)
-			b = new byte[chs * length * 2];
-
-		float[] cur;
-		int i, j, off;
-		short s;
-		for (i = 0; i < chs; i++) {
-			cur = data[i];
-			for (j = 0; j < length; j++) {
-				s = (short) Math.max(Math.min(Math.round(cur[j]), Short.MAX_VALUE), Short.MIN_VALUE);
-				off = (j * chs + i) * 2;
-				if (be) {
-					b[off] = (byte) ((s >> 8) & BYTE_MASK);
-					b[off + 1] = (byte) (s & BYTE_MASK);
+		if (b.length != outChs * length * bytesPerSample)
+			b = new byte[outChs * length * bytesPerSample];
+
+		int i, j, off = 0;
+		int s;
+		float f;
+		for (j = 0; j < length; j++) {
+			if (floatSamples) {
+				if (mono) {
+					f = 0;
+					for (i = 0; i < chs; i++) {
+						f += data[i][j];
+					}
+					off = writeFloat(b, off, (f / chs) / FLOAT_SCALE, be);
+				} else {
+					for (i = 0; i < chs; i++) {
+						off = writeFloat(b, off, data[i][j] / FLOAT_SCALE, be);
+					}
+				}
+			} else {
+				if (mono) {
+					s = 0;
+					for (i = 0; i < chs; i++) {
+						s += clip(data[i][j]);
+					}
+					off = writeShort(b, off, s / chs, be);
 				} else {
-					b[off + 1] = (byte) ((s >> 8) & BYTE_MASK);
-					b[off] = (byte) (s & BYTE_MASK);
+					for (i = 0; i < chs; i++) {
+						off = writeShort(b, off, clip(data[i][j]), be);
+					}
 				}
 			}
 		}
 
-		buffer.setData(b, freq, chs, 16, bitsRead);
+		buffer.setData(b, freq, outChs, bytesPerSample * 8, bitsRead, be);
+	}
+
+	private static int clip(float f) {
+		return Math.max(Math.min(Math.round(f), Short.MAX_VALUE), Short.MIN_VALUE);
+	}
+
+	private static int writeShort(byte[] b, int off, int s, boolean be) {
+		if (be) {
+			b[off] = (byte) ((s >> 8) & BYTE_MASK);
+			b[off + 1] = (byte) (s & BYTE_MASK);
+		} else {
+			b[off + 1] = (byte) ((s >> 8) & BYTE_MASK);
+			b[off] = (byte) (s & BYTE_MASK);
+		}
+		return off + 2;
+	}
+
+	private static int writeFloat(byte[] b, int off, float f, boolean be) {
+		final int bits = Float.floatToIntBits(f);
+		if (be) {
+			b[off] = (byte) ((bits >> 24) & BYTE_MASK);
+			b[off + 1] = (byte) ((bits >> 16) & BYTE_MASK);
+			b[off + 2] = (byte) ((bits >> 8) & BYTE_MASK);
+			b[off + 3] = (byte) (bits & BYTE_MASK);
+		} else {
+			b[off + 3] = (byte) ((bits >> 24) & BYTE_MASK);
+			b[off + 2] = (byte) ((bits >> 16) & BYTE_MASK);
+			b[off + 1] = (byte) ((bits >> 8) & BYTE_MASK);
+			b[off] = (byte) (bits & BYTE_MASK);
+		}
+		return off + 4;
 	}
 }
@@ -80,6 +80,8 @@ public class MP4Container {
 	private FileTypeBox ftyp;
 	private ProgressiveDownloadInformationBox pdin;
 	private Box moov;
+	private final List<Box> fragments = new ArrayList<>();
+	private long nextBoxOffset = -1;
 	private Movie movie;
 
 	public MP4Container(InputStream in) throws IOException {
@@ -90,7 +92,20 @@ public class MP4Container {
 	}
 
 	public MP4Container(RandomAccessFile in) throws IOException {
-		this.in = new MP4InputStream(in);
+		this(in, false);
+	}
+
+	/**
+	 * Creates a container that reads from a <code>RandomAccessFile</code>, optionally memory-mapping the whole file
+	 * rather than reading it through a buffered window. Memory-mapping is fastest when most of the file will be read
+	 * (e.g., when decoding every frame), but uses address space for the whole file while the container is open.
+	 *
+	 * @param in the file to read from
+	 * @param memoryMapped whether to memory-map the file (if it cannot be mapped, it is read through a window instead)
+	 * @throws IOException if the file could not be read
+	 */
+	public MP4Container(RandomAccessFile in, boolean memoryMapped) throws IOException {
+		this.in = new MP4InputStream(in, memoryMapped);
 		boxes = new ArrayList<>();
 
 		readContent();
@@ -118,13 +133,25 @@ public class MP4Container {
 			} else if (type == BoxTypes.PROGRESSIVE_DOWNLOAD_INFORMATION_BOX) {
 				if (pdin == null)
 					pdin = (ProgressiveDownloadInformationBox) box;
+			} else if (type == BoxTypes.MOVIE_FRAGMENT_BOX) {
+				// fragmented file: the movie reads the remaining fragments as they are needed - without random access
+				// the header of the following media data box is read first, so that its samples can be read in order
+				if (moovFound) {
+					fragments.add(box);
+					nextBoxOffset = box.getOffset() + box.getSize();
+					if (in.hasRandomAccess())
+						break;
+				}
 			} else if (type == BoxTypes.MEDIA_DATA_BOX) {
-				if (moovFound)
+				if (moovFound) {
+					nextBoxOffset = box.getOffset() + box.getSize();
 					break;
-				else if (!in.hasRandomAccess())
+				} else if (!in.hasRandomAccess())
 					throw new MP4Exception("movie box at end of file, need random access");
 			}
 		}
+		if (moovFound && nextBoxOffset < 0)
+			nextBoxOffset = in.getOffset();
 	}
 
 	public Brand getMajorBrand() {
@@ -150,12 +177,12 @@ public class MP4Container {
 		return compatible;
 	}
 
-	// TODO: pdin, movie fragments??
+	// TODO: pdin
 	public Movie getMovie() {
 		if (moov == null)
 			return null;
 		else if (movie == null)
-			movie = new Movie(moov, in);
+			movie = new Movie(moov, in, fragments, nextBoxOffset);
 		return movie;
 	}
 
@@ -19,12 +19,14 @@
  */
 package net.sourceforge.jaad.mp4;
 
+import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.util.Arrays;
 
 import ac.robinson.util.StringUtilities;
 
@@ -35,11 +37,21 @@ public class MP4InputStream {
 	public static final String UTF8 = "UTF-8";
 	public static final String UTF16 = "UTF-16";
 	private static final int BYTE_ORDER_MASK = 0xFEFF;
+	private static final int BUFFER_SIZE = 8192;
 	private final InputStream in;
 	private final RandomAccessFile fin;
 	private int peeked;
 	private long offset; // only used with InputStream
 
+	// read window used with a RandomAccessFile: the file pointer is always at bufferOffset + bufferLength
+	private final byte[] buffer;
+	private long bufferOffset;
+	private int bufferPosition, bufferLength;
+
+	// used instead of the read window when the file is memory-mapped
+	private final ByteBuffer mapped;
+	private long mappedOverrun; // how far past the end of the mapping the last seek went (like RandomAccessFile)
+
 	/**
 	 * Constructs an <code>MP4InputStream</code> that reads from an <code>InputStream</code>. It will have no random
 	 * access, thus seeking will not be possible.
@@ -47,22 +59,57 @@ public class MP4InputStream {
 	 * @param in an <code>InputStream</code> to read from
 	 */
 	MP4InputStream(InputStream in) {
-		this.in = in;
+		this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in, BUFFER_SIZE);
 		fin = null;
+		buffer = null;
+		mapped = null;
 		peeked = -1;
 		offset = 0;
 	}
 
+	/**
+	 * Constructs an <code>MP4InputStream</code> that reads from a <code>RandomAccessFile</code>. It will have random
+	 * access and seeking will be possible. Reads are served from a window that is filled in bulk from the file.
+	 *
+	 * @param fin a <code>RandomAccessFile</code> to read from
+	 */
+	MP4InputStream(RandomAccessFile fin) throws IOException {
+		this(fin, false);
+	}
+
 	/**
 	 * Constructs an <code>MP4InputStream</code> that reads from a <code>RandomAccessFile</code>. It will have random
 	 * access and seeking will be possible.
 	 *
+	 * If <code>memoryMapped</code> is true, the whole file is mapped into memory via its <code>FileChannel</code>
+	 * instead of being read through a window. Files that are too large to be mapped in one piece (or that cannot be
+	 * mapped at all) fall back to the windowed mode.
+	 *
 	 * @param fin a <code>RandomAccessFile</code> to read from
+	 * @param memoryMapped whether to memory-map the file rather than reading through a window
+	 * @throws IOException if the file's length or position could not be read
 	 */
-	MP4InputStream(RandomAccessFile fin) {
+	MP4InputStream(RandomAccessFile fin, boolean memoryMapped) throws IOException {
 		this.fin = fin;
 		in = null;
 		peeked = -1;
+		final long length = fin.length();
+		ByteBuffer map = null;
+		if (memoryMapped && length <= Integer.MAX_VALUE) {
+			try {
+				map = fin.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			} catch (IOException e) {
+				// mapping can fail when address space is short (e.g., on 32-bit devices) - just read through a window
+			}
+		}
+		mapped = map;
+		if (mapped != null) {
+			buffer = null;
+			seek(fin.getFilePointer());
+		} else {
+			buffer = new byte[BUFFER_SIZE];
+			bufferOffset = fin.getFilePointer();
+		}
 	}
 
 	/**
@@ -75,18 +122,38 @@ public class MP4InputStream {
 	 */
 	public int read() throws IOException {
 		int i = 0;
-		if (peeked >= 0) {
+		if (mapped != null) {
+			if (!mapped.hasRemaining())
+				throw new EOFException();
+			return mapped.get() & MASK8;
+		} else if (fin != null) {
+			if (bufferPosition == bufferLength && fillBuffer() <= 0)
+				throw new EOFException();
+			return buffer[bufferPosition++] & MASK8;
+		} else if (peeked >= 0) {
 			i = peeked;
 			peeked = -1;
-		} else if (in != null)
+		} else
 			i = in.read();
-		else if (fin != null)
-			i = fin.read();
 
 		if (i == -1)
 			throw new EOFException();
-		else if (in != null)
-			offset++;
+		offset++;
+		return i;
+	}
+
+	/**
+	 * Moves the read window along to the current file pointer and fills it from the file.
+	 *
+	 * @return the number of bytes now available in the window, or -1 at the end of the file
+	 */
+	private int fillBuffer() throws IOException {
+		bufferOffset += bufferLength;
+		bufferPosition = 0;
+		bufferLength = 0;
+		final int i = fin.read(buffer, 0, buffer.length);
+		if (i > 0)
+			bufferLength = i;
 		return i;
 	}
 
@@ -105,8 +172,20 @@ public class MP4InputStream {
 	 *             error occurs.
 	 */
 	public void read(final byte[] b, int off, int len) throws IOException {
+		if (mapped != null) {
+			if (mapped.remaining() < len) {
+				mapped.position(mapped.limit());
+				throw new EOFException();
+			}
+			mapped.get(b, off, len);
+			return;
+		} else if (fin != null) {
+			readBuffered(b, off, len);
+			return;
+		}
+
 		int read = 0;
-		int i = 0;
+		int i;
 
 		if (peeked >= 0 && len > 0) {
 			b[off] = (byte) peeked;
@@ -115,10 +194,7 @@ public class MP4InputStream {
 		}
 
 		while (read < len) {
-			if (in != null)
-				i = in.read(b, off + read, len - read);
-			else if (fin != null)
-				i = fin.read(b, off + read, len - read);
+			i = in.read(b, off + read, len - read);
 			if (i < 0)
 				throw new EOFException();
 			else
@@ -128,6 +204,31 @@ public class MP4InputStream {
 		offset += read;
 	}
 
+	private void readBuffered(final byte[] b, int off, int len) throws IOException {
+		int read = 0;
+		int i;
+		while (read < len) {
+			int available = bufferLength - bufferPosition;
+			if (available > 0) {
+				i = Math.min(available, len - read);
+				System.arraycopy(buffer, bufferPosition, b, off + read, i);
+				bufferPosition += i;
+				read += i;
+			} else if (len - read >= buffer.length) {
+				// large reads bypass the window and go straight into the destination array
+				bufferOffset += bufferLength;
+				bufferPosition = 0;
+				bufferLength = 0;
+				i = fin.read(b, off + read, len - read);
+				if (i < 0)
+					throw new EOFException();
+				bufferOffset += i;
+				read += i;
+			} else if (fillBuffer() <= 0)
+				throw new EOFException();
+		}
+	}
+
 	/**
 	 * Reads up to eight bytes as a long value. This method blocks until all bytes could be read, the end of the stream
 	 * is detected, or an I/O error occurs.
@@ -141,12 +242,9 @@ public class MP4InputStream {
 	public long readBytes(int n) throws IOException {
 		if (n < 1 || n > 8)
 			throw new IndexOutOfBoundsException("invalid number of bytes to read: " + n);
-		final byte[] b = new byte[n];
-		read(b, 0, n);
-
 		long result = 0;
 		for (int i = 0; i < n; i++) {
-			result = (result << 8) | (b[i] & 0xFF);
+			result = (result << 8) | read();
 		}
 		return result;
 	}
@@ -175,15 +273,13 @@ public class MP4InputStream {
 	 *             error occurs.
 	 */
 	public String readString(final int n) throws IOException {
-		int i = -1;
-		int pos = 0;
-		char[] c = new char[n];
-		while (pos < n) {
-			i = read();
-			c[pos] = (char) i;
-			pos++;
+		final byte[] b = new byte[n];
+		read(b, 0, n);
+		final char[] c = new char[n];
+		for (int pos = 0; pos < n; pos++) {
+			c[pos] = (char) (b[pos] & MASK8);
 		}
-		return new String(c, 0, pos);
+		return new String(c, 0, n);
 	}
 
 	/**
@@ -248,15 +344,10 @@ public class MP4InputStream {
 	 *             error occurs.
 	 */
 	public byte[] readTerminated(int max, int terminator) throws IOException {
+		// note: read() never returns -1 (it throws an EOFException instead), so this always reads exactly max bytes
 		final byte[] b = new byte[max];
-		int pos = 0;
-		int i = 0;
-		while (pos < max && i != -1) {
-			i = read();
-			if (i != -1)
-				b[pos++] = (byte) i;
-		}
-		return Arrays.copyOf(b, pos);
+		read(b, 0, max);
+		return b;
 	}
 
 	/**
@@ -289,6 +380,12 @@ public class MP4InputStream {
 	 *             error occurs.
 	 */
 	public void skipBytes(final long n) throws IOException {
+		if (fin != null) {
+			if (n > 0)
+				seek(getOffset() + n);
+			return;
+		}
+
 		long l = 0;
 		if (peeked >= 0 && n > 0) {
 			peeked = -1;
@@ -296,10 +393,7 @@ public class MP4InputStream {
 		}
 
 		while (l < n) {
-			if (in != null)
-				l += in.skip((n - l));
-			else if (fin != null)
-				l += fin.skipBytes((int) (n - l));
+			l += in.skip((n - l));
 		}
 
 		offset += l;
@@ -313,10 +407,12 @@ public class MP4InputStream {
 	 */
 	public long getOffset() throws IOException {
 		long l = -1;
-		if (in != null)
-			l = offset;
+		if (mapped != null)
+			l = mapped.position() + mappedOverrun;
 		else if (fin != null)
-			l = fin.getFilePointer();
+			l = bufferOffset + bufferPosition;
+		else if (in != null)
+			l = offset;
 		return l;
 	}
 
@@ -328,10 +424,22 @@ public class MP4InputStream {
 	 * @throws IOException if an InputStream is used, pos is less than 0 or an I/O error occurs
 	 */
 	public void seek(long pos) throws IOException {
-		if (fin != null)
-			fin.seek(pos);
-		else
+		if (fin == null)
 			throw new IOException("could not seek: no random access");
+		else if (pos < 0)
+			throw new IOException("could not seek: negative position " + pos);
+
+		if (mapped != null) {
+			mapped.position((int) Math.min(pos, mapped.limit())); // positions past the end behave as EOF
+			mappedOverrun = pos - mapped.position();
+		} else if (pos >= bufferOffset && pos <= bufferOffset + bufferLength)
+			bufferPosition = (int) (pos - bufferOffset); // within the current window: no file access needed
+		else {
+			fin.seek(pos);
+			bufferOffset = pos;
+			bufferPosition = 0;
+			bufferLength = 0;
+		}
 	}
 
 	/**
@@ -344,6 +452,21 @@ public class MP4InputStream {
 		return fin != null;
 	}
 
+	/**
+	 * Returns the length of the input. This is only possible when using a RandomAccessFile; for an InputStream, -1 is
+	 * returned.
+	 *
+	 * @return the length of the input in bytes, or -1 if unknown
+	 * @throws IOException if an I/O error occurs
+	 */
+	public long length() throws IOException {
+		if (mapped != null)
+			return mapped.limit();
+		else if (fin != null)
+			return fin.length();
+		return -1;
+	}
+
 	/**
 	 * Indicates, if the input has some data left.
 	 *
@@ -352,8 +475,10 @@ public class MP4InputStream {
 	 */
 	public boolean hasLeft() throws IOException {
 		final boolean b;
-		if (fin != null)
-			b = fin.getFilePointer() < (fin.length() - 1);
+		if (mapped != null)
+			b = mapped.position() < (mapped.limit() - 1);
+		else if (fin != null)
+			b = getOffset() < (fin.length() - 1);
 		else if (peeked >= 0)
 			b = true;
 		else {
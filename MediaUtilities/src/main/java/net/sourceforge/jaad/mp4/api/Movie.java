@@ -24,10 +24,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import net.sourceforge.jaad.mp4.MP4InputStream;
 import net.sourceforge.jaad.mp4.boxes.Box;
 import net.sourceforge.jaad.mp4.boxes.BoxTypes;
 import net.sourceforge.jaad.mp4.boxes.impl.HandlerBox;
+import net.sourceforge.jaad.mp4.boxes.impl.MovieExtendsHeaderBox;
 import net.sourceforge.jaad.mp4.boxes.impl.MovieHeaderBox;
 
 public class Movie {
@@ -37,8 +40,22 @@ public class Movie {
 	private final List<Track> tracks;
 	private final MetaData metaData;
 	private final List<Protection> protections;
+	private final MovieFragments fragments;
 
 	public Movie(Box moov, MP4InputStream in) {
+		this(moov, in, Collections.<Box>emptyList(), -1);
+	}
+
+	/**
+	 * Creates a movie that may be fragmented. If the movie box contains a movie extends box, the remaining movie
+	 * fragments are read as they are needed, starting with the box at <code>nextBoxOffset</code>.
+	 *
+	 * @param moov the movie box
+	 * @param in the input stream
+	 * @param fragments the movie fragment boxes following the movie box that have already been parsed
+	 * @param nextBoxOffset the offset of the first box after the movie box that has not been parsed
+	 */
+	public Movie(Box moov, MP4InputStream in, List<Box> fragments, long nextBoxOffset) {
 		this.in = in;
 
 		// create tracks
@@ -70,6 +87,13 @@ public class Movie {
 				protections.add(Protection.parse(sinf));
 			}
 		}
+
+		// fragmented files: samples are added to the tracks as fragments are read
+		if (moov.hasChild(BoxTypes.MOVIE_EXTENDS_BOX) && nextBoxOffset >= 0)
+			this.fragments = new MovieFragments(moov.getChild(BoxTypes.MOVIE_EXTENDS_BOX), tracks, in, fragments,
+					nextBoxOffset);
+		else
+			this.fragments = null;
 	}
 
 	// TODO: support hint and meta
@@ -183,7 +207,14 @@ public class Movie {
 	 * @return the duration
 	 */
 	public double getDuration() {
-		return (double) mvhd.getDuration() / (double) mvhd.getTimeScale();
+		long duration = mvhd.getDuration();
+		if (duration == 0 && fragments != null) {
+			// the movie header only gives the duration of the samples in the movie box itself
+			final Box mehd = fragments.getMovieExtendsHeader();
+			if (mehd != null)
+				duration = ((MovieExtendsHeaderBox) mehd).getFragmentDuration();
+		}
+		return (double) duration / (double) mvhd.getTimeScale();
 	}
 
 	/**
@@ -192,11 +223,12 @@ public class Movie {
 	 * @return true if there is at least one track in this movie that has at least one more frame to read.
 	 */
 	public boolean hasMoreFrames() {
-		for (Track track : tracks) {
-			if (track.hasMoreFrames())
-				return true;
+		try {
+			return getNextTrack() != null;
+		} catch (IOException e) {
+			Logger.getLogger("MP4 API").log(Level.WARNING, "reading fragment failed: {0}", e.toString());
+			return false;
 		}
-		return false;
 	}
 
 	/**
@@ -207,12 +239,23 @@ public class Movie {
 	 * @throws IOException if reading fails
 	 */
 	public Frame readNextFrame() throws IOException {
-		Track track = null;
-		for (Track t : tracks) {
-			if (t.hasMoreFrames() && (track == null || t.getNextTimeStamp() < track.getNextTimeStamp()))
-				track = t;
-		}
-
+		final Track track = getNextTrack();
 		return (track == null) ? null : track.readNextFrame();
 	}
+
+	/**
+	 * Returns the track whose next frame is the next in time-order, reading the next movie fragment only when every
+	 * track's frames from the previous ones have been read (so that fragments can be read without random access).
+	 */
+	private Track getNextTrack() throws IOException {
+		Track track;
+		do {
+			track = null;
+			for (Track t : tracks) {
+				if (t.hasIndexedFrames() && (track == null || t.getNextTimeStamp() < track.getNextTimeStamp()))
+					track = t;
+			}
+		} while (track == null && fragments != null && fragments.readNextFragment());
+		return track;
+	}
 }
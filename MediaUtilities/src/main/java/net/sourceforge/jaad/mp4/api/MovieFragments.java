@@ -0,0 +1,322 @@
+/*
+ *  Copyright (C) 2011 in-somnia
+ *
+ *  This file is part of JAAD.
+ *
+ *  JAAD is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  JAAD is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sourceforge.jaad.mp4.api;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sourceforge.jaad.mp4.MP4InputStream;
+import net.sourceforge.jaad.mp4.boxes.Box;
+import net.sourceforge.jaad.mp4.boxes.BoxFactory;
+import net.sourceforge.jaad.mp4.boxes.BoxTypes;
+import net.sourceforge.jaad.mp4.boxes.impl.MovieFragmentRandomAccessOffsetBox;
+import net.sourceforge.jaad.mp4.boxes.impl.TrackExtendsBox;
+import net.sourceforge.jaad.mp4.boxes.impl.TrackFragmentBaseMediaDecodeTimeBox;
+import net.sourceforge.jaad.mp4.boxes.impl.TrackFragmentHeaderBox;
+import net.sourceforge.jaad.mp4.boxes.impl.TrackFragmentRandomAccessBox;
+import net.sourceforge.jaad.mp4.boxes.impl.TrackFragmentRunBox;
+
+/**
+ * Reads the movie fragments of a fragmented file ('moof' boxes following the 'moov' box) as they are needed, adding
+ * the samples of each track fragment to its track. Only the fragment headers are read here: the media data is read by
+ * the tracks as usual, so a fragmented file can be read front-to-back from an <code>InputStream</code> without
+ * buffering it. With random access, the movie fragment random access box ('mfra') is used for seeking, if present.
+ */
+class MovieFragments {
+
+	private final MP4InputStream in;
+	private final List<Track> tracks;
+	private final Box mvex;
+	private final long firstFragmentOffset;
+	private long indexStartOffset; // the first fragment whose samples have been added to the tracks
+	private long nextBoxOffset;
+	private boolean ended;
+	// random access
+	private boolean mfraRead;
+	private Box mfra;
+
+	/**
+	 * @param mvex the movie extends box, with the track fragment defaults
+	 * @param tracks the movie's tracks
+	 * @param in the input stream
+	 * @param fragments the fragments that have already been parsed (by the container)
+	 * @param nextBoxOffset the offset of the first box that has not been parsed
+	 */
+	MovieFragments(Box mvex, List<Track> tracks, MP4InputStream in, List<Box> fragments, long nextBoxOffset) {
+		this.mvex = mvex;
+		this.tracks = tracks;
+		this.in = in;
+		this.nextBoxOffset = nextBoxOffset;
+		firstFragmentOffset = fragments.isEmpty() ? nextBoxOffset : fragments.get(0).getOffset();
+		indexStartOffset = firstFragmentOffset;
+
+		for (Track track : tracks) {
+			track.fragments = this;
+		}
+		for (Box moof : fragments) {
+			addFragment(moof, null);
+		}
+	}
+
+	/**
+	 * Reads the next movie fragment, adding its samples to the tracks. Without random access, the header of the
+	 * following media data box is read too, so that its samples can then be read in order.
+	 *
+	 * @return true if a fragment was read, false if there are no more fragments
+	 * @throws IOException if reading fails
+	 */
+	boolean readNextFragment() throws IOException {
+		Box box;
+		while ((box = readNextBox()) != null) {
+			if (box.getType() == BoxTypes.MOVIE_FRAGMENT_BOX) {
+				addFragment(box, null);
+				if (!in.hasRandomAccess()) {
+					while ((box = readNextBox()) != null && box.getType() != BoxTypes.MEDIA_DATA_BOX) {
+						if (box.getType() == BoxTypes.MOVIE_FRAGMENT_BOX)
+							addFragment(box, null);
+					}
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Box readNextBox() throws IOException {
+		if (ended)
+			return null;
+
+		final long offset = in.getOffset();
+		if (offset < nextBoxOffset)
+			in.skipBytes(nextBoxOffset - offset);
+		else if (offset > nextBoxOffset) {
+			if (in.hasRandomAccess())
+				in.seek(nextBoxOffset);
+			else
+				throw new IOException("fragment already skipped and no random access");
+		}
+
+		if (!in.hasLeft()) {
+			ended = true;
+			return null;
+		}
+		final Box box = BoxFactory.parseBox(null, in);
+		if (box.getSize() < 8)
+			ended = true; // a box extending to the end of the file (or a corrupt one): there can be nothing after it
+		nextBoxOffset = box.getOffset() + box.getSize();
+		return box;
+	}
+
+	/**
+	 * Adds the samples of each track fragment in a movie fragment to its track.
+	 *
+	 * @param moof the movie fragment
+	 * @param only the only track to add samples to, or null for all tracks
+	 */
+	private void addFragment(Box moof, Track only) {
+		long dataEnd = moof.getOffset();
+		for (Box traf : moof.getChildren(BoxTypes.TRACK_FRAGMENT_BOX)) {
+			final TrackFragmentHeaderBox tfhd = (TrackFragmentHeaderBox) traf.getChild(BoxTypes.TRACK_FRAGMENT_HEADER_BOX);
+			if (tfhd == null)
+				continue;
+			final Track track = (only == null || only.getTrackID() == tfhd.getTrackID()) ? getTrack(tfhd.getTrackID())
+					: null;
+			final TrackExtendsBox trex = getTrackExtends(tfhd.getTrackID());
+
+			final long defaultDuration, defaultSize;
+			if (tfhd.isDefaultSampleDurationPresent())
+				defaultDuration = tfhd.getDefaultSampleDuration();
+			else
+				defaultDuration = (trex != null) ? trex.getDefaultSampleDuration() : 0;
+			if (tfhd.isDefaultSampleSizePresent())
+				defaultSize = tfhd.getDefaultSampleSize();
+			else
+				defaultSize = (trex != null) ? trex.getDefaultSampleSize() : 0;
+
+			// the data of each fragment follows that of the previous one, unless a base offset is given
+			long offset;
+			if (tfhd.isBaseDataOffsetPresent())
+				offset = tfhd.getBaseDataOffset();
+			else if (tfhd.isDefaultBaseIsMoof())
+				offset = moof.getOffset();
+			else
+				offset = dataEnd;
+			final long baseOffset = offset;
+
+			if (track != null && traf.hasChild(BoxTypes.TRACK_FRAGMENT_BASE_MEDIA_DECODE_TIME_BOX))
+				track.setNextSampleTime(((TrackFragmentBaseMediaDecodeTimeBox) traf
+						.getChild(BoxTypes.TRACK_FRAGMENT_BASE_MEDIA_DECODE_TIME_BOX)).getBaseMediaDecodeTime());
+
+			for (Box box : traf.getChildren(BoxTypes.TRACK_FRAGMENT_RUN_BOX)) {
+				final TrackFragmentRunBox trun = (TrackFragmentRunBox) box;
+				if (trun.isDataOffsetPresent())
+					offset = baseOffset + (int) trun.getDataOffset(); // signed
+				final long[] durations = trun.getSampleDuration();
+				final long[] sizes = trun.getSampleSize();
+
+				long size;
+				for (int i = 0; i < trun.getSampleCount(); i++) {
+					size = (sizes != null) ? sizes[i] : defaultSize;
+					if (track != null)
+						track.addSample(offset, size, (durations != null) ? durations[i] : defaultDuration,
+								moof.getOffset());
+					offset += size;
+				}
+			}
+			dataEnd = offset;
+		}
+	}
+
+	/**
+	 * Adds a track's samples from all of the fragments that have been read so far (since the first fragment, or the
+	 * last random access point), for a track whose samples were not kept when they were first read. Requires random
+	 * access.
+	 *
+	 * @param track the track
+	 * @throws IOException if reading fails
+	 */
+	void indexTrack(Track track) throws IOException {
+		long offset = indexStartOffset;
+		while (offset < nextBoxOffset) {
+			in.seek(offset);
+			final Box box = BoxFactory.parseBox(null, in);
+			if (box.getType() == BoxTypes.MOVIE_FRAGMENT_BOX)
+				addFragment(box, track);
+			if (box.getSize() < 8)
+				break;
+			offset = box.getOffset() + box.getSize();
+		}
+	}
+
+	Box getMovieExtendsHeader() {
+		return mvex.hasChild(BoxTypes.MOVIE_EXTENDS_HEADER_BOX) ? mvex.getChild(BoxTypes.MOVIE_EXTENDS_HEADER_BOX)
+				: null;
+	}
+
+	private Track getTrack(long trackID) {
+		for (Track track : tracks) {
+			if (track.getTrackID() == trackID)
+				return track;
+		}
+		return null;
+	}
+
+	private TrackExtendsBox getTrackExtends(long trackID) {
+		for (Box box : mvex.getChildren(BoxTypes.TRACK_EXTENDS_BOX)) {
+			if (((TrackExtendsBox) box).getTrackID() == trackID)
+				return (TrackExtendsBox) box;
+		}
+		return null;
+	}
+
+	/**
+	 * Makes sure that the samples around the given timestamp have been read, so that the track can seek to it. If
+	 * the timestamp is outside the samples that have been read and random access is available, fragments are read
+	 * from the nearest random access point (or from the first fragment) instead of in order - this repositions every
+	 * track in the movie, as they share the same fragments.
+	 *
+	 * @param track the track to seek
+	 * @param timestamp the timestamp to seek to, in seconds
+	 * @throws IOException if reading fails
+	 */
+	void seek(Track track, double timestamp) throws IOException {
+		if (in.hasRandomAccess()) {
+			final boolean before = track.getFirstIndexedTime() > Math.max(0, timestamp);
+			final boolean after = track.getIndexedEndTime() <= timestamp;
+			if (before || after) {
+				// find the last random access point at or before the timestamp
+				final TrackFragmentRandomAccessBox tfra = getRandomAccess(track.getTrackID());
+				int entry = -1;
+				if (tfra != null) {
+					final long[] times = tfra.getTimes();
+					final long time = (long) (timestamp * track.getTimeScale());
+					int low = 0;
+					int high = tfra.getEntryCount();
+					while (low < high) {
+						final int mid = (low + high) >>> 1;
+						if (times[mid] > time)
+							high = mid;
+						else
+							low = mid + 1;
+					}
+					entry = low - 1;
+				}
+
+				if (entry >= 0 && (before || tfra.getMoofOffsets()[entry] > nextBoxOffset)) {
+					// without a decode time box, the fragment's samples are assumed to start at the entry's time
+					final double time = (double) tfra.getTimes()[entry] / track.getTimeScale();
+					for (Track t : tracks) {
+						t.removeAllSamples(time);
+					}
+					nextBoxOffset = tfra.getMoofOffsets()[entry];
+					indexStartOffset = nextBoxOffset;
+					ended = false;
+				} else if (before) {
+					for (Track t : tracks) {
+						t.removeFragmentSamples();
+					}
+					nextBoxOffset = firstFragmentOffset;
+					indexStartOffset = nextBoxOffset;
+					ended = false;
+				}
+			}
+		}
+
+		// read on until the timestamp is within the samples that have been read
+		while ((track.getFirstIndexedTime() < 0 || track.getIndexedEndTime() <= timestamp) && readNextFragment()) {
+			// keep reading
+		}
+	}
+
+	private TrackFragmentRandomAccessBox getRandomAccess(long trackID) throws IOException {
+		if (!mfraRead) {
+			mfraRead = true;
+			// the last box in the file is the mfro box, which gives the size of the mfra box that it is part of
+			final long length = in.length();
+			if (length > 16) {
+				try {
+					in.seek(length - 16);
+					final Box mfro = BoxFactory.parseBox(null, in);
+					if (mfro.getType() == BoxTypes.MOVIE_FRAGMENT_RANDOM_ACCESS_OFFSET_BOX) {
+						final long size = ((MovieFragmentRandomAccessOffsetBox) mfro).getByteSize();
+						if (size > 16 && size <= length) {
+							in.seek(length - size);
+							final Box box = BoxFactory.parseBox(null, in);
+							if (box.getType() == BoxTypes.MOVIE_FRAGMENT_RANDOM_ACCESS_BOX)
+								mfra = box;
+						}
+					}
+				} catch (IOException e) {
+					Logger.getLogger("MP4 API").log(Level.WARNING, "reading mfra failed: {0}", e.toString());
+				}
+			}
+		}
+
+		if (mfra != null) {
+			for (Box box : mfra.getChildren(BoxTypes.TRACK_FRAGMENT_RANDOM_ACCESS_BOX)) {
+				if (((TrackFragmentRandomAccessBox) box).getTrackID() == trackID)
+					return (TrackFragmentRandomAccessBox) box;
+			}
+		}
+		return null;
+	}
+}
@@ -23,8 +23,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -65,7 +64,20 @@ public abstract class Track {
 	protected final TrackHeaderBox tkhd;
 	private final MediaHeaderBox mdhd;
 	private final boolean inFile;
-	private final List<Frame> frames;
+	// the sample table, in decoding order: Frame objects are only created as samples are read
+	private int sampleCount;
+	private long[] sampleOffsets, sampleSizes, sampleTimes;
+	// for fragmented files: samples from the fragments are added to the table as they are read, and the movie box's
+	// own samples are kept so that they can be restored after reading fragments from a random access point
+	MovieFragments fragments;
+	private int tableSampleCount;
+	private long[] tableOffsets, tableSizes, tableTimes;
+	private long tableEndTime, nextSampleTime;
+	private boolean fragmentSamplesAdded;
+	// until a track is read, fragment samples are not kept if they can be indexed again later (see startReading)
+	private boolean read, samplesSkipped;
+	private int indexStartCount;
+	private long indexStartTime;
 	private URL location;
 	private int currentFrame;
 	// info structures
@@ -109,20 +121,27 @@ public abstract class Track {
 
 		// sample table
 		final Box stbl = minf.getChild(BoxTypes.SAMPLE_TABLE_BOX);
-		if (stbl.hasChildren()) {
-			frames = new ArrayList<>();
+		if (stbl.hasChildren())
 			parseSampleTable(stbl);
-		} else
-			frames = Collections.emptyList();
+		else {
+			sampleOffsets = new long[0];
+			sampleSizes = sampleOffsets;
+			sampleTimes = sampleOffsets;
+		}
+		tableSampleCount = sampleCount;
+		tableOffsets = sampleOffsets;
+		tableSizes = sampleSizes;
+		tableTimes = sampleTimes;
+		nextSampleTime = tableEndTime;
+		indexStartCount = tableSampleCount;
+		indexStartTime = tableEndTime;
 		currentFrame = 0;
 	}
 
 	private void parseSampleTable(Box stbl) {
-		final double timeScale = mdhd.getTimeScale();
-		final Type type = getType();
-
 		// sample sizes
-		final long[] sampleSizes = ((SampleSizeBox) stbl.getChild(BoxTypes.SAMPLE_SIZE_BOX)).getSampleSizes();
+		sampleSizes = ((SampleSizeBox) stbl.getChild(BoxTypes.SAMPLE_SIZE_BOX)).getSampleSizes();
+		final int length = sampleSizes.length;
 
 		// chunk offsets
 		final ChunkOffsetBox stco;
@@ -142,47 +161,186 @@ public abstract class Track {
 				.getChild(BoxTypes.DECODING_TIME_TO_SAMPLE_BOX);
 		final long[] sampleCounts = stts.getSampleCounts();
 		final long[] sampleDeltas = stts.getSampleDeltas();
-		final long[] timeOffsets = new long[sampleSizes.length];
+		sampleTimes = new long[length];
 		long tmp = 0;
 		int off = 0;
-		for (int i = 0; i < sampleCounts.length; i++) {
-			for (int j = 0; j < sampleCounts[i]; j++) {
-				timeOffsets[off + j] = tmp;
+		for (int i = 0; i < sampleCounts.length && off < length; i++) {
+			for (int j = 0; j < sampleCounts[i] && off < length; j++) {
+				sampleTimes[off++] = tmp;
 				tmp += sampleDeltas[i];
 			}
-			off += sampleCounts[i];
 		}
+		tableEndTime = tmp;
 
-		// create samples
+		// sample offsets
+		sampleOffsets = new long[length];
 		int current = 0;
 		int lastChunk;
-		double timeStamp;
-		long offset = 0;
+		long offset;
 		// iterate over all chunk groups
-		for (int i = 0; i < firstChunks.length; i++) {
+		for (int i = 0; i < firstChunks.length && current < length; i++) {
 			if (i < firstChunks.length - 1)
 				lastChunk = (int) firstChunks[i + 1] - 1;
 			else
 				lastChunk = chunkOffsets.length;
 
 			// iterate over all chunks in current group
-			for (int j = (int) firstChunks[i] - 1; j < lastChunk; j++) {
+			for (int j = (int) firstChunks[i] - 1; j < lastChunk && current < length; j++) {
 				offset = chunkOffsets[j];
 
 				// iterate over all samples in current chunk
-				for (int k = 0; k < samplesPerChunk[i]; k++) {
-					// create samples
-					timeStamp = ((double) timeOffsets[current]) / timeScale;
-					frames.add(new Frame(type, offset, sampleSizes[current], timeStamp));
+				for (int k = 0; k < samplesPerChunk[i] && current < length; k++) {
+					sampleOffsets[current] = offset;
 					offset += sampleSizes[current];
 					current++;
 				}
 			}
 		}
+		sampleCount = current;
+
+		// no need to sort: timestamps are decoding times, which are cumulative (stts deltas are unsigned), so samples
+		// are already in time order regardless of how they are laid out in chunks
+	}
+
+	/**
+	 * Returns the timestamp of the given sample, in seconds.
+	 */
+	private double getSampleTime(int sample) {
+		return ((double) sampleTimes[sample]) / mdhd.getTimeScale();
+	}
+
+	// fragments
+	int getTrackID() {
+		return tkhd.getTrackID();
+	}
+
+	long getTimeScale() {
+		return mdhd.getTimeScale();
+	}
+
+	/**
+	 * Sets the decoding time of the next sample added from a track fragment, in the track's timescale.
+	 */
+	void setNextSampleTime(long time) {
+		nextSampleTime = time;
+	}
+
+	/**
+	 * Adds a sample from a track fragment, following the previous sample.
+	 *
+	 * @param skipped the offset up to which the file has been read (without random access, the data of any sample
+	 * before it can no longer be read)
+	 */
+	void addSample(long offset, long size, long duration, long skipped) {
+		if (!read && in.hasRandomAccess()) {
+			// nobody is reading this track (yet), so there is no need to index the whole file for it
+			nextSampleTime += duration;
+			samplesSkipped = true;
+			return;
+		}
+		if (sampleCount == sampleOffsets.length && fragmentSamplesAdded && !in.hasRandomAccess()) {
+			// samples that have been read, or whose data has been skipped (e.g., if this track is not being read), can
+			// never be read again, so there is no need to keep them
+			int first = currentFrame;
+			while (first < sampleCount && sampleOffsets[first] < skipped) {
+				first++;
+			}
+			final int remaining = sampleCount - first;
+			System.arraycopy(sampleOffsets, first, sampleOffsets, 0, remaining);
+			System.arraycopy(sampleSizes, first, sampleSizes, 0, remaining);
+			System.arraycopy(sampleTimes, first, sampleTimes, 0, remaining);
+			sampleCount = remaining;
+			currentFrame = 0;
+		}
+		// the sample table is initially the movie box's, so is always copied before the first change
+		if (sampleCount == sampleOffsets.length || !fragmentSamplesAdded) {
+			final int capacity = Math.max(256, sampleCount + (sampleCount >> 1));
+			sampleOffsets = Arrays.copyOf(sampleOffsets, capacity);
+			sampleSizes = Arrays.copyOf(sampleSizes, capacity);
+			sampleTimes = Arrays.copyOf(sampleTimes, capacity);
+			fragmentSamplesAdded = true;
+		}
+		sampleOffsets[sampleCount] = offset;
+		sampleSizes[sampleCount] = size;
+		sampleTimes[sampleCount] = nextSampleTime;
+		sampleCount++;
+		nextSampleTime += duration;
+	}
+
+	/**
+	 * Discards the samples that were added from track fragments, so that the fragments can be read again from the
+	 * first one.
+	 */
+	void removeFragmentSamples() {
+		// the table may have been overwritten by fragments read from a random access point, so is always restored
+		sampleOffsets = tableOffsets;
+		sampleSizes = tableSizes;
+		sampleTimes = tableTimes;
+		fragmentSamplesAdded = false;
+		sampleCount = tableSampleCount;
+		nextSampleTime = tableEndTime;
+		currentFrame = Math.min(currentFrame, sampleCount);
+		indexStartCount = sampleCount;
+		indexStartTime = nextSampleTime;
+		samplesSkipped = false;
+	}
+
+	/**
+	 * Discards all samples, so that fragments can be read from a random access point. The movie box's samples are
+	 * restored if the fragments are later read from the first one again.
+	 *
+	 * @param time the decoding time of the next sample, in seconds
+	 */
+	void removeAllSamples(double time) {
+		sampleCount = 0;
+		nextSampleTime = Math.round(time * mdhd.getTimeScale());
+		currentFrame = 0;
+		indexStartCount = 0;
+		indexStartTime = nextSampleTime;
+		samplesSkipped = false;
+	}
+
+	/**
+	 * Called before a track is first read or seeked. If any fragment samples were skipped while nobody was reading it,
+	 * the fragments that have been read so far are indexed again for this track.
+	 */
+	private void startReading() {
+		if (read)
+			return;
+		read = true;
+		if (samplesSkipped) {
+			samplesSkipped = false;
+			sampleCount = indexStartCount;
+			nextSampleTime = indexStartTime;
+			try {
+				fragments.indexTrack(this);
+			} catch (IOException e) {
+				Logger.getLogger("MP4 API").log(Level.WARNING, "reading fragment failed: {0}", e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Indicates if there are more frames in the samples that have been read so far, without reading any more
+	 * fragments.
+	 */
+	boolean hasIndexedFrames() {
+		startReading();
+		return currentFrame < sampleCount;
+	}
+
+	/**
+	 * Returns the timestamp of the first sample that has been read so far, in seconds, or -1 if there are none.
+	 */
+	double getFirstIndexedTime() {
+		return sampleCount > 0 ? getSampleTime(0) : -1;
+	}
 
-		// frames need not to be time-ordered: sort by timestamp
-		// TODO: is it possible to add them to the specific position?
-		Collections.sort(frames);
+	/**
+	 * Returns the time at which the last sample that has been read so far ends, in seconds.
+	 */
+	double getIndexedEndTime() {
+		return ((double) nextSampleTime) / mdhd.getTimeScale();
 	}
 
 	// TODO: implement other entry descriptors
@@ -334,12 +492,23 @@ public abstract class Track {
 
 	// reading
 	/**
-	 * Indicates if there are more frames to be read in this track.
+	 * Indicates if there are more frames to be read in this track. For a fragmented file, the next fragment is read
+	 * if needed. Note that when reading several tracks of a fragmented stream without random access, frames should
+	 * be read in time order using {@link Movie#readNextFrame()}, as reading a fragment skips past the data of the
+	 * previous one.
 	 *
 	 * @return true if there is at least one more frame to read.
 	 */
 	public boolean hasMoreFrames() {
-		return currentFrame < frames.size();
+		startReading();
+		try {
+			while (currentFrame >= sampleCount && fragments != null && fragments.readNextFragment()) {
+				// keep reading fragments until one contains samples for this track
+			}
+		} catch (IOException e) {
+			Logger.getLogger("MP4 API").log(Level.WARNING, "reading fragment failed: {0}", e.toString());
+		}
+		return currentFrame < sampleCount;
 	}
 
 	/**
@@ -351,7 +520,8 @@ public abstract class Track {
 	public Frame readNextFrame() throws IOException {
 		Frame frame = null;
 		if (hasMoreFrames()) {
-			frame = frames.get(currentFrame);
+			frame = new Frame(getType(), sampleOffsets[currentFrame], sampleSizes[currentFrame],
+					getSampleTime(currentFrame));
 
 			final long diff = frame.getOffset() - in.getOffset();
 			if (diff > 0)
@@ -382,23 +552,37 @@ public abstract class Track {
 	}
 
 	/**
-	 * This method tries to seek to the frame that is nearest to the given timestamp. It returns the timestamp of the
-	 * frame it seeked to or -1 if none was found.
+	 * This method tries to seek to the frame that is nearest to the given timestamp, i.e., the last frame that starts
+	 * at or before it (or the first frame, if the timestamp is earlier than that). It returns the timestamp of the
+	 * frame it seeked to or -1 if the track has no frames.
 	 *
 	 * @param timestamp a timestamp to seek to
 	 * @return the frame's timestamp that the method seeked to
 	 */
 	public double seek(double timestamp) {
-		// find first frame > timestamp
-		Frame frame = null;
-		for (int i = 0; i < frames.size(); i++) {
-			frame = frames.get(i++);
-			if (frame.getTime() > timestamp) {
-				currentFrame = i;
-				break;
+		startReading();
+		if (fragments != null) {
+			try {
+				fragments.seek(this, timestamp);
+			} catch (IOException e) {
+				Logger.getLogger("MP4 API").log(Level.WARNING, "seeking fragments failed: {0}", e.toString());
 			}
 		}
-		return (frame == null) ? -1 : frame.getTime();
+		if (sampleCount == 0)
+			return -1;
+
+		// binary search for the first frame > timestamp
+		int low = 0;
+		int high = sampleCount;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (getSampleTime(mid) > timestamp)
+				high = mid;
+			else
+				low = mid + 1;
+		}
+		currentFrame = Math.max(0, low - 1);
+		return getSampleTime(currentFrame);
 	}
 
 	/**
@@ -408,6 +592,6 @@ public abstract class Track {
 	 * @return the next frame's timestamp
 	 */
 	double getNextTimeStamp() {
-		return frames.get(currentFrame).getTime();
+		return getSampleTime(currentFrame);
 	}
 }
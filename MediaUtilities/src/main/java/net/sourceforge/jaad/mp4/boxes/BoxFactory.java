@@ -73,6 +73,7 @@ import net.sourceforge.jaad.mp4.boxes.impl.SoundMediaHeaderBox;
 import net.sourceforge.jaad.mp4.boxes.impl.SubSampleInformationBox;
 import net.sourceforge.jaad.mp4.boxes.impl.SyncSampleBox;
 import net.sourceforge.jaad.mp4.boxes.impl.TrackExtendsBox;
+import net.sourceforge.jaad.mp4.boxes.impl.TrackFragmentBaseMediaDecodeTimeBox;
 import net.sourceforge.jaad.mp4.boxes.impl.TrackFragmentHeaderBox;
 import net.sourceforge.jaad.mp4.boxes.impl.TrackFragmentRandomAccessBox;
 import net.sourceforge.jaad.mp4.boxes.impl.TrackFragmentRunBox;
@@ -92,7 +93,6 @@ import net.sourceforge.jaad.mp4.boxes.impl.meta.GenreBox;
 import net.sourceforge.jaad.mp4.boxes.impl.meta.ID3TagBox;
 import net.sourceforge.jaad.mp4.boxes.impl.meta.ITunesMetadataBox;
 import net.sourceforge.jaad.mp4.boxes.impl.meta.ITunesMetadataMeanBox;
-import net.sourceforge.jaad.mp4.boxes.impl.meta.ITunesMetadataNameBox;
 import net.sourceforge.jaad.mp4.boxes.impl.meta.NeroMetadataTagsBox;
 import net.sourceforge.jaad.mp4.boxes.impl.meta.RatingBox;
 import net.sourceforge.jaad.mp4.boxes.impl.meta.RequirementBox;
@@ -126,9 +126,6 @@ import net.sourceforge.jaad.mp4.boxes.impl.sampleentries.codec.QCELPSpecificBox;
 import net.sourceforge.jaad.mp4.boxes.impl.sampleentries.codec.SMVSpecificBox;
 
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -148,308 +145,6 @@ public class BoxFactory implements BoxTypes {
 		h.setLevel(Level.ALL);
 		LOGGER.addHandler(h);
 	}
-	private static final Map<Long, Class<? extends BoxImpl>> BOX_CLASSES = new HashMap<>();
-	@SuppressWarnings("unused")
-	private static final Map<Long, Class<? extends BoxImpl>[]> BOX_MULTIPLE_CLASSES = new HashMap<>();
-	private static final Map<Long, String[]> PARAMETER = new HashMap<>();
-
-	static {
-		// classes
-		BOX_CLASSES.put(ADDITIONAL_METADATA_CONTAINER_BOX, BoxImpl.class);
-		BOX_CLASSES.put(APPLE_LOSSLESS_BOX, AppleLosslessBox.class);
-		BOX_CLASSES.put(BINARY_XML_BOX, BinaryXMLBox.class);
-		BOX_CLASSES.put(BIT_RATE_BOX, BitRateBox.class);
-		BOX_CLASSES.put(CHAPTER_BOX, ChapterBox.class);
-		BOX_CLASSES.put(CHUNK_OFFSET_BOX, ChunkOffsetBox.class);
-		BOX_CLASSES.put(CHUNK_LARGE_OFFSET_BOX, ChunkOffsetBox.class);
-		BOX_CLASSES.put(CLEAN_APERTURE_BOX, CleanApertureBox.class);
-		BOX_CLASSES.put(COMPACT_SAMPLE_SIZE_BOX, SampleSizeBox.class);
-		BOX_CLASSES.put(COMPOSITION_TIME_TO_SAMPLE_BOX, CompositionTimeToSampleBox.class);
-		BOX_CLASSES.put(COPYRIGHT_BOX, CopyrightBox.class);
-		BOX_CLASSES.put(DATA_ENTRY_URN_BOX, DataEntryUrnBox.class);
-		BOX_CLASSES.put(DATA_ENTRY_URL_BOX, DataEntryUrlBox.class);
-		BOX_CLASSES.put(DATA_INFORMATION_BOX, BoxImpl.class);
-		BOX_CLASSES.put(DATA_REFERENCE_BOX, DataReferenceBox.class);
-		BOX_CLASSES.put(DECODING_TIME_TO_SAMPLE_BOX, DecodingTimeToSampleBox.class);
-		BOX_CLASSES.put(DEGRADATION_PRIORITY_BOX, DegradationPriorityBox.class);
-		BOX_CLASSES.put(EDIT_BOX, BoxImpl.class);
-		BOX_CLASSES.put(EDIT_LIST_BOX, EditListBox.class);
-		BOX_CLASSES.put(FD_ITEM_INFORMATION_BOX, FDItemInformationBox.class);
-		BOX_CLASSES.put(FD_SESSION_GROUP_BOX, FDSessionGroupBox.class);
-		BOX_CLASSES.put(FEC_RESERVOIR_BOX, FECReservoirBox.class);
-		BOX_CLASSES.put(FILE_PARTITION_BOX, FilePartitionBox.class);
-		BOX_CLASSES.put(FILE_TYPE_BOX, FileTypeBox.class);
-		BOX_CLASSES.put(FREE_SPACE_BOX, FreeSpaceBox.class);
-		BOX_CLASSES.put(GROUP_ID_TO_NAME_BOX, GroupIDToNameBox.class);
-		BOX_CLASSES.put(HANDLER_BOX, HandlerBox.class);
-		BOX_CLASSES.put(HINT_MEDIA_HEADER_BOX, HintMediaHeaderBox.class);
-		BOX_CLASSES.put(IPMP_CONTROL_BOX, IPMPControlBox.class);
-		BOX_CLASSES.put(IPMP_INFO_BOX, IPMPInfoBox.class);
-		BOX_CLASSES.put(ITEM_INFORMATION_BOX, ItemInformationBox.class);
-		BOX_CLASSES.put(ITEM_INFORMATION_ENTRY, ItemInformationEntry.class);
-		BOX_CLASSES.put(ITEM_LOCATION_BOX, ItemLocationBox.class);
-		BOX_CLASSES.put(ITEM_PROTECTION_BOX, ItemProtectionBox.class);
-		BOX_CLASSES.put(MEDIA_BOX, BoxImpl.class);
-		BOX_CLASSES.put(MEDIA_DATA_BOX, MediaDataBox.class);
-		BOX_CLASSES.put(MEDIA_HEADER_BOX, MediaHeaderBox.class);
-		BOX_CLASSES.put(MEDIA_INFORMATION_BOX, BoxImpl.class);
-		BOX_CLASSES.put(META_BOX, MetaBox.class);
-		BOX_CLASSES.put(META_BOX_RELATION_BOX, MetaBoxRelationBox.class);
-		BOX_CLASSES.put(MOVIE_BOX, BoxImpl.class);
-		BOX_CLASSES.put(MOVIE_EXTENDS_BOX, BoxImpl.class);
-		BOX_CLASSES.put(MOVIE_EXTENDS_HEADER_BOX, MovieExtendsHeaderBox.class);
-		BOX_CLASSES.put(MOVIE_FRAGMENT_BOX, BoxImpl.class);
-		BOX_CLASSES.put(MOVIE_FRAGMENT_HEADER_BOX, MovieFragmentHeaderBox.class);
-		BOX_CLASSES.put(MOVIE_FRAGMENT_RANDOM_ACCESS_BOX, BoxImpl.class);
-		BOX_CLASSES.put(MOVIE_FRAGMENT_RANDOM_ACCESS_OFFSET_BOX, MovieFragmentRandomAccessOffsetBox.class);
-		BOX_CLASSES.put(MOVIE_HEADER_BOX, MovieHeaderBox.class);
-		BOX_CLASSES.put(NERO_METADATA_TAGS_BOX, NeroMetadataTagsBox.class);
-		BOX_CLASSES.put(NULL_MEDIA_HEADER_BOX, FullBox.class);
-		BOX_CLASSES.put(ORIGINAL_FORMAT_BOX, OriginalFormatBox.class);
-		BOX_CLASSES.put(PADDING_BIT_BOX, PaddingBitBox.class);
-		BOX_CLASSES.put(PARTITION_ENTRY, BoxImpl.class);
-		BOX_CLASSES.put(PIXEL_ASPECT_RATIO_BOX, PixelAspectRatioBox.class);
-		BOX_CLASSES.put(PRIMARY_ITEM_BOX, PrimaryItemBox.class);
-		BOX_CLASSES.put(PROGRESSIVE_DOWNLOAD_INFORMATION_BOX, ProgressiveDownloadInformationBox.class);
-		BOX_CLASSES.put(PROTECTION_SCHEME_INFORMATION_BOX, BoxImpl.class);
-		BOX_CLASSES.put(SAMPLE_DEPENDENCY_TYPE_BOX, SampleDependencyTypeBox.class);
-		BOX_CLASSES.put(SAMPLE_DESCRIPTION_BOX, SampleDescriptionBox.class);
-		BOX_CLASSES.put(SAMPLE_GROUP_DESCRIPTION_BOX, SampleGroupDescriptionBox.class);
-		BOX_CLASSES.put(SAMPLE_SCALE_BOX, SampleScaleBox.class);
-		BOX_CLASSES.put(SAMPLE_SIZE_BOX, SampleSizeBox.class);
-		BOX_CLASSES.put(SAMPLE_TABLE_BOX, BoxImpl.class);
-		BOX_CLASSES.put(SAMPLE_TO_CHUNK_BOX, SampleToChunkBox.class);
-		BOX_CLASSES.put(SAMPLE_TO_GROUP_BOX, SampleToGroupBox.class);
-		BOX_CLASSES.put(SCHEME_TYPE_BOX, SchemeTypeBox.class);
-		BOX_CLASSES.put(SCHEME_INFORMATION_BOX, BoxImpl.class);
-		BOX_CLASSES.put(SHADOW_SYNC_SAMPLE_BOX, ShadowSyncSampleBox.class);
-		BOX_CLASSES.put(SKIP_BOX, FreeSpaceBox.class);
-		BOX_CLASSES.put(SOUND_MEDIA_HEADER_BOX, SoundMediaHeaderBox.class);
-		BOX_CLASSES.put(SUB_SAMPLE_INFORMATION_BOX, SubSampleInformationBox.class);
-		BOX_CLASSES.put(SYNC_SAMPLE_BOX, SyncSampleBox.class);
-		BOX_CLASSES.put(TRACK_BOX, BoxImpl.class);
-		BOX_CLASSES.put(TRACK_EXTENDS_BOX, TrackExtendsBox.class);
-		BOX_CLASSES.put(TRACK_FRAGMENT_BOX, BoxImpl.class);
-		BOX_CLASSES.put(TRACK_FRAGMENT_HEADER_BOX, TrackFragmentHeaderBox.class);
-		BOX_CLASSES.put(TRACK_FRAGMENT_RANDOM_ACCESS_BOX, TrackFragmentRandomAccessBox.class);
-		BOX_CLASSES.put(TRACK_FRAGMENT_RUN_BOX, TrackFragmentRunBox.class);
-		BOX_CLASSES.put(TRACK_HEADER_BOX, TrackHeaderBox.class);
-		BOX_CLASSES.put(TRACK_REFERENCE_BOX, TrackReferenceBox.class);
-		BOX_CLASSES.put(TRACK_SELECTION_BOX, TrackSelectionBox.class);
-		BOX_CLASSES.put(USER_DATA_BOX, BoxImpl.class);
-		BOX_CLASSES.put(VIDEO_MEDIA_HEADER_BOX, VideoMediaHeaderBox.class);
-		BOX_CLASSES.put(WIDE_BOX, FreeSpaceBox.class);
-		BOX_CLASSES.put(XML_BOX, XMLBox.class);
-		BOX_CLASSES.put(OBJECT_DESCRIPTOR_BOX, ObjectDescriptorBox.class);
-		BOX_CLASSES.put(SAMPLE_DEPENDENCY_BOX, SampleDependencyBox.class);
-		BOX_CLASSES.put(ID3_TAG_BOX, ID3TagBox.class);
-		BOX_CLASSES.put(ITUNES_META_LIST_BOX, BoxImpl.class);
-		BOX_CLASSES.put(CUSTOM_ITUNES_METADATA_BOX, BoxImpl.class);
-		BOX_CLASSES.put(ITUNES_METADATA_BOX, ITunesMetadataBox.class);
-		BOX_CLASSES.put(ITUNES_METADATA_NAME_BOX, ITunesMetadataNameBox.class);
-		BOX_CLASSES.put(ITUNES_METADATA_MEAN_BOX, ITunesMetadataMeanBox.class);
-		BOX_CLASSES.put(ALBUM_ARTIST_NAME_BOX, BoxImpl.class);
-		BOX_CLASSES.put(ALBUM_ARTIST_SORT_BOX, BoxImpl.class);
-		BOX_CLASSES.put(ALBUM_NAME_BOX, BoxImpl.class);
-		BOX_CLASSES.put(ALBUM_SORT_BOX, BoxImpl.class);
-		BOX_CLASSES.put(ARTIST_NAME_BOX, BoxImpl.class);
-		BOX_CLASSES.put(ARTIST_SORT_BOX, BoxImpl.class);
-		BOX_CLASSES.put(CATEGORY_BOX, BoxImpl.class);
-		BOX_CLASSES.put(COMMENTS_BOX, BoxImpl.class);
-		BOX_CLASSES.put(COMPILATION_PART_BOX, BoxImpl.class);
-		BOX_CLASSES.put(COMPOSER_NAME_BOX, BoxImpl.class);
-		BOX_CLASSES.put(COMPOSER_SORT_BOX, BoxImpl.class);
-		BOX_CLASSES.put(COVER_BOX, BoxImpl.class);
-		BOX_CLASSES.put(CUSTOM_GENRE_BOX, BoxImpl.class);
-		BOX_CLASSES.put(DESCRIPTION_BOX, BoxImpl.class);
-		BOX_CLASSES.put(DISK_NUMBER_BOX, BoxImpl.class);
-		BOX_CLASSES.put(ENCODER_NAME_BOX, EncoderBox.class);
-		BOX_CLASSES.put(ENCODER_TOOL_BOX, EncoderBox.class);
-		BOX_CLASSES.put(EPISODE_GLOBAL_UNIQUE_ID_BOX, BoxImpl.class);
-		BOX_CLASSES.put(GAPLESS_PLAYBACK_BOX, BoxImpl.class);
-		BOX_CLASSES.put(GENRE_BOX, GenreBox.class);
-		BOX_CLASSES.put(GROUPING_BOX, BoxImpl.class);
-		BOX_CLASSES.put(HD_VIDEO_BOX, BoxImpl.class);
-		BOX_CLASSES.put(ITUNES_PURCHASE_ACCOUNT_BOX, BoxImpl.class);
-		BOX_CLASSES.put(ITUNES_ACCOUNT_TYPE_BOX, BoxImpl.class);
-		BOX_CLASSES.put(ITUNES_CATALOGUE_ID_BOX, BoxImpl.class);
-		BOX_CLASSES.put(ITUNES_COUNTRY_CODE_BOX, BoxImpl.class);
-		BOX_CLASSES.put(KEYWORD_BOX, BoxImpl.class);
-		BOX_CLASSES.put(LONG_DESCRIPTION_BOX, BoxImpl.class);
-		BOX_CLASSES.put(LYRICS_BOX, BoxImpl.class);
-		BOX_CLASSES.put(META_TYPE_BOX, BoxImpl.class);
-		BOX_CLASSES.put(PODCAST_BOX, BoxImpl.class);
-		BOX_CLASSES.put(PODCAST_URL_BOX, BoxImpl.class);
-		BOX_CLASSES.put(PURCHASE_DATE_BOX, BoxImpl.class);
-		BOX_CLASSES.put(RATING_BOX, RatingBox.class);
-		BOX_CLASSES.put(RELEASE_DATE_BOX, BoxImpl.class);
-		BOX_CLASSES.put(REQUIREMENT_BOX, RequirementBox.class);
-		BOX_CLASSES.put(TEMPO_BOX, BoxImpl.class);
-		BOX_CLASSES.put(TRACK_NAME_BOX, BoxImpl.class);
-		BOX_CLASSES.put(TRACK_NUMBER_BOX, BoxImpl.class);
-		BOX_CLASSES.put(TRACK_SORT_BOX, BoxImpl.class);
-		BOX_CLASSES.put(TV_EPISODE_BOX, BoxImpl.class);
-		BOX_CLASSES.put(TV_EPISODE_NUMBER_BOX, BoxImpl.class);
-		BOX_CLASSES.put(TV_NETWORK_NAME_BOX, BoxImpl.class);
-		BOX_CLASSES.put(TV_SEASON_BOX, BoxImpl.class);
-		BOX_CLASSES.put(TV_SHOW_BOX, BoxImpl.class);
-		BOX_CLASSES.put(TV_SHOW_SORT_BOX, BoxImpl.class);
-		BOX_CLASSES.put(THREE_GPP_ALBUM_BOX, ThreeGPPAlbumBox.class);
-		BOX_CLASSES.put(THREE_GPP_AUTHOR_BOX, ThreeGPPMetadataBox.class);
-		BOX_CLASSES.put(THREE_GPP_CLASSIFICATION_BOX, ThreeGPPMetadataBox.class);
-		BOX_CLASSES.put(THREE_GPP_DESCRIPTION_BOX, ThreeGPPMetadataBox.class);
-		BOX_CLASSES.put(THREE_GPP_KEYWORDS_BOX, ThreeGPPKeywordsBox.class);
-		BOX_CLASSES.put(THREE_GPP_LOCATION_INFORMATION_BOX, ThreeGPPLocationBox.class);
-		BOX_CLASSES.put(THREE_GPP_PERFORMER_BOX, ThreeGPPMetadataBox.class);
-		BOX_CLASSES.put(THREE_GPP_RECORDING_YEAR_BOX, ThreeGPPRecordingYearBox.class);
-		BOX_CLASSES.put(THREE_GPP_TITLE_BOX, ThreeGPPMetadataBox.class);
-		BOX_CLASSES.put(GOOGLE_HOST_HEADER_BOX, BoxImpl.class);
-		BOX_CLASSES.put(GOOGLE_PING_MESSAGE_BOX, BoxImpl.class);
-		BOX_CLASSES.put(GOOGLE_PING_URL_BOX, BoxImpl.class);
-		BOX_CLASSES.put(GOOGLE_SOURCE_DATA_BOX, BoxImpl.class);
-		BOX_CLASSES.put(GOOGLE_START_TIME_BOX, BoxImpl.class);
-		BOX_CLASSES.put(GOOGLE_TRACK_DURATION_BOX, BoxImpl.class);
-		BOX_CLASSES.put(MP4V_SAMPLE_ENTRY, VideoSampleEntry.class);
-		BOX_CLASSES.put(H263_SAMPLE_ENTRY, VideoSampleEntry.class);
-		BOX_CLASSES.put(ENCRYPTED_VIDEO_SAMPLE_ENTRY, VideoSampleEntry.class);
-		BOX_CLASSES.put(AVC_SAMPLE_ENTRY, VideoSampleEntry.class);
-		BOX_CLASSES.put(MP4A_SAMPLE_ENTRY, AudioSampleEntry.class);
-		BOX_CLASSES.put(AC3_SAMPLE_ENTRY, AudioSampleEntry.class);
-		BOX_CLASSES.put(EAC3_SAMPLE_ENTRY, AudioSampleEntry.class);
-		BOX_CLASSES.put(DRMS_SAMPLE_ENTRY, AudioSampleEntry.class);
-		BOX_CLASSES.put(AMR_SAMPLE_ENTRY, AudioSampleEntry.class);
-		BOX_CLASSES.put(AMR_WB_SAMPLE_ENTRY, AudioSampleEntry.class);
-		BOX_CLASSES.put(EVRC_SAMPLE_ENTRY, AudioSampleEntry.class);
-		BOX_CLASSES.put(QCELP_SAMPLE_ENTRY, AudioSampleEntry.class);
-		BOX_CLASSES.put(SMV_SAMPLE_ENTRY, AudioSampleEntry.class);
-		BOX_CLASSES.put(ENCRYPTED_AUDIO_SAMPLE_ENTRY, AudioSampleEntry.class);
-		BOX_CLASSES.put(MPEG_SAMPLE_ENTRY, MPEGSampleEntry.class);
-		BOX_CLASSES.put(TEXT_METADATA_SAMPLE_ENTRY, TextMetadataSampleEntry.class);
-		BOX_CLASSES.put(XML_METADATA_SAMPLE_ENTRY, XMLMetadataSampleEntry.class);
-		BOX_CLASSES.put(RTP_HINT_SAMPLE_ENTRY, RTPHintSampleEntry.class);
-		BOX_CLASSES.put(FD_HINT_SAMPLE_ENTRY, FDHintSampleEntry.class);
-		BOX_CLASSES.put(ESD_BOX, ESDBox.class);
-		BOX_CLASSES.put(H263_SPECIFIC_BOX, H263SpecificBox.class);
-		BOX_CLASSES.put(AVC_SPECIFIC_BOX, AVCSpecificBox.class);
-		BOX_CLASSES.put(AC3_SPECIFIC_BOX, AC3SpecificBox.class);
-		BOX_CLASSES.put(EAC3_SPECIFIC_BOX, EAC3SpecificBox.class);
-		BOX_CLASSES.put(AMR_SPECIFIC_BOX, AMRSpecificBox.class);
-		BOX_CLASSES.put(EVRC_SPECIFIC_BOX, EVRCSpecificBox.class);
-		BOX_CLASSES.put(QCELP_SPECIFIC_BOX, QCELPSpecificBox.class);
-		BOX_CLASSES.put(SMV_SPECIFIC_BOX, SMVSpecificBox.class);
-		BOX_CLASSES.put(OMA_ACCESS_UNIT_FORMAT_BOX, OMAAccessUnitFormatBox.class);
-		BOX_CLASSES.put(OMA_COMMON_HEADERS_BOX, OMACommonHeadersBox.class);
-		BOX_CLASSES.put(OMA_CONTENT_ID_BOX, OMAContentIDBox.class);
-		BOX_CLASSES.put(OMA_CONTENT_OBJECT_BOX, OMAContentObjectBox.class);
-		BOX_CLASSES.put(OMA_COVER_URI_BOX, OMAURLBox.class);
-		BOX_CLASSES.put(OMA_DISCRETE_MEDIA_HEADERS_BOX, OMADiscreteMediaHeadersBox.class);
-		BOX_CLASSES.put(OMA_DRM_CONTAINER_BOX, FullBox.class);
-		BOX_CLASSES.put(OMA_ICON_URI_BOX, OMAURLBox.class);
-		BOX_CLASSES.put(OMA_INFO_URL_BOX, OMAURLBox.class);
-		BOX_CLASSES.put(OMA_LYRICS_URI_BOX, OMAURLBox.class);
-		BOX_CLASSES.put(OMA_MUTABLE_DRM_INFORMATION_BOX, BoxImpl.class);
-		BOX_CLASSES.put(OMA_KEY_MANAGEMENT_BOX, FullBox.class);
-		BOX_CLASSES.put(OMA_RIGHTS_OBJECT_BOX, OMARightsObjectBox.class);
-		BOX_CLASSES.put(OMA_TRANSACTION_TRACKING_BOX, OMATransactionTrackingBox.class);
-		BOX_CLASSES.put(FAIRPLAY_USER_ID_BOX, FairPlayDataBox.class);
-		BOX_CLASSES.put(FAIRPLAY_USER_NAME_BOX, FairPlayDataBox.class);
-		BOX_CLASSES.put(FAIRPLAY_USER_KEY_BOX, FairPlayDataBox.class);
-		BOX_CLASSES.put(FAIRPLAY_IV_BOX, FairPlayDataBox.class);
-		BOX_CLASSES.put(FAIRPLAY_PRIVATE_KEY_BOX, FairPlayDataBox.class);
-		// parameter
-		PARAMETER.put(ADDITIONAL_METADATA_CONTAINER_BOX, new String[] { "Additional Metadata Container Box" });
-		PARAMETER.put(DATA_INFORMATION_BOX, new String[] { "Data Information Box" });
-		PARAMETER.put(EDIT_BOX, new String[] { "Edit Box" });
-		PARAMETER.put(MEDIA_BOX, new String[] { "Media Box" });
-		PARAMETER.put(MEDIA_INFORMATION_BOX, new String[] { "Media Information Box" });
-		PARAMETER.put(MOVIE_BOX, new String[] { "Movie Box" });
-		PARAMETER.put(MOVIE_EXTENDS_BOX, new String[] { "Movie Extends Box" });
-		PARAMETER.put(MOVIE_FRAGMENT_BOX, new String[] { "Movie Fragment Box" });
-		PARAMETER.put(MOVIE_FRAGMENT_RANDOM_ACCESS_BOX, new String[] { "Movie Fragment Random Access Box" });
-		PARAMETER.put(NULL_MEDIA_HEADER_BOX, new String[] { "Null Media Header Box" });
-		PARAMETER.put(PARTITION_ENTRY, new String[] { "Partition Entry" });
-		PARAMETER.put(PROTECTION_SCHEME_INFORMATION_BOX, new String[] { "Protection Scheme Information Box" });
-		PARAMETER.put(SAMPLE_TABLE_BOX, new String[] { "Sample Table Box" });
-		PARAMETER.put(SCHEME_INFORMATION_BOX, new String[] { "Scheme Information Box" });
-		PARAMETER.put(TRACK_BOX, new String[] { "Track Box" });
-		PARAMETER.put(TRACK_FRAGMENT_BOX, new String[] { "Track Fragment Box" });
-		PARAMETER.put(USER_DATA_BOX, new String[] { "User Data Box" });
-		PARAMETER.put(ITUNES_META_LIST_BOX, new String[] { "iTunes Meta List Box" });
-		PARAMETER.put(CUSTOM_ITUNES_METADATA_BOX, new String[] { "Custom iTunes Metadata Box" });
-		PARAMETER.put(ALBUM_ARTIST_NAME_BOX, new String[] { "Album Artist Name Box" });
-		PARAMETER.put(ALBUM_ARTIST_SORT_BOX, new String[] { "Album Artist Sort Box" });
-		PARAMETER.put(ALBUM_NAME_BOX, new String[] { "Album Name Box" });
-		PARAMETER.put(ALBUM_SORT_BOX, new String[] { "Album Sort Box" });
-		PARAMETER.put(ARTIST_NAME_BOX, new String[] { "Artist Name Box" });
-		PARAMETER.put(ARTIST_SORT_BOX, new String[] { "Artist Sort Box" });
-		PARAMETER.put(CATEGORY_BOX, new String[] { "Category Box" });
-		PARAMETER.put(COMMENTS_BOX, new String[] { "Comments Box" });
-		PARAMETER.put(COMPILATION_PART_BOX, new String[] { "Compilation Part Box" });
-		PARAMETER.put(COMPOSER_NAME_BOX, new String[] { "Composer Name Box" });
-		PARAMETER.put(COMPOSER_SORT_BOX, new String[] { "Composer Sort Box" });
-		PARAMETER.put(COVER_BOX, new String[] { "Cover Box" });
-		PARAMETER.put(CUSTOM_GENRE_BOX, new String[] { "Custom Genre Box" });
-		PARAMETER.put(DESCRIPTION_BOX, new String[] { "Description Cover Box" });
-		PARAMETER.put(DISK_NUMBER_BOX, new String[] { "Disk Number Box" });
-		PARAMETER.put(EPISODE_GLOBAL_UNIQUE_ID_BOX, new String[] { "Episode Global Unique ID Box" });
-		PARAMETER.put(GAPLESS_PLAYBACK_BOX, new String[] { "Gapless Playback Box" });
-		PARAMETER.put(GROUPING_BOX, new String[] { "Grouping Box" });
-		PARAMETER.put(HD_VIDEO_BOX, new String[] { "HD Video Box" });
-		PARAMETER.put(ITUNES_PURCHASE_ACCOUNT_BOX, new String[] { "iTunes Purchase Account Box" });
-		PARAMETER.put(ITUNES_ACCOUNT_TYPE_BOX, new String[] { "iTunes Account Type Box" });
-		PARAMETER.put(ITUNES_CATALOGUE_ID_BOX, new String[] { "iTunes Catalogue ID Box" });
-		PARAMETER.put(ITUNES_COUNTRY_CODE_BOX, new String[] { "iTunes Country Code Box" });
-		PARAMETER.put(KEYWORD_BOX, new String[] { "Keyword Box" });
-		PARAMETER.put(LONG_DESCRIPTION_BOX, new String[] { "Long Description Box" });
-		PARAMETER.put(LYRICS_BOX, new String[] { "Lyrics Box" });
-		PARAMETER.put(META_TYPE_BOX, new String[] { "Meta Type Box" });
-		PARAMETER.put(PODCAST_BOX, new String[] { "Podcast Box" });
-		PARAMETER.put(PODCAST_URL_BOX, new String[] { "Podcast URL Box" });
-		PARAMETER.put(PURCHASE_DATE_BOX, new String[] { "Purchase Date Box" });
-		PARAMETER.put(RELEASE_DATE_BOX, new String[] { "Release Date Box" });
-		PARAMETER.put(TEMPO_BOX, new String[] { "Tempo Box" });
-		PARAMETER.put(TRACK_NAME_BOX, new String[] { "Track Name Box" });
-		PARAMETER.put(TRACK_NUMBER_BOX, new String[] { "Track Number Box" });
-		PARAMETER.put(TRACK_SORT_BOX, new String[] { "Track Sort Box" });
-		PARAMETER.put(TV_EPISODE_BOX, new String[] { "TV Episode Box" });
-		PARAMETER.put(TV_EPISODE_NUMBER_BOX, new String[] { "TV Episode Number Box" });
-		PARAMETER.put(TV_NETWORK_NAME_BOX, new String[] { "TV Network Name Box" });
-		PARAMETER.put(TV_SEASON_BOX, new String[] { "TV Season Box" });
-		PARAMETER.put(TV_SHOW_BOX, new String[] { "TV Show Box" });
-		PARAMETER.put(TV_SHOW_SORT_BOX, new String[] { "TV Show Sort Box" });
-		PARAMETER.put(THREE_GPP_AUTHOR_BOX, new String[] { "3GPP Author Box" });
-		PARAMETER.put(THREE_GPP_CLASSIFICATION_BOX, new String[] { "3GPP Classification Box" });
-		PARAMETER.put(THREE_GPP_DESCRIPTION_BOX, new String[] { "3GPP Description Box" });
-		PARAMETER.put(THREE_GPP_PERFORMER_BOX, new String[] { "3GPP Performer Box" });
-		PARAMETER.put(THREE_GPP_TITLE_BOX, new String[] { "3GPP Title Box" });
-		PARAMETER.put(GOOGLE_HOST_HEADER_BOX, new String[] { "Google Host Header Box" });
-		PARAMETER.put(GOOGLE_PING_MESSAGE_BOX, new String[] { "Google Ping Message Box" });
-		PARAMETER.put(GOOGLE_PING_URL_BOX, new String[] { "Google Ping URL Box" });
-		PARAMETER.put(GOOGLE_SOURCE_DATA_BOX, new String[] { "Google Source Data Box" });
-		PARAMETER.put(GOOGLE_START_TIME_BOX, new String[] { "Google Start Time Box" });
-		PARAMETER.put(GOOGLE_TRACK_DURATION_BOX, new String[] { "Google Track Duration Box" });
-		PARAMETER.put(MP4V_SAMPLE_ENTRY, new String[] { "MPEG-4 Video Sample Entry" });
-		PARAMETER.put(H263_SAMPLE_ENTRY, new String[] { "H263 Video Sample Entry" });
-		PARAMETER.put(ENCRYPTED_VIDEO_SAMPLE_ENTRY, new String[] { "Encrypted Video Sample Entry" });
-		PARAMETER.put(AVC_SAMPLE_ENTRY, new String[] { "AVC Video Sample Entry" });
-		PARAMETER.put(MP4A_SAMPLE_ENTRY, new String[] { "MPEG- 4Audio Sample Entry" });
-		PARAMETER.put(AC3_SAMPLE_ENTRY, new String[] { "AC-3 Audio Sample Entry" });
-		PARAMETER.put(EAC3_SAMPLE_ENTRY, new String[] { "Extended AC-3 Audio Sample Entry" });
-		PARAMETER.put(DRMS_SAMPLE_ENTRY, new String[] { "DRMS Audio Sample Entry" });
-		PARAMETER.put(AMR_SAMPLE_ENTRY, new String[] { "AMR Audio Sample Entry" });
-		PARAMETER.put(AMR_WB_SAMPLE_ENTRY, new String[] { "AMR-Wideband Audio Sample Entry" });
-		PARAMETER.put(EVRC_SAMPLE_ENTRY, new String[] { "EVC Audio Sample Entry" });
-		PARAMETER.put(QCELP_SAMPLE_ENTRY, new String[] { "QCELP Audio Sample Entry" });
-		PARAMETER.put(SMV_SAMPLE_ENTRY, new String[] { "SMV Audio Sample Entry" });
-		PARAMETER.put(ENCRYPTED_AUDIO_SAMPLE_ENTRY, new String[] { "Encrypted Audio Sample Entry" });
-		PARAMETER.put(OMA_COVER_URI_BOX, new String[] { "OMA DRM Cover URI Box" });
-		PARAMETER.put(OMA_DRM_CONTAINER_BOX, new String[] { "OMA DRM Container Box" });
-		PARAMETER.put(OMA_ICON_URI_BOX, new String[] { "OMA DRM Icon URI Box" });
-		PARAMETER.put(OMA_INFO_URL_BOX, new String[] { "OMA DRM Info URL Box" });
-		PARAMETER.put(OMA_LYRICS_URI_BOX, new String[] { "OMA DRM Lyrics URI Box" });
-		PARAMETER.put(OMA_MUTABLE_DRM_INFORMATION_BOX, new String[] { "OMA DRM Mutable DRM Information Box" });
-	}
-
 	public static Box parseBox(Box parent, MP4InputStream in) throws IOException {
 		final long offset = in.getOffset();
 
@@ -464,7 +159,8 @@ public class BoxFactory implements BoxTypes {
 		// TODO: is there a better way to deal with this?
 		if (type == 1835365473 || type == 1969517665) { // or: "meta".equals(typeToString(type)) // (& "udta")
 			long skipBytes = size - 8;
-			Logger.getLogger("MP4 Boxes").finest("Skipping bad " + typeToString(type) + " box with size " + skipBytes);
+			if (LOGGER.isLoggable(Level.FINEST))
+				LOGGER.finest("Skipping bad " + typeToString(type) + " box with size " + skipBytes);
 			in.skipBytes(skipBytes);
 			BoxImpl badMetaBox = new UnknownBox();
 			badMetaBox.setParams(parent, size, type, offset);
@@ -479,7 +175,8 @@ public class BoxFactory implements BoxTypes {
 						+ ": box too large for parent");
 		}
 
-		Logger.getLogger("MP4 Boxes").finest(typeToString(type));
+		if (LOGGER.isLoggable(Level.FINEST))
+			LOGGER.finest(typeToString(type));
 		final BoxImpl box = forType(type, in.getOffset());
 		box.setParams(parent, size, type, offset);
 		box.decode(in);
@@ -492,10 +189,11 @@ public class BoxFactory implements BoxTypes {
 		// check bytes left
 		final long left = (box.getOffset() + box.getSize()) - in.getOffset();
 		if (left > 0 && !(box instanceof MediaDataBox) && !(box instanceof UnknownBox)
-				&& !(box instanceof FreeSpaceBox))
-			LOGGER.log(Level.INFO, "bytes left after reading box {0}: left: {1}, offset: {2}", new Object[] {
-					typeToString(type), left, in.getOffset() });
-		else if (left < 0)
+				&& !(box instanceof FreeSpaceBox)) {
+			if (LOGGER.isLoggable(Level.INFO))
+				LOGGER.log(Level.INFO, "bytes left after reading box {0}: left: {1}, offset: {2}", new Object[] {
+						typeToString(type), left, in.getOffset() });
+		} else if (left < 0)
 			LOGGER.log(Level.SEVERE, "box {0} overread: {1} bytes, offset: {2}", new Object[] { typeToString(type),
 					-left, in.getOffset() });
 
@@ -505,8 +203,15 @@ public class BoxFactory implements BoxTypes {
 		return box;
 	}
 
-	// TODO: remove usages
-	public static Box parseBox(MP4InputStream in, Class<? extends BoxImpl> boxClass) throws IOException {
+	/**
+	 * Parses a box whose class is given by its context rather than by its type, such as a sample group description
+	 * entry, into a new instance created by the caller.
+	 *
+	 * @param in the input stream
+	 * @param box a new box to decode
+	 * @return the box
+	 */
+	public static Box parseBox(MP4InputStream in, BoxImpl box) throws IOException {
 		final long offset = in.getOffset();
 
 		long size = in.readBytes(4);
@@ -516,52 +221,415 @@ public class BoxFactory implements BoxTypes {
 		if (type == EXTENDED_TYPE)
 			in.skipBytes(16);
 
-		BoxImpl box = null;
-		try {
-			box = boxClass.newInstance();
-		} catch (InstantiationException e) {
-		} catch (IllegalAccessException e) {
-		}
-
-		if (box != null) {
-			box.setParams(null, size, type, offset);
-			box.decode(in);
-			final long left = (box.getOffset() + box.getSize()) - in.getOffset();
-			in.skipBytes(left);
-		}
+		box.setParams(null, size, type, offset);
+		box.decode(in);
+		final long left = (box.getOffset() + box.getSize()) - in.getOffset();
+		in.skipBytes(left);
 		return box;
 	}
 
+	// a switch on the type rather than a map of classes, to avoid boxing the type and instantiating boxes by reflection
 	private static BoxImpl forType(long type, long offset) {
-		BoxImpl box = null;
-
-		final Long l = Long.valueOf(type);
-		if (BOX_CLASSES.containsKey(l)) {
-			Class<? extends BoxImpl> cl = BOX_CLASSES.get(l);
-			if (PARAMETER.containsKey(l)) {
-				final String[] s = PARAMETER.get(l);
-				try {
-					Constructor<? extends BoxImpl> con = cl.getConstructor(String.class);
-					box = con.newInstance(s[0]);
-				} catch (Exception e) {
-					LOGGER.log(Level.SEVERE, "BoxFactory: could not call constructor for " + typeToString(type), e);
-					box = new UnknownBox();
-				}
-			} else {
-				try {
-					box = cl.newInstance();
-				} catch (Exception e) {
-					LOGGER.log(Level.SEVERE, "BoxFactory: could not instantiate box " + typeToString(type), e);
-				}
-			}
+		switch ((int) type) {
+			case (int) ADDITIONAL_METADATA_CONTAINER_BOX:
+				return new BoxImpl("Additional Metadata Container Box");
+			case (int) APPLE_LOSSLESS_BOX:
+				return new AppleLosslessBox();
+			case (int) BINARY_XML_BOX:
+				return new BinaryXMLBox();
+			case (int) BIT_RATE_BOX:
+				return new BitRateBox();
+			case (int) CHAPTER_BOX:
+				return new ChapterBox();
+			case (int) CHUNK_OFFSET_BOX:
+			case (int) CHUNK_LARGE_OFFSET_BOX:
+				return new ChunkOffsetBox();
+			case (int) CLEAN_APERTURE_BOX:
+				return new CleanApertureBox();
+			case (int) COMPACT_SAMPLE_SIZE_BOX:
+			case (int) SAMPLE_SIZE_BOX:
+				return new SampleSizeBox();
+			case (int) COMPOSITION_TIME_TO_SAMPLE_BOX:
+				return new CompositionTimeToSampleBox();
+			case (int) COPYRIGHT_BOX:
+				return new CopyrightBox();
+			case (int) DATA_ENTRY_URN_BOX:
+				return new DataEntryUrnBox();
+			case (int) DATA_ENTRY_URL_BOX:
+				return new DataEntryUrlBox();
+			case (int) DATA_INFORMATION_BOX:
+				return new BoxImpl("Data Information Box");
+			case (int) DATA_REFERENCE_BOX:
+				return new DataReferenceBox();
+			case (int) DECODING_TIME_TO_SAMPLE_BOX:
+				return new DecodingTimeToSampleBox();
+			case (int) DEGRADATION_PRIORITY_BOX:
+				return new DegradationPriorityBox();
+			case (int) EDIT_BOX:
+				return new BoxImpl("Edit Box");
+			case (int) EDIT_LIST_BOX:
+				return new EditListBox();
+			case (int) FD_ITEM_INFORMATION_BOX:
+				return new FDItemInformationBox();
+			case (int) FD_SESSION_GROUP_BOX:
+				return new FDSessionGroupBox();
+			case (int) FEC_RESERVOIR_BOX:
+				return new FECReservoirBox();
+			case (int) FILE_PARTITION_BOX:
+				return new FilePartitionBox();
+			case (int) FILE_TYPE_BOX:
+				return new FileTypeBox();
+			case (int) FREE_SPACE_BOX:
+			case (int) SKIP_BOX:
+			case (int) WIDE_BOX:
+				return new FreeSpaceBox();
+			case (int) GROUP_ID_TO_NAME_BOX:
+				return new GroupIDToNameBox();
+			case (int) HANDLER_BOX:
+				return new HandlerBox();
+			case (int) HINT_MEDIA_HEADER_BOX:
+				return new HintMediaHeaderBox();
+			case (int) IPMP_CONTROL_BOX:
+				return new IPMPControlBox();
+			case (int) IPMP_INFO_BOX:
+				return new IPMPInfoBox();
+			case (int) ITEM_INFORMATION_BOX:
+				return new ItemInformationBox();
+			case (int) ITEM_INFORMATION_ENTRY:
+				return new ItemInformationEntry();
+			case (int) ITEM_LOCATION_BOX:
+				return new ItemLocationBox();
+			case (int) ITEM_PROTECTION_BOX:
+				return new ItemProtectionBox();
+			case (int) MEDIA_BOX:
+				return new BoxImpl("Media Box");
+			case (int) MEDIA_DATA_BOX:
+				return new MediaDataBox();
+			case (int) MEDIA_HEADER_BOX:
+				return new MediaHeaderBox();
+			case (int) MEDIA_INFORMATION_BOX:
+				return new BoxImpl("Media Information Box");
+			case (int) META_BOX:
+				return new MetaBox();
+			case (int) META_BOX_RELATION_BOX:
+				return new MetaBoxRelationBox();
+			case (int) MOVIE_BOX:
+				return new BoxImpl("Movie Box");
+			case (int) MOVIE_EXTENDS_BOX:
+				return new BoxImpl("Movie Extends Box");
+			case (int) MOVIE_EXTENDS_HEADER_BOX:
+				return new MovieExtendsHeaderBox();
+			case (int) MOVIE_FRAGMENT_BOX:
+				return new BoxImpl("Movie Fragment Box");
+			case (int) MOVIE_FRAGMENT_HEADER_BOX:
+				return new MovieFragmentHeaderBox();
+			case (int) MOVIE_FRAGMENT_RANDOM_ACCESS_BOX:
+				return new BoxImpl("Movie Fragment Random Access Box");
+			case (int) MOVIE_FRAGMENT_RANDOM_ACCESS_OFFSET_BOX:
+				return new MovieFragmentRandomAccessOffsetBox();
+			case (int) MOVIE_HEADER_BOX:
+				return new MovieHeaderBox();
+			case (int) NERO_METADATA_TAGS_BOX:
+				return new NeroMetadataTagsBox();
+			case (int) NULL_MEDIA_HEADER_BOX:
+				return new FullBox("Null Media Header Box");
+			case (int) ORIGINAL_FORMAT_BOX:
+				return new OriginalFormatBox();
+			case (int) PADDING_BIT_BOX:
+				return new PaddingBitBox();
+			case (int) PARTITION_ENTRY:
+				return new BoxImpl("Partition Entry");
+			case (int) PIXEL_ASPECT_RATIO_BOX:
+				return new PixelAspectRatioBox();
+			case (int) PRIMARY_ITEM_BOX:
+				return new PrimaryItemBox();
+			case (int) PROGRESSIVE_DOWNLOAD_INFORMATION_BOX:
+				return new ProgressiveDownloadInformationBox();
+			case (int) PROTECTION_SCHEME_INFORMATION_BOX:
+				return new BoxImpl("Protection Scheme Information Box");
+			case (int) SAMPLE_DEPENDENCY_TYPE_BOX:
+				return new SampleDependencyTypeBox();
+			case (int) SAMPLE_DESCRIPTION_BOX:
+				return new SampleDescriptionBox();
+			case (int) SAMPLE_GROUP_DESCRIPTION_BOX:
+				return new SampleGroupDescriptionBox();
+			case (int) SAMPLE_SCALE_BOX:
+				return new SampleScaleBox();
+			case (int) SAMPLE_TABLE_BOX:
+				return new BoxImpl("Sample Table Box");
+			case (int) SAMPLE_TO_CHUNK_BOX:
+				return new SampleToChunkBox();
+			case (int) SAMPLE_TO_GROUP_BOX:
+				return new SampleToGroupBox();
+			case (int) SCHEME_TYPE_BOX:
+				return new SchemeTypeBox();
+			case (int) SCHEME_INFORMATION_BOX:
+				return new BoxImpl("Scheme Information Box");
+			case (int) SHADOW_SYNC_SAMPLE_BOX:
+				return new ShadowSyncSampleBox();
+			case (int) SOUND_MEDIA_HEADER_BOX:
+				return new SoundMediaHeaderBox();
+			case (int) SUB_SAMPLE_INFORMATION_BOX:
+				return new SubSampleInformationBox();
+			case (int) SYNC_SAMPLE_BOX:
+				return new SyncSampleBox();
+			case (int) TRACK_BOX:
+				return new BoxImpl("Track Box");
+			case (int) TRACK_EXTENDS_BOX:
+				return new TrackExtendsBox();
+			case (int) TRACK_FRAGMENT_BOX:
+				return new BoxImpl("Track Fragment Box");
+			case (int) TRACK_FRAGMENT_BASE_MEDIA_DECODE_TIME_BOX:
+				return new TrackFragmentBaseMediaDecodeTimeBox();
+			case (int) TRACK_FRAGMENT_HEADER_BOX:
+				return new TrackFragmentHeaderBox();
+			case (int) TRACK_FRAGMENT_RANDOM_ACCESS_BOX:
+				return new TrackFragmentRandomAccessBox();
+			case (int) TRACK_FRAGMENT_RUN_BOX:
+				return new TrackFragmentRunBox();
+			case (int) TRACK_HEADER_BOX:
+				return new TrackHeaderBox();
+			case (int) TRACK_REFERENCE_BOX:
+				return new TrackReferenceBox();
+			case (int) TRACK_SELECTION_BOX:
+				return new TrackSelectionBox();
+			case (int) USER_DATA_BOX:
+				return new BoxImpl("User Data Box");
+			case (int) VIDEO_MEDIA_HEADER_BOX:
+				return new VideoMediaHeaderBox();
+			case (int) XML_BOX:
+				return new XMLBox();
+			case (int) OBJECT_DESCRIPTOR_BOX:
+				return new ObjectDescriptorBox();
+			case (int) SAMPLE_DEPENDENCY_BOX:
+				return new SampleDependencyBox();
+			case (int) ID3_TAG_BOX:
+				return new ID3TagBox();
+			case (int) ITUNES_META_LIST_BOX:
+				return new BoxImpl("iTunes Meta List Box");
+			case (int) CUSTOM_ITUNES_METADATA_BOX:
+				return new BoxImpl("Custom iTunes Metadata Box");
+			case (int) ITUNES_METADATA_BOX:
+				return new ITunesMetadataBox();
+			case (int) ITUNES_METADATA_MEAN_BOX:
+				return new ITunesMetadataMeanBox();
+			case (int) ALBUM_ARTIST_NAME_BOX:
+				return new BoxImpl("Album Artist Name Box");
+			case (int) ALBUM_ARTIST_SORT_BOX:
+				return new BoxImpl("Album Artist Sort Box");
+			case (int) ALBUM_NAME_BOX:
+				return new BoxImpl("Album Name Box");
+			case (int) ALBUM_SORT_BOX:
+				return new BoxImpl("Album Sort Box");
+			case (int) ARTIST_NAME_BOX:
+				return new BoxImpl("Artist Name Box");
+			case (int) ARTIST_SORT_BOX:
+				return new BoxImpl("Artist Sort Box");
+			case (int) CATEGORY_BOX:
+				return new BoxImpl("Category Box");
+			case (int) COMMENTS_BOX:
+				return new BoxImpl("Comments Box");
+			case (int) COMPILATION_PART_BOX:
+				return new BoxImpl("Compilation Part Box");
+			case (int) COMPOSER_NAME_BOX:
+				return new BoxImpl("Composer Name Box");
+			case (int) COMPOSER_SORT_BOX:
+				return new BoxImpl("Composer Sort Box");
+			case (int) COVER_BOX:
+				return new BoxImpl("Cover Box");
+			case (int) CUSTOM_GENRE_BOX:
+				return new BoxImpl("Custom Genre Box");
+			case (int) DESCRIPTION_BOX:
+				return new BoxImpl("Description Cover Box");
+			case (int) DISK_NUMBER_BOX:
+				return new BoxImpl("Disk Number Box");
+			case (int) ENCODER_NAME_BOX:
+			case (int) ENCODER_TOOL_BOX:
+				return new EncoderBox();
+			case (int) EPISODE_GLOBAL_UNIQUE_ID_BOX:
+				return new BoxImpl("Episode Global Unique ID Box");
+			case (int) GAPLESS_PLAYBACK_BOX:
+				return new BoxImpl("Gapless Playback Box");
+			case (int) GENRE_BOX:
+				return new GenreBox();
+			case (int) GROUPING_BOX:
+				return new BoxImpl("Grouping Box");
+			case (int) HD_VIDEO_BOX:
+				return new BoxImpl("HD Video Box");
+			case (int) ITUNES_PURCHASE_ACCOUNT_BOX:
+				return new BoxImpl("iTunes Purchase Account Box");
+			case (int) ITUNES_ACCOUNT_TYPE_BOX:
+				return new BoxImpl("iTunes Account Type Box");
+			case (int) ITUNES_CATALOGUE_ID_BOX:
+				return new BoxImpl("iTunes Catalogue ID Box");
+			case (int) ITUNES_COUNTRY_CODE_BOX:
+				return new BoxImpl("iTunes Country Code Box");
+			case (int) KEYWORD_BOX:
+				return new BoxImpl("Keyword Box");
+			case (int) LONG_DESCRIPTION_BOX:
+				return new BoxImpl("Long Description Box");
+			case (int) LYRICS_BOX:
+				return new BoxImpl("Lyrics Box");
+			case (int) META_TYPE_BOX:
+				return new BoxImpl("Meta Type Box");
+			case (int) PODCAST_BOX:
+				return new BoxImpl("Podcast Box");
+			case (int) PODCAST_URL_BOX:
+				return new BoxImpl("Podcast URL Box");
+			case (int) PURCHASE_DATE_BOX:
+				return new BoxImpl("Purchase Date Box");
+			case (int) RATING_BOX:
+				return new RatingBox();
+			case (int) RELEASE_DATE_BOX:
+				return new BoxImpl("Release Date Box");
+			case (int) REQUIREMENT_BOX:
+				return new RequirementBox();
+			case (int) TEMPO_BOX:
+				return new BoxImpl("Tempo Box");
+			case (int) TRACK_NAME_BOX:
+				return new BoxImpl("Track Name Box");
+			case (int) TRACK_NUMBER_BOX:
+				return new BoxImpl("Track Number Box");
+			case (int) TRACK_SORT_BOX:
+				return new BoxImpl("Track Sort Box");
+			case (int) TV_EPISODE_BOX:
+				return new BoxImpl("TV Episode Box");
+			case (int) TV_EPISODE_NUMBER_BOX:
+				return new BoxImpl("TV Episode Number Box");
+			case (int) TV_NETWORK_NAME_BOX:
+				return new BoxImpl("TV Network Name Box");
+			case (int) TV_SEASON_BOX:
+				return new BoxImpl("TV Season Box");
+			case (int) TV_SHOW_BOX:
+				return new BoxImpl("TV Show Box");
+			case (int) TV_SHOW_SORT_BOX:
+				return new BoxImpl("TV Show Sort Box");
+			case (int) THREE_GPP_ALBUM_BOX:
+				return new ThreeGPPAlbumBox();
+			case (int) THREE_GPP_AUTHOR_BOX:
+				return new ThreeGPPMetadataBox("3GPP Author Box");
+			case (int) THREE_GPP_CLASSIFICATION_BOX:
+				return new ThreeGPPMetadataBox("3GPP Classification Box");
+			case (int) THREE_GPP_DESCRIPTION_BOX:
+				return new ThreeGPPMetadataBox("3GPP Description Box");
+			case (int) THREE_GPP_KEYWORDS_BOX:
+				return new ThreeGPPKeywordsBox();
+			case (int) THREE_GPP_LOCATION_INFORMATION_BOX:
+				return new ThreeGPPLocationBox();
+			case (int) THREE_GPP_PERFORMER_BOX:
+				return new ThreeGPPMetadataBox("3GPP Performer Box");
+			case (int) THREE_GPP_RECORDING_YEAR_BOX:
+				return new ThreeGPPRecordingYearBox();
+			case (int) THREE_GPP_TITLE_BOX:
+				return new ThreeGPPMetadataBox("3GPP Title Box");
+			case (int) GOOGLE_HOST_HEADER_BOX:
+				return new BoxImpl("Google Host Header Box");
+			case (int) GOOGLE_PING_MESSAGE_BOX:
+				return new BoxImpl("Google Ping Message Box");
+			case (int) GOOGLE_PING_URL_BOX:
+				return new BoxImpl("Google Ping URL Box");
+			case (int) GOOGLE_SOURCE_DATA_BOX:
+				return new BoxImpl("Google Source Data Box");
+			case (int) GOOGLE_START_TIME_BOX:
+				return new BoxImpl("Google Start Time Box");
+			case (int) GOOGLE_TRACK_DURATION_BOX:
+				return new BoxImpl("Google Track Duration Box");
+			case (int) MP4V_SAMPLE_ENTRY:
+				return new VideoSampleEntry("MPEG-4 Video Sample Entry");
+			case (int) H263_SAMPLE_ENTRY:
+				return new VideoSampleEntry("H263 Video Sample Entry");
+			case (int) ENCRYPTED_VIDEO_SAMPLE_ENTRY:
+				return new VideoSampleEntry("Encrypted Video Sample Entry");
+			case (int) AVC_SAMPLE_ENTRY:
+				return new VideoSampleEntry("AVC Video Sample Entry");
+			case (int) MP4A_SAMPLE_ENTRY:
+				return new AudioSampleEntry("MPEG- 4Audio Sample Entry");
+			case (int) AC3_SAMPLE_ENTRY:
+				return new AudioSampleEntry("AC-3 Audio Sample Entry");
+			case (int) EAC3_SAMPLE_ENTRY:
+				return new AudioSampleEntry("Extended AC-3 Audio Sample Entry");
+			case (int) DRMS_SAMPLE_ENTRY:
+				return new AudioSampleEntry("DRMS Audio Sample Entry");
+			case (int) AMR_SAMPLE_ENTRY:
+				return new AudioSampleEntry("AMR Audio Sample Entry");
+			case (int) AMR_WB_SAMPLE_ENTRY:
+				return new AudioSampleEntry("AMR-Wideband Audio Sample Entry");
+			case (int) EVRC_SAMPLE_ENTRY:
+				return new AudioSampleEntry("EVC Audio Sample Entry");
+			case (int) QCELP_SAMPLE_ENTRY:
+				return new AudioSampleEntry("QCELP Audio Sample Entry");
+			case (int) SMV_SAMPLE_ENTRY:
+				return new AudioSampleEntry("SMV Audio Sample Entry");
+			case (int) ENCRYPTED_AUDIO_SAMPLE_ENTRY:
+				return new AudioSampleEntry("Encrypted Audio Sample Entry");
+			case (int) MPEG_SAMPLE_ENTRY:
+				return new MPEGSampleEntry();
+			case (int) TEXT_METADATA_SAMPLE_ENTRY:
+				return new TextMetadataSampleEntry();
+			case (int) XML_METADATA_SAMPLE_ENTRY:
+				return new XMLMetadataSampleEntry();
+			case (int) RTP_HINT_SAMPLE_ENTRY:
+				return new RTPHintSampleEntry();
+			case (int) FD_HINT_SAMPLE_ENTRY:
+				return new FDHintSampleEntry();
+			case (int) ESD_BOX:
+				return new ESDBox();
+			case (int) H263_SPECIFIC_BOX:
+				return new H263SpecificBox();
+			case (int) AVC_SPECIFIC_BOX:
+				return new AVCSpecificBox();
+			case (int) AC3_SPECIFIC_BOX:
+				return new AC3SpecificBox();
+			case (int) EAC3_SPECIFIC_BOX:
+				return new EAC3SpecificBox();
+			case (int) AMR_SPECIFIC_BOX:
+				return new AMRSpecificBox();
+			case (int) EVRC_SPECIFIC_BOX:
+				return new EVRCSpecificBox();
+			case (int) QCELP_SPECIFIC_BOX:
+				return new QCELPSpecificBox();
+			case (int) SMV_SPECIFIC_BOX:
+				return new SMVSpecificBox();
+			case (int) OMA_ACCESS_UNIT_FORMAT_BOX:
+				return new OMAAccessUnitFormatBox();
+			case (int) OMA_COMMON_HEADERS_BOX:
+				return new OMACommonHeadersBox();
+			case (int) OMA_CONTENT_ID_BOX:
+				return new OMAContentIDBox();
+			case (int) OMA_CONTENT_OBJECT_BOX:
+				return new OMAContentObjectBox();
+			case (int) OMA_COVER_URI_BOX:
+				return new OMAURLBox("OMA DRM Cover URI Box");
+			case (int) OMA_DISCRETE_MEDIA_HEADERS_BOX:
+				return new OMADiscreteMediaHeadersBox();
+			case (int) OMA_DRM_CONTAINER_BOX:
+				return new FullBox("OMA DRM Container Box");
+			case (int) OMA_ICON_URI_BOX:
+				return new OMAURLBox("OMA DRM Icon URI Box");
+			case (int) OMA_INFO_URL_BOX:
+				return new OMAURLBox("OMA DRM Info URL Box");
+			case (int) OMA_LYRICS_URI_BOX:
+				return new OMAURLBox("OMA DRM Lyrics URI Box");
+			case (int) OMA_MUTABLE_DRM_INFORMATION_BOX:
+				return new BoxImpl("OMA DRM Mutable DRM Information Box");
+			case (int) OMA_KEY_MANAGEMENT_BOX:
+				return new FullBox("OMA DRM Key Management Box");
+			case (int) OMA_RIGHTS_OBJECT_BOX:
+				return new OMARightsObjectBox();
+			case (int) OMA_TRANSACTION_TRACKING_BOX:
+				return new OMATransactionTrackingBox();
+			case (int) FAIRPLAY_USER_ID_BOX:
+			case (int) FAIRPLAY_USER_NAME_BOX: // the same type as ITUNES_METADATA_NAME_BOX, which this has always replaced
+			case (int) FAIRPLAY_USER_KEY_BOX:
+			case (int) FAIRPLAY_IV_BOX:
+			case (int) FAIRPLAY_PRIVATE_KEY_BOX:
+				return new FairPlayDataBox();
+			default:
+				if (LOGGER.isLoggable(Level.INFO))
+					LOGGER.log(Level.INFO, "BoxFactory: unknown box type: {0}; position: {1}", new Object[] {
+							typeToString(type), offset });
+				return new UnknownBox();
 		}
-
-		if (box == null) {
-			LOGGER.log(Level.INFO, "BoxFactory: unknown box type: {0}; position: {1}", new Object[] {
-					typeToString(type), offset });
-			box = new UnknownBox();
-		}
-		return box;
 	}
 
 	public static String typeToString(long l) {
@@ -98,6 +98,7 @@ public interface BoxTypes {
 	long TRACK_BOX = 1953653099L; // trak
 	long TRACK_EXTENDS_BOX = 1953654136L; // trex
 	long TRACK_FRAGMENT_BOX = 1953653094L; // traf
+	long TRACK_FRAGMENT_BASE_MEDIA_DECODE_TIME_BOX = 1952867444L; // tfdt
 	long TRACK_FRAGMENT_HEADER_BOX = 1952868452L; // tfhd
 	long TRACK_FRAGMENT_RANDOM_ACCESS_BOX = 1952871009L; // tfra
 	long TRACK_FRAGMENT_RUN_BOX = 1953658222L; // trun
@@ -23,7 +23,10 @@ import java.io.IOException;
 
 import net.sourceforge.jaad.mp4.MP4InputStream;
 import net.sourceforge.jaad.mp4.boxes.FullBox;
+import net.sourceforge.jaad.mp4.boxes.impl.samplegroupentries.AudioSampleGroupEntry;
+import net.sourceforge.jaad.mp4.boxes.impl.samplegroupentries.HintSampleGroupEntry;
 import net.sourceforge.jaad.mp4.boxes.impl.samplegroupentries.SampleGroupDescriptionEntry;
+import net.sourceforge.jaad.mp4.boxes.impl.samplegroupentries.VisualSampleGroupEntry;
 
 /**
  * This description table gives information about the characteristics of sample groups. The descriptive information is
@@ -64,33 +67,36 @@ public class SampleGroupDescriptionBox extends FullBox {
 		/*final HandlerBox hdlr = (HandlerBox) parent.getParent().getParent().getChild(BoxTypes.HANDLER_BOX);
 		final int handlerType = (int) hdlr.getHandlerType();
 		
-		final Class<? extends BoxImpl> boxClass;
-		switch(handlerType) {
-		case HandlerBox.TYPE_VIDEO:
-		boxClass = VisualSampleGroupEntry.class;
-		break;
-		case HandlerBox.TYPE_SOUND:
-		boxClass = AudioSampleGroupEntry.class;
-		break;
-		case HandlerBox.TYPE_HINT:
-		boxClass = HintSampleGroupEntry.class;
-		break;
-		default:
-		boxClass = null;
-		}
-		
 		for(int i = 1; i<entryCount; i++) {
 		if(version==1&&defaultLength==0) {
 		descriptionLength = in.readBytes(4);
 		left -= 4;
 		}
-		if(boxClass!=null) {
-		entries[i] = (SampleGroupDescriptionEntry) BoxFactory.parseBox(in, boxClass);
-		if(entries[i]!=null) left -= entries[i].getSize();
+		final SampleGroupDescriptionEntry entry = createEntry(handlerType);
+		if(entry!=null) {
+		entries[i] = (SampleGroupDescriptionEntry) BoxFactory.parseBox(in, entry);
+		left -= entries[i].getSize();
 		}
 		}*/
 	}
 
+	/**
+	 * @return a new entry for a track with the given handler type, or null if there is no entry type for it
+	 */
+	@SuppressWarnings("unused")
+	private static SampleGroupDescriptionEntry createEntry(int handlerType) {
+		switch (handlerType) {
+			case HandlerBox.TYPE_VIDEO:
+				return new VisualSampleGroupEntry();
+			case HandlerBox.TYPE_SOUND:
+				return new AudioSampleGroupEntry();
+			case HandlerBox.TYPE_HINT:
+				return new HintSampleGroupEntry();
+			default:
+				return null;
+		}
+	}
+
 	/**
 	 * The grouping type is an integer that identifies the SampleToGroup box that is associated with this sample group
 	 * description.
@@ -0,0 +1,52 @@
+/*
+ *  Copyright (C) 2011 in-somnia
+ * 
+ *  This file is part of JAAD.
+ * 
+ *  JAAD is free software; you can redistribute it and/or modify it 
+ *  under the terms of the GNU Lesser General Public License as 
+ *  published by the Free Software Foundation; either version 3 of the 
+ *  License, or (at your option) any later version.
+ *
+ *  JAAD is distributed in the hope that it will be useful, but WITHOUT 
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General 
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with this library.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.sourceforge.jaad.mp4.boxes.impl;
+
+import java.io.IOException;
+import net.sourceforge.jaad.mp4.MP4InputStream;
+import net.sourceforge.jaad.mp4.boxes.FullBox;
+
+public class TrackFragmentBaseMediaDecodeTimeBox extends FullBox {
+
+	private long baseMediaDecodeTime;
+
+	public TrackFragmentBaseMediaDecodeTimeBox() {
+		super("Track Fragment Base Media Decode Time Box");
+	}
+
+	@Override
+	public void decode(MP4InputStream in) throws IOException {
+		super.decode(in);
+
+		final int len = (version == 1) ? 8 : 4;
+		baseMediaDecodeTime = in.readBytes(len);
+	}
+
+	/**
+	 * The base media decode time is an integer equal to the sum of the decode durations of all earlier samples in the
+	 * media (in the timescale indicated in the Media Header Box of the associated track). It gives the decoding time
+	 * of the first sample in the track fragment.
+	 * 
+	 * @return the base media decode time
+	 */
+	public long getBaseMediaDecodeTime() {
+		return baseMediaDecodeTime;
+	}
+}
@@ -35,7 +35,7 @@ public class TrackFragmentHeaderBox extends FullBox {
 	private long trackID;
 	private boolean baseDataOffsetPresent, sampleDescriptionIndexPresent, defaultSampleDurationPresent,
 			defaultSampleSizePresent, defaultSampleFlagsPresent;
-	private boolean durationIsEmpty;
+	private boolean durationIsEmpty, defaultBaseIsMoof;
 	private long baseDataOffset, sampleDescriptionIndex, defaultSampleDuration, defaultSampleSize, defaultSampleFlags;
 
 	public TrackFragmentHeaderBox() {
@@ -65,6 +65,7 @@ public class TrackFragmentHeaderBox extends FullBox {
 		defaultSampleFlags = defaultSampleFlagsPresent ? in.readBytes(4) : 0;
 
 		durationIsEmpty = ((flags & 0x10000) == 0x10000);
+		defaultBaseIsMoof = ((flags & 0x20000) == 0x20000);
 	}
 
 	public long getTrackID() {
@@ -114,4 +115,14 @@ public class TrackFragmentHeaderBox extends FullBox {
 	public boolean isDurationIsEmpty() {
 		return durationIsEmpty;
 	}
+
+	/**
+	 * If true, and no base data offset is present, the base data offset for this track fragment is the offset of the
+	 * enclosing 'moof' box (rather than the end of the data of the previous track fragment).
+	 * 
+	 * @return true if the default base is the 'moof' box
+	 */
+	public boolean isDefaultBaseIsMoof() {
+		return defaultBaseIsMoof;
+	}
 }
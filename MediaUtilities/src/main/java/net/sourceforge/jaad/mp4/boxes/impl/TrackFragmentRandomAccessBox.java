@@ -46,6 +46,11 @@ public class TrackFragmentRandomAccessBox extends FullBox {
 		entryCount = (int) in.readBytes(4);
 
 		final int len = (version == 1) ? 8 : 4;
+		times = new long[entryCount];
+		moofOffsets = new long[entryCount];
+		trafNumbers = new long[entryCount];
+		trunNumbers = new long[entryCount];
+		sampleNumbers = new long[entryCount];
 
 		for (int i = 0; i < entryCount; i++) {
 			times[i] = in.readBytes(len);
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import net.sourceforge.jaad.aac.Decoder;
+import net.sourceforge.jaad.aac.OutputSpec;
 import net.sourceforge.jaad.aac.SampleBuffer;
 import net.sourceforge.jaad.adts.ADTSDemultiplexer;
 
@@ -30,6 +31,10 @@ import com.bric.audio.AudioFormat;
 
 class AACAudioInputStream extends AsynchronousAudioInputStream {
 
+	// the format reported by getFormat: 16-bit, signed, big endian
+	private static final OutputSpec OUTPUT_SPEC = new OutputSpec(true, OutputSpec.ChannelLayout.INTERLEAVED,
+			OutputSpec.SampleType.PCM_16_BIT);
+
 	private final ADTSDemultiplexer adts;
 	private final Decoder decoder;
 	private final SampleBuffer sampleBuffer;
@@ -48,7 +53,7 @@ class AACAudioInputStream extends AsynchronousAudioInputStream {
 		if(audioFormat==null) {
 			//read first frame
 			try {
-				decoder.decodeFrame(adts.readNextFrame(), sampleBuffer);
+				decoder.decodeFrame(adts.readNextFrame(), sampleBuffer, OUTPUT_SPEC);
 				audioFormat = new AudioFormat(sampleBuffer.getSampleRate(), sampleBuffer.getBitsPerSample(), sampleBuffer.getChannels(), true, true);
 				saved = sampleBuffer.getData();
 			}
@@ -62,7 +67,7 @@ class AACAudioInputStream extends AsynchronousAudioInputStream {
 	public void execute() {
 		try {
 			if(saved==null) {
-				decoder.decodeFrame(adts.readNextFrame(), sampleBuffer);
+				decoder.decodeFrame(adts.readNextFrame(), sampleBuffer, OUTPUT_SPEC);
 				buffer.write(sampleBuffer.getData());
 			}
 			else {
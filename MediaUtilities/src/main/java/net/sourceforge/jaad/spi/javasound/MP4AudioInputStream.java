@@ -24,6 +24,7 @@ import java.io.InputStream;
 import java.util.List;
 
 import net.sourceforge.jaad.aac.Decoder;
+import net.sourceforge.jaad.aac.OutputSpec;
 import net.sourceforge.jaad.aac.SampleBuffer;
 import net.sourceforge.jaad.mp4.MP4Container;
 import net.sourceforge.jaad.mp4.api.AudioTrack;
@@ -35,6 +36,10 @@ import com.bric.audio.AudioFormat;
 
 class MP4AudioInputStream extends AsynchronousAudioInputStream {
 
+	// the format reported by getFormat: 16-bit, signed, big endian
+	private static final OutputSpec OUTPUT_SPEC = new OutputSpec(true, OutputSpec.ChannelLayout.INTERLEAVED,
+			OutputSpec.SampleType.PCM_16_BIT);
+
 	private final AudioTrack track;
 	private final Decoder decoder;
 	private final SampleBuffer sampleBuffer;
@@ -86,7 +91,7 @@ class MP4AudioInputStream extends AsynchronousAudioInputStream {
 				buffer.close();
 				return;
 			}
-			decoder.decodeFrame(frame.getData(), sampleBuffer);
+			decoder.decodeFrame(frame.getData(), sampleBuffer, OUTPUT_SPEC);
 		}
 		catch(IOException e) {
 			buffer.close();
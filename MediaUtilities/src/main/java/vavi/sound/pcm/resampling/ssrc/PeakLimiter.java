@@ -0,0 +1,153 @@
+package vavi.sound.pcm.resampling.ssrc;
+
+import java.util.Arrays;
+
+/**
+ * A look-ahead peak limiter for interleaved frames of samples, used by {@link SSRC.Stream} in place of two-pass
+ * normalisation (which needs to know the peak level of the entire signal before writing anything). The signal is delayed
+ * by a short look-ahead window so that the gain can be reduced smoothly before any frame that would exceed the ceiling,
+ * then released gradually afterwards. All channels share the same gain, so the stereo image is unaffected. While no
+ * frame exceeds the ceiling the gain is exactly 1, and the output is identical to the (delayed) input.
+ */
+class PeakLimiter {
+	private static final double LOOK_AHEAD_SECONDS = 0.002;
+	private static final double RELEASE_SECONDS = 0.05;
+	private static final double UNITY_THRESHOLD = 1e-6; // -120 dB: the release would otherwise never quite reach 1
+
+	private final int nch;
+	private final double ceiling;
+	private final int window; // the number of frames the gain is smoothed over - the signal is delayed by window - 1
+	private final double release;
+
+	private final double[] delayLine;
+
+	// a monotonic queue of the gains required by the frames within the window, so its head is always the minimum
+	private final double[] requiredGains;
+	private final long[] requiredFrames;
+	private int requiredHead, requiredSize;
+
+	// the held gains within the window, for the moving average that is actually applied
+	private final double[] heldGains;
+	private double heldGainSum;
+	private int limitedCount;
+	private double heldGain = 1;
+
+	private long frame;
+
+	/**
+	 * @param nch     the number of (interleaved) channels
+	 * @param rate    the sampling rate
+	 * @param ceiling the largest absolute sample value allowed
+	 */
+	PeakLimiter(int nch, int rate, double ceiling) {
+		this.nch = nch;
+		this.ceiling = ceiling;
+		window = Math.max(2, (int) (rate * LOOK_AHEAD_SECONDS) + 1);
+		release = 1 - Math.exp(-1 / (RELEASE_SECONDS * rate));
+
+		delayLine = new double[nch * (window - 1)];
+		requiredGains = new double[window];
+		requiredFrames = new long[window];
+		heldGains = new double[window];
+		Arrays.fill(heldGains, 1);
+		heldGainSum = window;
+	}
+
+	/**
+	 * @return the number of frames by which the output is delayed
+	 */
+	int getDelay() {
+		return window - 1;
+	}
+
+	/**
+	 * Limit the given frames, in place. As the output is delayed, the first {@link #getDelay()} frames passed to the
+	 * limiter produce no output; the last frames are returned by {@link #flush(double[])} instead.
+	 *
+	 * @return the number of frames of output written to the start of buffer
+	 */
+	int process(double[] buffer, int frames) {
+		int delay = window - 1;
+		int written = 0;
+
+		for (int i = 0; i < frames; i++, frame++) {
+			int in = i * nch;
+			double level = 0;
+			for (int ch = 0; ch < nch; ch++) {
+				double f = buffer[in + ch] > 0 ? buffer[in + ch] : -buffer[in + ch];
+				level = level < f ? f : level;
+			}
+			double required = level > ceiling ? ceiling / level : 1;
+
+			// find the lowest gain required by any frame within the look-ahead window
+			if (requiredSize > 0 && requiredFrames[requiredHead] <= frame - window) {
+				requiredHead = (requiredHead + 1) % window;
+				requiredSize--;
+			}
+			while (requiredSize > 0 && requiredGains[(requiredHead + requiredSize - 1) % window] >= required) {
+				requiredSize--;
+			}
+			int tail = (requiredHead + requiredSize) % window;
+			requiredGains[tail] = required;
+			requiredFrames[tail] = frame;
+			requiredSize++;
+
+			// reduce the gain immediately, but release it gradually
+			heldGain = Math.min(requiredGains[requiredHead], heldGain + (1 - heldGain) * release);
+			if (heldGain > 1 - UNITY_THRESHOLD) {
+				heldGain = 1;
+			}
+
+			// the moving average of the held gain reaches the required level by the time a peak leaves the delay line
+			int h = (int) (frame % window);
+			if (heldGains[h] < 1) {
+				limitedCount--;
+			}
+			if (heldGain < 1) {
+				limitedCount++;
+			}
+			heldGainSum += heldGain - heldGains[h];
+			heldGains[h] = heldGain;
+
+			double gain;
+			if (limitedCount == 0) {
+				heldGainSum = window; // avoid accumulating rounding errors
+				gain = 1;
+			} else {
+				gain = Math.min(1, heldGainSum / window);
+			}
+
+			int d = (int) (frame % delay) * nch;
+			int out = written * nch;
+			boolean primed = frame >= delay;
+			for (int ch = 0; ch < nch; ch++) {
+				double delayed = delayLine[d + ch];
+				delayLine[d + ch] = buffer[in + ch];
+				if (primed) {
+					double limited = delayed * gain;
+					if (gain < 1) {
+						// the moving average can be a rounding error above the gain the peak actually requires
+						limited = limited > ceiling ? ceiling : (limited < -ceiling ? -ceiling : limited);
+					}
+					buffer[out + ch] = limited;
+				}
+			}
+			if (primed) {
+				written++;
+			}
+		}
+
+		return written;
+	}
+
+	/**
+	 * Output the frames remaining in the delay line. The buffer must have space for {@link #getDelay()} frames.
+	 *
+	 * @return the number of frames of output written to the start of buffer
+	 */
+	int flush(double[] buffer) {
+		int delay = window - 1;
+		Arrays.fill(buffer, 0, delay * nch, 0);
+		return process(buffer, delay);
+	}
+}
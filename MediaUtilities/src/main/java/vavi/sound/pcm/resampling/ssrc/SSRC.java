@@ -17,9 +17,15 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import android.annotation.SuppressLint;
 import vavi.util.I0Bessel;
 import vavi.util.SplitRadixFft;
 
@@ -40,9 +46,6 @@ public class SSRC {
 	/** */
 	private ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
 
-	/** */
-	private SplitRadixFft fft = new SplitRadixFft();
-
 	/** */
 	private static final String VERSION = "1.30";
 
@@ -62,7 +65,7 @@ public class SSRC {
 	private static final int RANDBUFLEN = 65536;
 
 	/** */
-	private int RINT(double x) {
+	private static int RINT(double x) {
 		return ((x) >= 0 ? ((int) ((x) + 0.5)) : ((int) ((x) - 0.5)));
 	}
 
@@ -189,7 +192,7 @@ public class SSRC {
 				for (i = 0; i < RANDBUFLEN; i++) {
 					int r, p;
 
-					p = random.nextInt() % POOLSIZE;
+					p = random.nextInt(POOLSIZE);
 					r = pool[p];
 					pool[p] = random.nextInt();
 					randbuf[i] = noiseamp * (((double) r) / Integer.MAX_VALUE - 0.5);
@@ -200,10 +203,10 @@ public class SSRC {
 				for (i = 0; i < RANDBUFLEN; i++) {
 					int r1, r2, p;
 
-					p = random.nextInt() % POOLSIZE;
+					p = random.nextInt(POOLSIZE);
 					r1 = pool[p];
 					pool[p] = random.nextInt();
-					p = random.nextInt() % POOLSIZE;
+					p = random.nextInt(POOLSIZE);
 					r2 = pool[p];
 					pool[p] = random.nextInt();
 					randbuf[i] = noiseamp * ((((double) r1) / Integer.MAX_VALUE) - (((double) r2) / Integer
@@ -223,7 +226,7 @@ public class SSRC {
 					if (sw == 0) {
 						sw = 1;
 
-						p = random.nextInt() % POOLSIZE;
+						p = random.nextInt(POOLSIZE);
 						r = ((double) pool[p]) / Integer.MAX_VALUE;
 						pool[p] = random.nextInt();
 						if (r == 1.0) {
@@ -232,7 +235,7 @@ public class SSRC {
 
 						t = Math.sqrt(-2 * Math.log(1 - r));
 
-						p = random.nextInt() % POOLSIZE;
+						p = random.nextInt(POOLSIZE);
 						r = ((double) pool[p]) / Integer.MAX_VALUE;
 						pool[p] = random.nextInt();
 
@@ -328,7 +331,7 @@ public class SSRC {
 	}
 
 	/** */
-	private double alpha(double a) {
+	private static double alpha(double a) {
 		if (a <= 21) {
 			return 0;
 		}
@@ -339,17 +342,17 @@ public class SSRC {
 	}
 
 	/** */
-	private double win(double n, int len, double alp, double iza) {
+	private static double win(double n, int len, double alp, double iza) {
 		return I0Bessel.value(alp * Math.sqrt(1 - 4 * n * n / (((double) len - 1) * ((double) len - 1)))) / iza;
 	}
 
 	/** */
-	private double sinc(double x) {
+	private static double sinc(double x) {
 		return x == 0 ? 1 : Math.sin(x) / x;
 	}
 
 	/** */
-	private double hn_lpf(int n, double lpf, double fs) {
+	private static double hn_lpf(int n, double lpf, double fs) {
 		double t = 1 / fs;
 		double omega = 2 * Math.PI * lpf;
 		return 2 * lpf * t * sinc(n * omega * t);
@@ -423,7 +426,7 @@ public class SSRC {
 	}
 
 	/** */
-	private int gcd(int x, int y) {
+	private static int gcd(int x, int y) {
 		int t;
 
 		while (y != 0) {
@@ -451,1318 +454,1379 @@ public class SSRC {
 	 */
 	public double upsample(InputStream fpi, OutputStream fpo, int nch, int bps, int dbps, int sfrq, int dfrq, double
 			gain, long chanklen, boolean twopass, int dither) throws IOException {
-		int frqgcd, osf = 0, fs1, fs2;
-		double[][] stage1;
-		double[] stage2;
-		int n1, n1x, n1y, n2, n2b;
-		int filter2len;
-		int[] f1order, f1inc;
-		int[] fft_ip = null;
-		double[] fft_w = null;
-		ByteBuffer rawinbuf, rawoutbuf;
-		double[] inbuf, outbuf;
-		double[][] buf1, buf2;
-		double[] peak = new double[]{0};
-		int spcount = 0;
-		int i, j;
-
-//        System.err.println("upsample");
+		return resample(fpi, fpo, new UpSampler(nch, sfrq, dfrq, AA, DF, FFTFIRLEN, 1), bps, dbps, gain, chanklen,
+				twopass, dither);
+	}
 
-		filter2len = FFTFIRLEN; // stage 2 filter length
+	/** */
+	public double downsample(InputStream fpi, OutputStream fpo, int nch, int bps, int dbps, int sfrq, int dfrq, double
+			gain, long chanklen, boolean twopass, int dither) throws IOException {
+		return resample(fpi, fpo, new DownSampler(nch, sfrq, dfrq, AA, DF, FFTFIRLEN, 1), bps, dbps, gain, chanklen,
+				twopass, dither);
+	}
 
-		// Make stage 1 filter
+	/** */
+	public double no_src(InputStream fpi, OutputStream fpo, int nch, int bps, int dbps, double gain, long chanklen,
+						 boolean twopass, int dither) throws IOException {
+		return resample(fpi, fpo, new Passthrough(nch, 1), bps, dbps, gain, chanklen, twopass, dither);
+	}
 
-		{
-			double aa = AA; // stop band attenuation(dB)
-			double lpf, d, df, alp, iza;
-//          double delta;
-			double guard = 2;
+	/** */
+	private double resample(InputStream fpi, OutputStream fpo, Resampler resampler, int bps, int dbps, double gain,
+			long chanklen, boolean twopass, int dither) throws IOException {
+		Stream stream = new Stream(this, fpi, resampler, bps, twopass ? 8 : dbps, gain, chanklen, dither);
+		int spcount = 0;
 
-			frqgcd = gcd(sfrq, dfrq);
+		setstarttime();
 
-			fs1 = sfrq / frqgcd * dfrq;
+		while (stream.fill()) {
+			fpo.write(stream.rawoutbuf, 0, stream.outputLimit);
 
-			if (fs1 / dfrq == 1) {
-				osf = 1;
-			} else if (fs1 / dfrq % 2 == 0) {
-				osf = 2;
-			} else if (fs1 / dfrq % 3 == 0) {
-				osf = 3;
-			} else {
-				throw new IllegalArgumentException(String.format(Locale.US, "Resampling from %dHz to %dHz is not supported.\n" +
-						"%d/gcd(%d,%d)=%d must be divided by 2 or 3.\n", sfrq, dfrq, sfrq, sfrq, dfrq, fs1 / dfrq));
+			if ((spcount++ & 7) == 7) {
+				showprogress((double) stream.sumread / chanklen);
 			}
+		}
+		fpo.flush();
 
-			df = (dfrq * osf / 2 - sfrq / 2) * 2 / guard;
-			lpf = sfrq / 2 + (dfrq * osf / 2 - sfrq / 2) / guard;
+		showprogress(1);
 
-//          delta = Math.pow(10, -aa / 20);
-			if (aa <= 21) {
-				d = 0.9222;
-			} else {
-				d = (aa - 7.95) / 14.36;
-			}
+		return stream.peak[0];
+	}
 
-			n1 = (int) (fs1 / df * d + 1);
-			if (n1 % 2 == 0) {
-				n1++;
-			}
+	/** */
+	private Resampler createResampler(int nch, int sfrq, int dfrq, int blocks) {
+		if (sfrq < dfrq) {
+			return new UpSampler(nch, sfrq, dfrq, AA, DF, FFTFIRLEN, blocks);
+		} else if (sfrq > dfrq) {
+			return new DownSampler(nch, sfrq, dfrq, AA, DF, FFTFIRLEN, blocks);
+		} else {
+			return new Passthrough(nch, sfrq);
+		}
+	}
 
-			alp = alpha(aa);
-			iza = I0Bessel.value(alp);
-// System.err.printf("iza = %g\n",iza);
+	/**
+	 * A single-pass, pull-style resampler: reading from this stream reads and converts as much of the source PCM as is
+	 * needed, so it can be used as one stage of a larger pipeline. Nothing is written to disk, and memory use does not
+	 * depend on the length of the input.
+	 * <p>
+	 * Two-pass processing avoids clipping by measuring the peak of the entire signal before quantising it, which isn't
+	 * possible when streaming. Instead, a short look-ahead limiter reduces the gain just before any peak that would
+	 * otherwise clip. Signals that don't exceed full scale pass through the limiter unchanged.
+	 */
+	public static class Stream extends InputStream {
 
-			n1y = fs1 / sfrq;
-			n1x = n1 / n1y + 1;
+		/** the largest sample value for each output sample size (in bytes) */
+		private static final int[] SAMPLE_MAX = {0, 0x7f, 0x7fff, 0x7fffff};
 
-			f1order = new int[n1y * osf];
-			for (i = 0; i < n1y * osf; i++) {
-				f1order[i] = fs1 / sfrq - (i * (fs1 / (dfrq * osf))) % (fs1 / sfrq);
-				if (f1order[i] == fs1 / sfrq) {
-					f1order[i] = 0;
-				}
-			}
+		/** dithering and noise shaping state */
+		private final SSRC ssrc;
 
-			f1inc = new int[n1y * osf];
-			for (i = 0; i < n1y * osf; i++) {
-				f1inc[i] = f1order[i] < fs1 / (dfrq * osf) ? nch : 0;
-				if (f1order[i] == fs1 / sfrq) {
-					f1order[i] = 0;
-				}
-			}
+		private final InputStream source;
 
-			stage1 = new double[n1y][n1x];
+		private final Resampler resampler;
 
-			for (i = -(n1 / 2); i <= n1 / 2; i++) {
-				stage1[(i + n1 / 2) % n1y][(i + n1 / 2) / n1y] = win(i, n1, alp, iza) * hn_lpf(i, lpf, fs1) * fs1 /
-						sfrq;
-			}
-		}
+		private final PeakLimiter limiter;
 
-		// Make stage 2 filter
+		private final int nch, bps, dbps, dither;
 
-		{
-			double aa = AA; // stop band attenuation(dB)
-			double lpf, d, df, alp, iza;
-//          double delta;
-			int ipsize, wsize;
-
-//          delta = Math.pow(10, -aa / 20);
-			if (aa <= 21) {
-				d = 0.9222;
-			} else {
-				d = (aa - 7.95) / 14.36;
-			}
+		private final double gain;
 
-			fs2 = dfrq * osf;
+		/** the length of the source in frames, if known */
+		private final long chanklen;
 
-			for (i = 1; ; i = i * 2) {
-				n2 = filter2len * i;
-				if (n2 % 2 == 0) {
-					n2--;
-				}
-				df = (fs2 * d) / (n2 - 1);
-				lpf = sfrq / 2;
-				if (df < DF) {
-					break;
-				}
-			}
+		private final byte[] rawinbuf;
 
-			alp = alpha(aa);
+		private final ByteBuffer input;
 
-			iza = I0Bessel.value(alp);
+		private final double[] outbuf;
 
-			for (n2b = 1; n2b < n2; n2b *= 2) {
-			}
-			n2b *= 2;
+		private final byte[] rawoutbuf;
 
-			stage2 = new double[n2b];
+		private final ByteBuffer output;
 
-			for (i = -(n2 / 2); i <= n2 / 2; i++) {
-				stage2[i + n2 / 2] = win(i, n2, alp, iza) * hn_lpf(i, lpf, fs2) / n2b * 2;
-			}
+		private final double[] peak = new double[]{0};
 
-			ipsize = (int) (2 + Math.sqrt(n2b));
-			fft_ip = new int[ipsize];
-			fft_ip[0] = 0;
-			wsize = n2b / 2;
-			fft_w = new double[wsize];
+		private int outputPosition, outputLimit;
 
-			fft.rdft(n2b, 1, stage2, fft_ip, fft_w);
-		}
+		private long sumread, sumwrite;
 
-		// Apply filters
+		/** the number of frames still to be discarded to compensate for the filters' delay */
+		private int delay;
 
-		setstarttime();
+		private boolean inputEnded, outputEnded, finished;
 
-		{
-			int n2b2 = n2b / 2;
-			// inbuffs1Tv???
-			int rp;
-			// disposesfrqTv?
-			int ds;
-			// ?t@Cinbuf?lvZ stage2 filternTv?
-			int nsmplwrt1;
-			// ?t@Cinbuf?lvZ stage2 filternTv?
-			int nsmplwrt2 = 0;
-			// stage1 filter?oTv?n1y*osf]
-			int s1p;
-			boolean init;
-			boolean ending;
-			int sumread, sumwrite;
-			int osc;
-			int ip, ip_backup;
-			int s1p_backup, osc_backup;
-			int ch, p;
-			int inbuflen;
-			int delay = 0;
+		/**
+		 * @param source    the PCM to convert; closed when this stream is closed
+		 * @param byteOrder the byte order of both the source and the output
+		 * @param sfrq      source sampling rate
+		 * @param dfrq      destination sampling rate
+		 * @param bps       source bits per sample (8, 16, 24 or 32)
+		 * @param dbps      destination bits per sample (8, 16 or 24)
+		 * @param nch       the number of (interleaved) channels
+		 * @param att       attenuation, in dB
+		 * @param pdf       the p.d.f. of dither noise (0: rectangular, 1: triangular, 2: gaussian)
+		 * @param dither    the dither type (see {@link SSRC}'s usage), or -1 to choose automatically
+		 * @param fast      whether to use shorter (faster, but lower quality) filters
+		 */
+		public Stream(InputStream source, ByteOrder byteOrder, int sfrq, int dfrq, int bps, int dbps, int nch,
+				double att, int pdf, int dither, boolean fast) {
+			this(source, byteOrder, sfrq, dfrq, bps, dbps, nch, att, pdf, dither, fast, null);
+		}
 
-			buf1 = new double[nch][n2b2 / osf + 1];
+		/**
+		 * As above, but filtering several blocks of every channel at once on the given pool (one block per thread of
+		 * the pool each time the stream needs more input). Output is identical to that of a single thread. Dither and
+		 * noise shaping still run on the reading thread, in frame order, so their state stays per channel and is
+		 * updated in the same order as without a pool. ForkJoinPool requires API 21.
+		 *
+		 * @param pool the pool to filter blocks and channels on, or null to filter them all on the reading thread
+		 */
+		@SuppressLint("NewApi") // ForkJoinPool can only be created on API 21+
+		public Stream(InputStream source, ByteOrder byteOrder, int sfrq, int dfrq, int bps, int dbps, int nch,
+				double att, int pdf, int dither, boolean fast, ForkJoinPool pool) {
+			if (bps != 8 && bps != 16 && bps != 24 && bps != 32) {
+				throw new IllegalArgumentException("Error : Only 8bit, 16bit, 24bit and 32bit PCM are supported : " +
+						bps);
+			}
+			if (dbps != 8 && dbps != 16 && dbps != 24) {
+				throw new IllegalArgumentException("Error: Only 8bit, 16bit and 24bit PCM are supported : " + dbps);
+			}
+			if (pdf < 0 || pdf > 2) {
+				throw new IllegalArgumentException("unrecognized p.d.f. type : " + pdf);
+			}
+			if (dither < -1 || dither > 4) {
+				throw new IllegalArgumentException("unrecognized dither type : " + dither);
+			}
+			bps /= 8;
+			dbps /= 8;
+			if (dither == -1) { // automatic dithering
+				if (dbps < bps) {
+					dither = dbps == 1 ? 4 : 3;
+				} else {
+					dither = 1;
+				}
+			}
 
-			buf2 = new double[nch][n2b];
+			ssrc = new SSRC();
+			ssrc.byteOrder = byteOrder;
+			ssrc.quiet = true;
+			if (fast) {
+				ssrc.AA = 96;
+				ssrc.DF = 2000;
+			}
 
-			rawinbuf = ByteBuffer.allocate(nch * (n2b2 + n1x + 2) * bps); // ,bps
-			rawoutbuf = ByteBuffer.allocate(nch * (n2b2 / osf + 1) * dbps); // ,dbps
+			int max = SAMPLE_MAX[dbps];
+			int samp = 0;
+			if (dither != 0) {
+				samp = ssrc.init_shaper(dfrq, nch, -max - 1, max, dither, pdf, presets[pdf]);
+			}
+
+			this.source = source;
+			this.nch = nch;
+			this.bps = bps;
+			this.dbps = dbps;
+			this.dither = dither;
+			gain = Math.pow(10, -att / 20);
+			chanklen = Long.MAX_VALUE;
+			resampler = ssrc.createResampler(nch, sfrq, dfrq, pool != null ? pool.getParallelism() : 1);
+			resampler.pool = pool;
+			delay = resampler.delay;
+
+			// leave room for the dither noise, just as two-pass normalisation does
+			limiter = new PeakLimiter(nch, dfrq, (max - samp) / (double) max / gain);
+
+			rawinbuf = new byte[resampler.inbuf[0].length * nch * bps];
+			input = ByteBuffer.wrap(rawinbuf).order(byteOrder);
+			outbuf = new double[nch * Math.max(resampler.maxOutput, limiter.getDelay())];
+			rawoutbuf = new byte[outbuf.length * dbps];
+			output = ByteBuffer.wrap(rawoutbuf).order(byteOrder);
+		}
 
-			inbuf = new double[nch * (n2b2 + n1x + 2)];
-			outbuf = new double[nch * (n2b2 / osf + 1)];
+		/**
+		 * The original, hard-clipping behaviour for {@link SSRC}'s own conversions. A dbps of 8 writes the unquantised
+		 * samples as doubles, for two-pass processing.
+		 */
+		private Stream(SSRC ssrc, InputStream source, Resampler resampler, int bps, int dbps, double gain, long chanklen,
+				int dither) {
+			this.ssrc = ssrc;
+			this.source = source;
+			this.resampler = resampler;
+			this.nch = resampler.nch;
+			this.bps = bps;
+			this.dbps = dbps;
+			this.dither = dither;
+			this.gain = gain;
+			this.chanklen = chanklen;
+			delay = resampler.delay;
+			limiter = null;
+
+			rawinbuf = new byte[resampler.inbuf[0].length * nch * bps];
+			input = ByteBuffer.wrap(rawinbuf).order(ssrc.byteOrder);
+			outbuf = new double[nch * resampler.maxOutput];
+			rawoutbuf = new byte[outbuf.length * dbps];
+			output = ByteBuffer.wrap(rawoutbuf).order(dbps == 8 ? ByteOrder.BIG_ENDIAN : ssrc.byteOrder);
+		}
 
-			s1p = 0;
-			rp = 0;
-			ds = 0;
-			osc = 0;
+		@Override
+		public int read() throws IOException {
+			if (outputPosition == outputLimit && !fill()) {
+				return -1;
+			}
+			return rawoutbuf[outputPosition++] & 0xff;
+		}
 
-			init = true;
-			ending = false;
-			inbuflen = n1 / 2 / (fs1 / sfrq) + 1;
-			delay = (int) ((double) n2 / 2 / (fs2 / dfrq));
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (outputPosition == outputLimit && !fill()) {
+				return -1;
+			}
+			int count = Math.min(len, outputLimit - outputPosition);
+			System.arraycopy(rawoutbuf, outputPosition, b, off, count);
+			outputPosition += count;
+			return count;
+		}
 
-			sumread = sumwrite = 0;
+		@Override
+		public int available() {
+			return outputLimit - outputPosition;
+		}
 
-			while (true) {
-				int nsmplread;
-				long toberead, toberead2;
+		@Override
+		public void close() throws IOException {
+			finished = true;
+			outputPosition = outputLimit = 0;
+			source.close();
+		}
 
-				toberead2 = toberead = (int) (Math.ceil((double) n2b2 * sfrq / (dfrq * osf)) + 1 + n1x - inbuflen);
-				if (toberead + sumread > chanklen) {
-					toberead = chanklen - sumread;
+		/**
+		 * Convert the next block of output into rawoutbuf.
+		 *
+		 * @return false if there is no more output
+		 */
+		private boolean fill() throws IOException {
+			outputPosition = outputLimit = 0;
+			while (!finished) {
+				int frames;
+				if (outputEnded) {
+					frames = limiter != null ? limiter.flush(outbuf) : 0;
+					finished = true;
+				} else {
+					frames = processBlock();
+					if (limiter != null) {
+						frames = limiter.process(outbuf, frames);
+					}
 				}
 
-				rawinbuf = ByteBuffer.allocate((int)(bps * nch * toberead));
-
-				byte[] tempData = new byte[rawinbuf.limit()];
-				int pos = 0;
-				while ((nsmplread = fpi.read(tempData, pos, tempData.length - pos)) > 0) {
-					pos += nsmplread;
-				}
-				if (pos > 0) nsmplread = pos;
-				if (nsmplread < 0) {
-					nsmplread = 0;
+				if (frames > 0) {
+					outputLimit = quantise(frames);
+					return true;
 				}
+			}
+			return false;
+		}
+
+		/**
+		 * Read and filter one block of input.
+		 *
+		 * @return the number of frames of output now at the start of outbuf
+		 */
+		private int processBlock() throws IOException {
+			int toberead = resampler.getInputFrames();
+			int offset = resampler.getInputOffset();
+			int nsmplread = 0;
+
+			if (!inputEnded) {
+				int wanted = (int) Math.min(toberead, chanklen - sumread);
+				nsmplread = readFrames(offset, wanted);
+				sumread += nsmplread;
+				inputEnded = nsmplread < wanted || sumread >= chanklen;
+			}
+			for (double[] channel : resampler.inbuf) {
+				Arrays.fill(channel, offset + nsmplread, offset + toberead, 0);
+			}
 
-				if (nsmplread < rawinbuf.limit()) {
-					chanklen = sumread + nsmplread / bps * nch;
+			int frames = resampler.process(outbuf);
+
+			// discard the filters' delay at the start, and anything beyond the expected length at the end
+			int start = Math.min(delay, frames);
+			delay -= start;
+			frames -= start;
+			if (inputEnded) {
+				long remaining = resampler.getOutputLength(sumread) - sumwrite;
+				if (frames >= remaining) {
+					frames = (int) Math.max(remaining, 0);
+					outputEnded = true;
 				}
+			}
+			if (start > 0 && frames > 0) {
+				System.arraycopy(outbuf, nch * start, outbuf, 0, nch * frames);
+			}
 
-				rawinbuf.limit(nsmplread);
-				rawinbuf = ByteBuffer.wrap(tempData);
-				rawinbuf.position(nsmplread);
+			sumwrite += frames;
+			return frames;
+		}
 
-				rawinbuf.flip();
-				nsmplread /= bps * nch;
+		/**
+		 * Read up to the given number of frames, converting them to doubles at the given offset in each of the
+		 * resampler's input buffers.
+		 *
+		 * @return the number of complete frames read
+		 */
+		private int readFrames(int offset, int frames) throws IOException {
+			int length = frames * nch * bps;
+			int total = 0;
+			while (total < length) {
+				int count = source.read(rawinbuf, total, length - total);
+				if (count < 0) {
+					break;
+				}
+				total += count;
+			}
 
+			int frameCount = total / (nch * bps);
+			for (int ch = 0; ch < nch; ch++) {
+				double[] inbuf = resampler.inbuf[ch];
+				int end = offset + frameCount;
+				int i = ch; // the source sample
 				switch (bps) {
 					case 1:
-						for (i = 0; i < nsmplread * nch; i++)
-							inbuf[nch * inbuflen + i] = (1 / (double) 0x7f) * ((double) rawinbuf.get(i) - 128);
+						for (int p = offset; p < end; p++, i += nch) {
+							inbuf[p] = (1 / (double) 0x7f) * ((rawinbuf[i] & 0xff) - 128);
+						}
 						break;
 
 					case 2:
-						for (i = 0; i < nsmplread * nch; i++) {
-							int v = rawinbuf.order(byteOrder).asShortBuffer().get(i);
-							inbuf[nch * inbuflen + i] = (1 / (double) 0x7fff) * v;
+						for (int p = offset; p < end; p++, i += nch) {
+							inbuf[p] = (1 / (double) 0x7fff) * input.getShort(i * 2);
 						}
 						break;
 
 					case 3:
-						for (i = 0; i < nsmplread * nch; i++) {
-							inbuf[nch * inbuflen + i] = (1 / (double) 0x7fffff) * ((rawinbuf.get(i * 3) << 0) |
-									(rawinbuf.get(i * 3 + 1) << 8) | (rawinbuf.get(i * 3 + 2) << 16));
+						boolean littleEndian = input.order() == ByteOrder.LITTLE_ENDIAN;
+						for (int p = offset; p < end; p++, i += nch) {
+							int low = littleEndian ? i * 3 : i * 3 + 2;
+							int high = littleEndian ? i * 3 + 2 : i * 3;
+							int v = (rawinbuf[low] & 0xff) | ((rawinbuf[i * 3 + 1] & 0xff) << 8) |
+									(rawinbuf[high] << 16);
+							inbuf[p] = (1 / (double) 0x7fffff) * v;
 						}
 						break;
 
 					case 4:
-						for (i = 0; i < nsmplread * nch; i++) {
-							int v = rawinbuf.order(byteOrder).asIntBuffer().get(i);
-							inbuf[nch * inbuflen + i] = (1 / (double) 0x7fffffff) * v;
+						for (int p = offset; p < end; p++, i += nch) {
+							inbuf[p] = (1 / (double) 0x7fffffff) * input.getInt(i * 4);
 						}
 						break;
 				}
+			}
+			return frameCount;
+		}
 
-				for (; i < nch * toberead2; i++) {
-					inbuf[nch * inbuflen + i] = 0;
+		/**
+		 * Quantise the given number of frames from outbuf into rawoutbuf.
+		 *
+		 * @return the number of bytes written
+		 */
+		private int quantise(int frames) {
+			int samples = frames * nch;
+
+			if (dbps == 8) { // unquantised, for the second pass
+				for (int i = 0; i < samples; i++) {
+					double f = outbuf[i] > 0 ? outbuf[i] : -outbuf[i];
+					peak[0] = peak[0] < f ? f : peak[0];
+					output.putDouble(i * 8, outbuf[i]);
 				}
+				return samples * 8;
+			}
+
+			int max = SAMPLE_MAX[dbps];
+			int min = -max - 1;
+			double gain2 = gain * max;
+			boolean littleEndian = output.order() == ByteOrder.LITTLE_ENDIAN;
+			int ch = 0;
 
-				inbuflen += toberead2;
+			for (int i = 0; i < samples; i++) {
+				int s;
 
-				sumread += nsmplread;
+				if (dither != 0) {
+					s = ssrc.do_shaping(outbuf[i] * gain2, peak, dither, ch);
+				} else {
+					s = RINT(outbuf[i] * gain2);
 
-				ending = sumread >= chanklen;
-//                ending = fpi.available() == 0 || sumread >= chanklen;
+					if (s < min) {
+						double d = (double) s / min;
+						peak[0] = peak[0] < d ? d : peak[0];
+						s = min;
+					}
+					if (max < s) {
+						double d = (double) s / max;
+						peak[0] = peak[0] < d ? d : peak[0];
+						s = max;
+					}
+				}
 
-//              nsmplwrt1 = ((rp - 1) * sfrq / fs1 + inbuflen - n1x) * dfrq * osf / sfrq;
-//              if (nsmplwrt1 > n2b2) { nsmplwrt1 = n2b2; }
-				nsmplwrt1 = n2b2;
+				switch (dbps) {
+					case 1:
+						rawoutbuf[i] = (byte) (s + 0x80);
+						break;
 
-				// apply stage 1 filter
+					case 2:
+						output.putShort(i * 2, (short) s);
+						break;
 
-				ip = ((sfrq * (rp - 1) + fs1) / fs1) * nch; // inbuf
+					case 3:
+						rawoutbuf[littleEndian ? i * 3 : i * 3 + 2] = (byte) (s & 255);
+						rawoutbuf[i * 3 + 1] = (byte) ((s >> 8) & 255);
+						rawoutbuf[littleEndian ? i * 3 + 2 : i * 3] = (byte) ((s >> 16) & 255);
+						break;
+				}
 
-				s1p_backup = s1p;
-				ip_backup = ip;
-				osc_backup = osc;
+				ch++;
+				if (ch == nch) {
+					ch = 0;
+				}
+			}
+			return samples * dbps;
+		}
+	}
 
-				for (ch = 0; ch < nch; ch++) {
-					int op = ch; // outbuf
-//                  int fdo = fs1 / (dfrq * osf);
-					int no = n1y * osf;
+	/**
+	 * A resampling filter, converting a batch of blocks at a time. The caller writes {@link #getInputFrames()} frames to
+	 * each channel's inbuf (starting at {@link #getInputOffset()}, and padded with zeros once the input has ended) before
+	 * each call to {@link #process(double[])}, which writes interleaved output.
+	 * <p>
+	 * The phase of each block depends only on the block before it, not on the signal, so the position of every block in a
+	 * batch is known in advance. This allows the most expensive parts of the filters to run for every block and channel
+	 * at once, leaving only the overlap between consecutive blocks to be handled in order.
+	 */
+	private abstract static class Resampler {
+		final int nch, sfrq, dfrq;
 
-					s1p = s1p_backup;
-					ip = ip_backup + ch;
+		/** the number of blocks filtered by each call to {@link #process(double[])} */
+		final int blocks;
 
-					switch (n1x) {
-						case 7:
-							for (p = 0; p < nsmplwrt1; p++) {
-								int s1o = f1order[s1p];
+		/** the input buffer for each channel */
+		double[][] inbuf;
 
-								buf2[ch][p] = stage1[s1o][0] * inbuf[ip + 0 * nch] + stage1[s1o][1] * inbuf[ip + 1 *
-										nch] + stage1[s1o][2] * inbuf[ip + 2 * nch] + stage1[s1o][3] * inbuf[ip + 3 *
-										nch] + stage1[s1o][4] * inbuf[ip + 4 * nch] + stage1[s1o][5] * inbuf[ip + 5 *
-										nch] + stage1[s1o][6] * inbuf[ip + 6 * nch];
+		/** the number of output frames to discard at the start, to compensate for the filters' delay */
+		int delay;
 
-								ip += f1inc[s1p];
+		/** the maximum number of frames produced by a single call to {@link #process(double[])} */
+		int maxOutput;
 
-								s1p++;
-								if (s1p == no) {
-									s1p = 0;
-								}
-							}
-							break;
+		/** used to filter blocks and channels in parallel, if set */
+		ForkJoinPool pool;
 
-						case 9:
-							for (p = 0; p < nsmplwrt1; p++) {
-								int s1o = f1order[s1p];
+		Resampler(int nch, int sfrq, int dfrq, int blocks) {
+			this.nch = nch;
+			this.sfrq = sfrq;
+			this.dfrq = dfrq;
+			this.blocks = blocks;
+		}
 
-								buf2[ch][p] = stage1[s1o][0] * inbuf[ip + 0 * nch] + stage1[s1o][1] * inbuf[ip + 1 *
-										nch] + stage1[s1o][2] * inbuf[ip + 2 * nch] + stage1[s1o][3] * inbuf[ip + 3 *
-										nch] + stage1[s1o][4] * inbuf[ip + 4 * nch] + stage1[s1o][5] * inbuf[ip + 5 *
-										nch] + stage1[s1o][6] * inbuf[ip + 6 * nch] + stage1[s1o][7] * inbuf[ip + 7 *
-										nch] + stage1[s1o][8] * inbuf[ip + 8 * nch];
+		abstract int getInputOffset();
+
+		abstract int getInputFrames();
+
+		/**
+		 * Filter the next batch of input.
+		 *
+		 * @return the number of frames written to outbuf
+		 */
+		abstract int process(double[] outbuf);
+
+		/**
+		 * Run one task of the given phase of {@link #process(double[])}. Tasks within a phase must only modify their own
+		 * buffers and samples, so that they can run in any order (or at the same time) with the same result.
+		 */
+		abstract void runTask(int phase, int task);
+
+		/**
+		 * Run tasks 0 to count - 1 of the given phase: in parallel if there is a pool (the calling thread waits for them
+		 * all to finish), otherwise in order on the calling thread.
+		 */
+		@SuppressLint("NewApi") // a pool can only be given on API 21+ (see Stream)
+		final void runTasks(final int phase, int count) {
+			if (pool == null || count == 1) {
+				for (int task = 0; task < count; task++) {
+					runTask(phase, task);
+				}
+				return;
+			}
 
-								ip += f1inc[s1p];
+			final RecursiveAction[] tasks = new RecursiveAction[count];
+			for (int i = 0; i < count; i++) {
+				final int task = i;
+				tasks[i] = new RecursiveAction() {
+					@Override
+					protected void compute() {
+						runTask(phase, task);
+					}
+				};
+			}
+			pool.invoke(new RecursiveAction() {
+				@Override
+				protected void compute() {
+					invokeAll(tasks);
+				}
+			});
+		}
 
-								s1p++;
-								if (s1p == no) {
-									s1p = 0;
-								}
-							}
-							break;
+		/**
+		 * @return the total number of output frames expected for the given number of input frames
+		 */
+		long getOutputLength(long sumread) {
+			return (long) Math.floor((double) sumread * dfrq / sfrq) + 2;
+		}
+	}
 
-						default:
-							for (p = 0; p < nsmplwrt1; p++) {
-								double tmp = 0;
-								int ip2 = ip;
+	/** No rate conversion - just requantisation */
+	private static final class Passthrough extends Resampler {
+		private static final int BLOCK_FRAMES = 4096;
 
-								int s1o = f1order[s1p];
+		Passthrough(int nch, int frq) {
+			super(nch, frq, frq, 1);
+			inbuf = new double[nch][BLOCK_FRAMES];
+			maxOutput = BLOCK_FRAMES;
+		}
 
-								for (i = 0; i < n1x; i++) {
-									tmp += stage1[s1o][i] * inbuf[ip2];
-									ip2 += nch;
-								}
-								buf2[ch][p] = tmp;
+		@Override
+		int getInputOffset() {
+			return 0;
+		}
 
-								ip += f1inc[s1p];
+		@Override
+		int getInputFrames() {
+			return BLOCK_FRAMES;
+		}
 
-								s1p++;
-								if (s1p == no) {
-									s1p = 0;
-								}
-							}
-							break;
-					}
+		@Override
+		int process(double[] outbuf) {
+			for (int ch = 0; ch < nch; ch++) {
+				double[] in = inbuf[ch];
+				for (int i = 0, p = ch; i < BLOCK_FRAMES; i++, p += nch) {
+					outbuf[p] = in[i];
+				}
+			}
+			return BLOCK_FRAMES;
+		}
 
-					osc = osc_backup;
+		@Override
+		void runTask(int phase, int task) {
+		}
 
-					// apply stage 2 filter
+		@Override
+		long getOutputLength(long sumread) {
+			return sumread;
+		}
+	}
 
-					for (p = nsmplwrt1; p < n2b; p++) {
-						buf2[ch][p] = 0;
-					}
+	/** the number of filter designs (in each direction) kept for reuse */
+	private static final int FILTER_CACHE_SIZE = 8;
 
-//for(i=0;i<n2b2;i++) { System.err.printf("%d:%g",i,buf2[ch][i]); }
+	/**
+	 * Identifies a filter design: the pair of rates, the stopband attenuation, the width of the transition band and the
+	 * filter length. (The fast profile only changes the attenuation and transition band, so needs no field of its own.)
+	 */
+	private static final class FilterKey {
+		final int sfrq, dfrq;
+		final double aa, dfLimit;
+		final int filterlen;
+
+		FilterKey(int sfrq, int dfrq, double aa, double dfLimit, int filterlen) {
+			this.sfrq = sfrq;
+			this.dfrq = dfrq;
+			this.aa = aa;
+			this.dfLimit = dfLimit;
+			this.filterlen = filterlen;
+		}
 
-					fft.rdft(n2b, 1, buf2[ch], fft_ip, fft_w);
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof FilterKey)) {
+				return false;
+			}
+			FilterKey other = (FilterKey) o;
+			return sfrq == other.sfrq && dfrq == other.dfrq && Double.compare(aa, other.aa) == 0 &&
+					Double.compare(dfLimit, other.dfLimit) == 0 && filterlen == other.filterlen;
+		}
 
-					buf2[ch][0] = stage2[0] * buf2[ch][0];
-					buf2[ch][1] = stage2[1] * buf2[ch][1];
+		@Override
+		public int hashCode() {
+			int result = sfrq;
+			result = 31 * result + dfrq;
+			result = 31 * result + Double.valueOf(aa).hashCode();
+			result = 31 * result + Double.valueOf(dfLimit).hashCode();
+			return 31 * result + filterlen;
+		}
+	}
 
-					for (i = 1; i < n2b / 2; i++) {
-						double re, im;
+	/**
+	 * The most recently used filter designs of one type. Designing the filters (particularly the long filters of the
+	 * standard profile) costs far more than converting a short clip, and the same few pairs of rates are used over and
+	 * over.
+	 */
+	private static final class FilterCache<F> {
+		private final Map<FilterKey, F> designs = new LinkedHashMap<FilterKey, F>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<FilterKey, F> eldest) {
+				return size() > FILTER_CACHE_SIZE;
+			}
+		};
 
-						re = stage2[i * 2] * buf2[ch][i * 2] - stage2[i * 2 + 1] * buf2[ch][i * 2 + 1];
-						im = stage2[i * 2 + 1] * buf2[ch][i * 2] + stage2[i * 2] * buf2[ch][i * 2 + 1];
+		synchronized F get(FilterKey key) {
+			return designs.get(key);
+		}
 
-//System.err.printf("%d : %g %g %g %g %g %g\n",i,stage2[i*2],stage2[i*2+1],buf2[ch][i*2],buf2[ch][i*2+1],re,im);
+		// filters are designed outside the lock so that other conversions aren't held up - a duplicate design is harmless
+		synchronized void put(FilterKey key, F filter) {
+			designs.put(key, filter);
+		}
 
-						buf2[ch][i * 2] = re;
-						buf2[ch][i * 2 + 1] = im;
-					}
+		synchronized void clear() {
+			designs.clear();
+		}
+	}
 
-					fft.rdft(n2b, -1, buf2[ch], fft_ip, fft_w);
+	private static final FilterCache<UpsampleFilter> upsampleFilters = new FilterCache<>();
+	private static final FilterCache<DownsampleFilter> downsampleFilters = new FilterCache<>();
 
-					for (i = osc, j = 0; i < n2b2; i += osf, j++) {
-						double f = (buf1[ch][j] + buf2[ch][i]);
-						outbuf[op + j * nch] = f;
-					}
+	/** */
+	private static UpsampleFilter getUpsampleFilter(int sfrq, int dfrq, double aa, double dfLimit, int filterlen) {
+		FilterKey key = new FilterKey(sfrq, dfrq, aa, dfLimit, filterlen);
+		UpsampleFilter filter = upsampleFilters.get(key);
+		if (filter == null) {
+			filter = new UpsampleFilter(sfrq, dfrq, aa, dfLimit, filterlen);
+			upsampleFilters.put(key, filter);
+		}
+		return filter;
+	}
 
-					nsmplwrt2 = j;
+	/** */
+	private static DownsampleFilter getDownsampleFilter(int sfrq, int dfrq, double aa, double dfLimit, int filterlen) {
+		FilterKey key = new FilterKey(sfrq, dfrq, aa, dfLimit, filterlen);
+		DownsampleFilter filter = downsampleFilters.get(key);
+		if (filter == null) {
+			filter = new DownsampleFilter(sfrq, dfrq, aa, dfLimit, filterlen);
+			downsampleFilters.put(key, filter);
+		}
+		return filter;
+	}
 
-					osc = i - n2b2;
+	/** Discard all cached filter designs, so that the next conversion designs its filters from scratch. */
+	static void clearFilterCache() {
+		upsampleFilters.clear();
+		downsampleFilters.clear();
+	}
 
-					for (j = 0; i < n2b; i += osf, j++) {
-						buf1[ch][j] = buf2[ch][i];
-					}
-				}
+	/** The filters for upsampling between a pair of rates. Never modified once designed, so can be shared. */
+	private static final class UpsampleFilter {
+		final int frqgcd, osf, fs1, fs2;
+		final double[] stage1; // n1y phases of n1x taps
+		final double[] stage2;
+		final int n1, n1x, n1y, n2, n2b;
+		final int[] f1order;
+		final int[] f1inc; // in frames
+		final int[] fft_ip; // the FFT also uses this as a work area, so each user needs its own copy
+		final double[] fft_w;
 
-				rp += nsmplwrt1 * (sfrq / frqgcd) / osf;
+		UpsampleFilter(int sfrq, int dfrq, double aa, double dfLimit, int filter2len) {
+			SplitRadixFft fft = new SplitRadixFft();
+			int i;
 
-				rawoutbuf.clear();
-				if (twopass) {
-					for (i = 0; i < nsmplwrt2 * nch; i++) {
-						double f = outbuf[i] > 0 ? outbuf[i] : -outbuf[i];
-						peak[0] = peak[0] < f ? f : peak[0];
-						rawoutbuf.asDoubleBuffer().put(i, outbuf[i]);
-					}
-				} else {
-					switch (dbps) {
-						case 1: {
-							double gain2 = gain * 0x7f;
-							ch = 0;
-
-							for (i = 0; i < nsmplwrt2 * nch; i++) {
-								int s;
-
-								if (dither != 0) {
-									s = do_shaping(outbuf[i] * gain2, peak, dither, ch);
-								} else {
-									s = RINT(outbuf[i] * gain2);
-
-									if (s < -0x80) {
-										double d = (double) s / -0x80;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = -0x80;
-									}
-									if (0x7f < s) {
-										double d = (double) s / 0x7f;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = 0x7f;
-									}
-								}
-
-								rawoutbuf.put(i, (byte) (s + 0x80));
-
-								ch++;
-								if (ch == nch) {
-									ch = 0;
-								}
-							}
-						}
-						break;
+			// Make stage 1 filter
 
-						case 2: {
-							double gain2 = gain * 0x7fff;
-							ch = 0;
-
-							for (i = 0; i < nsmplwrt2 * nch; i++) {
-								int s;
-
-								if (dither != 0) {
-									s = do_shaping(outbuf[i] * gain2, peak, dither, ch);
-								} else {
-									s = RINT(outbuf[i] * gain2);
-
-									if (s < -0x8000) {
-										double d = (double) s / -0x8000;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = -0x8000;
-									}
-									if (0x7fff < s) {
-										double d = (double) s / 0x7fff;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = 0x7fff;
-									}
-								}
-
-								rawoutbuf.order(byteOrder).asShortBuffer().put(i, (short) s);
-
-								ch++;
-								if (ch == nch) {
-									ch = 0;
-								}
-							}
-						}
-						break;
+			{
+				double lpf, d, df, alp, iza;
+				double guard = 2;
+				int n;
 
-						case 3: {
-							double gain2 = gain * 0x7fffff;
-							ch = 0;
-
-							for (i = 0; i < nsmplwrt2 * nch; i++) {
-								int s;
-
-								if (dither != 0) {
-									s = do_shaping(outbuf[i] * gain2, peak, dither, ch);
-								} else {
-									s = RINT(outbuf[i] * gain2);
-
-									if (s < -0x800000) {
-										double d = (double) s / -0x800000;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = -0x800000;
-									}
-									if (0x7fffff < s) {
-										double d = (double) s / 0x7fffff;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = 0x7fffff;
-									}
-								}
-
-								rawoutbuf.put(i * 3, (byte) (s & 255));
-								s >>= 8;
-								rawoutbuf.put(i * 3 + 1, (byte) (s & 255));
-								s >>= 8;
-								rawoutbuf.put(i * 3 + 2, (byte) (s & 255));
-
-								ch++;
-								if (ch == nch) {
-									ch = 0;
-								}
-							}
-						}
-						break;
+				frqgcd = gcd(sfrq, dfrq);
 
-					}
-				}
+				fs1 = sfrq / frqgcd * dfrq;
 
-				if (!init) {
-					if (ending) {
-						if ((double) sumread * dfrq / sfrq + 2 > sumwrite + nsmplwrt2) {
-							rawoutbuf.position(0);
-							rawoutbuf.limit(dbps * nch * nsmplwrt2);
-							writeBuffers(fpo, rawoutbuf);
-							sumwrite += nsmplwrt2;
-						} else {
-							rawoutbuf.position(0);
-							int limitData = (int) (dbps * nch * (Math.floor((double) sumread * dfrq / sfrq) + 2 -
-									sumwrite));
-							if (limitData > 0) {
-								rawoutbuf.limit(limitData);
-								writeBuffers(fpo, rawoutbuf);
-							}
-							break;
-						}
-					} else {
-						rawoutbuf.position(0);
-						rawoutbuf.limit(dbps * nch * nsmplwrt2);
-						writeBuffers(fpo, rawoutbuf);
-						sumwrite += nsmplwrt2;
-					}
+				if (fs1 / dfrq == 1) {
+					osf = 1;
+				} else if (fs1 / dfrq % 2 == 0) {
+					osf = 2;
+				} else if (fs1 / dfrq % 3 == 0) {
+					osf = 3;
 				} else {
-
-					if (nsmplwrt2 < delay) {
-						delay -= nsmplwrt2;
-					} else {
-						if (ending) {
-							if ((double) sumread * dfrq / sfrq + 2 > sumwrite + nsmplwrt2 - delay) {
-								rawoutbuf.position(dbps * nch * delay);
-								rawoutbuf.limit(dbps * nch * nsmplwrt2);
-								writeBuffers(fpo, rawoutbuf);
-								sumwrite += nsmplwrt2 - delay;
-							} else {
-								rawoutbuf.position(dbps * nch * delay);
-								rawoutbuf.limit((int) (dbps * nch * (Math.floor((double) sumread * dfrq / sfrq) + 2 -
-										sumwrite)));
-								writeBuffers(fpo, rawoutbuf);
-								break;
-							}
-						} else {
-							rawoutbuf.position(dbps * nch * delay);
-							rawoutbuf.limit(dbps * nch * (nsmplwrt2));
-							writeBuffers(fpo, rawoutbuf);
-							sumwrite += nsmplwrt2 - delay;
-							init = false;
-						}
-					}
+					throw new IllegalArgumentException(String.format(Locale.US, "Resampling from %dHz to %dHz is not " +
+							"supported.\n%d/gcd(%d,%d)=%d must be divided by 2 or 3.\n", sfrq, dfrq, sfrq, sfrq, dfrq,
+							fs1 / dfrq));
 				}
 
-				{
-					ds = (rp - 1) / (fs1 / sfrq);
-
-					assert (inbuflen >= ds);
+				df = (dfrq * osf / 2 - sfrq / 2) * 2 / guard;
+				lpf = sfrq / 2 + (dfrq * osf / 2 - sfrq / 2) / guard;
 
-					System.arraycopy(inbuf, nch * ds, inbuf, 0, nch * (inbuflen - ds)); // memmove TODO overlap
-					inbuflen -= ds;
-					rp -= ds * (fs1 / sfrq);
+				if (aa <= 21) {
+					d = 0.9222;
+				} else {
+					d = (aa - 7.95) / 14.36;
 				}
 
-				if ((spcount++ & 7) == 7) {
-					showprogress((double) sumread / chanklen);
+				n = (int) (fs1 / df * d + 1);
+				if (n % 2 == 0) {
+					n++;
 				}
-			}
-		}
-
-		showprogress(1);
-
-		return peak[0];
-	}
-
-	/** */
-	public double downsample(InputStream fpi, OutputStream fpo, int nch, int bps, int dbps, int sfrq, int dfrq, double
-			gain, long chanklen, boolean twopass, int dither) throws IOException {
-		int frqgcd, osf = 0, fs1, fs2;
-		double[] stage1;
-		double[][] stage2;
-		int n2, n2x, n2y, n1, n1b;
-		int filter1len;
-		int[] f2order, f2inc;
-		int[] fft_ip = null;
-		double[] fft_w = null;
-		ByteBuffer rawinbuf, rawoutbuf;
-		double[] inbuf, outbuf;
-		double[][] buf1, buf2;
-		int i, j;
-		int spcount = 0;
-		double[] peak = new double[]{0};
+				n1 = n;
 
-//        System.err.println("downsample");
+				alp = alpha(aa);
+				iza = I0Bessel.value(alp);
 
-		filter1len = FFTFIRLEN; // stage 1 filter length
+				n1y = fs1 / sfrq;
+				n1x = n1 / n1y + 1;
 
-		// Make stage 1 filter
-
-		{
-			double aa = AA; // stop band attenuation(dB)
-			double lpf, d, df, alp, iza;
-//          double delta;
-			int ipsize, wsize;
-
-			frqgcd = gcd(sfrq, dfrq);
-
-			if (dfrq / frqgcd == 1) {
-				osf = 1;
-			} else if (dfrq / frqgcd % 2 == 0) {
-				osf = 2;
-			} else if (dfrq / frqgcd % 3 == 0) {
-				osf = 3;
-			} else {
-				throw new IllegalArgumentException(String.format(Locale.US,"Resampling from %dHz to %dHz is not supported.\n" +
-						"%d/gcd(%d,%d)=%d must be divided by 2 or 3.", sfrq, dfrq, dfrq, sfrq, dfrq, dfrq / frqgcd));
-			}
+				f1order = new int[n1y * osf];
+				for (i = 0; i < n1y * osf; i++) {
+					f1order[i] = fs1 / sfrq - (i * (fs1 / (dfrq * osf))) % (fs1 / sfrq);
+					if (f1order[i] == fs1 / sfrq) {
+						f1order[i] = 0;
+					}
+				}
 
-			fs1 = sfrq * osf;
+				f1inc = new int[n1y * osf];
+				for (i = 0; i < n1y * osf; i++) {
+					f1inc[i] = f1order[i] < fs1 / (dfrq * osf) ? 1 : 0;
+					if (f1order[i] == fs1 / sfrq) {
+						f1order[i] = 0;
+					}
+				}
 
-//          delta = Math.pow(10, -aa / 20);
-			if (aa <= 21) {
-				d = 0.9222;
-			} else {
-				d = (aa - 7.95) / 14.36;
-			}
+				stage1 = new double[n1y * n1x];
 
-			n1 = filter1len;
-			for (i = 1; ; i = i * 2) {
-				n1 = filter1len * i;
-				if (n1 % 2 == 0) {
-					n1--;
-				}
-				df = (fs1 * d) / (n1 - 1);
-				lpf = (dfrq - df) / 2;
-				if (df < DF) {
-					break;
+				for (i = -(n1 / 2); i <= n1 / 2; i++) {
+					stage1[(i + n1 / 2) % n1y * n1x + (i + n1 / 2) / n1y] = win(i, n1, alp, iza) * hn_lpf(i, lpf,
+							fs1) * fs1 / sfrq;
 				}
 			}
 
-			alp = alpha(aa);
+			// Make stage 2 filter
 
-			iza = I0Bessel.value(alp);
-//System.err.printf("iza %f, alp: %f\n", iza, alp); // OK
+			{
+				double lpf, d, df, alp, iza;
+				int ipsize, wsize;
+				int n;
 
-			for (n1b = 1; n1b < n1; n1b *= 2) {
-			}
-			n1b *= 2;
+				if (aa <= 21) {
+					d = 0.9222;
+				} else {
+					d = (aa - 7.95) / 14.36;
+				}
 
-			stage1 = new double[n1b];
+				fs2 = dfrq * osf;
 
-			for (i = -(n1 / 2); i <= n1 / 2; i++) {
-				stage1[i + n1 / 2] = win(i, n1, alp, iza) * hn_lpf(i, lpf, fs1) * fs1 / sfrq / n1b * 2;
-//System.err.printf("1: %06d: %e\n", i + n1 / 2, stage1[i + n1 / 2]); // OK
-			}
+				for (i = 1; ; i = i * 2) {
+					n = filter2len * i;
+					if (n % 2 == 0) {
+						n--;
+					}
+					df = (fs2 * d) / (n - 1);
+					lpf = sfrq / 2;
+					if (df < dfLimit) {
+						break;
+					}
+				}
+				n2 = n;
 
-			ipsize = (int) (2 + Math.sqrt(n1b));
-			fft_ip = new int[ipsize];
-			fft_ip[0] = 0;
-			wsize = n1b / 2;
-			fft_w = new double[wsize];
+				alp = alpha(aa);
 
-			fft.rdft(n1b, 1, stage1, fft_ip, fft_w);
-//for (i = -(n1 / 2); i <= n1 / 2; i++) {
-// System.err.printf("1': %06d: %e\n", i + n1 / 2, stage1[i + n1 / 2]);
-//}
-//for (i = 0; i < ipsize; i++) {
-// System.err.printf("ip: %06d: %d\n", i, fft_ip[i]); // OK
-//}
-//for (i = 0; i < wsize; i++) {
-// System.err.printf("w: %06d: %e\n", i, fft_w[i]); // OK
-//}
-		}
+				iza = I0Bessel.value(alp);
 
-		// Make stage 2 filter
+				for (n = 1; n < n2; n *= 2) {
+				}
+				n2b = n * 2;
 
-		if (osf == 1) {
-			fs2 = sfrq / frqgcd * dfrq;
-			n2 = 1;
-			n2y = n2x = 1;
-			f2order = new int[n2y];
-			f2order[0] = 0;
-			f2inc = new int[n2y];
-			f2inc[0] = sfrq / dfrq;
-			stage2 = new double[n2y][n2x];
-			stage2[0][0] = 1;
-		} else {
-			double aa = AA; // stop band attenuation(dB)
-			double lpf, d, df, alp, iza;
-//          double delta;
-			double guard = 2;
+				stage2 = new double[n2b];
 
-			fs2 = sfrq / frqgcd * dfrq;
+				for (i = -(n2 / 2); i <= n2 / 2; i++) {
+					stage2[i + n2 / 2] = win(i, n2, alp, iza) * hn_lpf(i, lpf, fs2) / n2b * 2;
+				}
 
-			df = (fs1 / 2 - sfrq / 2) * 2 / guard;
-			lpf = sfrq / 2 + (fs1 / 2 - sfrq / 2) / guard;
+				ipsize = (int) (2 + Math.sqrt(n2b));
+				fft_ip = new int[ipsize];
+				fft_ip[0] = 0;
+				wsize = n2b / 2;
+				fft_w = new double[wsize];
 
-//          delta = Math.pow(10, -aa / 20);
-			if (aa <= 21) {
-				d = 0.9222;
-			} else {
-				d = (aa - 7.95) / 14.36;
+				fft.rdft(n2b, 1, stage2, fft_ip, fft_w);
 			}
+		}
+	}
 
-			n2 = (int) (fs2 / df * d + 1);
-			if (n2 % 2 == 0) {
-				n2++;
-			}
+	/** The filters for downsampling between a pair of rates. Never modified once designed, so can be shared. */
+	private static final class DownsampleFilter {
+		final int osf, fs1, fs2;
+		final double[] stage1;
+		final double[] stage2; // n2y phases of n2x taps
+		final int n1, n1b, n2, n2x, n2y;
+		final int[] f2order, f2inc;
+		final int[] fft_ip; // the FFT also uses this as a work area, so each user needs its own copy
+		final double[] fft_w;
 
-			alp = alpha(aa);
-			iza = I0Bessel.value(alp);
-//System.err.printf("iza %f, alp: %f\n", iza, alp); // OK
+		DownsampleFilter(int sfrq, int dfrq, double aa, double dfLimit, int filter1len) {
+			SplitRadixFft fft = new SplitRadixFft();
+			int frqgcd;
+			int i;
 
-			n2y = fs2 / fs1; // 0Tvfs2Tv?H
-			n2x = n2 / n2y + 1;
+			// Make stage 1 filter
 
-			f2order = new int[n2y];
-			for (i = 0; i < n2y; i++) {
-				f2order[i] = fs2 / fs1 - (i * (fs2 / dfrq)) % (fs2 / fs1);
-				if (f2order[i] == fs2 / fs1) {
-					f2order[i] = 0;
+			{
+				double lpf, d, df, alp, iza;
+				int ipsize, wsize;
+				int n;
+
+				frqgcd = gcd(sfrq, dfrq);
+
+				if (dfrq / frqgcd == 1) {
+					osf = 1;
+				} else if (dfrq / frqgcd % 2 == 0) {
+					osf = 2;
+				} else if (dfrq / frqgcd % 3 == 0) {
+					osf = 3;
+				} else {
+					throw new IllegalArgumentException(String.format(Locale.US, "Resampling from %dHz to %dHz is not " +
+							"supported.\n%d/gcd(%d,%d)=%d must be divided by 2 or 3.", sfrq, dfrq, dfrq, sfrq, dfrq,
+							dfrq / frqgcd));
 				}
-			}
 
-			f2inc = new int[n2y];
-			for (i = 0; i < n2y; i++) {
-				f2inc[i] = (fs2 / dfrq - f2order[i]) / (fs2 / fs1) + 1;
-				if (f2order[i + 1 == n2y ? 0 : i + 1] == 0) {
-					f2inc[i]--;
+				fs1 = sfrq * osf;
+
+				if (aa <= 21) {
+					d = 0.9222;
+				} else {
+					d = (aa - 7.95) / 14.36;
 				}
-			}
 
-			stage2 = new double[n2y][n2x];
+				for (i = 1; ; i = i * 2) {
+					n = filter1len * i;
+					if (n % 2 == 0) {
+						n--;
+					}
+					df = (fs1 * d) / (n - 1);
+					lpf = (dfrq - df) / 2;
+					if (df < dfLimit) {
+						break;
+					}
+				}
+				n1 = n;
 
-//System.err.printf("n2y: %d, n2: %d\n", n2y, n2);
-			for (i = -(n2 / 2); i <= n2 / 2; i++) {
-				stage2[(i + n2 / 2) % n2y][(i + n2 / 2) / n2y] = win(i, n2, alp, iza) * hn_lpf(i, lpf, fs2) * fs2 /
-						fs1;
-//System.err.printf(" stage2[%02d][%02d]: %f\n", (i + n2 / 2) % n2y, (i + n2 / 2) / n2y, win(i, n2, alp, iza) *
-// hn_lpf(i, lpf, fs2) * fs2 / fs1); // OK
-			}
-		}
+				alp = alpha(aa);
 
-		// Apply filters
+				iza = I0Bessel.value(alp);
 
-		setstarttime();
+				for (n = 1; n < n1; n *= 2) {
+				}
+				n1b = n * 2;
 
-		{
-			int n1b2 = n1b / 2;
-			int rp; // inbuffs1Tv???
-			int rps; // rp(fs1/sfrq=osf)]
-			int rp2; // buf2fs2Tv???
-			int ds; // disposesfrqTv?
-			// ?t@Cinbuf?lvZ stage2 filternTv?
-//          int nsmplwrt1;
-			// ?t@Cinbuf?lvZ stage2 filternTv?
-			int nsmplwrt2 = 0;
-			int s2p; // stage1 filter?oTv?n1y*osf]
-			boolean init, ending;
-//          int osc;
-			int bp; // rp2vZ?Dbuf2Tvu
-			int rps_backup, s2p_backup;
-			int k, ch, p;
-			int inbuflen = 0;
-			int sumread, sumwrite;
-			int delay = 0;
-			int op;
-
-			// |....B....|....C....| buf1 n1b2+n1b2
-			// |.A.|....D....| buf2 n2x+n1b2
-			//
-			// inbufBosf{TvORs?[
-			// CNA
-			// BCstage 1 filter
-			// DB
-			// ADstage 2 filter
-			// DA
-			// CDRs?[
-
-			buf1 = new double[nch][n1b];                                      //rawoutbuf = calloc(nch*(n2b2/osf+1),
-			// dbps);
+				stage1 = new double[n1b];
 
-			buf2 = new double[nch][n2x + 1 + n1b2];
+				for (i = -(n1 / 2); i <= n1 / 2; i++) {
+					stage1[i + n1 / 2] = win(i, n1, alp, iza) * hn_lpf(i, lpf, fs1) * fs1 / sfrq / n1b * 2;
+				}
 
-			rawinbuf = ByteBuffer.allocate((nch * (n1b2 / osf + osf + 1)) * bps);
-//System.err.println((double) n1b2 * sfrq / dfrq + 1);
-			rawoutbuf = ByteBuffer.allocate((int) (((double) n1b2 * dfrq / sfrq + 1) * (dbps * nch)));
-			inbuf = new double[nch * (n1b2 / osf + osf + 1)];
-			outbuf = new double[(int) (nch * ((double) n1b2 * dfrq / sfrq + 1))];
+				ipsize = (int) (2 + Math.sqrt(n1b));
+				fft_ip = new int[ipsize];
+				fft_ip[0] = 0;
+				wsize = n1b / 2;
+				fft_w = new double[wsize];
 
-			op = 0; // outbuf
+				fft.rdft(n1b, 1, stage1, fft_ip, fft_w);
+			}
 
-			s2p = 0;
-			rp = 0;
-			rps = 0;
-			ds = 0;
-//          osc = 0;
-			rp2 = 0;
+			// Make stage 2 filter
 
-			init = true;
-			ending = false;
-			delay = (int) ((double) n1 / 2 / ((double) fs1 / dfrq) + (double) n2 / 2 / ((double) fs2 / dfrq));
-			sumread = sumwrite = 0;
+			if (osf == 1) {
+				fs2 = sfrq / frqgcd * dfrq;
+				n2 = 1;
+				n2y = n2x = 1;
+				f2order = new int[n2y];
+				f2order[0] = 0;
+				f2inc = new int[n2y];
+				f2inc[0] = sfrq / dfrq;
+				stage2 = new double[n2y * n2x];
+				stage2[0] = 1;
+			} else {
+				double lpf, d, df, alp, iza;
+				double guard = 2;
+				int n;
 
-			while (true) {
-				int nsmplread;
-				long toberead;
-				rps = 0;   //TODO settings this parameter to zero fixed a lot of problems
-				toberead = (n1b2 - rps - 1) / osf + 1;
-				if (toberead + sumread > chanklen) {
-					toberead = chanklen - sumread;
-				}
+				fs2 = sfrq / frqgcd * dfrq;
 
-				rawinbuf.position(0);
-				rawinbuf.limit((int)(bps * nch * toberead));
+				df = (fs1 / 2 - sfrq / 2) * 2 / guard;
+				lpf = sfrq / 2 + (fs1 / 2 - sfrq / 2) / guard;
 
-				byte[] tempData = new byte[rawinbuf.limit()];
-				nsmplread = fpi.read(tempData);
-				if (nsmplread < 0) {
-					nsmplread = 0;
+				if (aa <= 21) {
+					d = 0.9222;
+				} else {
+					d = (aa - 7.95) / 14.36;
 				}
 
-				//TODO sometimes happens, investigate around it
-				if (nsmplread < rawinbuf.limit()) {
-					chanklen = sumread + nsmplread / bps * nch;
+				n = (int) (fs2 / df * d + 1);
+				if (n % 2 == 0) {
+					n++;
 				}
+				n2 = n;
 
-				rawinbuf.limit(nsmplread);
-				rawinbuf = ByteBuffer.wrap(tempData);
-				rawinbuf.position(nsmplread);
-
-				rawinbuf.flip();
-				nsmplread /= bps * nch;
-
-				switch (bps) {
-					case 1:
-						for (i = 0; i < nsmplread * nch; i++) {
-							inbuf[nch * inbuflen + i] = (1 / (double) 0x7f) * ((rawinbuf.get(i) & 0xff) - 128);
-						}
-						break;
-
-					case 2:
-						for (i = 0; i < nsmplread * nch; i++) {
-							int v = rawinbuf.order(byteOrder).asShortBuffer().get(i);
-							inbuf[nch * inbuflen + i] = (1 / (double) 0x7fff) * v;
-//                            System.err.printf("I: %f\n", inbuf[nch * inbuflen + i]);
-						}
-						break;
+				alp = alpha(aa);
+				iza = I0Bessel.value(alp);
 
-					case 3:
-						for (i = 0; i < nsmplread * nch; i++) {
-							inbuf[nch * inbuflen + i] = (1 / (double) 0x7fffff) * (((rawinbuf.get(i * 3) & 0xff) << 0)
-									| ((rawinbuf.get(i * 3 + 1) & 0xff) << 8) | ((rawinbuf.get(i * 3 + 2) & 0xff) <<
-									16));
-						}
-						break;
+				n2y = fs2 / fs1; // 0Tvfs2Tv?H
+				n2x = n2 / n2y + 1;
 
-					case 4:
-						for (i = 0; i < nsmplread * nch; i++) {
-							int v = rawinbuf.order(byteOrder).getInt(i);
-							inbuf[nch * inbuflen + i] = (1 / (double) 0x7fffffff) * v;
-						}
-						break;
+				f2order = new int[n2y];
+				for (i = 0; i < n2y; i++) {
+					f2order[i] = fs2 / fs1 - (i * (fs2 / dfrq)) % (fs2 / fs1);
+					if (f2order[i] == fs2 / fs1) {
+						f2order[i] = 0;
+					}
 				}
 
-				for (; i < nch * toberead; i++) {
-					inbuf[i] = 0;
+				f2inc = new int[n2y];
+				for (i = 0; i < n2y; i++) {
+					f2inc[i] = (fs2 / dfrq - f2order[i]) / (fs2 / fs1) + 1;
+					if (f2order[i + 1 == n2y ? 0 : i + 1] == 0) {
+						f2inc[i]--;
+					}
 				}
 
-				sumread += nsmplread;
+				stage2 = new double[n2y * n2x];
 
-//                ending = sumread >= chanklen;
-				ending = fpi.available() < 0 || sumread >= chanklen;
+				for (i = -(n2 / 2); i <= n2 / 2; i++) {
+					stage2[(i + n2 / 2) % n2y * n2x + (i + n2 / 2) / n2y] = win(i, n2, alp, iza) * hn_lpf(i, lpf,
+							fs2) * fs2 / fs1;
+				}
+			}
+		}
+	}
 
+	/** */
+	private static final class UpSampler extends Resampler {
+		private final int frqgcd, osf, fs1;
+		private final double[] stage1;
+		private final double[] stage2;
+		private final int n1x, n1y, n2b, n2b2;
+		private final int[] f1order, f1inc;
+		private final double[] fft_w;
+		private final SplitRadixFft fft = new SplitRadixFft();
+		private final double[][] buf1;
+
+		// for each block of a batch and each channel (block * nch + ch): the stage 2 buffer, and the FFT's work area
+		private final double[][] buf2;
+		private final int[][] fft_ip;
+
+		// the position in inbuf and the filter phases at the start of each block of the current batch
+		private final int[] blockIp, blockS1p, blockOsc;
+
+		private int rp; // inbuffs1Tv???
+		private int s1p; // stage1 filter?oTv?n1y*osf]
+		private int osc;
+		private int inbuflen;
+
+		UpSampler(int nch, int sfrq, int dfrq, double aa, double dfLimit, int filter2len, int blocks) {
+			this(nch, sfrq, dfrq, getUpsampleFilter(sfrq, dfrq, aa, dfLimit, filter2len), blocks);
+		}
 
-				rps_backup = rps;
-				s2p_backup = s2p;
+		private UpSampler(int nch, int sfrq, int dfrq, UpsampleFilter filter, int blocks) {
+			super(nch, sfrq, dfrq, blocks);
+			frqgcd = filter.frqgcd;
+			osf = filter.osf;
+			fs1 = filter.fs1;
+			stage1 = filter.stage1;
+			stage2 = filter.stage2;
+			n1x = filter.n1x;
+			n1y = filter.n1y;
+			n2b = filter.n2b;
+			n2b2 = n2b / 2;
+			f1order = filter.f1order;
+			f1inc = filter.f1inc;
+			fft_w = filter.fft_w;
 
-				for (ch = 0; ch < nch; ch++) {
-					rps = rps_backup;
+			buf1 = new double[nch][n2b2 / osf + 1];
+			buf2 = new double[blocks * nch][n2b];
+			fft_ip = new int[blocks * nch][];
+			for (int i = 0; i < fft_ip.length; i++) {
+				fft_ip[i] = filter.fft_ip.clone();
+			}
+			blockIp = new int[blocks];
+			blockS1p = new int[blocks];
+			blockOsc = new int[blocks];
+
+			// each block after the first in a batch needs at most this many more frames of input
+			int blockInput = n2b2 * (sfrq / frqgcd) / osf / (fs1 / sfrq) + 2;
+			inbuf = new double[nch][n2b2 + n1x + 2 + (blocks - 1) * blockInput];
+
+			inbuflen = filter.n1 / 2 / (fs1 / sfrq) + 1;
+			delay = (int) ((double) filter.n2 / 2 / (filter.fs2 / dfrq));
+			maxOutput = blocks * (n2b2 / osf + 1);
+		}
 
-					for (k = 0; k < rps; k++) {
-						buf1[ch][k] = 0;
-					}
+		@Override
+		int getInputOffset() {
+			return inbuflen;
+		}
 
-					for (i = rps, j = 0; i < n1b2; i += osf, j++) {
-						assert (j < ((n1b2 - rps - 1) / osf + 1));
+		@Override
+		int getInputFrames() {
+			// the input needed by the last block of the batch, offset by what the blocks before it have consumed
+			int shift = 0;
+			int rp = this.rp;
+			for (int block = 1; block < blocks; block++) {
+				rp += n2b2 * (sfrq / frqgcd) / osf;
+				int ds = (rp - 1) / (fs1 / sfrq);
+				rp -= ds * (fs1 / sfrq);
+				shift += ds;
+			}
+			return (int) (Math.ceil((double) n2b2 * sfrq / (dfrq * osf)) + 1 + n1x - inbuflen) + shift;
+		}
 
-						buf1[ch][i] = inbuf[j * nch + ch];
+		/**
+		 * Apply the stage 1 filter to one block of one channel, then transform it for stage 2.
+		 */
+		@Override
+		void runTask(int phase, int task) {
+			int block = task / nch;
+			double[] in = inbuf[task % nch];
+			double[] b2 = buf2[task];
+			int i;
 
-						for (k = i + 1; k < i + osf; k++) {
-							buf1[ch][k] = 0;
-						}
-					}
+			// apply stage 1 filter
 
-					assert (j == ((n1b2 - rps - 1) / osf + 1));
+			int ip = blockIp[block];
+			int s1p = blockS1p[block];
+			int no = n1y * osf;
 
-					for (k = n1b2; k < n1b; k++) {
-						buf1[ch][k] = 0;
-					}
+			for (int p = 0; p < n2b2; p++) {
+				int s1o = f1order[s1p] * n1x;
+				double tmp = 0;
 
-					rps = i - n1b2;
-					rp += j;
+				for (i = 0; i < n1x; i++) {
+					tmp += stage1[s1o + i] * in[ip + i];
+				}
+				b2[p] = tmp;
 
-					fft.rdft(n1b, 1, buf1[ch], fft_ip, fft_w);
+				ip += f1inc[s1p];
 
-					buf1[ch][0] = stage1[0] * buf1[ch][0];
-					buf1[ch][1] = stage1[1] * buf1[ch][1];
+				s1p++;
+				if (s1p == no) {
+					s1p = 0;
+				}
+			}
 
-					for (i = 1; i < n1b2; i++) {
-						double re, im;
+			// apply stage 2 filter
 
-						re = stage1[i * 2] * buf1[ch][i * 2] - stage1[i * 2 + 1] * buf1[ch][i * 2 + 1];
-						im = stage1[i * 2 + 1] * buf1[ch][i * 2] + stage1[i * 2] * buf1[ch][i * 2 + 1];
+			Arrays.fill(b2, n2b2, n2b, 0);
 
-						buf1[ch][i * 2] = re;
-						buf1[ch][i * 2 + 1] = im;
-					}
+			fft.rdft(n2b, 1, b2, fft_ip[task], fft_w);
 
-					fft.rdft(n1b, -1, buf1[ch], fft_ip, fft_w);
+			b2[0] = stage2[0] * b2[0];
+			b2[1] = stage2[1] * b2[1];
 
-					for (i = 0; i < n1b2; i++) {
-						buf2[ch][n2x + 1 + i] += buf1[ch][i];
-					}
+			for (i = 1; i < n2b2; i++) {
+				double re, im;
 
-					{
-						int t1 = rp2 / (fs2 / fs1);
-						if (rp2 % (fs2 / fs1) != 0) {
-							t1++;
-						}
+				re = stage2[i * 2] * b2[i * 2] - stage2[i * 2 + 1] * b2[i * 2 + 1];
+				im = stage2[i * 2 + 1] * b2[i * 2] + stage2[i * 2] * b2[i * 2 + 1];
 
-						bp = buf2[0].length * ch + t1; // &(buf2[ch][t1]);
-					}
+				b2[i * 2] = re;
+				b2[i * 2 + 1] = im;
+			}
 
-					s2p = s2p_backup;
+			fft.rdft(n2b, -1, b2, fft_ip[task], fft_w);
+		}
 
-					for (p = 0; bp - (buf2[0].length * ch) < n1b2 + 1; p++) { // buf2[ch]
-						double tmp = 0;
-						int bp2;
-						int s2o;
+		@Override
+		int process(double[] outbuf) {
+			inbuflen += getInputFrames();
 
-						bp2 = bp;
-						s2o = f2order[s2p];
-						bp += f2inc[s2p];
-						s2p++;
+			int shift = 0;
+			for (int block = 0; block < blocks; block++) {
+				blockIp[block] = shift + (sfrq * (rp - 1) + fs1) / fs1;
+				blockS1p[block] = s1p;
+				blockOsc[block] = osc;
 
-						if (s2p == n2y) {
-							s2p = 0;
-						}
+				int nsmplwrt2 = (n2b2 - osc + osf - 1) / osf; // output frames from osc to n2b2, osf apart
+				s1p = (s1p + n2b2) % (n1y * osf);
+				osc += nsmplwrt2 * osf - n2b2;
+				rp += n2b2 * (sfrq / frqgcd) / osf;
 
-						assert ((bp2 - (buf2[0].length * ch)) * (fs2 / fs1) - (rp2 + p * (fs2 / dfrq)) == s2o); // &
-						// (buf2[ch][0])
-						for (i = 0; i < n2x; i++) {
-//System.err.printf("%d (%d, %d)\n", i, bp2 / buf2[0].length, bp2 % buf2[0].length);
-							tmp += stage2[s2o][i] * buf2[bp2 / buf2[0].length][bp2 % buf2[0].length]; // *bp2++
-							bp2++;
-						}
-
-						outbuf[op + p * nch + ch] = tmp;
-//System.err.printf("O: %06d: %f\n", op + p * nch + ch, tmp);
-					}
+				int ds = (rp - 1) / (fs1 / sfrq);
+				rp -= ds * (fs1 / sfrq);
+				shift += ds;
+			}
 
-					nsmplwrt2 = p;
-				}
+			runTasks(0, blocks * nch);
 
-				rp2 += nsmplwrt2 * (fs2 / dfrq);
+			// add the start of each block to the end of the one before
+			int written = 0;
+			for (int block = 0; block < blocks; block++) {
+				int nsmplwrt2 = 0;
+				for (int ch = 0; ch < nch; ch++) {
+					double[] b1 = buf1[ch];
+					double[] b2 = buf2[block * nch + ch];
+					int i, j;
 
-				rawoutbuf.clear();
-				if (twopass) {
-					for (i = 0; i < nsmplwrt2 * nch; i++) {
-						double f = outbuf[i] > 0 ? outbuf[i] : -outbuf[i];
-						peak[0] = peak[0] < f ? f : peak[0];
-//System.err.println("p: " + rawoutbuf.position() + ", l: " + rawoutbuf.limit());
-						rawoutbuf.asDoubleBuffer().put(i, outbuf[i]);
-//if (i < 100) {
-// System.err.printf("1: %06d: %f\n", i, outbuf[i]);
-//}
-//System.err.print(StringUtil.getDump(rawoutbuf, i, 8));
+					for (i = blockOsc[block], j = 0; i < n2b2; i += osf, j++) {
+						outbuf[ch + (written + j) * nch] = b1[j] + b2[i];
 					}
-				} else {
-					switch (dbps) {
-						case 1: {
-							double gain2 = gain * 0x7f;
-							ch = 0;
-
-							for (i = 0; i < nsmplwrt2 * nch; i++) {
-								int s;
-
-								if (dither != 0) {
-									s = do_shaping(outbuf[i] * gain2, peak, dither, ch);
-								} else {
-									s = RINT(outbuf[i] * gain2);
-
-									if (s < -0x80) {
-										double d = (double) s / -0x80;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = -0x80;
-									}
-									if (0x7f < s) {
-										double d = (double) s / 0x7f;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = 0x7f;
-									}
-								}
-
-								rawoutbuf.put(i, (byte) (s + 0x80));
-
-								ch++;
-								if (ch == nch) {
-									ch = 0;
-								}
-							}
-						}
-						break;
-
-						case 2: {
-							double gain2 = gain * 0x7fff;
-							ch = 0;
-
-							for (i = 0; i < nsmplwrt2 * nch; i++) {
-								int s;
-
-								if (dither != 0) {
-									s = do_shaping(outbuf[i] * gain2, peak, dither, ch);
-								} else {
-									s = RINT(outbuf[i] * gain2);
-
-									if (s < -0x8000) {
-										double d = (double) s / -0x8000;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = -0x8000;
-									}
-									if (0x7fff < s) {
-										double d = (double) s / 0x7fff;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = 0x7fff;
-									}
-								}
-
-								rawoutbuf.order(byteOrder).asShortBuffer().put(i, (short) s);
-
-								ch++;
-								if (ch == nch) {
-									ch = 0;
-								}
-							}
-						}
-						break;
 
-						case 3: {
-							double gain2 = gain * 0x7fffff;
-							ch = 0;
-
-							for (i = 0; i < nsmplwrt2 * nch; i++) {
-								int s;
-
-								if (dither != 0) {
-									s = do_shaping(outbuf[i] * gain2, peak, dither, ch);
-								} else {
-									s = RINT(outbuf[i] * gain2);
-
-									if (s < -0x800000) {
-										double d = (double) s / -0x800000;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = -0x800000;
-									}
-									if (0x7fffff < s) {
-										double d = (double) s / 0x7fffff;
-										peak[0] = peak[0] < d ? d : peak[0];
-										s = 0x7fffff;
-									}
-								}
-
-								rawoutbuf.put(i * 3, (byte) (s & 255));
-								s >>= 8;
-								rawoutbuf.put(i * 3 + 1, (byte) (s & 255));
-								s >>= 8;
-								rawoutbuf.put(i * 3 + 2, (byte) (s & 255));
-
-								ch++;
-								if (ch == nch) {
-									ch = 0;
-								}
-							}
-						}
-						break;
+					nsmplwrt2 = j;
 
+					for (j = 0; i < n2b; i += osf, j++) {
+						b1[j] = b2[i];
 					}
 				}
+				written += nsmplwrt2;
+			}
 
-				if (!init) {
-					if (ending) {
-						if ((double) sumread * dfrq / sfrq + 2 > sumwrite + nsmplwrt2) {
-							rawoutbuf.position(0);
-							rawoutbuf.limit(dbps * nch * nsmplwrt2);
-							writeBuffers(fpo, rawoutbuf);
-							sumwrite += nsmplwrt2;
-						} else {
-							rawoutbuf.position(0);
-							int limitData = (int) (dbps * nch * (Math.floor((double) sumread * dfrq / sfrq) + 2 -
-									sumwrite));
-							if (limitData > 0) {
-								rawoutbuf.limit(limitData);
-								writeBuffers(fpo, rawoutbuf);
-							}
-							break;
-						}
-					} else {
-						rawoutbuf.position(0);
-						rawoutbuf.limit(dbps * nch * nsmplwrt2);
-						writeBuffers(fpo, rawoutbuf);
-						sumwrite += nsmplwrt2;
-					}
-				} else {
-					if (nsmplwrt2 < delay) {
-						delay -= nsmplwrt2;
-					} else {
-						if (ending) {
-							if ((double) sumread * dfrq / sfrq + 2 > sumwrite + nsmplwrt2 - delay) {
-								rawoutbuf.position(dbps * nch * delay);
-								rawoutbuf.limit(dbps * nch * (nsmplwrt2 - delay));
-								writeBuffers(fpo, rawoutbuf);
-								sumwrite += nsmplwrt2 - delay;
-							} else {
-								rawoutbuf.position(dbps * nch * delay);
-								rawoutbuf.limit((int) (dbps * nch * (Math.floor((double) sumread * dfrq / sfrq) + 2 +
-										sumwrite + nsmplwrt2 - delay)));  //TODO fails with short signals (think that
-								// fixed this)
-								writeBuffers(fpo, rawoutbuf);
-								break;
-							}
-						} else {
-							rawoutbuf.position(dbps * nch * delay);
-							rawoutbuf.limit(dbps * nch * (nsmplwrt2));
-							writeBuffers(fpo, rawoutbuf);
-							sumwrite += nsmplwrt2 - delay;
-							init = false;
-						}
-					}
-				}
+			for (double[] in : inbuf) {
+				System.arraycopy(in, shift, in, 0, inbuflen - shift);
+			}
+			inbuflen -= shift;
 
-				{
-					ds = (rp2 - 1) / (fs2 / fs1);
+			return written;
+		}
+	}
 
-					if (ds > n1b2) {
-						ds = n1b2;
-					}
+	/** */
+	private static final class DownSampler extends Resampler {
+		private final int osf, fs1, fs2;
+		private final double[] stage1;
+		private final double[] stage2;
+		private final int n2x, n2y, n1b, n1b2;
+		private final int[] f2order, f2inc;
+		private final double[] fft_w;
+		private final SplitRadixFft fft = new SplitRadixFft();
+
+		// |....B....|....C....| buf1 n1b2+n1b2
+		// |.A.|....D....| buf2 n2x+n1b2
+		//
+		// inbufBosf{TvORs?[
+		// CNA
+		// BCstage 1 filter
+		// DB
+		// ADstage 2 filter
+		// DA
+		// CDRs?[
+		private final double[][] buf2;
+
+		// for each block of a batch and each channel (block * nch + ch): buf1, and the FFT's work area
+		private final double[][] buf1;
+		private final int[][] fft_ip;
+
+		// the position in inbuf, the filter phases, the position in outbuf and the buf2 shift of each block of the batch
+		private final int[] blockInput, blockRps, blockRp2, blockS2p, blockOutput, blockShift;
+
+		// the output of the current batch, while its tasks run
+		private double[] outbuf;
+
+		private int rps; // rp(fs1/sfrq=osf)]
+		private int rp2; // buf2fs2Tv???
+		private int s2p; // stage1 filter?oTv?n1y*osf]
+
+		DownSampler(int nch, int sfrq, int dfrq, double aa, double dfLimit, int filter1len, int blocks) {
+			this(nch, sfrq, dfrq, getDownsampleFilter(sfrq, dfrq, aa, dfLimit, filter1len), blocks);
+		}
 
-					for (ch = 0; ch < nch; ch++) {
-						System.arraycopy(buf2[ch], ds, buf2[ch], 0, n2x + 1 + n1b2 - ds); // memmove TODO overlap
-					}
+		private DownSampler(int nch, int sfrq, int dfrq, DownsampleFilter filter, int blocks) {
+			super(nch, sfrq, dfrq, blocks);
+			osf = filter.osf;
+			fs1 = filter.fs1;
+			fs2 = filter.fs2;
+			stage1 = filter.stage1;
+			stage2 = filter.stage2;
+			n2x = filter.n2x;
+			n2y = filter.n2y;
+			n1b = filter.n1b;
+			n1b2 = n1b / 2;
+			f2order = filter.f2order;
+			f2inc = filter.f2inc;
+			fft_w = filter.fft_w;
+
+			buf1 = new double[blocks * nch][n1b];
+			buf2 = new double[nch][n2x + 1 + n1b2];
+			fft_ip = new int[blocks * nch][];
+			for (int i = 0; i < fft_ip.length; i++) {
+				fft_ip[i] = filter.fft_ip.clone();
+			}
+			inbuf = new double[nch][blocks * (n1b2 / osf + osf + 1)];
+			blockInput = new int[blocks];
+			blockRps = new int[blocks];
+			blockRp2 = new int[blocks];
+			blockS2p = new int[blocks];
+			blockOutput = new int[blocks];
+			blockShift = new int[blocks];
+
+			delay = (int) ((double) filter.n1 / 2 / ((double) fs1 / dfrq) + (double) filter.n2 / 2 / ((double) fs2 /
+					dfrq));
+			maxOutput = blocks * (int) ((double) n1b2 * dfrq / sfrq + 1);
+		}
 
-					rp2 -= ds * (fs2 / fs1);
-				}
+		@Override
+		int getInputOffset() {
+			return 0;
+		}
 
-				for (ch = 0; ch < nch; ch++) {
-					System.arraycopy(buf1[ch], n1b2, buf2[ch], n2x + 1, n1b2);
-				}
+		@Override
+		int getInputFrames() {
+			int frames = 0;
+			int rps = this.rps;
+			for (int block = 0; block < blocks; block++) {
+				int blockFrames = (n1b2 - rps - 1) / osf + 1;
+				frames += blockFrames;
+				rps += blockFrames * osf - n1b2;
+			}
+			return frames;
+		}
 
-				if ((spcount++ & 7) == 7) {
-					showprogress((double) sumread / chanklen);
+		/**
+		 * Phase 0: apply the stage 1 filter to one block of one channel. Phase 1: apply the stage 2 filter to every block
+		 * of one channel, in order, as each needs what is left in buf2 by the block before.
+		 */
+		@Override
+		void runTask(int phase, int task) {
+			if (phase == 0) {
+				filterStage1(task / nch, task);
+			} else {
+				for (int block = 0; block < blocks; block++) {
+					filterStage2(block, task);
 				}
 			}
 		}
 
-		showprogress(1);
+		private void filterStage1(int block, int task) {
+			double[] in = inbuf[task % nch];
+			double[] b1 = buf1[task];
+			int rps = blockRps[block];
+			int i, j, k;
 
-		return peak[0];
-	}
+			Arrays.fill(b1, 0, rps, 0);
 
-	/** */
-	public double no_src(InputStream fpi, OutputStream fpo, int nch, int bps, int dbps, double gain, long chanklen,
-						 boolean twopass, int dither) throws IOException {
-		double[] peak = new double[]{0};
-		int ch = 0, sumread = 0;
+			for (i = rps, j = blockInput[block]; i < n1b2; i += osf, j++) {
+				b1[i] = in[j];
 
-		setstarttime();
+				for (k = i + 1; k < i + osf; k++) {
+					b1[k] = 0;
+				}
+			}
 
-		ByteBuffer leos = null;
-		if (twopass) {
-			leos = ByteBuffer.allocate(8);
-		}
+			Arrays.fill(b1, n1b2, n1b, 0);
 
-		ByteBuffer buf = ByteBuffer.allocate(4);
-		while (sumread < chanklen * nch) {
-			double f = 0;
-			int s;
+			fft.rdft(n1b, 1, b1, fft_ip[task], fft_w);
 
-			switch (bps) {
-				case 1:
-					buf.position(0);
-					buf.limit(1);
+			b1[0] = stage1[0] * b1[0];
+			b1[1] = stage1[1] * b1[1];
 
-					byte[] tempData = new byte[buf.limit()];
-					fpi.read(tempData);
-					buf = ByteBuffer.wrap(tempData);
-					buf.position(buf.limit());
+			for (i = 1; i < n1b2; i++) {
+				double re, im;
 
+				re = stage1[i * 2] * b1[i * 2] - stage1[i * 2 + 1] * b1[i * 2 + 1];
+				im = stage1[i * 2 + 1] * b1[i * 2] + stage1[i * 2] * b1[i * 2 + 1];
 
-					buf.flip();
-					f = (1 / (double) 0x7f) * (buf.get(0) - 128);
-					break;
+				b1[i * 2] = re;
+				b1[i * 2 + 1] = im;
+			}
 
-				case 2:
-					buf.position(0);
-					buf.limit(2);
+			fft.rdft(n1b, -1, b1, fft_ip[task], fft_w);
+		}
 
-					tempData = new byte[buf.limit()];
-					fpi.read(tempData);
-					buf = ByteBuffer.wrap(tempData);
-					buf.position(buf.limit());
+		private void filterStage2(int block, int ch) {
+			double[] b1 = buf1[block * nch + ch];
+			double[] b2 = buf2[ch];
+			int i;
 
-					buf.flip();
-					s = buf.order(byteOrder).asShortBuffer().get(0);
-					f = (1 / (double) 0x7fff) * s;
-					break;
+			for (i = 0; i < n1b2; i++) {
+				b2[n2x + 1 + i] += b1[i];
+			}
 
-				case 3:
-					buf.position(0);
-					buf.limit(3);
+			int rp2 = blockRp2[block];
+			int bp = rp2 / (fs2 / fs1); // rp2vZ?Dbuf2Tvu
+			if (rp2 % (fs2 / fs1) != 0) {
+				bp++;
+			}
 
-					tempData = new byte[buf.limit()];
-					fpi.read(tempData);
-					buf = ByteBuffer.wrap(tempData);
-					buf.position(buf.limit());
+			int s2p = blockS2p[block];
+			int offset = blockOutput[block];
 
-					buf.flip();
-					f = (1 / (double) 0x7fffff) * (((buf.get(0) & 0xff) << 0) | ((buf.get(1) & 0xff) << 8) | ((buf.get
-							(2) & 0xff) << 16));
-					break;
+			for (int p = 0; bp < n1b2 + 1; p++) {
+				int s2o = f2order[s2p] * n2x;
+				double tmp = 0;
+				int bp2 = bp;
 
-				case 4:
-					buf.position(0);
-					buf.limit(4);
+				bp += f2inc[s2p];
 
-					tempData = new byte[buf.limit()];
-					fpi.read(tempData);
-					buf = ByteBuffer.wrap(tempData);
-					buf.position(buf.limit());
+				s2p++;
+				if (s2p == n2y) {
+					s2p = 0;
+				}
 
-					buf.flip();
-					s = buf.order(byteOrder).asIntBuffer().get(0);
-					f = (1 / (double) 0x7fffffff) * s;
-					break;
+				for (i = 0; i < n2x; i++) {
+					tmp += stage2[s2o + i] * b2[bp2 + i];
+				}
 
-				default:
-					break;
+				outbuf[(offset + p) * nch + ch] = tmp;
 			}
 
-			if (fpi.available() == 0) {
-//            if (fpi.position() == fpi.size()) {
-				break;
-			}
-			f *= gain;
+			int ds = blockShift[block];
+			System.arraycopy(b2, ds, b2, 0, n2x + 1 + n1b2 - ds);
+			System.arraycopy(b1, n1b2, b2, n2x + 1, n1b2);
+		}
 
-			if (!twopass) {
-				switch (dbps) {
-					case 1:
-						f *= 0x7f;
-						s = dither != 0 ? do_shaping(f, peak, dither, ch) : RINT(f);
-						buf.position(0);
-						buf.limit(1);
-						buf.put(0, (byte) (s + 128));
-						buf.flip();
-						writeBuffers(fpo, buf);
-						break;
-					case 2:
-						f *= 0x7fff;
-						s = dither != 0 ? do_shaping(f, peak, dither, ch) : RINT(f);
-						buf.position(0);
-						buf.limit(2);
-						buf.asShortBuffer().put(0, (short) s);
-						buf.flip();
-						writeBuffers(fpo, buf);
-						break;
-					case 3:
-						f *= 0x7fffff;
-						s = dither != 0 ? do_shaping(f, peak, dither, ch) : RINT(f);
-						buf.position(0);
-						buf.limit(3);
-						buf.put(0, (byte) (s & 255));
-						s >>= 8;
-						buf.put(1, (byte) (s & 255));
-						s >>= 8;
-						buf.put(2, (byte) (s & 255));
-						buf.flip();
-						writeBuffers(fpo, buf);
-						break;
+		@Override
+		int process(double[] outbuf) {
+			int input = 0;
+			int written = 0;
+			for (int block = 0; block < blocks; block++) {
+				blockInput[block] = input;
+				blockRps[block] = rps;
+				blockRp2[block] = rp2;
+				blockS2p[block] = s2p;
+				blockOutput[block] = written;
+
+				// the phase of the zero-stuffing carries over into the next block
+				int frames = (n1b2 - rps - 1) / osf + 1;
+				input += frames;
+				rps += frames * osf - n1b2;
+
+				// count the frames that stage 2 will write, just as it will
+				int bp = rp2 / (fs2 / fs1);
+				if (rp2 % (fs2 / fs1) != 0) {
+					bp++;
 				}
-			} else {
-				double p = f > 0 ? f : -f;
-				peak[0] = peak[0] < p ? p : peak[0];
-				leos.position(0);
-				leos.putDouble(f);
-				leos.flip();
-				writeBuffers(fpo, leos);
-			}
+				int nsmplwrt2;
+				for (nsmplwrt2 = 0; bp < n1b2 + 1; nsmplwrt2++) {
+					bp += f2inc[s2p];
 
-			ch++;
-			if (ch == nch) {
-				ch = 0;
-			}
-			sumread++;
+					s2p++;
+					if (s2p == n2y) {
+						s2p = 0;
+					}
+				}
+				written += nsmplwrt2;
+				rp2 += nsmplwrt2 * (fs2 / dfrq);
 
-			if ((sumread & 0x3ffff) == 0) {
-				showprogress((double) sumread / (chanklen * nch));
+				int ds = (rp2 - 1) / (fs2 / fs1); // disposesfrqTv?
+				if (ds > n1b2) {
+					ds = n1b2;
+				}
+				blockShift[block] = ds;
+				rp2 -= ds * (fs2 / fs1);
 			}
-		}
 
-		showprogress(1);
+			this.outbuf = outbuf;
+			runTasks(0, blocks * nch);
+			runTasks(1, nch);
+			this.outbuf = null;
 
-		return peak[0];
+			return written;
+		}
 	}
 
 	/** */
@@ -0,0 +1,187 @@
+/*
+ *  Copyright (C) 2020 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediautilities;
+
+import net.javazoom.jl.decoder.SyntheticMP3;
+import net.sourceforge.jaad.mp4.SyntheticMP4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the types, formats and durations that AudioProbe reads from synthetic files, and that files which are not
+ * MP3s are not mistaken for them (so that callers fall back to MediaPlayer): an MP3 stream is only searched for in
+ * files with an MP3 extension, and its first frame must always be followed by a second.
+ */
+public class AudioProbeTest {
+
+	private static final int MP3_FRAMES = 100;
+	private static final long MP3_DURATION_MS = MP3_FRAMES * (long) SyntheticMP3.SAMPLES_PER_FRAME * 1000 /
+			SyntheticMP3.SAMPLE_RATE;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void mp3AfterID3Tag() throws IOException {
+		byte[] mp3 = concat(id3Tag(300), SyntheticMP3.create(new Random(1), MP3_FRAMES, true));
+		for (String name : new String[]{ "tagged.mp3", "tagged.dat" }) {
+			AudioProbe.AudioInfo audioInfo = AudioProbe.getAudioInfo(write(name, mp3));
+			assertNotNull(name, audioInfo);
+			assertEquals(AudioUtilities.AudioType.MP3, audioInfo.mType);
+			assertEquals("mp3", audioInfo.mCodec);
+			assertEquals(SyntheticMP3.SAMPLE_RATE, audioInfo.mSampleRate);
+			assertEquals(2, audioInfo.mChannelCount);
+			assertEquals((double) MP3_DURATION_MS, audioInfo.mDurationMs, 10); // CBR: calculated from the file's length
+		}
+	}
+
+	@Test
+	public void mp3AfterJunkNeedsExtension() throws IOException {
+		byte[] junk = new byte[1000];
+		new Random(2).nextBytes(junk);
+		for (int i = 0; i < junk.length; i++) {
+			junk[i] &= 0x7f; // no sync words
+		}
+		byte[] mp3 = concat(junk, SyntheticMP3.create(new Random(3), MP3_FRAMES, false));
+
+		AudioProbe.AudioInfo audioInfo = AudioProbe.getAudioInfo(write("junk.mp3", mp3));
+		assertNotNull(audioInfo);
+		assertEquals(AudioUtilities.AudioType.MP3, audioInfo.mType);
+		assertEquals(1, audioInfo.mChannelCount);
+
+		assertNull(AudioProbe.getAudioInfo(write("junk.amr", mp3)));
+	}
+
+	@Test
+	public void singleFrameIsNotMP3() throws IOException {
+		byte[] frame = SyntheticMP3.create(new Random(4), 1, true);
+		assertNull(AudioProbe.getAudioInfo(write("single.mp3", frame)));
+		assertNull(AudioProbe.getAudioInfo(write("single.dat", concat(id3Tag(100), frame))));
+	}
+
+	@Test
+	public void otherFilesAreNotMP3() throws IOException {
+		// data with a frame header at the start (but no second frame where it says there should be one), and another
+		// whose frame would run past the end of the file
+		byte[] data = new byte[20000];
+		new Random(5).nextBytes(data);
+		for (int i = 0; i < data.length; i++) {
+			data[i] &= 0x7f; // no other sync words
+		}
+		for (int offset : new int[]{ 0, data.length - 100 }) {
+			data[offset] = (byte) 0xff;
+			data[offset + 1] = (byte) 0xfb;
+			data[offset + 2] = (byte) 0x90;
+		}
+		assertNull(AudioProbe.getAudioInfo(write("random.amr", data)));
+		assertNull(AudioProbe.getAudioInfo(write("random.mp3", data)));
+	}
+
+	@Test
+	public void m4a() throws IOException {
+		File file = temporaryFolder.newFile("synthetic.m4a");
+		int samples = 10000;
+		SyntheticMP4.create(file, new Random(6), samples);
+		AudioProbe.AudioInfo audioInfo = AudioProbe.getAudioInfo(file);
+		assertNotNull(audioInfo);
+		assertEquals(AudioUtilities.AudioType.M4A, audioInfo.mType);
+		assertEquals("mp4a", audioInfo.mCodec);
+		assertEquals(SyntheticMP4.SAMPLE_RATE, audioInfo.mSampleRate);
+		assertEquals(2, audioInfo.mChannelCount);
+		assertEquals(16, audioInfo.mSampleSize);
+		assertEquals(samples * 1024L * 1000 / SyntheticMP4.SAMPLE_RATE, audioInfo.mDurationMs);
+	}
+
+	@Test
+	public void wav() throws IOException {
+		int sampleRate = 22050;
+		int dataLength = sampleRate * 2 * 3; // 3 seconds of 16-bit mono
+		ByteArrayOutputStream wav = new ByteArrayOutputStream();
+		wav.write("RIFF".getBytes("US-ASCII"));
+		wav.write(littleEndian(36 + dataLength, 4));
+		wav.write("WAVEfmt ".getBytes("US-ASCII"));
+		wav.write(littleEndian(16, 4));
+		wav.write(littleEndian(1, 2)); // PCM
+		wav.write(littleEndian(1, 2));
+		wav.write(littleEndian(sampleRate, 4));
+		wav.write(littleEndian(sampleRate * 2, 4));
+		wav.write(littleEndian(2, 2));
+		wav.write(littleEndian(16, 2));
+		wav.write("data".getBytes("US-ASCII"));
+		wav.write(littleEndian(dataLength, 4));
+		wav.write(new byte[dataLength]);
+
+		AudioProbe.AudioInfo audioInfo = AudioProbe.getAudioInfo(write("synthetic.wav", wav.toByteArray()));
+		assertNotNull(audioInfo);
+		assertEquals(AudioUtilities.AudioType.WAV, audioInfo.mType);
+		assertEquals(AudioProbe.CODEC_PCM, audioInfo.mCodec);
+		assertEquals(sampleRate, audioInfo.mSampleRate);
+		assertEquals(1, audioInfo.mChannelCount);
+		assertEquals(3000, audioInfo.mDurationMs);
+	}
+
+	private File write(String name, byte[] contents) throws IOException {
+		File file = temporaryFolder.newFile(name);
+		Files.write(file.toPath(), contents);
+		return file;
+	}
+
+	/**
+	 * @return an ID3v2.3 tag of the given size (excluding its header) with no frames, only padding
+	 */
+	private static byte[] id3Tag(int size) {
+		byte[] tag = new byte[10 + size];
+		tag[0] = 'I';
+		tag[1] = 'D';
+		tag[2] = '3';
+		tag[3] = 3;
+		tag[8] = (byte) (size >> 7); // sync-safe: 7 bits per byte
+		tag[9] = (byte) (size & 0x7f);
+		return tag;
+	}
+
+	private static byte[] littleEndian(int value, int bytes) {
+		byte[] result = new byte[bytes];
+		for (int i = 0; i < bytes; i++) {
+			result[i] = (byte) (value >> (8 * i));
+		}
+		return result;
+	}
+
+	private static byte[] concat(byte[] first, byte[] second) {
+		byte[] result = new byte[first.length + second.length];
+		System.arraycopy(first, 0, result, 0, first.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+}
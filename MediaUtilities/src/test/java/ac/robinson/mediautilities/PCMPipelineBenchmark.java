@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2020 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediautilities;
+
+import com.bric.audio.AudioFormat;
+
+import net.javazoom.jl.decoder.SyntheticMP3;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import ac.robinson.test.Benchmark;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Time to read a whole narrative's combined audio with different numbers of items decoded at once: 40 ten-second MP3
+ * items (as 44.1 kHz stereo, so each is also resampled to the 48 kHz stereo output) across two tracks. The output must
+ * be identical at every level of parallelism. Run with ./gradlew test -Dbenchmark=true
+ */
+public class PCMPipelineBenchmark {
+
+	private static final int ITEMS_PER_TRACK = 20;
+	private static final int ITEM_DURATION_MS = 10000;
+	private static final int[] PARALLELISM = { 1, 2, 4, 8 };
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private PCMPipeline pipeline;
+
+	@Before
+	public void setUp() throws Exception {
+		Benchmark.assumeEnabled();
+		Random random = new Random(1);
+		ArrayList<ArrayList<PCMPipeline.PCMItem>> tracks = new ArrayList<>();
+		for (int track = 0; track < 2; track++) {
+			ArrayList<PCMPipeline.PCMItem> items = new ArrayList<>();
+			for (int item = 0; item < ITEMS_PER_TRACK; item++) {
+				File file = temporaryFolder.newFile("item-" + track + "-" + item + ".mp3");
+				Files.write(file.toPath(), SyntheticMP3.create(random,
+						SyntheticMP3.framesForDuration(ITEM_DURATION_MS / 1000.0), true));
+				items.add(new PCMPipeline.PCMItem(file, AudioUtilities.AudioType.MP3, (long) item * ITEM_DURATION_MS,
+						ITEM_DURATION_MS));
+			}
+			tracks.add(items);
+		}
+		pipeline = new PCMPipeline(tracks, new AudioFormat(48000, 16, 2, true, false));
+	}
+
+	@Test
+	public void decodingParallelism() throws Exception {
+		final long[] bytes = new long[1];
+		final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		byte[] expectedDigest = null;
+		double serialMillis = 0;
+		for (final int parallelism : PARALLELISM) {
+			Benchmark.Result result = Benchmark.measure(1, 3, () -> {
+				digest.reset();
+				bytes[0] = 0;
+				byte[] buffer = new byte[64 * 1024];
+				try (InputStream input = pipeline.open(parallelism)) {
+					int count;
+					while ((count = input.read(buffer)) > 0) {
+						digest.update(buffer, 0, count);
+						bytes[0] += count;
+					}
+				}
+			});
+			byte[] outputDigest = digest.digest();
+			if (expectedDigest == null) {
+				expectedDigest = outputDigest;
+				serialMillis = result.medianMillis();
+			}
+			assertArrayEquals("output differs with parallelism " + parallelism, expectedDigest, outputDigest);
+			Benchmark.report("PCMPipeline decoding", "parallelism %d: %s; %,d bytes; %.2fx the speed of one item " +
+							"at a time (%d processors available)", parallelism, result, bytes[0],
+					serialMillis / result.medianMillis(), Runtime.getRuntime().availableProcessors());
+		}
+	}
+}
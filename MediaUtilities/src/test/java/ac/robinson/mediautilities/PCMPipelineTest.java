@@ -0,0 +1,469 @@
+/*
+ *  Copyright (C) 2020 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mediautilities;
+
+import com.bric.audio.AudioFormat;
+import com.bric.audio.AudioInputStream;
+import com.bric.audio.AudioSystem;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import ac.robinson.mov.JPEGMovWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the combined audio that PCMPipeline produces from small WAV items: silence is added before each item from the
+ * nominal end of the previous one, odd-length items are padded to a whole sample, parallel tracks are averaged, and
+ * items that can't be decoded are replaced by silence rather than ending the track; and, for stereo output, that stereo
+ * items keep their channels, mono items are played on both, and everything stays aligned to whole frames. Items are at
+ * the output rate, so (apart from the resampling tests) every output sample is known exactly. Each case is read with
+ * one item decoded at a time and with several. Also checks that a MOV export that fails part way through still stops
+ * the pipeline's background decoding.
+ */
+public class PCMPipelineTest {
+
+	private static final int SAMPLE_RATE = 8000;
+	private static final int SAMPLES_PER_MS = SAMPLE_RATE / 1000;
+	private static final AudioFormat OUTPUT_FORMAT = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+	private static final AudioFormat STEREO_OUTPUT_FORMAT = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+	private static final int[] PARALLELISM = { 1, 4 };
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void gapsArePaddedWithSilence() throws IOException {
+		short[] first = ramp(800, 1);
+		short[] second = ramp(400, -3);
+		ArrayList<PCMPipeline.PCMItem> track = new ArrayList<>();
+		track.add(wavItem(first, 50, 100)); // starts late, so is preceded by silence
+		track.add(wavItem(second, 400, 50));
+
+		short[] expected = new short[(400 + 50) * SAMPLES_PER_MS];
+		System.arraycopy(first, 0, expected, 50 * SAMPLES_PER_MS, first.length);
+		System.arraycopy(second, 0, expected, 400 * SAMPLES_PER_MS, second.length);
+		for (int parallelism : PARALLELISM) {
+			short[] output = read(pipeline(track), parallelism);
+			assertArrayEquals("parallelism " + parallelism, expected, output);
+			assertEquals(0, output[50 * SAMPLES_PER_MS - 1]); // the silence ends just before each item...
+			assertEquals(first[0], output[50 * SAMPLES_PER_MS]);
+			assertEquals(first[first.length - 1], output[150 * SAMPLES_PER_MS - 1]);
+			assertEquals(0, output[150 * SAMPLES_PER_MS]); // ...and starts just after
+			assertEquals(0, output[400 * SAMPLES_PER_MS - 1]);
+			assertEquals(second[0], output[400 * SAMPLES_PER_MS]);
+		}
+	}
+
+	@Test
+	public void silenceIsMeasuredFromNominalEnd() throws IOException {
+		// the first item's audio is shorter than its nominal duration, and the second item's is longer: gaps are timed
+		// from where each item should have ended, and items are never cut short
+		short[] first = ramp(400, 5);
+		short[] second = ramp(1200, 7);
+		short[] third = ramp(80, 11);
+		ArrayList<PCMPipeline.PCMItem> track = new ArrayList<>();
+		track.add(wavItem(first, 0, 100));
+		track.add(wavItem(second, 200, 100));
+		track.add(wavItem(third, 300, 10));
+
+		int secondStart = first.length + 100 * SAMPLES_PER_MS;
+		short[] expected = new short[secondStart + second.length + third.length];
+		System.arraycopy(first, 0, expected, 0, first.length);
+		System.arraycopy(second, 0, expected, secondStart, second.length);
+		System.arraycopy(third, 0, expected, secondStart + second.length, third.length); // no gap after the long item
+		for (int parallelism : PARALLELISM) {
+			assertArrayEquals("parallelism " + parallelism, expected, read(pipeline(track), parallelism));
+		}
+	}
+
+	@Test
+	public void oddLengthItemsArePaddedToWholeSamples() throws IOException {
+		// a WAV data chunk with a trailing half sample - the next item must still start on a sample boundary
+		short[] first = ramp(400, 13);
+		byte[] firstBytes = Arrays.copyOf(toBytes(first), first.length * 2 + 1);
+		firstBytes[firstBytes.length - 1] = 0x55;
+		short[] second = ramp(400, -17);
+		ArrayList<PCMPipeline.PCMItem> track = new ArrayList<>();
+		track.add(new PCMPipeline.PCMItem(writeWAV(firstBytes, SAMPLE_RATE, 16), AudioUtilities.AudioType.WAV, 0,
+				100));
+		track.add(wavItem(second, 150, 50));
+
+		for (int parallelism : PARALLELISM) {
+			byte[] output = readBytes(pipeline(track), parallelism);
+			assertEquals(0, output.length % OUTPUT_FORMAT.getFrameSize());
+			short[] samples = toShorts(output);
+			assertEquals(first.length + 1 + 50 * SAMPLES_PER_MS + second.length, samples.length);
+			assertArrayEquals(first, Arrays.copyOfRange(samples, 0, first.length));
+			assertEquals(0x0055, samples[first.length]); // the half sample, padded with a zero byte
+			int secondStart = samples.length - second.length;
+			assertEquals(0, samples[secondStart - 1]);
+			assertArrayEquals(second, Arrays.copyOfRange(samples, secondStart, samples.length));
+		}
+	}
+
+	@Test
+	public void overlappingTracksAreAveraged() throws IOException {
+		// odd values, so that the rounding of the average is checked too
+		short[] first = constant(800, (short) 1001);
+		short[] second = constant(400, (short) 3001);
+		short[] third = constant(400, (short) -2001);
+		ArrayList<ArrayList<PCMPipeline.PCMItem>> tracks = new ArrayList<>();
+		tracks.add(new ArrayList<>(Arrays.asList(wavItem(first, 0, 100))));
+		tracks.add(new ArrayList<>(Arrays.asList(wavItem(second, 25, 50), wavItem(third, 100, 50))));
+
+		// the second track starts 25 ms late, and carries on after the first has ended (which is then silent)
+		short[] expected = new short[150 * SAMPLES_PER_MS];
+		for (int i = 0; i < expected.length; i++) {
+			short a = i < first.length ? first[i] : 0;
+			short b = i >= 25 * SAMPLES_PER_MS && i < 75 * SAMPLES_PER_MS ? second[0] :
+					i >= 100 * SAMPLES_PER_MS ? third[0] : 0;
+			expected[i] = (short) ((a >> 1) + (b >> 1) + (a & b & 0x1));
+		}
+		assertEquals(2001, expected[30 * SAMPLES_PER_MS]);
+		assertEquals(-1001, expected[120 * SAMPLES_PER_MS]); // rounded down, as the shifts are arithmetic
+		for (int parallelism : PARALLELISM) {
+			assertArrayEquals("parallelism " + parallelism, expected, read(new PCMPipeline(tracks, OUTPUT_FORMAT),
+					parallelism));
+		}
+	}
+
+	@Test
+	public void unreadableItemsBecomeSilence() throws IOException {
+		short[] first = ramp(400, 3);
+		short[] last = ramp(400, -5);
+		File notAWAV = temporaryFolder.newFile("corrupt.wav");
+		Files.write(notAWAV.toPath(), new byte[1024]);
+		File truncated = temporaryFolder.newFile("truncated.wav");
+		Files.write(truncated.toPath(), Arrays.copyOf(Files.readAllBytes(writeWAV(toBytes(ramp(400, 1)), SAMPLE_RATE,
+				16).toPath()), 20));
+
+		ArrayList<PCMPipeline.PCMItem> track = new ArrayList<>();
+		track.add(wavItem(first, 0, 50));
+		track.add(new PCMPipeline.PCMItem(notAWAV, AudioUtilities.AudioType.WAV, 50, 50));
+		track.add(new PCMPipeline.PCMItem(new File(temporaryFolder.getRoot(), "missing.wav"),
+				AudioUtilities.AudioType.WAV, 100, 50));
+		track.add(new PCMPipeline.PCMItem(truncated, AudioUtilities.AudioType.WAV, 150, 50));
+		track.add(wavItem(last, 200, 50));
+
+		short[] expected = new short[250 * SAMPLES_PER_MS];
+		System.arraycopy(first, 0, expected, 0, first.length);
+		System.arraycopy(last, 0, expected, 200 * SAMPLES_PER_MS, last.length);
+		for (int parallelism : PARALLELISM) {
+			assertArrayEquals("parallelism " + parallelism, expected, read(pipeline(track), parallelism));
+		}
+
+		// if nothing at all can be decoded the stream is empty (and AudioUtilities then exports no audio track)
+		ArrayList<PCMPipeline.PCMItem> unreadable = new ArrayList<>();
+		unreadable.add(new PCMPipeline.PCMItem(notAWAV, AudioUtilities.AudioType.WAV, 0, 50));
+		assertEquals(0, readBytes(pipeline(unreadable), 1).length);
+	}
+
+	@Test
+	public void fixedLengthItemsFillTheirNominalDuration() throws IOException {
+		// as used for segmented MOV tracks: items are back to back, and each is cut or padded to its nominal duration,
+		// so that every item starts exactly where the track's edit list expects it to
+		short[] shorter = ramp(400, 3);
+		short[] longer = ramp(1200, -7);
+		short[] last = ramp(400, 11);
+		File notAWAV = temporaryFolder.newFile("corrupt.wav");
+		Files.write(notAWAV.toPath(), new byte[1024]);
+		ArrayList<PCMPipeline.PCMItem> track = new ArrayList<>();
+		track.add(wavItem(shorter, 0, 100));
+		track.add(wavItem(longer, 100, 100));
+		track.add(new PCMPipeline.PCMItem(notAWAV, AudioUtilities.AudioType.WAV, 200, 50));
+		track.add(wavItem(last, 250, 50));
+
+		short[] expected = new short[300 * SAMPLES_PER_MS];
+		System.arraycopy(shorter, 0, expected, 0, shorter.length);
+		System.arraycopy(longer, 0, expected, 100 * SAMPLES_PER_MS, 100 * SAMPLES_PER_MS);
+		System.arraycopy(last, 0, expected, 250 * SAMPLES_PER_MS, last.length);
+		ArrayList<ArrayList<PCMPipeline.PCMItem>> tracks = new ArrayList<>();
+		tracks.add(track);
+		for (int parallelism : PARALLELISM) {
+			assertArrayEquals("parallelism " + parallelism, expected, read(new PCMPipeline(tracks, OUTPUT_FORMAT, true),
+					parallelism));
+		}
+	}
+
+	@Test
+	public void resampledItemsAreConvertedToTheOutputRate() throws IOException {
+		// a 16 kHz item is resampled to the 8 kHz output - SSRC always adds two frames to the exact converted length
+		// (floor(frames * 8000 / 16000) + 2), and the gap before the next item is still timed from the nominal end
+		short[] resampled = new short[1600];
+		for (int i = 0; i < resampled.length; i++) {
+			resampled[i] = (short) Math.round(8000 * Math.sin(2 * Math.PI * 440 * i / 16000.0));
+		}
+		short[] last = ramp(400, 9);
+		ArrayList<PCMPipeline.PCMItem> track = new ArrayList<>();
+		track.add(new PCMPipeline.PCMItem(writeWAV(toBytes(resampled), 16000, 16), AudioUtilities.AudioType.WAV, 0,
+				100));
+		track.add(wavItem(last, 150, 50));
+
+		for (int parallelism : PARALLELISM) {
+			short[] output = read(pipeline(track), parallelism);
+			int resampledLength = resampled.length / 2 + 2;
+			assertEquals(resampledLength + 50 * SAMPLES_PER_MS + last.length, output.length);
+			assertEquals(0, output[resampledLength + 50 * SAMPLES_PER_MS - 1]);
+			assertArrayEquals(last, Arrays.copyOfRange(output, resampledLength + 50 * SAMPLES_PER_MS, output.length));
+			double energy = 0;
+			for (int i = 0; i < 100 * SAMPLES_PER_MS; i++) {
+				energy += output[i] * (double) output[i];
+			}
+			double rms = Math.sqrt(energy / (100 * SAMPLES_PER_MS));
+			assertTrue("rms " + rms, rms > 8000 / Math.sqrt(2) * 0.9 && rms < 8000 / Math.sqrt(2) * 1.1);
+		}
+	}
+
+	@Test
+	public void stereoOutputKeepsChannelsAndDuration() throws IOException {
+		short[] mono = ramp(400, 3);
+		short[] left = ramp(400, 5);
+		short[] right = ramp(400, -7);
+		short[] last = ramp(200, 11);
+		byte[] lastBytes = Arrays.copyOf(toBytes(interleave(last, last)), last.length * 4 + 2); // half a frame extra
+		lastBytes[lastBytes.length - 2] = 0x55;
+		ArrayList<PCMPipeline.PCMItem> track = new ArrayList<>();
+		track.add(wavItem(mono, 0, 50));
+		track.add(new PCMPipeline.PCMItem(writeWAV(toBytes(interleave(left, right)), SAMPLE_RATE, 16, 2),
+				AudioUtilities.AudioType.WAV, 100, 50));
+		track.add(new PCMPipeline.PCMItem(writeWAV(lastBytes, SAMPLE_RATE, 16, 2), AudioUtilities.AudioType.WAV, 150,
+				25));
+		track.add(wavItem(mono, 200, 50));
+
+		// the gaps are measured in frames, so every item starts at the same time as it would in mono (apart from the
+		// extra frame that the half frame is padded to)
+		short[] expected = new short[(250 * SAMPLES_PER_MS + 1) * 2];
+		System.arraycopy(interleave(mono, mono), 0, expected, 0, mono.length * 2);
+		System.arraycopy(interleave(left, right), 0, expected, 100 * SAMPLES_PER_MS * 2, left.length * 2);
+		System.arraycopy(interleave(last, last), 0, expected, 150 * SAMPLES_PER_MS * 2, last.length * 2);
+		expected[(150 * SAMPLES_PER_MS + last.length) * 2] = 0x0055; // the half frame, padded with a silent sample
+		System.arraycopy(interleave(mono, mono), 0, expected, 200 * SAMPLES_PER_MS * 2 + 2, mono.length * 2);
+		for (int parallelism : PARALLELISM) {
+			byte[] output = readBytes(pipeline(track, STEREO_OUTPUT_FORMAT), parallelism);
+			assertEquals(0, output.length % STEREO_OUTPUT_FORMAT.getFrameSize());
+			assertArrayEquals("parallelism " + parallelism, expected, toShorts(output));
+		}
+	}
+
+	@Test
+	public void stereoItemsAreDownmixedForMonoOutput() throws IOException {
+		ArrayList<PCMPipeline.PCMItem> track = new ArrayList<>();
+		track.add(new PCMPipeline.PCMItem(writeWAV(toBytes(interleave(constant(400, (short) 1001), constant(400,
+				(short) 3001))), SAMPLE_RATE, 16, 2), AudioUtilities.AudioType.WAV, 0, 50));
+		for (int parallelism : PARALLELISM) {
+			assertArrayEquals(constant(400, (short) 2001), read(pipeline(track), parallelism));
+		}
+	}
+
+	@Test
+	public void resampledStereoItemsKeepTheirChannels() throws IOException {
+		// a 16 kHz stereo item with sound on the left channel only, and a 16 kHz mono item, resampled to 8 kHz stereo
+		short[] sine = new short[1600];
+		for (int i = 0; i < sine.length; i++) {
+			sine[i] = (short) Math.round(8000 * Math.sin(2 * Math.PI * 440 * i / 16000.0));
+		}
+		ArrayList<PCMPipeline.PCMItem> track = new ArrayList<>();
+		track.add(new PCMPipeline.PCMItem(writeWAV(toBytes(interleave(sine, new short[sine.length])), 16000, 16, 2),
+				AudioUtilities.AudioType.WAV, 0, 100));
+		track.add(new PCMPipeline.PCMItem(writeWAV(toBytes(sine), 16000, 16, 1), AudioUtilities.AudioType.WAV, 150,
+				100));
+
+		int resampledFrames = sine.length / 2 + 2; // see resampledItemsAreConvertedToTheOutputRate
+		for (int parallelism : PARALLELISM) {
+			short[] output = read(pipeline(track, STEREO_OUTPUT_FORMAT), parallelism);
+			assertEquals((resampledFrames + 50 * SAMPLES_PER_MS + resampledFrames) * 2, output.length);
+			double leftEnergy = 0;
+			for (int i = 0; i < resampledFrames; i++) {
+				leftEnergy += output[i * 2] * (double) output[i * 2];
+				assertEquals(0, output[i * 2 + 1]);
+			}
+			double rms = Math.sqrt(leftEnergy / resampledFrames);
+			assertTrue("rms " + rms, rms > 8000 / Math.sqrt(2) * 0.9 && rms < 8000 / Math.sqrt(2) * 1.1);
+			for (int i = resampledFrames + 50 * SAMPLES_PER_MS; i < output.length / 2; i++) {
+				assertEquals(output[i * 2], output[i * 2 + 1]); // mono items are on both channels
+			}
+			assertTrue(output[(output.length / 2 - resampledFrames / 2) * 2] != 0);
+		}
+	}
+
+	@Test
+	public void failedExportStopsDecoding() throws Exception {
+		// an item longer than the read-ahead buffer, so its decoder is still running (or blocked waiting for the buffer
+		// to be read) when the export fails
+		ArrayList<PCMPipeline.PCMItem> track = new ArrayList<>();
+		track.add(wavItem(ramp(300 * SAMPLE_RATE, 1), 0, 300000));
+		final Set<Thread> existingThreads = Thread.getAllStackTraces().keySet();
+		final List<Thread> decodingThreads = new ArrayList<>();
+
+		JPEGMovWriter writer = new JPEGMovWriter(temporaryFolder.newFile());
+		writer.addAudioTrack(new AudioInputStream(pipeline(track).open(1), OUTPUT_FORMAT, AudioSystem.NOT_SPECIFIED), 0);
+		writer.addAudioTrack(new AudioInputStream(new InputStream() {
+			private int mBytesRemaining = SAMPLE_RATE * 2; // the first second, which is written as the track is added
+
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (mBytesRemaining == 0) {
+					// by now the first track has been read, so its decoding has started
+					for (Thread thread : Thread.getAllStackTraces().keySet()) {
+						if (thread.getName().startsWith("AudioDecoding-") && !existingThreads.contains(thread)) {
+							decodingThreads.add(thread);
+						}
+					}
+					throw new IOException("No space left on device");
+				}
+				int count = Math.min(len, mBytesRemaining);
+				Arrays.fill(b, off, off + count, (byte) 0);
+				mBytesRemaining -= count;
+				return count;
+			}
+		}, OUTPUT_FORMAT, AudioSystem.NOT_SPECIFIED), 0);
+		try {
+			writer.close(true);
+			fail("the export should have failed");
+		} catch (IOException ignored) {
+		}
+
+		assertFalse(decodingThreads.isEmpty());
+		for (Thread thread : decodingThreads) {
+			thread.join(10000);
+			assertFalse(thread.getName() + " is still running", thread.isAlive());
+		}
+	}
+
+	private PCMPipeline pipeline(ArrayList<PCMPipeline.PCMItem> track) {
+		return pipeline(track, OUTPUT_FORMAT);
+	}
+
+	private PCMPipeline pipeline(ArrayList<PCMPipeline.PCMItem> track, AudioFormat outputFormat) {
+		ArrayList<ArrayList<PCMPipeline.PCMItem>> tracks = new ArrayList<>();
+		tracks.add(track);
+		return new PCMPipeline(tracks, outputFormat);
+	}
+
+	private PCMPipeline.PCMItem wavItem(short[] samples, long startTimeMs, long durationMs) throws IOException {
+		return new PCMPipeline.PCMItem(writeWAV(toBytes(samples), SAMPLE_RATE, 16), AudioUtilities.AudioType.WAV,
+				startTimeMs, durationMs);
+	}
+
+	private File writeWAV(byte[] data, int sampleRate, int sampleSize) throws IOException {
+		return writeWAV(data, sampleRate, sampleSize, 1);
+	}
+
+	/**
+	 * Write PCM WAV data to a new file - the header must be followed by at least 84 bytes of data, as WAVtoPCMConverter
+	 * rejects files shorter than 128 bytes.
+	 */
+	private File writeWAV(byte[] data, int sampleRate, int sampleSize, int channels) throws IOException {
+		int frameSize = sampleSize / 8 * channels;
+		ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+		header.put("RIFF".getBytes("US-ASCII")).putInt(36 + data.length).put("WAVEfmt ".getBytes("US-ASCII"));
+		header.putInt(16).putShort((short) 1).putShort((short) channels).putInt(sampleRate).putInt(sampleRate * frameSize);
+		header.putShort((short) frameSize).putShort((short) sampleSize);
+		header.put("data".getBytes("US-ASCII")).putInt(data.length);
+		File file = temporaryFolder.newFile();
+		ByteArrayOutputStream wav = new ByteArrayOutputStream();
+		wav.write(header.array());
+		wav.write(data);
+		Files.write(file.toPath(), wav.toByteArray());
+		return file;
+	}
+
+	private static byte[] readBytes(PCMPipeline pipeline, int parallelism) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (InputStream input = pipeline.open(parallelism)) {
+			byte[] buffer = new byte[3000]; // not a multiple of the pipeline's chunk size
+			int count;
+			while ((count = input.read(buffer)) > 0) {
+				output.write(buffer, 0, count);
+			}
+		}
+		return output.toByteArray();
+	}
+
+	private static short[] read(PCMPipeline pipeline, int parallelism) throws IOException {
+		byte[] output = readBytes(pipeline, parallelism);
+		assertEquals(0, output.length % 2);
+		return toShorts(output);
+	}
+
+	/**
+	 * @return samples that are different from each other and from silence, so that misplaced audio is obvious.
+	 */
+	private static short[] ramp(int length, int step) {
+		short[] samples = new short[length];
+		for (int i = 0; i < length; i++) {
+			samples[i] = (short) ((i + 1) * step);
+		}
+		return samples;
+	}
+
+	private static short[] constant(int length, short value) {
+		short[] samples = new short[length];
+		Arrays.fill(samples, value);
+		return samples;
+	}
+
+	private static short[] interleave(short[] left, short[] right) {
+		short[] samples = new short[left.length * 2];
+		for (int i = 0; i < left.length; i++) {
+			samples[i * 2] = left[i];
+			samples[i * 2 + 1] = right[i];
+		}
+		return samples;
+	}
+
+	private static byte[] toBytes(short[] samples) {
+		ByteBuffer bytes = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+		bytes.asShortBuffer().put(samples);
+		return bytes.array();
+	}
+
+	private static short[] toShorts(byte[] bytes) {
+		short[] samples = new short[bytes.length / 2];
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+		return samples;
+	}
+}
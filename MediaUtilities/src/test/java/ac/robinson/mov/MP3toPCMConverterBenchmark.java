@@ -0,0 +1,85 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mov;
+
+import net.javazoom.jl.decoder.SyntheticMP3;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+
+import ac.robinson.test.Benchmark;
+
+/**
+ * Converting a 10-minute stereo MP3 to mono PCM in a file, with bulk conversion to a buffered stream and to a
+ * FileChannel. Throughput is of PCM
+ * output, and includes decoding, which takes most of the time. Run with ./gradlew test -Dbenchmark=true
+ */
+public class MP3toPCMConverterBenchmark {
+
+	private static final int DURATION_SECONDS = 600;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File input;
+	private File output;
+
+	@Before
+	public void setUp() throws Exception {
+		Benchmark.assumeEnabled();
+		input = temporaryFolder.newFile();
+		Files.write(input.toPath(), SyntheticMP3.create(new Random(1), SyntheticMP3.framesForDuration(DURATION_SECONDS),
+				true));
+		output = temporaryFolder.newFile();
+	}
+
+	@Test
+	public void convertTenMinutes() throws Exception {
+		Benchmark.Result stream = Benchmark.measure(1, 5, () -> {
+			try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(output))) {
+				MP3toPCMConverter.convertFile(input, outputStream, new MP3toPCMConverter.MP3Configuration());
+			}
+		});
+		report("bulk to stream", stream);
+
+		Benchmark.Result channel = Benchmark.measure(1, 5, () -> {
+			try (FileChannel outputChannel = new FileOutputStream(output).getChannel()) {
+				MP3toPCMConverter.convertFile(input, outputChannel, new MP3toPCMConverter.MP3Configuration(), 0, -1);
+			}
+		});
+		report("bulk to FileChannel", channel);
+	}
+
+	private void report(String method, Benchmark.Result result) {
+		Benchmark.report("MP3 to PCM, 10 minutes", "%s: %s; %.1f MB/s of PCM", method, result,
+				output.length() / (result.medianNanos / 1e9) / (1024 * 1024));
+	}
+}
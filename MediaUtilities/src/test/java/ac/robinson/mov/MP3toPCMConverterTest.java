@@ -0,0 +1,157 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mov;
+
+import net.javazoom.jl.decoder.Bitstream;
+import net.javazoom.jl.decoder.Decoder;
+import net.javazoom.jl.decoder.Header;
+import net.javazoom.jl.decoder.SampleBuffer;
+import net.javazoom.jl.decoder.SyntheticMP3;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that converting MP3 to PCM in bulk gives exactly the same bytes as the original sample-by-sample conversion,
+ * both when writing to a stream and to a channel, for mono and stereo (downmixed) input, and when converting only part
+ * of a file; and that stereo input is kept as stereo when mono is not forced. The expected lengths and checksums were
+ * produced once by converting the same files with the original converter.
+ */
+public class MP3toPCMConverterTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void stereoMatchesOriginal() throws IOException {
+		File input = createMP3(new Random(1), 200, true);
+		assertMatchesOriginal(input, 0, -1, 460800, 0x4cbde132L);
+	}
+
+	@Test
+	public void monoMatchesOriginal() throws IOException {
+		File input = createMP3(new Random(2), 200, false);
+		assertMatchesOriginal(input, 0, -1, 460800, 0x03db5ba1L);
+	}
+
+	@Test
+	public void partialConversionMatchesOriginal() throws IOException {
+		File input = createMP3(new Random(3), 200, true);
+		assertMatchesOriginal(input, 1000, 2000, 177408, 0x4a1a2102L);
+		assertMatchesOriginal(input, 0, 500, 46080, 0xe88082b7L);
+		assertMatchesOriginal(input, 4000, -1, 108288, 0xa77e84c0L);
+	}
+
+	@Test
+	public void stereoIsKeptUnlessMonoIsForced() throws Exception {
+		byte[] mp3 = SyntheticMP3.create(new Random(4), 200, true);
+		File input = temporaryFolder.newFile();
+		Files.write(input.toPath(), mp3);
+
+		// the decoder's own interleaved samples, as little-endian bytes
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		Bitstream bitstream = new Bitstream(new ByteArrayInputStream(mp3));
+		Decoder decoder = new Decoder();
+		Header header;
+		while ((header = bitstream.readFrame()) != null) {
+			SampleBuffer frame = (SampleBuffer) decoder.decodeFrame(header, bitstream);
+			for (int i = 0; i < frame.getBufferLength(); i++) {
+				expected.write(frame.getBuffer()[i]);
+				expected.write(frame.getBuffer()[i] >> 8);
+			}
+			bitstream.closeFrame();
+		}
+
+		ByteArrayOutputStream stereo = new ByteArrayOutputStream();
+		MP3toPCMConverter.MP3Configuration config = new MP3toPCMConverter.MP3Configuration();
+		config.forceMono = false;
+		MP3toPCMConverter.convertFile(input, stereo, config);
+		assertEquals(2, config.numberOfChannels);
+		assertArrayEquals(expected.toByteArray(), stereo.toByteArray());
+
+		File channelOutput = temporaryFolder.newFile();
+		config = new MP3toPCMConverter.MP3Configuration();
+		config.forceMono = false;
+		try (FileChannel channel = new FileOutputStream(channelOutput).getChannel()) {
+			MP3toPCMConverter.convertFile(input, channel, config, 0, -1);
+		}
+		assertArrayEquals(expected.toByteArray(), Files.readAllBytes(channelOutput.toPath()));
+
+		// mono input is unaffected
+		File monoInput = createMP3(new Random(5), 200, false);
+		ByteArrayOutputStream mono = new ByteArrayOutputStream();
+		MP3toPCMConverter.convertFile(monoInput, mono, new MP3toPCMConverter.MP3Configuration());
+		ByteArrayOutputStream unforced = new ByteArrayOutputStream();
+		config = new MP3toPCMConverter.MP3Configuration();
+		config.forceMono = false;
+		MP3toPCMConverter.convertFile(monoInput, unforced, config);
+		assertEquals(1, config.numberOfChannels);
+		assertArrayEquals(mono.toByteArray(), unforced.toByteArray());
+	}
+
+	/**
+	 * Convert (part of) the given file to a stream and to a channel, checking both against the length and CRC32 of the
+	 * original converter's (mono, 44.1 kHz, 16-bit) output.
+	 */
+	private void assertMatchesOriginal(File input, int startMs, int endMs, int expectedLength, long expectedChecksum)
+			throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		MP3toPCMConverter.MP3Configuration config = new MP3toPCMConverter.MP3Configuration();
+		MP3toPCMConverter.convertFile(input, stream, config, startMs, endMs);
+		assertOutput(expectedLength, expectedChecksum, stream.toByteArray());
+		assertEquals(44100, config.sampleFrequency);
+		assertEquals(16, config.sampleSize);
+		assertEquals(1, config.numberOfChannels);
+
+		File channelOutput = temporaryFolder.newFile();
+		try (FileChannel channel = new FileOutputStream(channelOutput).getChannel()) {
+			MP3toPCMConverter.convertFile(input, channel, new MP3toPCMConverter.MP3Configuration(), startMs, endMs);
+		}
+		assertOutput(expectedLength, expectedChecksum, Files.readAllBytes(channelOutput.toPath()));
+	}
+
+	private static void assertOutput(int expectedLength, long expectedChecksum, byte[] output) {
+		assertEquals(expectedLength, output.length);
+		CRC32 crc = new CRC32();
+		crc.update(output);
+		assertEquals(Long.toHexString(expectedChecksum), Long.toHexString(crc.getValue()));
+	}
+
+	File createMP3(Random random, int frames, boolean stereo) throws IOException {
+		File file = temporaryFolder.newFile();
+		Files.write(file.toPath(), SyntheticMP3.create(random, frames, stereo));
+		return file;
+	}
+}
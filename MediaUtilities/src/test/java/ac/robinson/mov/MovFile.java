@@ -0,0 +1,251 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mov;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A minimal reader for the MOV files written by MovWriter, independent of the com.bric.qt.io atom classes, so that tests
+ * can check the layout of the atoms and the contents of the sample tables.
+ */
+class MovFile {
+
+	private static final List<String> CONTAINER_ATOMS = Arrays.asList("moov", "trak", "edts", "mdia", "minf", "dinf",
+			"stbl");
+
+	static class Atom {
+		final String type;
+		final long offset;
+		final long size;
+		final int headerSize;
+		final List<Atom> children = new ArrayList<>();
+
+		Atom(String type, long offset, long size, int headerSize) {
+			this.type = type;
+			this.offset = offset;
+			this.size = size;
+			this.headerSize = headerSize;
+		}
+
+		long getDataOffset() {
+			return offset + headerSize;
+		}
+
+		Atom find(String childType) {
+			for (Atom child : children) {
+				if (child.type.equals(childType)) {
+					return child;
+				}
+			}
+			return null;
+		}
+
+		List<Atom> findAll(String childType) {
+			List<Atom> found = new ArrayList<>();
+			for (Atom child : children) {
+				if (child.type.equals(childType)) {
+					found.add(child);
+				}
+			}
+			return found;
+		}
+	}
+
+	/**
+	 * A track's sample tables, expanded so that there is one entry per sample (or per chunk, for chunk offsets).
+	 */
+	static class Track {
+		String handlerType;
+		long[] sampleDurations; // from stts
+		long[] sampleSizes; // from stsz (null if every sample has the same size)
+		long constantSampleSize;
+		long sampleCount;
+		long[] chunkOffsets; // from stco
+		long[] samplesPerChunk; // from stsc, one value per chunk
+		long[] syncSamples; // from stss (null if absent)
+		long[][] editList; // from elst: { duration, media time } pairs (null if absent)
+	}
+
+	final byte[] data;
+	final List<Atom> atoms;
+
+	MovFile(File file) throws IOException {
+		data = Files.readAllBytes(file.toPath());
+		atoms = parse(0, data.length);
+	}
+
+	private List<Atom> parse(long start, long end) {
+		List<Atom> parsed = new ArrayList<>();
+		long position = start;
+		while (position < end) {
+			long size = read32(position);
+			int headerSize = 8;
+			if (size == 1) {
+				size = (read32(position + 8) << 32) | read32(position + 12);
+				headerSize = 16;
+			}
+			if (size < headerSize || position + size > end) {
+				throw new IllegalStateException("invalid atom size " + size + " at " + position);
+			}
+			Atom atom = new Atom(readType(position + 4), position, size, headerSize);
+			if (CONTAINER_ATOMS.contains(atom.type)) {
+				atom.children.addAll(parse(position + headerSize, position + size));
+			}
+			parsed.add(atom);
+			position += size;
+		}
+		return parsed;
+	}
+
+	List<String> getTopLevelTypes() {
+		List<String> types = new ArrayList<>();
+		for (Atom atom : atoms) {
+			types.add(atom.type);
+		}
+		return types;
+	}
+
+	Atom getTopLevel(String type) {
+		for (Atom atom : atoms) {
+			if (atom.type.equals(type)) {
+				return atom;
+			}
+		}
+		return null;
+	}
+
+	List<Track> getTracks() {
+		List<Track> tracks = new ArrayList<>();
+		for (Atom trak : getTopLevel("moov").findAll("trak")) {
+			Track track = new Track();
+			Atom mdia = trak.find("mdia");
+			track.handlerType = readType(mdia.find("hdlr").getDataOffset() + 8); // after version, flags and "mhlr"
+			Atom stbl = mdia.find("minf").find("stbl");
+
+			Atom stts = stbl.find("stts");
+			List<Long> durations = new ArrayList<>();
+			for (int i = 0, n = (int) read32(stts.getDataOffset() + 4); i < n; i++) {
+				long count = read32(stts.getDataOffset() + 8 + 8L * i);
+				long duration = read32(stts.getDataOffset() + 12 + 8L * i);
+				for (long j = 0; j < count; j++) {
+					durations.add(duration);
+				}
+			}
+			track.sampleDurations = toArray(durations);
+
+			Atom stsz = stbl.find("stsz");
+			track.constantSampleSize = read32(stsz.getDataOffset() + 4);
+			track.sampleCount = read32(stsz.getDataOffset() + 8);
+			if (track.constantSampleSize == 0) {
+				track.sampleSizes = new long[(int) track.sampleCount];
+				for (int i = 0; i < track.sampleCount; i++) {
+					track.sampleSizes[i] = read32(stsz.getDataOffset() + 12 + 4L * i);
+				}
+			}
+
+			Atom stco = stbl.find("stco");
+			track.chunkOffsets = new long[(int) read32(stco.getDataOffset() + 4)];
+			for (int i = 0; i < track.chunkOffsets.length; i++) {
+				track.chunkOffsets[i] = read32(stco.getDataOffset() + 8 + 4L * i);
+			}
+
+			Atom stsc = stbl.find("stsc");
+			int stscEntries = (int) read32(stsc.getDataOffset() + 4);
+			track.samplesPerChunk = new long[track.chunkOffsets.length];
+			for (int e = 0; e < stscEntries; e++) {
+				long firstChunk = read32(stsc.getDataOffset() + 8 + 12L * e);
+				long samples = read32(stsc.getDataOffset() + 12 + 12L * e);
+				long lastChunk = e + 1 < stscEntries ? read32(stsc.getDataOffset() + 8 + 12L * (e + 1)) - 1 :
+						track.chunkOffsets.length;
+				for (long c = firstChunk; c <= lastChunk; c++) {
+					track.samplesPerChunk[(int) c - 1] = samples;
+				}
+			}
+
+			Atom stss = stbl.find("stss");
+			if (stss != null) {
+				track.syncSamples = new long[(int) read32(stss.getDataOffset() + 4)];
+				for (int i = 0; i < track.syncSamples.length; i++) {
+					track.syncSamples[i] = read32(stss.getDataOffset() + 8 + 4L * i);
+				}
+			}
+
+			Atom edts = trak.find("edts");
+			if (edts != null) {
+				Atom elst = edts.find("elst");
+				track.editList = new long[(int) read32(elst.getDataOffset() + 4)][];
+				for (int i = 0; i < track.editList.length; i++) {
+					long duration = read32(elst.getDataOffset() + 8 + 12L * i);
+					long mediaTime = (int) read32(elst.getDataOffset() + 12 + 12L * i); // signed: -1 is an empty edit
+					track.editList[i] = new long[]{ duration, mediaTime };
+				}
+			}
+			tracks.add(track);
+		}
+		return tracks;
+	}
+
+	Track getTrack(String handlerType) {
+		for (Track track : getTracks()) {
+			if (track.handlerType.equals(handlerType)) {
+				return track;
+			}
+		}
+		return null;
+	}
+
+	List<Track> getTracks(String handlerType) {
+		List<Track> tracks = new ArrayList<>();
+		for (Track track : getTracks()) {
+			if (track.handlerType.equals(handlerType)) {
+				tracks.add(track);
+			}
+		}
+		return tracks;
+	}
+
+	byte[] read(long offset, int length) {
+		return Arrays.copyOfRange(data, (int) offset, (int) offset + length);
+	}
+
+	long read32(long offset) {
+		int p = (int) offset;
+		return ((data[p] & 0xffL) << 24) | ((data[p + 1] & 0xffL) << 16) | ((data[p + 2] & 0xffL) << 8) |
+				(data[p + 3] & 0xffL);
+	}
+
+	private String readType(long offset) {
+		return new String(data, (int) offset, 4, java.nio.charset.StandardCharsets.ISO_8859_1);
+	}
+
+	private static long[] toArray(List<Long> values) {
+		long[] array = new long[values.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = values.get(i);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mov;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import ac.robinson.test.Benchmark;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Benchmarks of MovWriter's output options. Run with ./gradlew test -Dbenchmark=true
+ */
+public class MovWriterBenchmark {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final Random random = new Random(42);
+
+	@Before
+	public void setUp() {
+		Benchmark.assumeEnabled();
+	}
+
+	/**
+	 * The extra cost of closing a movie in fast start layout, which moves the media data along to make room for the
+	 * movie atom. The 120 distinct 250 KB frames add up to around 30 MB of media data.
+	 */
+	@Test
+	public void fastStartCloseCost() throws Exception {
+		final File[] frames = createFrameFiles(120, 250 * 1024);
+		final File outputFile = temporaryFolder.newFile();
+		final long[] closeTime = new long[1];
+		for (final boolean fastStart : new boolean[]{ false, true }) {
+			closeTime[0] = 0;
+			Benchmark.Result result = Benchmark.measure(2, 5, () -> {
+				JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+				writer.setFastStart(fastStart);
+				for (File frame : frames) {
+					writer.addFrame(1, frame);
+				}
+				long start = System.nanoTime();
+				writer.close(true);
+				closeTime[0] += System.nanoTime() - start;
+			});
+			Benchmark.report("MovWriter fast start", "fastStart=%b: write %s; close %.2f ms (mean of all runs); %,d bytes",
+					fastStart, result, closeTime[0] / 7 / 1e6, outputFile.length());
+		}
+	}
+
+	/**
+	 * File size, movie atom size and write time for a narrative in which some stills are repeated (which are stored
+	 * once), comparing the default repeated sample tables with compact tables (one sample per frame).
+	 */
+	@Test
+	public void repeatedStillsAndCompactTables() throws Exception {
+		File[] stills = createFrameFiles(18, 150 * 1024);
+		final File[] frames = new File[30];
+		final float[] durations = new float[frames.length];
+		long frameBytes = 0;
+		for (int i = 0; i < frames.length; i++) {
+			frames[i] = i % 5 == 0 ? stills[0] : i % 5 == 3 ? stills[1] : stills[i % stills.length]; // 14 distinct
+			durations[i] = 2.5f + (i % 12) * 0.5f;
+			frameBytes += frames[i].length();
+		}
+		final File outputFile = temporaryFolder.newFile();
+		for (final boolean repeatFrameSamples : new boolean[]{ true, false }) {
+			Benchmark.Result result = Benchmark.measure(2, 7, () -> {
+				JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+				writer.setRepeatFrameSamples(repeatFrameSamples);
+				for (int i = 0; i < frames.length; i++) {
+					writer.addFrame(durations[i], frames[i]);
+				}
+				writer.close(true);
+			});
+			MovFile movFile = new MovFile(outputFile);
+			Benchmark.report("MovWriter sample tables", "repeatFrameSamples=%b: %s; file %,d bytes (frames added: %,d " +
+							"bytes; mdat %,d; moov %,d)", repeatFrameSamples, result, outputFile.length(), frameBytes,
+					movFile.getTopLevel("mdat").size, movFile.getTopLevel("moov").size);
+		}
+	}
+
+	/**
+	 * Adding 60 frames at 1080p with 1, 2 and 4 encoder threads. As in narrative export, each frame is drawn on the
+	 * calling thread onto a reused image and then copied before it is queued, but frames are encoded by ImageIO rather
+	 * than Bitmap.compress (which is unavailable in unit tests). The media data must be the same for every thread count.
+	 * Speedups depend on the number of processors, which is reported alongside the results.
+	 */
+	@Test
+	public void encoderThreads() throws Exception {
+		final int frameCount = 60;
+		final BufferedImage canvas = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+		final File outputFile = temporaryFolder.newFile();
+		byte[] expectedMediaData = null;
+		for (final int threads : new int[]{ 1, 2, 4 }) {
+			Benchmark.Result result = Benchmark.measure(1, 3, () -> {
+				JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+				writer.setEncoderThreadCount(threads);
+				for (int i = 0; i < frameCount; i++) {
+					drawFrame(canvas, i);
+					final BufferedImage frame = new BufferedImage(canvas.getColorModel(), canvas.copyData(null), false,
+							null);
+					writer.addFrame(1, frame.getWidth(), frame.getHeight(), out -> ImageIO.write(frame, "jpeg", out));
+				}
+				writer.close(true);
+			});
+
+			MovFile movFile = new MovFile(outputFile);
+			MovFile.Atom mdat = movFile.getTopLevel("mdat");
+			byte[] mediaData = movFile.read(mdat.offset, (int) mdat.size);
+			if (expectedMediaData == null) {
+				expectedMediaData = mediaData;
+			} else {
+				assertArrayEquals(expectedMediaData, mediaData);
+			}
+			Benchmark.report("MovWriter 1080p encoding", "%d thread(s): %s; %.1f frames/s (%d processors)", threads,
+					result, frameCount / (result.medianNanos / 1e9), Runtime.getRuntime().availableProcessors());
+		}
+	}
+
+	/**
+	 * Draw a frame that changes over time, with enough detail that it takes some effort to compress.
+	 */
+	private static void drawFrame(BufferedImage canvas, int frame) {
+		Graphics2D graphics = canvas.createGraphics();
+		graphics.setColor(new Color(frame * 4, 80, 160));
+		graphics.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+		Random random = new Random(frame);
+		for (int i = 0; i < 200; i++) {
+			graphics.setColor(new Color(random.nextInt(0x1000000)));
+			graphics.fillOval(random.nextInt(canvas.getWidth()), random.nextInt(canvas.getHeight()), 20 +
+					random.nextInt(300), 20 + random.nextInt(300));
+		}
+		graphics.setColor(Color.WHITE);
+		graphics.drawString("Frame " + frame, 100, 100);
+		graphics.dispose();
+	}
+
+	File[] createFrameFiles(int count, int size) throws IOException {
+		File[] frames = new File[count];
+		byte[] contents = new byte[size];
+		for (int i = 0; i < count; i++) {
+			random.nextBytes(contents);
+			frames[i] = temporaryFolder.newFile();
+			Files.write(frames[i].toPath(), contents);
+		}
+		return frames;
+	}
+}
@@ -0,0 +1,426 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.mov;
+
+import com.bric.audio.AudioFormat;
+import com.bric.audio.AudioInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of the structure of the files written by MovWriter. Frames are added as image files (which MovWriter copies
+ * directly into the media data), so no Android image encoding is needed, and the tests can check that the sample tables
+ * point at exactly the bytes that were added.
+ */
+public class MovWriterTest {
+
+	static final int AUDIO_SAMPLE_RATE = 22050;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final Random random = new Random(42);
+
+	private final float[] testFrameDurations = { 1, 2, 0.5f };
+	private byte[][] testFrames;
+	private byte[] testAudio;
+
+	@Test
+	public void normalLayoutPlacesMovieAfterMediaData() throws IOException {
+		MovFile movFile = new MovFile(writeTestMovie(false));
+		assertEquals(Arrays.asList("ftyp", "mdat", "moov"), movFile.getTopLevelTypes());
+		MovFile.Atom mdat = movFile.getTopLevel("mdat");
+		assertEquals(32, mdat.offset);
+		assertEquals(16, mdat.headerSize); // always written with an extended (64-bit) size
+		assertEquals(movFile.getTopLevel("moov").offset, mdat.offset + mdat.size);
+		assertEquals(movFile.data.length, movFile.getTopLevel("moov").offset + movFile.getTopLevel("moov").size);
+	}
+
+	@Test
+	public void fastStartLayoutPlacesMovieBeforeMediaData() throws IOException {
+		MovFile movFile = new MovFile(writeTestMovie(true));
+		assertEquals(Arrays.asList("ftyp", "moov", "mdat"), movFile.getTopLevelTypes());
+		MovFile.Atom moov = movFile.getTopLevel("moov");
+		MovFile.Atom mdat = movFile.getTopLevel("mdat");
+		assertEquals(32, moov.offset);
+		assertEquals(mdat.offset, moov.offset + moov.size);
+		assertEquals(movFile.data.length, mdat.offset + mdat.size);
+	}
+
+	@Test
+	public void chunkOffsetsPointAtMediaData() throws IOException {
+		for (boolean fastStart : new boolean[]{ false, true }) {
+			MovFile movFile = new MovFile(writeTestMovie(fastStart));
+			assertVideoMatches(movFile, testFrames, testFrameDurations);
+			assertArrayEquals(testAudio, readAudio(movFile, movFile.getTrack("soun")));
+		}
+	}
+
+	@Test
+	public void fastStartOnlyMovesMediaData() throws IOException {
+		MovFile normal = new MovFile(writeTestMovie(false));
+		MovFile fastStart = new MovFile(writeTestMovie(true));
+		MovFile.Atom normalMdat = normal.getTopLevel("mdat");
+		MovFile.Atom fastStartMdat = fastStart.getTopLevel("mdat");
+		assertEquals(normal.data.length, fastStart.data.length);
+		assertEquals(normalMdat.size, fastStartMdat.size);
+		assertArrayEquals(normal.read(normalMdat.offset, (int) normalMdat.size),
+				fastStart.read(fastStartMdat.offset, (int) fastStartMdat.size));
+
+		// every chunk offset is shifted by the size of the movie atom, which now precedes the media data
+		long shift = fastStart.getTopLevel("moov").size;
+		for (int t = 0; t < normal.getTracks().size(); t++) {
+			long[] normalOffsets = normal.getTracks().get(t).chunkOffsets;
+			long[] fastStartOffsets = fastStart.getTracks().get(t).chunkOffsets;
+			assertEquals(normalOffsets.length, fastStartOffsets.length);
+			for (int c = 0; c < normalOffsets.length; c++) {
+				assertEquals(normalOffsets[c] + shift, fastStartOffsets[c]);
+			}
+		}
+	}
+
+	@Test
+	public void identicalFramesShareData() throws IOException {
+		byte[] still = randomBytes(5000);
+		byte[] other = randomBytes(4000);
+		byte[][] frames = { still, other, still.clone(), still.clone() };
+		float[] durations = { 2, 1, 0.5f, 3 };
+		for (boolean repeatFrameSamples : new boolean[]{ true, false }) {
+			File outputFile = temporaryFolder.newFile();
+			JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+			writer.setRepeatFrameSamples(repeatFrameSamples);
+			for (int i = 0; i < frames.length; i++) {
+				writer.addFrame(durations[i], createFrameFile(frames[i])); // separate (but identical) files
+			}
+			writer.close(true);
+
+			MovFile movFile = new MovFile(outputFile);
+			assertVideoMatches(movFile, frames, durations);
+			assertEquals(16 + still.length + other.length, movFile.getTopLevel("mdat").size);
+			MovFile.Track video = movFile.getTrack("vide");
+			assertEquals(video.chunkOffsets[0], video.chunkOffsets[video.chunkOffsets.length - 1]);
+		}
+	}
+
+	@Test
+	public void compactSampleTablesStoreOneSamplePerFrame() throws IOException {
+		byte[][] frames = { randomBytes(3000), randomBytes(2000), randomBytes(2500) };
+		float[] durations = { 2.5f, 0.2f, 4 };
+		File outputFile = temporaryFolder.newFile();
+		JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+		writer.setRepeatFrameSamples(false);
+		for (int i = 0; i < frames.length; i++) {
+			writer.addFrame(durations[i], createFrameFile(frames[i]));
+		}
+		writer.close(true);
+
+		MovFile movFile = new MovFile(outputFile);
+		assertVideoMatches(movFile, frames, durations);
+		MovFile.Track video = movFile.getTrack("vide");
+		assertEquals(frames.length, video.sampleCount);
+		assertArrayEquals(new long[]{ 75, 6, 120 }, video.sampleDurations);
+		assertArrayEquals(new long[]{ 1, 2, 3 }, video.syncSamples);
+	}
+
+	@Test
+	public void repeatedSampleTablesStoreOneSamplePerTimeUnit() throws IOException {
+		byte[][] frames = { randomBytes(3000), randomBytes(2000) };
+		float[] durations = { 1, 0.5f };
+		File outputFile = temporaryFolder.newFile();
+		JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+		for (int i = 0; i < frames.length; i++) {
+			writer.addFrame(durations[i], createFrameFile(frames[i]));
+		}
+		writer.close(true);
+
+		MovFile.Track video = new MovFile(outputFile).getTrack("vide");
+		assertEquals(45, video.sampleCount);
+		assertEquals(45, video.chunkOffsets.length);
+		assertArrayEquals(new long[]{ 1, 31 }, video.syncSamples); // the first repetition of each frame
+		for (long duration : video.sampleDurations) {
+			assertEquals(1, duration);
+		}
+	}
+
+	@Test
+	public void audioSilenceRefersToSharedChunk() throws IOException {
+		byte[] late = randomAudio(5);
+		byte[] segmented = randomAudio(15);
+		byte[] mixed = new byte[AUDIO_SAMPLE_RATE * 2 * 80]; // literal silence between two sounds
+		System.arraycopy(randomAudio(4), 0, mixed, 0, AUDIO_SAMPLE_RATE * 2 * 4);
+		System.arraycopy(randomAudio(4), 0, mixed, AUDIO_SAMPLE_RATE * 2 * 70, AUDIO_SAMPLE_RATE * 2 * 4);
+
+		for (boolean fastStart : new boolean[]{ false, true }) {
+			File outputFile = temporaryFolder.newFile();
+			JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+			writer.setFastStart(fastStart);
+			writer.addAudioTrack(createAudioStream(late), 60);
+			writer.addSegmentedAudioTrack(createAudioStream(segmented), new float[]{ 0, 30, 70 }, new float[]{ 0, 5,
+					10 }, new float[]{ 5, 5, 5 });
+			writer.addAudioTrack(createAudioStream(mixed), 0);
+			addStillFrames(writer, 80);
+			writer.close(true);
+
+			MovFile movFile = new MovFile(outputFile);
+			List<MovFile.Track> audioTracks = movFile.getTracks("soun");
+			assertEquals(3, audioTracks.size());
+
+			byte[] lateExpected = new byte[AUDIO_SAMPLE_RATE * 2 * 65];
+			System.arraycopy(late, 0, lateExpected, AUDIO_SAMPLE_RATE * 2 * 60, late.length);
+			assertArrayEquals(lateExpected, readAudio(movFile, audioTracks.get(0)));
+
+			byte[] segmentedExpected = new byte[AUDIO_SAMPLE_RATE * 2 * 75];
+			int[] segmentOffsets = { 0, 30, 70 };
+			for (int s = 0; s < segmentOffsets.length; s++) {
+				System.arraycopy(segmented, AUDIO_SAMPLE_RATE * 2 * 5 * s, segmentedExpected,
+						AUDIO_SAMPLE_RATE * 2 * segmentOffsets[s], AUDIO_SAMPLE_RATE * 2 * 5);
+			}
+			assertArrayEquals(segmentedExpected, readAudio(movFile, audioTracks.get(1)));
+
+			assertArrayEquals(mixed, readAudio(movFile, audioTracks.get(2)));
+
+			// around 3 minutes of silence across the tracks, but only the sounds (and one shared silent chunk) are stored
+			long soundBytes = late.length + segmented.length + AUDIO_SAMPLE_RATE * 2 * 8;
+			assertTrue(movFile.getTopLevel("mdat").size < soundBytes + AUDIO_SAMPLE_RATE * 2 * 4);
+			for (MovFile.Track track : audioTracks) {
+				assertNull(track.editList);
+			}
+		}
+	}
+
+	@Test
+	public void eightBitAudioSilenceIsUnsigned() throws IOException {
+		byte[] sound = randomBytes(AUDIO_SAMPLE_RATE * 2);
+		File outputFile = temporaryFolder.newFile();
+		JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+		writer.addAudioTrack(new AudioInputStream(new ByteArrayInputStream(sound), new AudioFormat(AUDIO_SAMPLE_RATE, 8,
+				1, false, false), sound.length), 3);
+		addStillFrames(writer, 6);
+		writer.close(true);
+
+		MovFile movFile = new MovFile(outputFile);
+		MovFile.Track audio = movFile.getTrack("soun");
+		ByteArrayOutputStream samples = new ByteArrayOutputStream();
+		for (int c = 0; c < audio.chunkOffsets.length; c++) {
+			samples.write(movFile.read(audio.chunkOffsets[c], (int) audio.samplesPerChunk[c]), 0,
+					(int) audio.samplesPerChunk[c]);
+		}
+		byte[] expected = new byte[AUDIO_SAMPLE_RATE * 5];
+		Arrays.fill(expected, 0, AUDIO_SAMPLE_RATE * 3, (byte) 0x80);
+		System.arraycopy(sound, 0, expected, AUDIO_SAMPLE_RATE * 3, sound.length);
+		assertArrayEquals(expected, samples.toByteArray());
+	}
+
+	@Test
+	public void audioEditListsCanBeUsedInsteadOfSilence() throws IOException {
+		byte[] late = randomAudio(5);
+		File outputFile = temporaryFolder.newFile();
+		JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+		writer.setAudioEditLists(true);
+		writer.addAudioTrack(createAudioStream(late), 10);
+		addStillFrames(writer, 20);
+		writer.close(true);
+
+		MovFile movFile = new MovFile(outputFile);
+		MovFile.Track audio = movFile.getTrack("soun");
+		assertArrayEquals(late, readAudio(movFile, audio));
+		assertEquals(2, audio.editList.length);
+		assertEquals(-1, audio.editList[0][1]); // an empty edit before the audio starts
+		assertEquals(0, audio.editList[1][1]);
+	}
+
+	@Test
+	public void openEndedSegmentPlaysUntilTheAudioEnds() throws IOException {
+		byte[] segmented = randomAudio(15);
+		for (boolean useEditList : new boolean[]{ false, true }) {
+			File outputFile = temporaryFolder.newFile();
+			JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+			writer.setAudioEditLists(useEditList);
+			writer.addSegmentedAudioTrack(createAudioStream(segmented), new float[]{ 10, 30 }, new float[]{ 0, 5 },
+					new float[]{ 5, Float.POSITIVE_INFINITY });
+			addStillFrames(writer, 40);
+			writer.close(true);
+
+			MovFile movFile = new MovFile(outputFile);
+			MovFile.Track audio = movFile.getTrack("soun");
+			if (useEditList) {
+				assertArrayEquals(segmented, readAudio(movFile, audio));
+				assertEquals(4, audio.editList.length);
+				assertEquals(-1, audio.editList[2][1]); // the gap between the two segments
+				assertEquals(AUDIO_SAMPLE_RATE * 5, audio.editList[3][1]);
+			} else {
+				byte[] expected = new byte[AUDIO_SAMPLE_RATE * 2 * 40];
+				System.arraycopy(segmented, 0, expected, AUDIO_SAMPLE_RATE * 2 * 10, AUDIO_SAMPLE_RATE * 2 * 5);
+				System.arraycopy(segmented, AUDIO_SAMPLE_RATE * 2 * 5, expected, AUDIO_SAMPLE_RATE * 2 * 30,
+						AUDIO_SAMPLE_RATE * 2 * 10);
+				assertArrayEquals(expected, readAudio(movFile, audio));
+			}
+		}
+	}
+
+	@Test
+	public void onlyTheLastSegmentCanBeOpenEnded() throws IOException {
+		JPEGMovWriter writer = new JPEGMovWriter(temporaryFolder.newFile());
+		try {
+			writer.addSegmentedAudioTrack(createAudioStream(randomAudio(15)), new float[]{ 0, 30 }, new float[]{ 0, 5 },
+					new float[]{ Float.POSITIVE_INFINITY, 5 });
+			fail("an open-ended segment must be the last");
+		} catch (IllegalArgumentException ignored) {
+		}
+		writer.close(true);
+	}
+
+	@Test
+	public void emptyMovieCanBeClosed() throws IOException {
+		for (boolean fastStart : new boolean[]{ false, true }) {
+			File outputFile = temporaryFolder.newFile();
+			JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+			writer.setFastStart(fastStart);
+			writer.close(true);
+			MovFile movFile = new MovFile(outputFile);
+			assertTrue(movFile.getTopLevelTypes().containsAll(Arrays.asList("ftyp", "mdat", "moov")));
+			assertEquals(0, movFile.getTrack("vide").sampleCount);
+		}
+	}
+
+	private File writeTestMovie(boolean fastStart) throws IOException {
+		if (testFrames == null) {
+			testFrames = new byte[testFrameDurations.length][];
+			for (int i = 0; i < testFrames.length; i++) {
+				testFrames[i] = randomBytes(1000 + 500 * i);
+			}
+			testAudio = randomBytes(AUDIO_SAMPLE_RATE * 2 * 3); // 3 seconds of 16-bit mono
+		}
+
+		File outputFile = temporaryFolder.newFile();
+		JPEGMovWriter writer = new JPEGMovWriter(outputFile);
+		writer.setFastStart(fastStart);
+		writer.addAudioTrack(createAudioStream(testAudio), 0);
+		for (int i = 0; i < testFrames.length; i++) {
+			writer.addFrame(testFrameDurations[i], createFrameFile(testFrames[i]));
+		}
+		writer.close(true);
+		return outputFile;
+	}
+
+	private void addStillFrames(MovWriter writer, int seconds) throws IOException {
+		File still = createFrameFile(randomBytes(1000));
+		for (int i = 0; i < seconds; i++) {
+			writer.addFrame(1, still);
+		}
+	}
+
+	/**
+	 * @return the given number of seconds of random 16-bit mono audio, without any silent (zero) bytes
+	 */
+	private byte[] randomAudio(int seconds) {
+		byte[] samples = randomBytes(AUDIO_SAMPLE_RATE * 2 * seconds);
+		for (int i = 0; i < samples.length; i++) {
+			if (samples[i] == 0) {
+				samples[i] = 1;
+			}
+		}
+		return samples;
+	}
+
+	byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+
+	File createFrameFile(byte[] contents) throws IOException {
+		File frameFile = temporaryFolder.newFile();
+		Files.write(frameFile.toPath(), contents);
+		return frameFile;
+	}
+
+	/**
+	 * @param samples 16-bit mono little-endian samples at AUDIO_SAMPLE_RATE
+	 */
+	static AudioInputStream createAudioStream(byte[] samples) {
+		return new AudioInputStream(new ByteArrayInputStream(samples),
+				new AudioFormat(AUDIO_SAMPLE_RATE, 16, 1, true, false), samples.length / 2);
+	}
+
+	/**
+	 * Check that each video sample refers to the data of the expected frame, and that each frame is shown for the
+	 * expected duration (whether as one sample or as a sample repeated once per time unit).
+	 */
+	static void assertVideoMatches(MovFile movFile, byte[][] frames, float[] frameDurations) {
+		MovFile.Track video = movFile.getTrack("vide");
+		int sample = 0;
+		int chunk = 0;
+		int samplesLeftInChunk = 0;
+		long sampleOffset = 0;
+		for (int f = 0; f < frames.length; f++) {
+			long expectedDuration = (long) (frameDurations[f] * MovWriter.DEFAULT_TIME_SCALE + .5);
+			long duration = 0;
+			while (duration < expectedDuration) {
+				if (samplesLeftInChunk == 0) {
+					samplesLeftInChunk = (int) video.samplesPerChunk[chunk];
+					sampleOffset = video.chunkOffsets[chunk++];
+				}
+				long size = video.sampleSizes[sample];
+				assertArrayEquals("frame " + f + ", sample " + sample, frames[f], movFile.read(sampleOffset,
+						(int) size));
+				sampleOffset += size;
+				samplesLeftInChunk -= 1;
+				duration += video.sampleDurations[sample++];
+			}
+			assertEquals(expectedDuration, duration);
+		}
+		assertEquals(video.sampleCount, sample);
+	}
+
+	/**
+	 * @return the 16-bit mono audio stored in the given track, following its chunks in order and converted back to the
+	 * little-endian format it was added in
+	 */
+	static byte[] readAudio(MovFile movFile, MovFile.Track audio) {
+		ByteArrayOutputStream samples = new ByteArrayOutputStream();
+		for (int c = 0; c < audio.chunkOffsets.length; c++) {
+			byte[] chunk = movFile.read(audio.chunkOffsets[c], (int) audio.samplesPerChunk[c] * 2);
+			for (int i = 0; i < chunk.length; i += 2) {
+				samples.write(chunk[i + 1]);
+				samples.write(chunk[i]);
+			}
+		}
+		return samples.toByteArray();
+	}
+}
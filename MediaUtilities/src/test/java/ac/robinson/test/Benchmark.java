@@ -0,0 +1,120 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.test;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A minimal timing harness for the JVM benchmarks in this project's unit tests. Benchmarks are skipped unless the
+ * "benchmark" system property is true (e.g., ./gradlew test -Dbenchmark=true), as they are slow and their results are
+ * only meaningful when compared on the same machine. Each benchmark prints its results rather than asserting on them.
+ */
+public final class Benchmark {
+
+	public interface Task {
+		void run() throws Exception;
+	}
+
+	/**
+	 * The result of timing a task: the median and best wall-clock time of the measured runs, and the mean number of
+	 * bytes allocated by each run (or -1 if the JVM cannot measure allocation).
+	 */
+	public static final class Result {
+		public final long medianNanos;
+		public final long bestNanos;
+		public final long allocatedBytes;
+
+		Result(long medianNanos, long bestNanos, long allocatedBytes) {
+			this.medianNanos = medianNanos;
+			this.bestNanos = bestNanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		public double medianMillis() {
+			return medianNanos / 1e6;
+		}
+
+		public double bestMillis() {
+			return bestNanos / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			String allocated = allocatedBytes < 0 ? "unknown" : String.format(Locale.US, "%,d bytes", allocatedBytes);
+			return String.format(Locale.US, "median %.2f ms, best %.2f ms, allocated %s", medianMillis(), bestMillis(),
+					allocated);
+		}
+	}
+
+	private Benchmark() {
+	}
+
+	/**
+	 * Skip the calling test unless benchmarks have been requested.
+	 */
+	public static void assumeEnabled() {
+		Assume.assumeTrue("benchmarks are only run with -Dbenchmark=true", Boolean.getBoolean("benchmark"));
+	}
+
+	/**
+	 * Run a task warmupRuns times (untimed) and then measuredRuns times, timing each run.
+	 */
+	public static Result measure(int warmupRuns, int measuredRuns, Task task) throws Exception {
+		for (int i = 0; i < warmupRuns; i++) {
+			task.run();
+		}
+		long[] times = new long[measuredRuns];
+		long allocatedBefore = getAllocatedBytes();
+		for (int i = 0; i < measuredRuns; i++) {
+			long start = System.nanoTime();
+			task.run();
+			times[i] = System.nanoTime() - start;
+		}
+		long allocatedAfter = getAllocatedBytes();
+		Arrays.sort(times);
+		long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 :
+				(allocatedAfter - allocatedBefore) / measuredRuns;
+		return new Result(times[measuredRuns / 2], times[0], allocated);
+	}
+
+	public static void report(String benchmark, String format, Object... args) {
+		System.out.println("[benchmark] " + benchmark + ": " + String.format(Locale.US, format, args));
+	}
+
+	/**
+	 * @return the number of bytes allocated so far by the current thread, or -1 if this JVM cannot measure this
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+			if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+				return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
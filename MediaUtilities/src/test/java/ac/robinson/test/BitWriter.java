@@ -0,0 +1,67 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.test;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Builds a most-significant-bit-first bitstream, for generating codec test input.
+ */
+public final class BitWriter {
+
+	private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+	private int mCurrent;
+	private int mBitCount;
+	private long mTotalBits;
+
+	/**
+	 * Append the lowest n bits of value (0 <= n <= 32), most significant first.
+	 */
+	public void write(int value, int n) {
+		for (int i = n - 1; i >= 0; i--) {
+			mCurrent = (mCurrent << 1) | ((value >>> i) & 1);
+			mBitCount += 1;
+			if (mBitCount == 8) {
+				mBytes.write(mCurrent);
+				mCurrent = 0;
+				mBitCount = 0;
+			}
+		}
+		mTotalBits += n;
+	}
+
+	public long getBitCount() {
+		return mTotalBits;
+	}
+
+	/**
+	 * @return the bits written so far, with any incomplete final byte padded with zeros
+	 */
+	public byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] complete = mBytes.toByteArray();
+		bytes.write(complete, 0, complete.length);
+		if (mBitCount > 0) {
+			bytes.write(mCurrent << (8 - mBitCount));
+		}
+		return bytes.toByteArray();
+	}
+}
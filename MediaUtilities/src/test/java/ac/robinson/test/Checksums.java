@@ -0,0 +1,51 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.test;
+
+import java.util.zip.CRC32;
+
+/**
+ * Adds values to the CRC32 checksums that golden-checksum tests compare against. The int and long forms have different
+ * names (rather than overloads) so that the number of bytes added - and so the expected checksum - is always explicit.
+ */
+public final class Checksums {
+
+	private Checksums() {
+	}
+
+	/**
+	 * Add the 4 bytes of value, least significant first.
+	 */
+	public static void updateInt(CRC32 crc, int value) {
+		for (int i = 0; i < 4; i++) {
+			crc.update((value >> (8 * i)) & 0xff);
+		}
+	}
+
+	/**
+	 * Add the 8 bytes of value, least significant first.
+	 */
+	public static void updateLong(CRC32 crc, long value) {
+		for (int i = 0; i < 8; i++) {
+			crc.update((int) (value >> (8 * i)) & 0xff);
+		}
+	}
+}
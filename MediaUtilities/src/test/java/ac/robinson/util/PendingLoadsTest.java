@@ -0,0 +1,218 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PendingLoadsTest {
+
+	private static final long TIMEOUT_SECONDS = 10;
+
+	private static class RecordingLoads extends PendingLoads<String, String> {
+		final Map<String, String> mLoaded = new LinkedHashMap<>();
+
+		@Override
+		protected void onLoaded(String key, String value) {
+			mLoaded.put(key, value);
+		}
+	}
+
+	// a loader that waits until it is released, so that other threads can request the same key in the meantime
+	private static class BlockingLoader implements Callable<String> {
+		final CountDownLatch mStarted = new CountDownLatch(1);
+		final CountDownLatch mRelease = new CountDownLatch(1);
+		final AtomicInteger mCalls = new AtomicInteger();
+		private final String mValue;
+
+		BlockingLoader(String value) {
+			mValue = value;
+		}
+
+		@Override
+		public String call() throws Exception {
+			mCalls.incrementAndGet();
+			mStarted.countDown();
+			assertTrue(mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			return mValue;
+		}
+	}
+
+	@Test
+	public void loadDeliversValue() throws Exception {
+		RecordingLoads loads = new RecordingLoads();
+		assertEquals("a", loads.load("key", () -> "a"));
+		assertEquals("a", loads.mLoaded.get("key"));
+		assertFalse(loads.isLoading("key"));
+	}
+
+	@Test
+	public void simultaneousLoadsShareOneLoader() throws Exception {
+		RecordingLoads loads = new RecordingLoads();
+		BlockingLoader loader = new BlockingLoader("a");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> first = executor.submit(() -> loads.load("key", loader));
+			assertTrue(loader.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			assertTrue(loads.isLoading("key"));
+
+			List<Thread> others = new ArrayList<>();
+			List<String> results = Collections.synchronizedList(new ArrayList<>());
+			for (int i = 0; i < 3; i++) {
+				Thread other = new Thread(() -> {
+					try {
+						results.add(loads.load("key", () -> "second loader"));
+					} catch (Exception e) {
+						results.add(e.toString());
+					}
+				});
+				other.start();
+				others.add(other);
+			}
+			// only release the loader once every other thread is waiting for its result
+			for (Thread other : others) {
+				long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+				while (other.getState() != Thread.State.WAITING && System.nanoTime() < end) {
+					Thread.sleep(1);
+				}
+				assertEquals(Thread.State.WAITING, other.getState());
+			}
+			loader.mRelease.countDown();
+
+			assertEquals("a", first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			for (Thread other : others) {
+				other.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+			}
+			assertEquals(Arrays.asList("a", "a", "a"), results);
+			assertEquals(1, loader.mCalls.get());
+			assertEquals(1, loads.mLoaded.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void cancelledLoadIsNotDelivered() throws Exception {
+		RecordingLoads loads = new RecordingLoads();
+		BlockingLoader loader = new BlockingLoader("stale");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> stale = executor.submit(() -> loads.load("key", loader));
+			assertTrue(loader.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			loads.cancel("key");
+			assertFalse(loads.isLoading("key"));
+
+			// a request after cancelling starts a new load rather than waiting for the stale one
+			assertEquals("fresh", loads.load("key", () -> "fresh"));
+			assertEquals("fresh", loads.mLoaded.get("key"));
+
+			// the stale load's caller still gets its value, but it does not replace the fresh one
+			loader.mRelease.countDown();
+			assertEquals("stale", stale.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			assertEquals("fresh", loads.mLoaded.get("key"));
+			assertEquals(1, loads.mLoaded.size());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void cancelAllDropsEveryLoad() throws Exception {
+		RecordingLoads loads = new RecordingLoads();
+		BlockingLoader first = new BlockingLoader("a");
+		BlockingLoader second = new BlockingLoader("b");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> a = executor.submit(() -> loads.load("a", first));
+			Future<String> b = executor.submit(() -> loads.load("b", second));
+			assertTrue(first.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			assertTrue(second.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			loads.cancelAll();
+			first.mRelease.countDown();
+			second.mRelease.countDown();
+
+			assertEquals("a", a.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			assertEquals("b", b.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			assertTrue(loads.mLoaded.isEmpty());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failedLoadIsNotDeliveredAndCanBeRetried() throws Exception {
+		RecordingLoads loads = new RecordingLoads();
+		try {
+			loads.load("key", () -> {
+				throw new IllegalStateException("failed");
+			});
+			fail("the loader's exception should be passed on");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertFalse(loads.isLoading("key"));
+		assertTrue(loads.mLoaded.isEmpty());
+
+		assertEquals("a", loads.load("key", () -> "a"));
+		assertEquals("a", loads.mLoaded.get("key"));
+	}
+
+	@Test
+	public void cancelKeepsCallersStateConsistent() throws Exception {
+		// holding the lock while cancelling and changing other state means a load can't deliver in between
+		RecordingLoads loads = new RecordingLoads();
+		BlockingLoader loader = new BlockingLoader("a");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> load = executor.submit(() -> loads.load("key", loader));
+			assertTrue(loader.mStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			synchronized (loads) {
+				loader.mRelease.countDown();
+				Thread.sleep(50); // give the load a chance to (wrongly) deliver its result
+				assertTrue(loads.mLoaded.isEmpty());
+				loads.cancel("key");
+			}
+			assertEquals("a", load.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+			assertTrue(loads.mLoaded.isEmpty());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright (C) 2012 Simon Robinson
+ *
+ *  This file is part of Com-Me.
+ *
+ *  Com-Me is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as
+ *  published by the Free Software Foundation; either version 3 of the
+ *  License, or (at your option) any later version.
+ *
+ *  Com-Me is distributed in the hope that it will be useful, but WITHOUT
+ *  ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General
+ *  Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public
+ *  License along with Com-Me.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ac.robinson.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SizeBucketedPoolTest {
+
+	// a pooled object whose equals() would confuse a pool that did not compare objects by identity
+	private static final class Item {
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Item;
+		}
+
+		@Override
+		public int hashCode() {
+			return 1;
+		}
+	}
+
+	private static class RecordingPool extends SizeBucketedPool<Item> {
+		final List<Item> mEvicted = new ArrayList<>();
+
+		RecordingPool(int maxSizeBytes) {
+			super(maxSizeBytes);
+		}
+
+		@Override
+		protected void onEvicted(Item item) {
+			mEvicted.add(item);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeMaximumSizeIsRejected() {
+		new SizeBucketedPool<Item>(-1);
+	}
+
+	@Test
+	public void getReturnsSmallestSuitableObject() {
+		SizeBucketedPool<Item> pool = new SizeBucketedPool<>(1000);
+		Item small = new Item();
+		Item medium = new Item();
+		Item large = new Item();
+		pool.put(large, 300);
+		pool.put(small, 100);
+		pool.put(medium, 200);
+
+		assertSame(medium, pool.get(150, 1000));
+		assertSame(large, pool.get(150, 1000));
+		assertNull(pool.get(150, 1000));
+		assertSame(small, pool.get(0, 1000));
+		assertEquals(0, pool.getCount());
+		assertEquals(0, pool.getSize());
+	}
+
+	@Test
+	public void getRespectsMaximumSize() {
+		SizeBucketedPool<Item> pool = new SizeBucketedPool<>(1000);
+		Item item = new Item();
+		pool.put(item, 500);
+
+		assertNull(pool.get(100, 499)); // too large to be reused for this request
+		assertEquals(1, pool.getMissCount());
+		assertSame(item, pool.get(100, 500));
+		assertEquals(1, pool.getHitCount());
+	}
+
+	@Test
+	public void sameSizeReturnsMostRecentlyAdded() {
+		SizeBucketedPool<Item> pool = new SizeBucketedPool<>(1000);
+		Item first = new Item();
+		Item second = new Item();
+		pool.put(first, 100);
+		pool.put(second, 100);
+
+		assertSame(second, pool.get(100, 100));
+		assertSame(first, pool.get(100, 100));
+	}
+
+	@Test
+	public void invalidAndDuplicateObjectsAreNotAdded() {
+		SizeBucketedPool<Item> pool = new SizeBucketedPool<>(1000);
+		Item item = new Item();
+		assertFalse(pool.put(null, 100));
+		assertFalse(pool.put(item, 0));
+		assertFalse(pool.put(item, 1001));
+		assertTrue(pool.put(item, 100));
+		assertFalse(pool.put(item, 100)); // would otherwise be handed out twice
+		assertTrue(pool.put(new Item(), 100)); // equal, but a different object
+		assertEquals(2, pool.getCount());
+		assertEquals(200, pool.getSize());
+	}
+
+	@Test
+	public void oldestObjectsAreEvictedWhenFull() {
+		RecordingPool pool = new RecordingPool(1000);
+		Item first = new Item();
+		Item second = new Item();
+		Item third = new Item();
+		pool.put(first, 400);
+		pool.put(second, 400);
+		pool.put(third, 400);
+
+		assertEquals(1, pool.mEvicted.size());
+		assertSame(first, pool.mEvicted.get(0));
+		assertEquals(1, pool.getEvictionCount());
+		assertEquals(800, pool.getSize());
+		assertEquals(2, pool.getCount());
+
+		// the evicted object is no longer available, even though it is the same size as the others
+		assertSame(third, pool.get(400, 400));
+		assertSame(second, pool.get(400, 400));
+		assertNull(pool.get(400, 400));
+	}
+
+	@Test
+	public void evictionRemovesTheOldestObjectOfASharedSize() {
+		RecordingPool pool = new RecordingPool(300);
+		Item a = new Item();
+		Item b = new Item();
+		Item c = new Item();
+		Item d = new Item();
+		pool.put(a, 100);
+		pool.put(b, 100);
+		pool.put(c, 100);
+		pool.get(100, 100); // removes c
+		pool.put(d, 100);
+		pool.put(new Item(), 100);
+
+		assertEquals(1, pool.mEvicted.size());
+		assertSame(a, pool.mEvicted.get(0));
+		assertEquals(300, pool.getSize());
+	}
+
+	@Test
+	public void trimAndClearEvictEverythingOverTheLimit() {
+		RecordingPool pool = new RecordingPool(1000);
+		for (int i = 0; i < 5; i++) {
+			pool.put(new Item(), 100 + i);
+		}
+		pool.trimToSize(250);
+		assertEquals(2, pool.getCount());
+		assertEquals(103 + 104, pool.getSize());
+		assertEquals(3, pool.mEvicted.size());
+
+		pool.clear();
+		assertEquals(0, pool.getCount());
+		assertEquals(0, pool.getSize());
+		assertEquals(5, pool.mEvicted.size());
+		assertNull(pool.get(0, Integer.MAX_VALUE));
+	}
+}
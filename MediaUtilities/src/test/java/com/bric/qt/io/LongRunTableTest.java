@@ -0,0 +1,96 @@
+package com.bric.qt.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LongRunTableTest {
+
+	@Test
+	public void repeatedValuesAreStoredAsOneRun() {
+		LongRunTable table = new LongRunTable();
+		table.add(5, 1000);
+		table.add(5);
+		table.add(7, 3);
+		table.add(5, 0); // ignored
+		assertEquals(1004, table.size());
+		assertEquals(2, table.getRunCount());
+		assertEquals(5, table.get(1000));
+		assertEquals(7, table.get(1001));
+		assertEquals(7, table.get(1003));
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void getBeyondEndIsRejected() {
+		LongRunTable table = new LongRunTable(new long[]{ 1, 2, 3 });
+		table.get(3);
+	}
+
+	@Test
+	public void setSplitsAndMergesRuns() {
+		LongRunTable table = new LongRunTable();
+		table.add(1, 10);
+		table.set(4, 2); // split the middle of a run
+		assertEquals(3, table.getRunCount());
+		table.set(0, 3); // split the start of a run
+		table.set(9, 4); // split the end of a run
+		assertArrayEquals(new long[]{ 3, 1, 1, 1, 2, 1, 1, 1, 1, 4 }, table.toArray());
+		table.set(4, 1);
+		assertArrayEquals(new long[]{ 3, 1, 1, 1, 1, 1, 1, 1, 1, 4 }, table.toArray());
+		assertEquals(10, table.size());
+	}
+
+	@Test
+	public void matchesAPlainArrayUnderRandomEdits() {
+		Random random = new Random(1);
+		long[] expected = new long[5000];
+		LongRunTable table = new LongRunTable();
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = random.nextInt(4); // small range, so there are plenty of runs to split and join
+			table.add(expected[i]);
+		}
+		for (int i = 0; i < 20000; i++) {
+			int index = random.nextInt(expected.length);
+			expected[index] = random.nextInt(4);
+			table.set(index, expected[index]);
+		}
+		assertArrayEquals(expected, table.toArray());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], table.get(i));
+		}
+	}
+
+	@Test
+	public void addToAllAndMaxValue() {
+		LongRunTable table = new LongRunTable();
+		assertEquals(Long.MIN_VALUE, table.getMaxValue());
+		table.add(100, 5);
+		table.add(300, 2);
+		table.add(200);
+		table.addToAll(1000);
+		assertEquals(1300, table.getMaxValue());
+		assertArrayEquals(new long[]{ 1100, 1100, 1100, 1100, 1100, 1300, 1300, 1200 }, table.toArray());
+	}
+
+	@Test
+	public void writesEveryValueAsA32BitInteger() throws IOException {
+		LongRunTable table = new LongRunTable();
+		table.add(0x01020304L, 3000); // larger than one block of the table writer
+		table.add(0xfffffffeL);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		table.write32Ints(out);
+		byte[] written = out.toByteArray();
+		assertEquals(3001 * 4, written.length);
+		for (int i = 0; i < 3000; i++) {
+			assertArrayEquals(new byte[]{ 1, 2, 3, 4 }, new byte[]{ written[i * 4], written[i * 4 + 1],
+					written[i * 4 + 2], written[i * 4 + 3] });
+		}
+		assertEquals((byte) 0xfe, written[written.length - 1]);
+		assertEquals((byte) 0xff, written[written.length - 4]);
+	}
+}
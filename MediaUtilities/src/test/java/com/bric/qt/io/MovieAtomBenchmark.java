@@ -0,0 +1,168 @@
+package com.bric.qt.io;
+
+import com.bric.io.MeasuredOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ac.robinson.test.Benchmark;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes large movie atoms (three tracks of 200,000-sample tables, as in a long narrative with repeated frame samples),
+ * comparing MovWriter's current output path (the whole atom serialised into one ByteBuffer and written to a
+ * FileChannel) with its previous one (the atom written field by field to an unbuffered FileOutputStream). Run with
+ * ./gradlew test -Dbenchmark=true
+ */
+public class MovieAtomBenchmark {
+
+	private static final int SAMPLES = 200000;
+	private static final int EXPORTS = 4;
+	private static final int MOVIES_PER_EXPORT = 4;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		Benchmark.assumeEnabled();
+	}
+
+	@Test
+	public void largeMovieAtom() throws Exception {
+		final ParentAtom moov = createMovieAtom(SAMPLES, new Random(1));
+		final File bufferFile = temporaryFolder.newFile();
+		final File streamFile = temporaryFolder.newFile();
+		Benchmark.Result stream = Benchmark.measure(1, 3, () -> writeToStream(moov, streamFile));
+		Benchmark.report("MOV movie atom", "unbuffered stream: %s", stream);
+		Benchmark.Result buffer = Benchmark.measure(3, 10, () -> writeToChannel(moov, bufferFile));
+		Benchmark.report("MOV movie atom", "ByteBuffer and FileChannel: %s; %,d bytes", buffer, bufferFile.length());
+		assertTrue(Arrays.equals(Files.readAllBytes(streamFile.toPath()), Files.readAllBytes(bufferFile.toPath())));
+	}
+
+	/**
+	 * Several exports at once, each writing a few smaller movie atoms. Writing atoms uses no shared state, so on a device
+	 * with several processors the exports should take little longer than one export alone.
+	 */
+	@Test
+	public void concurrentExports() throws Exception {
+		final ParentAtom[] movies = new ParentAtom[EXPORTS];
+		final File[] files = new File[EXPORTS];
+		for (int i = 0; i < EXPORTS; i++) {
+			movies[i] = createMovieAtom(SAMPLES / EXPORTS, new Random(i + 2));
+			files[i] = temporaryFolder.newFile();
+		}
+
+		Benchmark.Result single = Benchmark.measure(2, 5, () -> {
+			for (int j = 0; j < MOVIES_PER_EXPORT; j++) {
+				writeToChannel(movies[0], files[0]);
+			}
+		});
+		Benchmark.report("MOV concurrent exports", "one export: %s", single);
+
+		final ExecutorService executor = Executors.newFixedThreadPool(EXPORTS);
+		try {
+			for (final boolean buffered : new boolean[]{ false, true }) {
+				Benchmark.Result result = Benchmark.measure(buffered ? 2 : 1, buffered ? 5 : 3, () -> {
+					List<Future<Void>> exports = new ArrayList<>();
+					for (int i = 0; i < EXPORTS; i++) {
+						final int export = i;
+						exports.add(executor.submit(() -> {
+							for (int j = 0; j < MOVIES_PER_EXPORT; j++) {
+								if (buffered) {
+									writeToChannel(movies[export], files[export]);
+								} else {
+									writeToStream(movies[export], files[export]);
+								}
+							}
+							return null;
+						}));
+					}
+					for (Future<Void> export : exports) {
+						export.get();
+					}
+				});
+				Benchmark.report("MOV concurrent exports", "%d exports, %s: %s (%d processors)", EXPORTS,
+						buffered ? "ByteBuffer and FileChannel" : "unbuffered stream", result,
+						Runtime.getRuntime().availableProcessors());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void writeToChannel(Atom atom, File file) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(0);
+			FileChannel channel = randomAccessFile.getChannel();
+			ByteBuffer buffer = atom.toByteBuffer();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	private static void writeToStream(Atom atom, File file) throws IOException {
+		try (MeasuredOutputStream out = new MeasuredOutputStream(new FileOutputStream(file))) {
+			atom.write(out);
+		}
+	}
+
+	/**
+	 * @return a movie atom with three tracks of sample tables, each with the given number of samples
+	 */
+	private static ParentAtom createMovieAtom(int samples, Random random) {
+		ParentAtom moov = new ParentAtom("moov");
+		for (int track = 0; track < 3; track++) {
+			ParentAtom stbl = new ParentAtom("stbl");
+			ParentAtom minf = new ParentAtom("minf");
+			ParentAtom mdia = new ParentAtom("mdia");
+			ParentAtom trak = new ParentAtom("trak");
+			minf.add(stbl);
+			mdia.add(minf);
+			trak.add(mdia);
+			moov.add(trak);
+
+			TimeToSampleAtom stts = new TimeToSampleAtom();
+			SampleToChunkAtom stsc = new SampleToChunkAtom();
+			SampleSizeAtom stsz = new SampleSizeAtom();
+			ChunkOffsetAtom stco = new ChunkOffsetAtom();
+			SyncSampleAtom stss = new SyncSampleAtom();
+			long offset = 48;
+			for (int i = 0; i < samples; i++) {
+				if (i % 30 == 0) {
+					offset += 100000 + random.nextInt(50000); // a new frame's data
+				}
+				stts.addSampleTime(i % 7 == 0 ? 2 : 1);
+				stsc.addChunk(i + 1, i % 3 == 0 ? 2 : 1, 1);
+				stsz.addSampleSize(100000 + i / 30);
+				stco.addChunkOffset(offset);
+				stss.addSample(i + 1);
+			}
+			stbl.add(stts);
+			stbl.add(stsc);
+			stbl.add(stsz);
+			stbl.add(stco);
+			stbl.add(stss);
+		}
+		return moov;
+	}
+}
@@ -0,0 +1,105 @@
+package com.bric.qt.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import ac.robinson.test.Benchmark;
+
+/**
+ * Builds the video sample tables of a one-hour movie (mostly stills of a few seconds each, as in a typical narrative),
+ * comparing the growable run-length tables with the copy-on-append arrays they replaced. Run with
+ * ./gradlew test -Dbenchmark=true
+ */
+public class SampleTableBenchmark {
+
+	private static final int TIME_SCALE = 30;
+	private static final int MOVIE_SECONDS = 60 * 60;
+
+	private int[] frameDurations;
+	private long[] frameSizes;
+
+	@Before
+	public void setUp() {
+		Benchmark.assumeEnabled();
+		Random random = new Random(1);
+		int frameCount = 0;
+		int[] durations = new int[MOVIE_SECONDS * TIME_SCALE];
+		for (int total = 0; total < MOVIE_SECONDS * TIME_SCALE; frameCount++) {
+			durations[frameCount] = TIME_SCALE + random.nextInt(TIME_SCALE * 8); // 1 - 9 seconds
+			total += durations[frameCount];
+		}
+		frameDurations = new int[frameCount];
+		frameSizes = new long[frameCount];
+		System.arraycopy(durations, 0, frameDurations, 0, frameCount);
+		for (int i = 0; i < frameCount; i++) {
+			frameSizes[i] = 50000 + random.nextInt(250000);
+		}
+	}
+
+	@Test
+	public void oneHourVideoSampleTable() throws Exception {
+		Benchmark.Result before = Benchmark.measure(0, 1, () -> { // quadratic, so only run once
+			CopyOnAppendTables tables = new CopyOnAppendTables();
+			long offset = 48;
+			for (int f = 0; f < frameDurations.length; f++) {
+				tables.addFrame(frameDurations[f], frameSizes[f], offset);
+				offset += frameSizes[f];
+			}
+		});
+		Benchmark.report("1-hour sample table", "copy-on-append arrays: %s", before);
+
+		final long[] moovBytes = new long[1];
+		Benchmark.Result after = Benchmark.measure(3, 10, () -> {
+			TimeToSampleAtom stts = new TimeToSampleAtom();
+			SampleSizeAtom stsz = new SampleSizeAtom();
+			SyncSampleAtom stss = new SyncSampleAtom();
+			SampleToChunkAtom stsc = new SampleToChunkAtom();
+			ChunkOffsetAtom stco = new ChunkOffsetAtom();
+			long offset = 48;
+			for (int f = 0; f < frameDurations.length; f++) {
+				// as in MovWriter.VideoTrack.addSample: each frame is repeated once per time unit
+				int repetitions = frameDurations[f];
+				stts.addSampleTime(repetitions, 1, true);
+				stsz.addSampleSizes(frameSizes[f], repetitions);
+				stss.addSample(repetitions);
+				stsc.addChunk(stco.getChunkOffsetCount() + 1, 1, 1);
+				stco.addChunkOffsets(offset, repetitions);
+				offset += frameSizes[f];
+			}
+			moovBytes[0] = stts.getSize() + stsz.getSize() + stss.getSize() + stsc.getSize() + stco.getSize();
+		});
+		Benchmark.report("1-hour sample table", "run-length tables: %s (%,d frames; %,d bytes when written)", after,
+				frameDurations.length, moovBytes[0]);
+	}
+
+	/**
+	 * The previous approach to building the same tables (as the atoms and MovWriter did before they used growable
+	 * run-length tables): every value is appended by copying the whole array into a new array one element larger.
+	 */
+	private static class CopyOnAppendTables {
+		long[] sampleCounts = new long[0]; // stts (the durations are all 1)
+		long[] sampleSizes = new long[0]; // stsz
+		long[] syncSamples = new long[0]; // stss
+		long[] chunkOffsets = new long[0]; // stco
+
+		void addFrame(int duration, long size, long offset) {
+			sampleCounts = append(sampleCounts, duration);
+			for (int i = 0; i < duration; i++) {
+				sampleSizes = append(sampleSizes, size);
+			}
+			syncSamples = append(syncSamples, duration);
+			for (int i = 0; i < duration; i++) {
+				chunkOffsets = append(chunkOffsets, offset);
+			}
+		}
+
+		private static long[] append(long[] array, long value) {
+			long[] newArray = new long[array.length + 1];
+			System.arraycopy(array, 0, newArray, 0, array.length);
+			newArray[newArray.length - 1] = value;
+			return newArray;
+		}
+	}
+}
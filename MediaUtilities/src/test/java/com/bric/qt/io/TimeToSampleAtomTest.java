@@ -0,0 +1,68 @@
+package com.bric.qt.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimeToSampleAtomTest {
+
+	@Test
+	public void sameDurationMergesIntoPreviousRun() {
+		TimeToSampleAtom stts = new TimeToSampleAtom();
+		stts.addSampleTime(10);
+		stts.addSampleTime(10);
+		stts.addSampleTime(3, 10, false); // merging a multi-sample run must add all of its samples, not just one
+		assertEquals(1, stts.entryCount);
+		assertEquals(5, stts.sampleCounts[0]);
+		assertEquals(10, stts.sampleDurations[0]);
+		assertEquals(10, stts.getDurationOfSample(4));
+	}
+
+	@Test
+	public void newDurationOrForceNewStartsRun() {
+		TimeToSampleAtom stts = new TimeToSampleAtom();
+		stts.addSampleTime(4, 1, false);
+		stts.addSampleTime(2, 1, true);
+		stts.addSampleTime(1, 30, false);
+		stts.addSampleTime(6, 30, false);
+		assertEquals(3, stts.entryCount);
+		assertEquals(4, stts.sampleCounts[0]);
+		assertEquals(2, stts.sampleCounts[1]);
+		assertEquals(7, stts.sampleCounts[2]);
+		assertEquals(1, stts.getDurationOfSample(5));
+		assertEquals(30, stts.getDurationOfSample(6));
+		assertEquals(30, stts.getDurationOfSample(12));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void sampleBeyondTableIsRejected() {
+		TimeToSampleAtom stts = new TimeToSampleAtom();
+		stts.addSampleTime(3, 10, false);
+		stts.getDurationOfSample(3);
+	}
+
+	@Test
+	public void tableGrowsAndRoundTrips() throws IOException {
+		TimeToSampleAtom stts = new TimeToSampleAtom();
+		for (int i = 1; i <= 1000; i++) {
+			stts.addSampleTime(i, i % 7, false);
+		}
+		ByteBuffer buffer = stts.toByteBuffer();
+		assertEquals(stts.getSize(), buffer.remaining());
+		assertEquals(16 + stts.entryCount * 8, buffer.remaining());
+
+		byte[] contents = new byte[buffer.remaining() - 8]; // skip the size and type header
+		buffer.position(8);
+		buffer.get(contents);
+		TimeToSampleAtom read = new TimeToSampleAtom(null, new ByteArrayInputStream(contents));
+		assertEquals(stts.entryCount, read.entryCount);
+		for (int a = 0; a < stts.entryCount; a++) {
+			assertEquals(stts.sampleCounts[a], read.sampleCounts[a]);
+			assertEquals(stts.sampleDurations[a], read.sampleDurations[a]);
+		}
+	}
+}
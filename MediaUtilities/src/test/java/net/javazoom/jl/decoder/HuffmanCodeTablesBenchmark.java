@@ -0,0 +1,59 @@
+package net.javazoom.jl.decoder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import ac.robinson.test.Benchmark;
+
+/**
+ * Layer III Huffman decoding throughput of the lookup tables. The input is random bits, which every (complete) decoder
+ * tree reads as codewords chosen with probability 2^-length, so short codewords dominate, as in real audio. Each run
+ * decodes a filled bit reservoir for every table that reads bits, then rewinds it. Run with ./gradlew test -Dbenchmark=true
+ */
+public class HuffmanCodeTablesBenchmark {
+
+	private static final int TABLES = 34;
+	private static final int STREAM_BYTES = 3 * 1024; // within the 4096 byte reservoir
+	private static final int MAX_CODEWORD_BITS = 64;
+	private static final int END_BIT = STREAM_BYTES * 8 - MAX_CODEWORD_BITS; // so that no codeword runs past the end
+
+	private final BitReserve[] reserves = new BitReserve[TABLES];
+	private long codewords;
+
+	@Before
+	public void setUp() {
+		Benchmark.assumeEnabled();
+		HuffmanCodeTables.inithuff();
+		Random random = new Random(1);
+		for (int table = 0; table < TABLES; table++) {
+			reserves[table] = new BitReserve();
+			for (int i = 0; i < STREAM_BYTES; i++) {
+				reserves[table].hputbuf(random.nextInt(256));
+			}
+		}
+	}
+
+	@Test
+	public void decodeCodewords() throws Exception {
+		final int[] x = new int[1], y = new int[1], v = new int[1], w = new int[1];
+		Benchmark.Result lookup = Benchmark.measure(5, 20, () -> {
+			codewords = 0;
+			for (int table = 0; table < TABLES; table++) {
+				if (table == 0 || table == 4 || table == 14) {
+					continue; // these tables read no bits
+				}
+				HuffmanCodeTables h = HuffmanCodeTables.ht[table];
+				BitReserve reserve = reserves[table];
+				while (reserve.hsstell() < END_BIT) {
+					HuffmanCodeTables.huffman_decoder(h, x, y, v, w, reserve);
+					codewords += 1;
+				}
+				reserve.rewindNbits(reserve.hsstell());
+			}
+		});
+		Benchmark.report("Layer III Huffman decoding", "lookup tables: %s; %,.0f codewords/s", lookup,
+				codewords / (lookup.medianNanos / 1e9));
+	}
+}
@@ -0,0 +1,108 @@
+package net.javazoom.jl.decoder;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static ac.robinson.test.Checksums.updateInt;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the lookup-table Layer III Huffman decoder is bit-exact with the original tree walk: for every table, it
+ * must decode the same values and error results, and leave the bit reservoir at the same position. Every decoder tree
+ * is complete, so random bits are always a valid sequence of codewords (with their sign and linbits). The expected
+ * checksums were produced once by decoding the same bits with the original decoder.
+ */
+public class HuffmanCodeTablesTest {
+
+	private static final int TABLES = 34;
+
+	// the bit reservoir is a circular buffer of 4096 bytes, so we refill it in smaller blocks as it is read
+	private static final int BLOCK_BYTES = 1024;
+	private static final int MAX_BUFFERED_BYTES = 3 * BLOCK_BYTES;
+	private static final int MAX_CODEWORD_BITS = 64; // longer than any codeword, with its linbits and signs
+
+	// CRC32 (for each table) of every error result, value and reservoir position decoded, from the original decoder
+	private static final long[] RANDOM_BITS_CHECKSUMS = {
+			0xecbb4b55L, 0x6766a7dfL, 0x36c4aef5L, 0xe5be9c6dL, 0xecbb4b55L, 0xe4ca5f6cL, 0x186bc0b3L,
+			0x0075c043L, 0x010e09c6L, 0x8f8779faL, 0x35cd8a3fL, 0x04348feaL, 0xafb167fcL, 0x809b4acfL,
+			0xecbb4b55L, 0xb0996c44L, 0x4f62238cL, 0x922f9fb0L, 0x90d5c7a2L, 0x26bb1878L, 0x460fffc7L,
+			0x28247023L, 0xf7e06ec7L, 0x5ee56204L, 0xc9cfdb63L, 0x3c6f7eb2L, 0x1d450a5fL, 0x6a7127aeL,
+			0xda36465fL, 0x07550ff3L, 0x67680b15L, 0xdf58ce9dL, 0x1806ba9cL, 0xebe9b0f7L
+	};
+	private static final long[] SHORT_STREAM_CHECKSUMS = {
+			0xcb7b98a6L, 0xe75c6ed3L, 0x4778e2acL, 0x5576ac89L, 0xcb7b98a6L, 0x7b014007L, 0x287a3abfL,
+			0x496d2cebL, 0x85e7cf91L, 0x3482278dL, 0x4c3742fcL, 0x6f307b01L, 0x9f6b245dL, 0x394329ddL,
+			0xcb7b98a6L, 0x40289a48L, 0x9fe37efeL, 0x56d0be70L, 0x7053d9ebL, 0xc4155d81L, 0x0da9eed6L,
+			0xb214e43dL, 0xc30027ddL, 0xb5946c10L, 0x5d5bd9c4L, 0x8b7adda6L, 0x72009970L, 0x79632e09L,
+			0x566761e6L, 0xe4a26784L, 0x0ab9e6afL, 0x4bea5ea3L, 0xaeb30060L, 0x3d6b484eL
+	};
+
+	@BeforeClass
+	public static void setUpTables() {
+		HuffmanCodeTables.inithuff();
+	}
+
+	@Test
+	public void randomBitsMatchOriginal() {
+		Random random = new Random(1);
+		for (int table = 0; table < TABLES; table++) {
+			CRC32 crc = new CRC32();
+			decodeTable(random, table, 64 * BLOCK_BYTES, crc);
+			assertEquals("table " + table, Long.toHexString(RANDOM_BITS_CHECKSUMS[table]),
+					Long.toHexString(crc.getValue()));
+		}
+	}
+
+	@Test
+	public void shortStreamsMatchOriginal() {
+		// a fresh reservoir for each short stream, so that codewords start at many different offsets from the start
+		Random random = new Random(2);
+		CRC32[] crcs = new CRC32[TABLES];
+		for (int table = 0; table < TABLES; table++) {
+			crcs[table] = new CRC32();
+		}
+		for (int run = 0; run < 200; run++) {
+			for (int table = 0; table < TABLES; table++) {
+				decodeTable(random, table, BLOCK_BYTES, crcs[table]);
+			}
+		}
+		for (int table = 0; table < TABLES; table++) {
+			assertEquals("table " + table, Long.toHexString(SHORT_STREAM_CHECKSUMS[table]),
+					Long.toHexString(crcs[table].getValue()));
+		}
+	}
+
+	private static void decodeTable(Random random, int table, int totalBytes, CRC32 crc) {
+		BitReserve reserve = new BitReserve();
+		int[] x = new int[1], y = new int[1], v = new int[1], w = new int[1];
+		byte[] block = new byte[BLOCK_BYTES];
+		int written = 0;
+		while (true) {
+			while (written < totalBytes && written - reserve.hsstell() / 8 + BLOCK_BYTES <= MAX_BUFFERED_BYTES) {
+				random.nextBytes(block);
+				for (byte b : block) {
+					reserve.hputbuf(b & 0xff);
+				}
+				written += BLOCK_BYTES;
+			}
+			if (reserve.hsstell() + MAX_CODEWORD_BITS > written * 8) {
+				return;
+			}
+
+			updateInt(crc, HuffmanCodeTables.huffman_decoder(HuffmanCodeTables.ht[table], x, y, v, w, reserve));
+			updateInt(crc, x[0]);
+			updateInt(crc, y[0]);
+			if (table >= 32) { // v and w are only set by the quadruples tables
+				updateInt(crc, v[0]);
+				updateInt(crc, w[0]);
+			}
+			updateInt(crc, reserve.hsstell());
+			if (reserve.hsstell() == 0) {
+				return; // tables 0, 4 and 14 read no bits
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package net.javazoom.jl.decoder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import ac.robinson.test.Benchmark;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Layer III decoding speed over a long synthetic stereo MP3 (see SyntheticMP3), reported as a multiple of real time,
+ * and the cost of dequantising its granules with the precomputed tables compared with the original per-granule
+ * Math.pow gain and Math.pow for values beyond the old 8192-entry table. Run with ./gradlew test -Dbenchmark=true
+ */
+public class LayerIIIDecoderBenchmark {
+
+	private static final int DURATION_SECONDS = 5 * 60;
+	private static final int LINES = 576;
+	private static final double D43 = 4.0 / 3.0;
+
+	private byte[] mp3;
+
+	@Before
+	public void setUp() {
+		Benchmark.assumeEnabled();
+		mp3 = SyntheticMP3.create(new Random(1), SyntheticMP3.framesForDuration(DURATION_SECONDS), true);
+	}
+
+	@Test
+	public void decodeLongStream() throws Exception {
+		final long[] checksum = new long[1];
+		Benchmark.Result result = Benchmark.measure(1, 5, () -> LayerIIIDecoderTest.decode(mp3,
+				frame -> checksum[0] += frame.getBuffer()[0]));
+		Benchmark.report("Layer III decoding (" + DURATION_SECONDS + " s stereo)", "%s; %.0fx real time", result,
+				DURATION_SECONDS / (result.medianNanos / 1e9));
+	}
+
+	/**
+	 * Dequantising the same number of granules as the long stream: mostly small values, with one in twenty anywhere up
+	 * to the largest that linbits can code.
+	 */
+	@Test
+	public void dequantiseGranules() throws Exception {
+		final int granules = SyntheticMP3.framesForDuration(DURATION_SECONDS) * 2 * 2;
+		Random random = new Random(2);
+		final int[][] values = new int[64][LINES];
+		final int[] gains = new int[values.length];
+		for (int g = 0; g < values.length; g++) {
+			gains[g] = 140 + random.nextInt(70);
+			for (int j = 0; j < LINES; j++) {
+				int value = random.nextInt(20) == 0 ? random.nextInt(LayerIIIDecoder.t_43.length) : random.nextInt(16);
+				values[g][j] = random.nextBoolean() ? value : -value;
+			}
+		}
+
+		final float[] xr = new float[LINES];
+		final float[] sums = new float[2];
+		Benchmark.Result pow = Benchmark.measure(3, 10, () -> {
+			for (int g = 0; g < granules; g++) {
+				int[] is = values[g % values.length];
+				float gain = (float) Math.pow(2.0, (0.25 * (gains[g % values.length] - 210.0)));
+				for (int j = 0; j < LINES; j++) {
+					int abv = is[j] < 0 ? -is[j] : is[j];
+					float value = abv < 8192 ? LayerIIIDecoder.t_43[abv] : (float) Math.pow(abv, D43);
+					xr[j] = is[j] < 0 ? -gain * value : gain * value;
+				}
+				sums[0] += xr[g % LINES];
+			}
+		});
+		Benchmark.Result tables = Benchmark.measure(3, 10, () -> {
+			for (int g = 0; g < granules; g++) {
+				int[] is = values[g % values.length];
+				float gain = LayerIIIDecoder.global_gain_pow[gains[g % values.length]];
+				for (int j = 0; j < LINES; j++) {
+					int abv = is[j];
+					xr[j] = abv < 0 ? -gain * LayerIIIDecoder.t_43[-abv] : gain * LayerIIIDecoder.t_43[abv];
+				}
+				sums[1] += xr[g % LINES];
+			}
+		});
+		assertEquals(Float.floatToIntBits(sums[0]), Float.floatToIntBits(sums[1]));
+		Benchmark.report("Layer III dequantisation (" + granules + " granules)", "Math.pow: %s", pow);
+		Benchmark.report("Layer III dequantisation (" + granules + " granules)", "tables: %s", tables);
+	}
+}
@@ -0,0 +1,90 @@
+package net.javazoom.jl.decoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that Layer III dequantisation with precomputed tables is sample-identical to the original Math.pow
+ * calculations: the tables must hold exactly the values that were calculated inline, and whole streams must decode to
+ * the same samples as they did before the tables were introduced. The expected checksums were produced once by
+ * decoding the same synthetic streams with the original decoder.
+ */
+public class LayerIIIDecoderTest {
+
+	// CRC32 of the little-endian 16-bit samples of each of five 100-frame streams, decoded by the original decoder
+	private static final long[] STEREO_CHECKSUMS = { 0xfb74e032L, 0x2f550bd9L, 0x5deaea16L, 0x33105ab9L, 0x06f6ea98L };
+	private static final long[] MONO_CHECKSUMS = { 0xfd8fdb7fL, 0x7b63abaaL, 0x1c93ad30L, 0x2dde790dL, 0x5a63a631L };
+
+	@Test
+	public void globalGainTableMatchesPow() {
+		assertEquals(256, LayerIIIDecoder.global_gain_pow.length);
+		for (int gain = 0; gain < 256; gain++) {
+			float expected = (float) Math.pow(2.0, (0.25 * (gain - 210.0)));
+			assertEquals("global_gain " + gain, Float.floatToIntBits(expected),
+					Float.floatToIntBits(LayerIIIDecoder.global_gain_pow[gain]));
+		}
+	}
+
+	@Test
+	public void powerLawTableMatchesPow() {
+		// 15 from the Huffman tables, plus up to 13 linbits
+		assertEquals(15 + 8191 + 1, LayerIIIDecoder.t_43.length);
+		for (int i = 0; i < LayerIIIDecoder.t_43.length; i++) {
+			float expected = (float) Math.pow(i, 4.0 / 3.0); // previously calculated for each sample
+			assertEquals("t_43[" + i + "]", Float.floatToIntBits(expected), Float.floatToIntBits(LayerIIIDecoder.t_43[i]));
+		}
+	}
+
+	@Test
+	public void stereoStreamsMatchOriginal() throws Exception {
+		assertChecksumsMatch(new Random(1), true, STEREO_CHECKSUMS);
+	}
+
+	@Test
+	public void monoStreamsMatchOriginal() throws Exception {
+		assertChecksumsMatch(new Random(2), false, MONO_CHECKSUMS);
+	}
+
+	private static void assertChecksumsMatch(Random random, boolean stereo, long[] checksums) throws Exception {
+		for (int run = 0; run < checksums.length; run++) {
+			final CRC32 crc = new CRC32();
+			final boolean[] silent = { true };
+			final int[] sampleCount = { 0 };
+			decode(SyntheticMP3.create(random, 100, stereo), frame -> {
+				short[] buffer = frame.getBuffer();
+				for (int i = 0; i < frame.getBufferLength(); i++) {
+					crc.update(buffer[i] & 0xff);
+					crc.update((buffer[i] >> 8) & 0xff);
+					silent[0] &= buffer[i] == 0;
+				}
+				sampleCount[0] += frame.getBufferLength();
+			});
+			assertEquals(100 * SyntheticMP3.SAMPLES_PER_FRAME * (stereo ? 2 : 1), sampleCount[0]);
+			assertTrue("synthetic stream decoded to silence", !silent[0]);
+			assertEquals("stream " + run, Long.toHexString(checksums[run]), Long.toHexString(crc.getValue()));
+		}
+	}
+
+	interface FrameListener {
+		void onFrame(SampleBuffer frame);
+	}
+
+	/**
+	 * Decode an MP3 stream, passing each decoded frame to the given listener.
+	 */
+	static void decode(byte[] mp3, FrameListener listener) throws Exception {
+		Bitstream bitstream = new Bitstream(new ByteArrayInputStream(mp3));
+		Decoder decoder = new Decoder();
+		Header header;
+		while ((header = bitstream.readFrame()) != null) {
+			listener.onFrame((SampleBuffer) decoder.decodeFrame(header, bitstream));
+			bitstream.closeFrame();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package net.javazoom.jl.decoder;
+
+import java.util.Random;
+
+import ac.robinson.test.BitWriter;
+
+/**
+ * Generates MPEG-1 Layer III streams (44.1 kHz, 128 kbps, no CRC) for decoder tests and benchmarks, as there is no
+ * encoder available. Each granule's spectral data is random bits read as Huffman codewords from a randomly chosen table,
+ * so every stage of the decoder does real work: values range up to the largest that linbits can code, and long, start,
+ * short and stop blocks are all used. The result is noise rather than music, but it is a valid stream that decodes
+ * without errors.
+ */
+public final class SyntheticMP3 {
+
+	public static final int SAMPLE_RATE = 44100;
+	public static final int SAMPLES_PER_FRAME = 1152;
+	private static final int FRAME_BYTES = 144 * 128000 / SAMPLE_RATE; // no padding
+
+	// the tables that code big values (4 and 14 are unused), with and without linbits
+	private static final int[] TABLES = { 1, 2, 3, 5, 6, 7, 8, 9, 10, 11, 12, 13, 15, 16, 17, 18, 19, 20, 21, 22, 23,
+			24, 25, 26, 27, 28, 29, 30, 31 };
+
+	private SyntheticMP3() {
+	}
+
+	/**
+	 * @return the number of frames needed for the given duration
+	 */
+	public static int framesForDuration(double seconds) {
+		return (int) Math.ceil(seconds * SAMPLE_RATE / SAMPLES_PER_FRAME);
+	}
+
+	public static byte[] create(Random random, int frames, boolean stereo) {
+		HuffmanCodeTables.inithuff();
+		int channels = stereo ? 2 : 1;
+		int sideInfoBytes = stereo ? 32 : 17;
+		int mainDataBits = (FRAME_BYTES - 4 - sideInfoBytes) * 8;
+		int granuleBits = mainDataBits / (2 * channels);
+
+		byte[] stream = new byte[frames * FRAME_BYTES];
+		byte[] randomBits = new byte[granuleBits / 8 + 1];
+		int[] x = new int[1], y = new int[1], v = new int[1], w = new int[1];
+		for (int frame = 0; frame < frames; frame++) {
+			BitWriter sideInfo = new BitWriter();
+			BitWriter mainData = new BitWriter();
+			sideInfo.write(0xfffb, 16); // sync, MPEG-1, layer III, no CRC
+			sideInfo.write(0x90, 8); // 128 kbps, 44.1 kHz, no padding
+			sideInfo.write(stereo ? 0x00 : 0xc0, 8); // stereo or single channel
+
+			sideInfo.write(0, 9); // main_data_begin: no bit reservoir
+			sideInfo.write(0, stereo ? 3 : 5); // private bits
+			sideInfo.write(0, 4 * channels); // scfsi
+
+			for (int gr = 0; gr < 2; gr++) {
+				for (int ch = 0; ch < channels; ch++) {
+					// find how many codewords fit in this granule's share of the main data
+					int table = TABLES[random.nextInt(TABLES.length)];
+					random.nextBytes(randomBits);
+					BitReserve reserve = new BitReserve();
+					for (byte b : randomBits) {
+						reserve.hputbuf(b & 0xff);
+					}
+					int bigValues = 0;
+					int bits = 0;
+					while (bigValues < 288) {
+						HuffmanCodeTables.huffman_decoder(HuffmanCodeTables.ht[table], x, y, v, w, reserve);
+						if (reserve.hsstell() > granuleBits) {
+							break;
+						}
+						bits = reserve.hsstell();
+						bigValues += 1;
+					}
+					for (int i = 0; i < bits; i++) {
+						mainData.write((randomBits[i >> 3] >> (7 - (i & 7))) & 1, 1);
+					}
+
+					sideInfo.write(bits, 12); // part2_3_length (scalefac_compress is 0, so there are no scale factors)
+					sideInfo.write(bigValues, 9);
+					sideInfo.write(150 + random.nextInt(30), 8); // global_gain
+					sideInfo.write(0, 4); // scalefac_compress
+					int blockType = random.nextInt(4);
+					if (blockType == 0) {
+						sideInfo.write(0, 1); // window_switching_flag
+						sideInfo.write(table, 5);
+						sideInfo.write(table, 5);
+						sideInfo.write(table, 5);
+						sideInfo.write(random.nextInt(16), 4); // region0_count
+						sideInfo.write(random.nextInt(8), 3); // region1_count
+					} else {
+						sideInfo.write(1, 1);
+						sideInfo.write(blockType, 2);
+						sideInfo.write(0, 1); // mixed_block_flag
+						sideInfo.write(table, 5);
+						sideInfo.write(table, 5);
+						sideInfo.write(random.nextInt(8), 3); // subblock_gain
+						sideInfo.write(random.nextInt(8), 3);
+						sideInfo.write(random.nextInt(8), 3);
+					}
+					sideInfo.write(0, 1); // preflag
+					sideInfo.write(random.nextInt(2), 1); // scalefac_scale
+					sideInfo.write(random.nextInt(2), 1); // count1table_select
+				}
+			}
+
+			byte[] header = sideInfo.toByteArray();
+			byte[] data = mainData.toByteArray(); // the rest of the frame is ancillary data (zeros)
+			System.arraycopy(header, 0, stream, frame * FRAME_BYTES, header.length);
+			System.arraycopy(data, 0, stream, frame * FRAME_BYTES + header.length, data.length);
+		}
+		return stream;
+	}
+}
@@ -0,0 +1,213 @@
+package net.sourceforge.jaad.aac;
+
+import net.sourceforge.jaad.aac.huffman.SyntheticAAC;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that decoding with an OutputSpec gives the same samples as the original output path: big-endian 16-bit
+ * samples, swapped to little endian with SampleBuffer.setBigEndian(false), and downmixed to mono as MP4toPCMConverter
+ * used to. The original path itself is checked against checksums produced once by the baseline decoder from the same
+ * synthetic frames (see SyntheticAAC).
+ */
+public class DecoderTest {
+
+	private static final int FRAMES = 100;
+
+	// CRC32 of the big-endian 16-bit output of every frame, decoded by the baseline decoder
+	private static final long STEREO_CHECKSUM = 0x2096daa6L;
+	private static final long MONO_CHECKSUM = 0xd2c7ce6bL;
+
+	@Test
+	public void originalPathMatchesBaseline() throws AACException {
+		assertEquals(Long.toHexString(STEREO_CHECKSUM), Long.toHexString(checksum(decodeOriginal(true, true))));
+		assertEquals(Long.toHexString(MONO_CHECKSUM), Long.toHexString(checksum(decodeOriginal(false, true))));
+	}
+
+	@Test
+	public void stereoOutputSpecsMatchOriginalPath() throws AACException {
+		compareOutputSpecs(true);
+	}
+
+	@Test
+	public void monoOutputSpecsMatchOriginalPath() throws AACException {
+		compareOutputSpecs(false);
+	}
+
+	private static void compareOutputSpecs(boolean stereo) throws AACException {
+		int channels = stereo ? 2 : 1;
+		List<byte[]> bigEndian = decodeOriginal(stereo, true);
+		List<byte[]> littleEndian = decodeOriginal(stereo, false);
+		boolean clipped = false;
+
+		List<byte[]> interleavedBE = decode(stereo, spec(true, false, false));
+		List<byte[]> interleavedLE = decode(stereo, spec(false, false, false));
+		List<byte[]> monoBE = decode(stereo, spec(true, true, false));
+		List<byte[]> monoLE = decode(stereo, spec(false, true, false));
+		List<byte[]> floatBE = decode(stereo, spec(true, false, true));
+		List<byte[]> floatLE = decode(stereo, spec(false, false, true));
+		List<byte[]> floatMonoLE = decode(stereo, spec(false, true, true));
+
+		for (int frame = 0; frame < FRAMES; frame++) {
+			String message = (stereo ? "stereo" : "mono") + " frame " + frame;
+			assertArrayEquals(message, bigEndian.get(frame), interleavedBE.get(frame));
+			assertArrayEquals(message, littleEndian.get(frame), interleavedLE.get(frame));
+
+			byte[] expectedMono = stereo ? downmix(littleEndian.get(frame)) : littleEndian.get(frame);
+			assertArrayEquals(message, expectedMono, monoLE.get(frame));
+			assertArrayEquals(message, swapBytes(expectedMono, 2), monoBE.get(frame));
+
+			// float samples are the unrounded, unclipped values of the 16-bit samples, scaled to +/-1.0
+			short[] samples = toShorts(littleEndian.get(frame));
+			float[] floats = toFloats(floatLE.get(frame));
+			assertArrayEquals(message, floatLE.get(frame), swapBytes(floatBE.get(frame), 4));
+			assertEquals(samples.length, floats.length);
+			for (int i = 0; i < samples.length; i++) {
+				float value = floats[i] * 32768f;
+				clipped |= Math.abs(value) > Short.MAX_VALUE;
+				int expected = Math.max(Math.min(Math.round(value), Short.MAX_VALUE), Short.MIN_VALUE);
+				assertEquals(message + " sample " + i, samples[i], expected);
+			}
+
+			// the float downmix averages the unclipped samples
+			float[] floatMono = toFloats(floatMonoLE.get(frame));
+			assertEquals(floats.length / channels, floatMono.length);
+			for (int i = 0; i < floatMono.length; i++) {
+				float sum = 0;
+				for (int ch = 0; ch < channels; ch++) {
+					sum += floats[i * channels + ch] * 32768f;
+				}
+				assertEquals(message + " sample " + i, Float.floatToIntBits((sum / channels) / 32768f),
+						Float.floatToIntBits(floatMono[i]));
+			}
+		}
+		assertTrue("no samples were clipped, so clipping was not tested", clipped);
+	}
+
+	@Test
+	public void bufferDescribesOutput() throws AACException {
+		byte[][] frames = SyntheticAAC.create(new Random(3), 3, true);
+		for (boolean bigEndian : new boolean[]{ false, true }) {
+			for (boolean mono : new boolean[]{ false, true }) {
+				for (boolean floatSamples : new boolean[]{ false, true }) {
+					Decoder decoder = new Decoder(SyntheticAAC.STEREO_DECODER_SPECIFIC_INFO);
+					SampleBuffer buffer = new SampleBuffer();
+					OutputSpec spec = spec(bigEndian, mono, floatSamples);
+					byte[] data = null;
+					for (byte[] frame : frames) {
+						decoder.decodeFrame(frame, buffer, spec);
+						if (data != null) {
+							assertSame("the data array should be reused between frames", data, buffer.getData());
+						}
+						data = buffer.getData();
+					}
+					assertEquals(bigEndian, buffer.isBigEndian());
+					assertEquals(mono ? 1 : 2, buffer.getChannels());
+					assertEquals(floatSamples ? 32 : 16, buffer.getBitsPerSample());
+					assertEquals(44100, buffer.getSampleRate());
+					assertEquals(SyntheticAAC.SAMPLES_PER_FRAME * buffer.getChannels() * buffer.getBitsPerSample() / 8,
+							data.length);
+				}
+			}
+		}
+	}
+
+	private static OutputSpec spec(boolean bigEndian, boolean mono, boolean floatSamples) {
+		return new OutputSpec(bigEndian, mono ? OutputSpec.ChannelLayout.MONO_DOWNMIX :
+				OutputSpec.ChannelLayout.INTERLEAVED, floatSamples ? OutputSpec.SampleType.PCM_FLOAT :
+				OutputSpec.SampleType.PCM_16_BIT);
+	}
+
+	private static byte[][] createFrames(boolean stereo) {
+		return SyntheticAAC.create(new Random(stereo ? 1 : 2), FRAMES, stereo);
+	}
+
+	private static Decoder createDecoder(boolean stereo) throws AACException {
+		return new Decoder(stereo ? SyntheticAAC.STEREO_DECODER_SPECIFIC_INFO :
+				SyntheticAAC.MONO_DECODER_SPECIFIC_INFO);
+	}
+
+	/**
+	 * Decode every frame without an OutputSpec, as MP4toPCMConverter used to: big endian, then optionally swapped to
+	 * little endian.
+	 */
+	private static List<byte[]> decodeOriginal(boolean stereo, boolean bigEndian) throws AACException {
+		Decoder decoder = createDecoder(stereo);
+		SampleBuffer buffer = new SampleBuffer();
+		List<byte[]> output = new ArrayList<>();
+		for (byte[] frame : createFrames(stereo)) {
+			decoder.decodeFrame(frame, buffer);
+			buffer.setBigEndian(bigEndian);
+			output.add(buffer.getData().clone());
+		}
+		return output;
+	}
+
+	private static List<byte[]> decode(boolean stereo, OutputSpec spec) throws AACException {
+		Decoder decoder = createDecoder(stereo);
+		SampleBuffer buffer = new SampleBuffer();
+		List<byte[]> output = new ArrayList<>();
+		for (byte[] frame : createFrames(stereo)) {
+			decoder.decodeFrame(frame, buffer, spec);
+			output.add(buffer.getData().clone());
+		}
+		return output;
+	}
+
+	/**
+	 * The stereo to mono downmix of 16-bit little-endian PCM that MP4toPCMConverter used to do.
+	 */
+	private static byte[] downmix(byte[] data) {
+		byte[] monoData = new byte[data.length / 2];
+		for (int i = 0, j = 0; i < data.length; i += 4, j += 2) {
+			int left = (data[i + 1] << 8) | (data[i] & 0xFF);
+			int right = (data[i + 3] << 8) | (data[i + 2] & 0xFF);
+			int mono = (left + right) / 2;
+			monoData[j] = (byte) (mono & 0xFF);
+			monoData[j + 1] = (byte) ((mono >> 8) & 0xFF);
+		}
+		return monoData;
+	}
+
+	private static byte[] swapBytes(byte[] data, int bytesPerSample) {
+		byte[] swapped = new byte[data.length];
+		for (int i = 0; i < data.length; i += bytesPerSample) {
+			for (int b = 0; b < bytesPerSample; b++) {
+				swapped[i + b] = data[i + bytesPerSample - 1 - b];
+			}
+		}
+		return swapped;
+	}
+
+	private static short[] toShorts(byte[] littleEndian) {
+		short[] samples = new short[littleEndian.length / 2];
+		ByteBuffer.wrap(littleEndian).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+		return samples;
+	}
+
+	private static float[] toFloats(byte[] littleEndian) {
+		float[] samples = new float[littleEndian.length / 4];
+		ByteBuffer.wrap(littleEndian).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(samples);
+		return samples;
+	}
+
+	private static long checksum(List<byte[]> frames) {
+		CRC32 crc = new CRC32();
+		for (byte[] frame : frames) {
+			crc.update(frame);
+		}
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,67 @@
+package net.sourceforge.jaad.aac.filterbank;
+
+import net.sourceforge.jaad.aac.syntax.ICSInfo.WindowSequence;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import ac.robinson.test.Benchmark;
+
+/**
+ * Filter bank (inverse MDCT, windowing and overlap) speed with the flat-array FFT and MDCT, for each window sequence,
+ * plus the forward transform used by long-term prediction. Results are reported as channel frames per second. Run with ./gradlew test -Dbenchmark=true
+ */
+public class FilterBankBenchmark {
+
+	private static final int LENGTH = 1024;
+	private static final int FRAMES = 2000;
+
+	private final float[][] spectra = new float[16][LENGTH];
+	private final float[] samples = new float[2 * LENGTH];
+	private final float[] out = new float[2 * LENGTH];
+
+	@Before
+	public void setUp() {
+		Benchmark.assumeEnabled();
+		Random random = new Random(1);
+		for (float[] spectrum : spectra) {
+			for (int i = 0; i < LENGTH; i++) {
+				spectrum[i] = (float) (random.nextGaussian() * 200000);
+			}
+		}
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (float) (random.nextGaussian() * 8000);
+		}
+	}
+
+	@Test
+	public void synthesisPerWindowSequence() throws Exception {
+		for (final WindowSequence windowSequence : WindowSequence.values()) {
+			final FilterBank filterBank = new FilterBank(false, 1);
+			Benchmark.Result flat = Benchmark.measure(5, 20, () -> {
+				for (int frame = 0; frame < FRAMES; frame++) {
+					filterBank.process(windowSequence, 0, 0, spectra[frame & 15], out, 0);
+				}
+			});
+			report(windowSequence.toString(), flat);
+		}
+	}
+
+	@Test
+	public void longTermPredictionForward() throws Exception {
+		final FilterBank filterBank = new FilterBank(false, 1);
+		Benchmark.Result flat = Benchmark.measure(5, 20, () -> {
+			for (int frame = 0; frame < FRAMES; frame++) {
+				filterBank.processLTP(WindowSequence.ONLY_LONG_SEQUENCE, 0, 0, samples, out);
+			}
+		});
+		report("LTP forward transform", flat);
+	}
+
+	private static void report(String name, Benchmark.Result flat) {
+		Benchmark.report("AAC filter bank, " + name, "flat arrays: %s; %,.0f frames/s", flat,
+				FRAMES / (flat.medianNanos / 1e9));
+	}
+}
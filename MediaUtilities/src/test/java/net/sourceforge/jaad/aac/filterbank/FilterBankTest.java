@@ -0,0 +1,111 @@
+package net.sourceforge.jaad.aac.filterbank;
+
+import net.sourceforge.jaad.aac.AACException;
+import net.sourceforge.jaad.aac.syntax.ICSInfo.WindowSequence;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static ac.robinson.test.Checksums.updateInt;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the filter bank gives the same output with the flat-array FFT and MDCT as with the originals: the same
+ * 16-bit PCM for every window sequence and shape, and the same values from the forward transform used by long-term
+ * prediction. The expected checksums were produced once by running the same frames through the original transforms.
+ * Only 1024-sample frames are tested, as neither version of MDCT accepts the 960-sample frame lengths (the 240 case
+ * falls through to the exception).
+ */
+public class FilterBankTest {
+
+	private static final int LENGTH = 1024;
+	private static final int FRAMES = 50;
+
+	// spectral values at this scale give filter bank output in the thousands (and some clipping), as in loud audio
+	private static final float SPECTRAL_SCALE = 200000;
+
+	// long-term prediction is only used with long windows
+	private static final WindowSequence[] LONG_SEQUENCES = { WindowSequence.ONLY_LONG_SEQUENCE,
+			WindowSequence.LONG_START_SEQUENCE, WindowSequence.LONG_STOP_SEQUENCE };
+
+	// CRC32 of the PCM output (for each window sequence, in the order of WindowSequence.values()), and of the forward
+	// transform's output, from the original transforms
+	private static final long[] WINDOW_SEQUENCE_CHECKSUMS = { 0x97dfd4c9L, 0xadae7710L, 0xf5ef5ba5L, 0xf29aed8eL };
+	private static final long MIXED_SEQUENCE_CHECKSUM = 0xb5e33ff5L;
+	private static final long LONG_TERM_PREDICTION_CHECKSUM = 0x217facacL;
+
+	@Test
+	public void windowSequencesMatchOriginal() throws AACException {
+		for (WindowSequence windowSequence : WindowSequence.values()) {
+			long checksum = synthesise(new Random(windowSequence.ordinal()), windowSequence);
+			assertEquals(windowSequence.toString(), Long.toHexString(WINDOW_SEQUENCE_CHECKSUMS[windowSequence.ordinal()]),
+					Long.toHexString(checksum));
+		}
+	}
+
+	@Test
+	public void mixedSequencesMatchOriginal() throws AACException {
+		// switching between sequences exercises the overlap from one window type into another
+		assertEquals(Long.toHexString(MIXED_SEQUENCE_CHECKSUM), Long.toHexString(synthesise(new Random(20), null)));
+	}
+
+	@Test
+	public void longTermPredictionMatchesOriginal() throws AACException {
+		Random random = new Random(30);
+		FilterBank filterBank = new FilterBank(false, 1);
+		float[] in = new float[2 * LENGTH];
+		float[] out = new float[2 * LENGTH];
+		CRC32 crc = new CRC32();
+		for (int frame = 0; frame < FRAMES; frame++) {
+			for (int i = 0; i < in.length; i++) {
+				in[i] = (float) (random.nextGaussian() * 8000); // time-domain samples
+			}
+			WindowSequence windowSequence = LONG_SEQUENCES[random.nextInt(LONG_SEQUENCES.length)];
+			int windowShape = random.nextInt(2);
+			int windowShapePrev = random.nextInt(2);
+			filterBank.processLTP(windowSequence, windowShape, windowShapePrev, in, out);
+			for (float value : out) {
+				assertTrue(windowSequence + " LTP, frame " + frame, !Float.isNaN(value));
+				updateInt(crc, Float.floatToIntBits(value)); // spectral data rather than PCM, so compared exactly
+			}
+		}
+		assertEquals(Long.toHexString(LONG_TERM_PREDICTION_CHECKSUM), Long.toHexString(crc.getValue()));
+	}
+
+	/**
+	 * Run a sequence of frames of random spectral data through the filter bank, with the given window sequence (or a
+	 * random one for each frame, if null) and random window shapes, returning the checksum of its PCM output.
+	 */
+	private static long synthesise(Random random, WindowSequence fixedSequence) throws AACException {
+		FilterBank filterBank = new FilterBank(false, 2);
+		float[] in = new float[LENGTH];
+		float[] out = new float[LENGTH];
+		CRC32 crc = new CRC32();
+		int windowShapePrev = 0;
+		for (int frame = 0; frame < FRAMES; frame++) {
+			WindowSequence windowSequence = fixedSequence != null ? fixedSequence :
+					WindowSequence.values()[random.nextInt(WindowSequence.values().length)];
+			int windowShape = random.nextInt(2);
+			for (int channel = 0; channel < 2; channel++) {
+				for (int i = 0; i < LENGTH; i++) {
+					in[i] = (float) (random.nextGaussian() * SPECTRAL_SCALE);
+				}
+				filterBank.process(windowSequence, windowShape, windowShapePrev, in, out, channel);
+				for (int i = 0; i < LENGTH; i++) {
+					assertTrue(windowSequence + ", frame " + frame + " at " + i, !Float.isNaN(out[i]));
+					updateInt(crc, toPCM(out[i]));
+				}
+			}
+			windowShapePrev = windowShape;
+		}
+		return crc.getValue();
+	}
+
+	// as in SyntacticElements: round and clip to 16 bits
+	private static int toPCM(float sample) {
+		return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample)));
+	}
+}
@@ -0,0 +1,99 @@
+package net.sourceforge.jaad.aac.huffman;
+
+import net.sourceforge.jaad.aac.syntax.BitStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import ac.robinson.test.Benchmark;
+import ac.robinson.test.BitWriter;
+
+/**
+ * Huffman decoding throughput of the lookup tables. Codewords are chosen with probability 2^-length (as the codebooks
+ * were designed for), so short codewords dominate, as in real audio. Results are reported as AAC frames per second,
+ * where a frame is 1024 spectral coefficients and 49 scale factors. Run with ./gradlew test -Dbenchmark=true
+ */
+public class HuffmanBenchmark {
+
+	private static final int FRAMES = 200;
+	private static final int SPECTRAL_CODEBOOKS = 11;
+
+	private final byte[][] spectralStreams = new byte[SPECTRAL_CODEBOOKS][];
+	private final int[] spectralCodewords = new int[SPECTRAL_CODEBOOKS];
+	private byte[] scaleFactorStream;
+
+	@Before
+	public void setUp() {
+		Benchmark.assumeEnabled();
+		Random random = new Random(1);
+		for (int cb = 1; cb <= SPECTRAL_CODEBOOKS; cb++) {
+			// spread each frame's coefficients evenly between the codebooks
+			int coefficients = FRAMES * 1024 / SPECTRAL_CODEBOOKS;
+			spectralCodewords[cb - 1] = coefficients / (cb < 5 ? 4 : 2);
+			spectralStreams[cb - 1] = createWeightedStream(random, cb, spectralCodewords[cb - 1]);
+		}
+		scaleFactorStream = createWeightedStream(random, 0, FRAMES * 49);
+	}
+
+	@Test
+	public void decodeFrames() throws Exception {
+		final int[] data = new int[4];
+		Benchmark.Result lookup = Benchmark.measure(5, 20, () -> {
+			for (int cb = 1; cb <= SPECTRAL_CODEBOOKS; cb++) {
+				BitStream in = new BitStream(spectralStreams[cb - 1]);
+				for (int i = 0; i < spectralCodewords[cb - 1]; i++) {
+					Huffman.decodeSpectralData(in, cb, data, 0);
+				}
+			}
+			BitStream in = new BitStream(scaleFactorStream);
+			for (int i = 0; i < FRAMES * 49; i++) {
+				Huffman.decodeScaleFactor(in);
+			}
+		});
+		Benchmark.report("AAC Huffman decoding", "lookup tables: %s; %,.0f frames/s", lookup,
+				FRAMES / (lookup.medianNanos / 1e9));
+	}
+
+	private static byte[] createWeightedStream(Random random, int cb, int count) {
+		int[][] table = cb == 0 ? Codebooks.HCB_SF : Codebooks.CODEBOOKS[cb - 1];
+		double[] cumulative = new double[table.length];
+		double total = 0;
+		for (int i = 0; i < table.length; i++) {
+			total += Math.pow(2, -table[i][0]);
+			cumulative[i] = total;
+		}
+		BitWriter writer = new BitWriter();
+		for (int i = 0; i < count; i++) {
+			double choice = random.nextDouble() * total;
+			int index = 0;
+			while (cumulative[index] < choice && index < table.length - 1) {
+				index++;
+			}
+			int[] entry = table[index];
+			writer.write(entry[1], entry[0]);
+			if (cb == 0) {
+				continue;
+			}
+			int values = cb < 5 ? 4 : 2;
+			if (cb == 3 || cb == 4 || cb >= 7) {
+				for (int v = 0; v < values; v++) {
+					if (entry[2 + v] != 0) {
+						writer.write(random.nextInt(2), 1); // sign
+					}
+				}
+			}
+			if (cb == 11) {
+				for (int v = 0; v < values; v++) {
+					if (Math.abs(entry[2 + v]) == 16) {
+						writer.write(0, 1); // the shortest escape
+						writer.write(random.nextInt(16), 4);
+					}
+				}
+			}
+		}
+		writer.write(0, 64); // padding, so the last codewords are not read near the end of the stream
+		return writer.toByteArray();
+	}
+}
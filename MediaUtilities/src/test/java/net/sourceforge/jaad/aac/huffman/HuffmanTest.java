@@ -0,0 +1,182 @@
+package net.sourceforge.jaad.aac.huffman;
+
+import net.sourceforge.jaad.aac.AACException;
+import net.sourceforge.jaad.aac.syntax.BitStream;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import ac.robinson.test.BitWriter;
+
+import static ac.robinson.test.Checksums.updateInt;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the lookup-table Huffman decoder is bit-exact with the original linear search: for every codebook, it
+ * must decode the same values, leave the stream at the same position, and fail in the same way on invalid input. The
+ * expected checksums were produced once by decoding the same streams with the original decoder.
+ */
+public class HuffmanTest {
+
+	// the spectral codebooks (1 - 11), in the order of Codebooks.CODEBOOKS
+	private static final int SPECTRAL_CODEBOOKS = 11;
+
+	// CRC32 of every value decoded, the stream position after each, and the message of the error that ended each
+	// stream, from the original decoder
+	private static final long SCALE_FACTOR_CHECKSUM = 0x5594bbe9L;
+	private static final long[] SPECTRAL_CHECKSUMS = {
+			0x00554688L, 0x04f8739dL, 0xcace11a7L, 0xf4e81616L, 0xf0415d50L, 0x451c954fL, 0xfb899c48L,
+			0x9f8aa11bL, 0x2ca3875aL, 0xaef7be78L, 0xaabc91eeL
+	};
+	private static final long RANDOM_BITS_CHECKSUM = 0xe49388b0L;
+
+	@Test
+	public void scaleFactorsMatchOriginal() {
+		Random random = new Random(1);
+		CRC32 crc = new CRC32();
+		for (int run = 0; run < 50; run++) {
+			decodeScaleFactors(createCodewordStream(random, 0, 2000), crc);
+		}
+		assertEquals(Long.toHexString(SCALE_FACTOR_CHECKSUM), Long.toHexString(crc.getValue()));
+	}
+
+	@Test
+	public void spectralDataMatchesOriginal() {
+		Random random = new Random(2);
+		for (int cb = 1; cb <= SPECTRAL_CODEBOOKS; cb++) {
+			CRC32 crc = new CRC32();
+			for (int run = 0; run < 20; run++) {
+				decodeSpectralData(createCodewordStream(random, cb, 2000), cb, crc);
+			}
+			assertEquals("codebook " + cb, Long.toHexString(SPECTRAL_CHECKSUMS[cb - 1]), Long.toHexString(crc.getValue()));
+		}
+	}
+
+	@Test
+	public void everyCodewordDecodes() throws AACException {
+		// each codeword on its own, followed by enough padding that the lookup tables (rather than the fallback near
+		// the end of the stream) are used - the padding gives positive signs and the shortest escapes, so the values
+		// are exactly those in the codebook
+		for (int cb = 0; cb <= SPECTRAL_CODEBOOKS; cb++) {
+			int[][] table = cb == 0 ? Codebooks.HCB_SF : Codebooks.CODEBOOKS[cb - 1];
+			for (int[] entry : table) {
+				BitWriter writer = new BitWriter();
+				writer.write(entry[1], entry[0]);
+				writer.write(0, 64);
+				BitStream in = new BitStream(writer.toByteArray());
+				if (cb == 0) {
+					assertEquals(entry[2], Huffman.decodeScaleFactor(in));
+					assertEquals(entry[0], in.getPosition());
+					continue;
+				}
+
+				int values = cb < 5 ? 4 : 2;
+				int[] decoded = new int[4];
+				Huffman.decodeSpectralData(in, cb, decoded, 0);
+				assertArrayEquals("codebook " + cb, Arrays.copyOfRange(entry, 2, 2 + values), Arrays.copyOf(decoded,
+						values));
+				int extraBits = 0;
+				for (int v = 0; v < values; v++) {
+					boolean unsigned = cb == 3 || cb == 4 || cb >= 7;
+					extraBits += unsigned && entry[2 + v] != 0 ? 1 : 0; // sign
+					extraBits += cb == 11 && Math.abs(entry[2 + v]) == 16 ? 5 : 0; // escape
+				}
+				assertEquals("codebook " + cb, entry[0] + extraBits, in.getPosition());
+			}
+		}
+	}
+
+	@Test
+	public void randomBitsMatchOriginal() {
+		// not valid codewords in general, so this also covers the failures at the end of the stream
+		Random random = new Random(3);
+		CRC32 crc = new CRC32();
+		for (int run = 0; run < 200; run++) {
+			byte[] data = new byte[1 + random.nextInt(64)];
+			random.nextBytes(data);
+			decodeScaleFactors(data, crc);
+			for (int cb = 1; cb <= SPECTRAL_CODEBOOKS; cb++) {
+				decodeSpectralData(data, cb, crc);
+			}
+		}
+		assertEquals(Long.toHexString(RANDOM_BITS_CHECKSUM), Long.toHexString(crc.getValue()));
+	}
+
+	/**
+	 * Decode scale factors until the stream fails (i.e., runs out), adding each value and position, and the final
+	 * error, to the checksum.
+	 */
+	private static void decodeScaleFactors(byte[] data, CRC32 crc) {
+		BitStream in = new BitStream(data);
+		while (true) {
+			try {
+				updateInt(crc, Huffman.decodeScaleFactor(in));
+			} catch (AACException e) {
+				crc.update(String.valueOf(e.getMessage()).getBytes());
+				return;
+			}
+			updateInt(crc, in.getPosition());
+		}
+	}
+
+	private static void decodeSpectralData(byte[] data, int cb, CRC32 crc) {
+		BitStream in = new BitStream(data);
+		int[] values = new int[4];
+		while (true) {
+			try {
+				Huffman.decodeSpectralData(in, cb, values, 0);
+			} catch (AACException e) {
+				crc.update(String.valueOf(e.getMessage()).getBytes());
+				return;
+			}
+			for (int value : values) {
+				updateInt(crc, value);
+			}
+			updateInt(crc, in.getPosition());
+		}
+	}
+
+
+	/**
+	 * Create a stream of valid codewords (with their sign and escape bits) from the given codebook (or the scale factor
+	 * codebook if cb is 0), as in real spectral data. Codewords are chosen uniformly, so long codewords are tested far
+	 * more often than in real audio.
+	 */
+	static byte[] createCodewordStream(Random random, int cb, int count) {
+		int[][] table = cb == 0 ? Codebooks.HCB_SF : Codebooks.CODEBOOKS[cb - 1];
+		BitWriter writer = new BitWriter();
+		for (int i = 0; i < count; i++) {
+			int[] entry = table[random.nextInt(table.length)];
+			writer.write(entry[1], entry[0]);
+			if (cb == 0) {
+				continue;
+			}
+			int values = cb < 5 ? 4 : 2;
+			boolean unsigned = cb == 3 || cb == 4 || cb >= 7;
+			if (unsigned) {
+				for (int v = 0; v < values; v++) {
+					if (entry[2 + v] != 0) {
+						writer.write(random.nextInt(2), 1);
+					}
+				}
+			}
+			if (cb == 11) {
+				for (int v = 0; v < values; v++) {
+					if (Math.abs(entry[2 + v]) == 16) {
+						int escapeBits = 4 + random.nextInt(5);
+						for (int b = 4; b < escapeBits; b++) {
+							writer.write(1, 1);
+						}
+						writer.write(0, 1);
+						writer.write(random.nextInt(1 << escapeBits), escapeBits);
+					}
+				}
+			}
+		}
+		return writer.toByteArray();
+	}
+}
@@ -0,0 +1,167 @@
+package net.sourceforge.jaad.aac.huffman;
+
+import java.util.Random;
+
+import ac.robinson.test.BitWriter;
+
+/**
+ * Generates raw AAC LC frames (44.1 kHz, long windows only) for decoder tests, as there is no encoder available. It is
+ * in this package because it needs the codebooks. Each channel's spectrum is split into sections with randomly chosen
+ * codebooks (including the zero codebook), and each section is filled with randomly chosen codewords, so the output
+ * is noise rather than music. Global gains are chosen so that most samples are well within range, but some frames
+ * are loud enough to clip.
+ */
+public final class SyntheticAAC {
+
+	/** AAC LC, 44.1 kHz, one channel */
+	public static final byte[] MONO_DECODER_SPECIFIC_INFO = { 0x12, 0x08 };
+
+	/** AAC LC, 44.1 kHz, two channels */
+	public static final byte[] STEREO_DECODER_SPECIFIC_INFO = { 0x12, 0x10 };
+
+	public static final int SAMPLES_PER_FRAME = 1024;
+
+	// the long window scale factor bands at 44.1 kHz (as in ScaleFactorBands.SWB_OFFSET_1024_48)
+	private static final int[] SWB_OFFSETS = { 0, 4, 8, 12, 16, 20, 24, 28, 32, 36, 40, 48, 56, 64, 72, 80, 88, 96,
+			108, 120, 132, 144, 160, 176, 196, 216, 240, 264, 292, 320, 352, 384, 416, 448, 480, 512, 544, 576, 608, 640,
+			672, 704, 736, 768, 800, 832, 864, 896, 928, 1024 };
+
+	private static final int ELEMENT_SCE = 0;
+	private static final int ELEMENT_CPE = 1;
+	private static final int ELEMENT_END = 7;
+	private static final int SF_DELTA = 60;
+
+	private SyntheticAAC() {
+	}
+
+	/**
+	 * @return the given number of frames, each to be passed to the decoder separately
+	 */
+	public static byte[][] create(Random random, int frames, boolean stereo) {
+		byte[][] result = new byte[frames][];
+		for (int frame = 0; frame < frames; frame++) {
+			BitWriter writer = new BitWriter();
+			writer.write(stereo ? ELEMENT_CPE : ELEMENT_SCE, 3);
+			writer.write(0, 4); // element_instance_tag
+			if (stereo) {
+				writer.write(0, 1); // common_window: each channel has its own ics_info
+			}
+			for (int ch = 0; ch < (stereo ? 2 : 1); ch++) {
+				writeChannelStream(writer, random);
+			}
+			writer.write(ELEMENT_END, 3);
+			result[frame] = writer.toByteArray();
+		}
+		return result;
+	}
+
+	private static void writeChannelStream(BitWriter writer, Random random) {
+		int globalGain = random.nextInt(8) == 0 ? 150 + random.nextInt(20) : 100 + random.nextInt(30);
+		writer.write(globalGain, 8);
+
+		// ics_info
+		int maxSFB = 20 + random.nextInt(SWB_OFFSETS.length - 20);
+		writer.write(0, 1); // reserved
+		writer.write(0, 2); // ONLY_LONG_SEQUENCE
+		writer.write(random.nextInt(2), 1); // window_shape
+		writer.write(maxSFB, 6);
+		writer.write(0, 1); // predictor_data_present
+
+		// section_data
+		int[] codebooks = new int[maxSFB];
+		for (int sfb = 0; sfb < maxSFB; ) {
+			int cb = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(11);
+			int length = Math.min(maxSFB - sfb, 1 + random.nextInt(40));
+			writer.write(cb, 4);
+			int remaining = length;
+			while (remaining >= 31) {
+				writer.write(31, 5);
+				remaining -= 31;
+			}
+			writer.write(remaining, 5);
+			for (int i = 0; i < length; i++) {
+				codebooks[sfb++] = cb;
+			}
+		}
+
+		// scale_factor_data: small steps around the global gain
+		int scaleFactor = globalGain;
+		for (int sfb = 0; sfb < maxSFB; sfb++) {
+			if (codebooks[sfb] != 0) {
+				int delta = random.nextInt(7) - 3;
+				if (scaleFactor + delta < globalGain - 20 || scaleFactor + delta > globalGain + 20) {
+					delta = -delta;
+				}
+				scaleFactor += delta;
+				int[] entry = findScaleFactorEntry(delta + SF_DELTA);
+				writer.write(entry[1], entry[0]);
+			}
+		}
+
+		writer.write(0, 1); // pulse_data_present
+		writer.write(0, 1); // tns_data_present
+		writer.write(0, 1); // gain_control_data_present
+
+		// spectral_data
+		for (int sfb = 0; sfb < maxSFB; sfb++) {
+			int cb = codebooks[sfb];
+			if (cb == 0) {
+				continue;
+			}
+			int values = cb < 5 ? 4 : 2;
+			for (int k = SWB_OFFSETS[sfb]; k < SWB_OFFSETS[sfb + 1]; k += values) {
+				writeCodeword(writer, random, cb, values);
+			}
+		}
+	}
+
+	/**
+	 * Write a codeword chosen at random (smaller values being more likely), with its sign and escape bits.
+	 */
+	private static void writeCodeword(BitWriter writer, Random random, int cb, int values) {
+		int[][] table = Codebooks.CODEBOOKS[cb - 1];
+		int[] entry = table[random.nextInt(table.length)];
+		for (int i = 0; i < 2 && !isSmall(entry, values); i++) {
+			entry = table[random.nextInt(table.length)];
+		}
+		writer.write(entry[1], entry[0]);
+		boolean unsigned = cb == 3 || cb == 4 || cb >= 7;
+		if (unsigned) {
+			for (int v = 0; v < values; v++) {
+				if (entry[2 + v] != 0) {
+					writer.write(random.nextInt(2), 1);
+				}
+			}
+		}
+		if (cb == 11) {
+			for (int v = 0; v < values; v++) {
+				if (Math.abs(entry[2 + v]) == 16) {
+					int escapeBits = 4 + random.nextInt(random.nextInt(10) == 0 ? 9 : 3);
+					for (int b = 4; b < escapeBits; b++) {
+						writer.write(1, 1);
+					}
+					writer.write(0, 1);
+					writer.write(random.nextInt(1 << escapeBits), escapeBits);
+				}
+			}
+		}
+	}
+
+	private static boolean isSmall(int[] entry, int values) {
+		for (int v = 0; v < values; v++) {
+			if (Math.abs(entry[2 + v]) > 2) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int[] findScaleFactorEntry(int value) {
+		for (int[] entry : Codebooks.HCB_SF) {
+			if (entry[2] == value) {
+				return entry;
+			}
+		}
+		throw new IllegalArgumentException("no scale factor codeword for " + value);
+	}
+}
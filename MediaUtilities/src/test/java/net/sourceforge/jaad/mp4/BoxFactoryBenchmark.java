@@ -0,0 +1,80 @@
+package net.sourceforge.jaad.mp4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import ac.robinson.test.Benchmark;
+import net.sourceforge.jaad.mp4.boxes.Box;
+import net.sourceforge.jaad.mp4.boxes.BoxFactory;
+import net.sourceforge.jaad.mp4.boxes.BoxTypes;
+
+/**
+ * Time to parse a movie box with BoxFactory's switch: once for a movie box of many small boxes (where creating boxes
+ * dominates), and once for a single long recording (where reading its sample tables dominates). Run with ./gradlew test -Dbenchmark=true
+ */
+public class BoxFactoryBenchmark {
+
+	private static final int TRACKS = 2500; // 18 boxes each
+	private static final int TRACK_SAMPLES = 10;
+	private static final int SAMPLE_COUNT = 300000; // about 2 hours of 44.1 kHz AAC
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Before
+	public void setUp() {
+		Benchmark.assumeEnabled();
+	}
+
+	@Test
+	public void manySmallBoxes() throws Exception {
+		File file = temporaryFolder.newFile();
+		SyntheticMP4.create(file, new Random(1), TRACK_SAMPLES, TRACKS);
+		measure(file, "many small boxes");
+	}
+
+	@Test
+	public void longRecording() throws Exception {
+		File file = temporaryFolder.newFile();
+		SyntheticMP4.create(file, new Random(2), SAMPLE_COUNT);
+		measure(file, "long recording");
+	}
+
+	private static void measure(final File file, String name) throws Exception {
+		final int boxes;
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			boxes = countBoxes(parseMovieBox(randomAccessFile));
+		}
+		Benchmark.Result result = Benchmark.measure(10, 30, () -> {
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+				parseMovieBox(randomAccessFile);
+			}
+		});
+		Benchmark.report("MP4 box parsing", "%s, switch: %s; %d boxes", name, result, boxes);
+	}
+
+	private static Box parseMovieBox(RandomAccessFile randomAccessFile) throws IOException {
+		MP4InputStream in = new MP4InputStream(randomAccessFile);
+		in.seek(0);
+		Box box;
+		do {
+			box = BoxFactory.parseBox(null, in);
+		} while (box.getType() != BoxTypes.MOVIE_BOX);
+		return box;
+	}
+
+	private static int countBoxes(Box box) {
+		int count = 1;
+		for (Box child : box.getChildren()) {
+			count += countBoxes(child);
+		}
+		return count;
+	}
+}
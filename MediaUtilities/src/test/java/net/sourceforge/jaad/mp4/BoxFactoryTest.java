@@ -0,0 +1,69 @@
+package net.sourceforge.jaad.mp4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import net.sourceforge.jaad.mp4.boxes.Box;
+import net.sourceforge.jaad.mp4.boxes.BoxFactory;
+
+import static ac.robinson.test.Checksums.updateLong;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that BoxFactory's switch creates the same boxes as the original map and reflection: every box in the file
+ * must have the same type, offset, size, class and number of children. The expected checksums were produced once by
+ * parsing the same files with the original factory.
+ */
+public class BoxFactoryTest {
+
+	// CRC32 of every box (depth first), from the original factory
+	private static final long MANY_TRACKS_CHECKSUM = 0x9f62f530L;
+	private static final long LONG_RECORDING_CHECKSUM = 0x0f4c6e07L;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void manyTracksMatchOriginal() throws IOException {
+		File file = temporaryFolder.newFile();
+		SyntheticMP4.create(file, new Random(1), 10, 50);
+		assertEquals(Long.toHexString(MANY_TRACKS_CHECKSUM), Long.toHexString(checksum(file)));
+	}
+
+	@Test
+	public void longRecordingMatchesOriginal() throws IOException {
+		File file = temporaryFolder.newFile();
+		SyntheticMP4.create(file, new Random(2), 30000);
+		assertEquals(Long.toHexString(LONG_RECORDING_CHECKSUM), Long.toHexString(checksum(file)));
+	}
+
+	private static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			MP4InputStream in = new MP4InputStream(randomAccessFile);
+			while (in.hasLeft()) {
+				update(crc, BoxFactory.parseBox(null, in));
+			}
+		}
+		return crc.getValue();
+	}
+
+	private static void update(CRC32 crc, Box box) {
+		updateLong(crc, box.getType());
+		updateLong(crc, box.getOffset());
+		updateLong(crc, box.getSize());
+		crc.update(box.getClass().getName().getBytes(StandardCharsets.UTF_8));
+		updateLong(crc, box.getChildren().size());
+		for (Box child : box.getChildren()) {
+			update(crc, child);
+		}
+	}
+}
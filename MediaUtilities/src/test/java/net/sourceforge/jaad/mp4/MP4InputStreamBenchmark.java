@@ -0,0 +1,179 @@
+package net.sourceforge.jaad.mp4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ac.robinson.test.Benchmark;
+
+/**
+ * Throughput of parsing a movie box with large sample tables (as in a long recording), comparing the original
+ * unbuffered reads with the buffered and memory-mapped modes of MP4InputStream. Run with
+ * ./gradlew test -Dbenchmark=true
+ */
+public class MP4InputStreamBenchmark {
+
+	private static final int SAMPLE_COUNT = 250000; // about 3 hours of 44.1 kHz AAC
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File file;
+	private long tablesStart;
+
+	@Before
+	public void setUp() throws IOException {
+		Benchmark.assumeEnabled();
+
+		ByteArrayOutputStream tables = new ByteArrayOutputStream();
+		DataOutputStream tableData = new DataOutputStream(tables);
+		tableData.writeInt(20 + SAMPLE_COUNT * 4);
+		tableData.writeBytes("stsz");
+		tableData.writeInt(0); // version and flags
+		tableData.writeInt(0); // sample sizes vary
+		tableData.writeInt(SAMPLE_COUNT);
+		for (int i = 0; i < SAMPLE_COUNT; i++) {
+			tableData.writeInt(300 + i % 200);
+		}
+		tableData.writeInt(16 + SAMPLE_COUNT * 4);
+		tableData.writeBytes("stco");
+		tableData.writeInt(0);
+		tableData.writeInt(SAMPLE_COUNT);
+		for (int i = 0; i < SAMPLE_COUNT; i++) {
+			tableData.writeInt(1000 + i * 400);
+		}
+
+		byte[] moov = box("moov", box("trak", box("mdia", box("minf", box("stbl", tables.toByteArray())))));
+		ByteArrayOutputStream movie = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(movie);
+		out.writeInt(20);
+		out.writeBytes("ftypM4A ");
+		out.writeInt(0);
+		out.writeBytes("M4A ");
+		tablesStart = movie.size() + 5 * 8;
+		out.write(moov);
+
+		file = temporaryFolder.newFile();
+		Files.write(file.toPath(), movie.toByteArray());
+	}
+
+	@Test
+	public void parseMovieBox() throws Exception {
+		for (final int mode : new int[]{ 0, 1, 2 }) {
+			Benchmark.Result result = Benchmark.measure(3, 10, () -> {
+				RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+				FileInputStream fileInputStream = mode == 0 ? new FileInputStream(file) : null;
+				try {
+					if (mode == 0) {
+						new MP4Container(fileInputStream);
+					} else {
+						new MP4Container(randomAccessFile, mode == 2);
+					}
+				} finally {
+					randomAccessFile.close();
+					if (fileInputStream != null) {
+						fileInputStream.close();
+					}
+				}
+			});
+			Benchmark.report("MP4 movie box parsing", "%s: %s; %.1f MB/s",
+					new String[]{ "InputStream", "RandomAccessFile (buffered)", "RandomAccessFile (mapped)" }[mode],
+					result, file.length() / 1e6 / (result.medianNanos / 1e9));
+		}
+	}
+
+	/**
+	 * The way the sample table boxes read their entries (readBytes(4) for each one), compared with the original stream,
+	 * which read each entry straight from the RandomAccessFile.
+	 */
+	@Test
+	public void readSampleTableEntries() throws Exception {
+		Benchmark.Result original = Benchmark.measure(1, 3, () -> {
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+				randomAccessFile.seek(tablesStart);
+				for (int i = 0; i < SAMPLE_COUNT * 2 + 8; i++) {
+					byte[] entry = new byte[4]; // as the original readBytes(4) did
+					randomAccessFile.readFully(entry, 0, 4);
+				}
+			}
+		});
+		Benchmark.report("MP4 sample table reads", "original: %s", original);
+		for (final boolean memoryMapped : new boolean[]{ false, true }) {
+			Benchmark.Result result = Benchmark.measure(3, 10, () -> {
+				try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+					MP4InputStream in = new MP4InputStream(randomAccessFile, memoryMapped);
+					in.seek(tablesStart);
+					for (int i = 0; i < SAMPLE_COUNT * 2 + 8; i++) {
+						in.readBytes(4);
+					}
+				}
+			});
+			Benchmark.report("MP4 sample table reads", "%s: %s", memoryMapped ? "mapped" : "buffered", result);
+		}
+	}
+
+	/**
+	 * Reading every frame of a 64 MB file in order (as MP4toPCMConverter does when decoding a whole file): a seek to the
+	 * frame's offset, followed by a read of a few hundred bytes (which the original stream passed straight to the
+	 * RandomAccessFile).
+	 */
+	@Test
+	public void readFrames() throws Exception {
+		final File mediaFile = temporaryFolder.newFile();
+		Random random = new Random(2);
+		byte[] media = new byte[64 * 1024 * 1024];
+		random.nextBytes(media);
+		Files.write(mediaFile.toPath(), media);
+
+		final List<long[]> frames = new ArrayList<>(); // { offset, length }
+		for (long offset = 0; offset < media.length - 1000; ) {
+			int length = 200 + random.nextInt(600);
+			frames.add(new long[]{ offset, length });
+			offset += length;
+		}
+		final byte[] frame = new byte[1000];
+		Benchmark.Result original = Benchmark.measure(1, 3, () -> {
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(mediaFile, "r")) {
+				for (long[] f : frames) {
+					randomAccessFile.seek(f[0]);
+					randomAccessFile.readFully(frame, 0, (int) f[1]);
+				}
+			}
+		});
+		Benchmark.report("MP4 frame reads", "original: %s", original);
+		for (final boolean memoryMapped : new boolean[]{ false, true }) {
+			Benchmark.Result result = Benchmark.measure(3, 10, () -> {
+				try (RandomAccessFile randomAccessFile = new RandomAccessFile(mediaFile, "r")) {
+					MP4InputStream in = new MP4InputStream(randomAccessFile, memoryMapped);
+					for (long[] f : frames) {
+						in.seek(f[0]);
+						in.read(frame, 0, (int) f[1]);
+					}
+				}
+			});
+			Benchmark.report("MP4 frame reads", "%s: %s; %.1f MB/s", memoryMapped ? "mapped" : "buffered", result,
+					media.length / 1e6 / (result.medianNanos / 1e9));
+		}
+	}
+
+	private static byte[] box(String type, byte[] contents) throws IOException {
+		ByteArrayOutputStream box = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(box);
+		out.writeInt(8 + contents.length);
+		out.writeBytes(type);
+		out.write(contents);
+		return box.toByteArray();
+	}
+}
@@ -0,0 +1,201 @@
+package net.sourceforge.jaad.mp4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static ac.robinson.test.Checksums.updateLong;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks MP4InputStream's buffered and memory-mapped reads against the original unbuffered reads: the same random
+ * sequence of reads, skips and seeks must give the same values and offsets. The expected checksums (of every value
+ * and offset in each sequence) were produced once by running the same sequences on the original stream.
+ */
+public class MP4InputStreamTest {
+
+	private static final int FILE_LENGTH = 100 * 1024;
+
+	// CRC32 of the results of the operations in each of 20 sequences (one per seed), from the original stream
+	private static final long[] RANDOM_ACCESS_CHECKSUMS = {
+			0x05d57d34L, 0xd1fea9aeL, 0xa553dadaL, 0x61a3b6acL, 0x89727221L, 0x717ca12aL, 0xc2f52344L,
+			0x75e6f064L, 0xd983177fL, 0x1a34473dL, 0xcd4e88c0L, 0xc3245369L, 0x62e2e918L, 0xf2d873e0L,
+			0x4d0e6aadL, 0x999e35f1L, 0x96d48f25L, 0x88379a53L, 0xc51c868eL, 0xceff8106L
+	};
+	private static final long[] STREAM_CHECKSUMS = {
+			0x0732a132L, 0xc89651fcL, 0x77108ae8L, 0x408590dcL, 0x1b3b95c5L, 0xca244fb7L, 0x0d304d17L,
+			0xe93e8047L, 0xc61f292cL, 0x11ebf5f2L, 0x6a1b25a5L, 0x7c081544L, 0xeb867de9L, 0x31c6e166L,
+			0x01d3da68L, 0x0cfe7026L, 0x70619ac6L, 0x04752683L, 0xc2038259L, 0x84b1d6f6L
+	};
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private byte[] contents;
+	private File file;
+	private final List<RandomAccessFile> openFiles = new ArrayList<>();
+
+	@Before
+	public void setUp() throws IOException {
+		contents = new byte[FILE_LENGTH];
+		new Random(7).nextBytes(contents);
+		file = temporaryFolder.newFile();
+		Files.write(file.toPath(), contents);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (RandomAccessFile randomAccessFile : openFiles) {
+			randomAccessFile.close();
+		}
+	}
+
+	@Test
+	public void bufferedReadsMatchOriginalReads() throws IOException {
+		for (int seed = 0; seed < RANDOM_ACCESS_CHECKSUMS.length; seed++) {
+			assertEquals("seed " + seed, Long.toHexString(RANDOM_ACCESS_CHECKSUMS[seed]),
+					Long.toHexString(checksum(seed, true, new MP4InputStream(open(), false))));
+		}
+	}
+
+	@Test
+	public void mappedReadsMatchOriginalReads() throws IOException {
+		for (int seed = 0; seed < RANDOM_ACCESS_CHECKSUMS.length; seed++) {
+			assertEquals("seed " + seed, Long.toHexString(RANDOM_ACCESS_CHECKSUMS[seed]),
+					Long.toHexString(checksum(seed, true, new MP4InputStream(open(), true))));
+		}
+	}
+
+	@Test
+	public void streamReadsMatchOriginalReads() throws IOException {
+		for (int seed = 0; seed < STREAM_CHECKSUMS.length; seed++) {
+			assertEquals("seed " + seed, Long.toHexString(STREAM_CHECKSUMS[seed]),
+					Long.toHexString(checksum(seed, false, new MP4InputStream(new ByteArrayInputStream(contents)))));
+		}
+	}
+
+	@Test
+	public void readsStartAtTheFilePointer() throws IOException {
+		for (boolean memoryMapped : new boolean[]{ false, true }) {
+			RandomAccessFile randomAccessFile = open();
+			randomAccessFile.seek(1000);
+			MP4InputStream in = new MP4InputStream(randomAccessFile, memoryMapped);
+			assertEquals(1000, in.getOffset());
+			assertEquals(contents[1000] & 0xff, in.read());
+		}
+	}
+
+	@Test
+	public void readingPastTheEndThrowsEOFException() throws IOException {
+		for (boolean memoryMapped : new boolean[]{ false, true }) {
+			MP4InputStream in = new MP4InputStream(open(), memoryMapped);
+			in.seek(FILE_LENGTH - 2);
+			assertTrue(in.hasLeft());
+			in.readBytes(1);
+			assertFalse(in.hasLeft());
+			in.read();
+			try {
+				in.read();
+				fail("expected EOFException");
+			} catch (EOFException ignored) {
+			}
+
+			in.seek(FILE_LENGTH - 10);
+			try {
+				in.readBytes(new byte[20]);
+				fail("expected EOFException");
+			} catch (EOFException ignored) {
+			}
+
+			in.seek(FILE_LENGTH + 100); // allowed, like RandomAccessFile, but nothing can be read
+			assertEquals(FILE_LENGTH + 100, in.getOffset());
+			try {
+				in.read();
+				fail("expected EOFException");
+			} catch (EOFException ignored) {
+			}
+		}
+	}
+
+	private RandomAccessFile open() throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		openFiles.add(randomAccessFile);
+		return randomAccessFile;
+	}
+
+	/**
+	 * Apply a random sequence of operations to the stream, checking that every read returns the file's contents.
+	 * Reads stay within the file, as the original stream's behaviour at the end of a file (partial reads, and skips
+	 * that never finish) is not worth preserving.
+	 *
+	 * @return the CRC32 of every value read and every offset along the way.
+	 */
+	private long checksum(long seed, boolean randomAccess, MP4InputStream in) throws IOException {
+		Random random = new Random(seed);
+		CRC32 crc = new CRC32();
+		for (int operation = 0; operation < 2000; operation++) {
+			long offset = in.getOffset();
+			updateLong(crc, offset);
+			crc.update(in.hasLeft() ? 1 : 0);
+			long remaining = FILE_LENGTH - offset;
+
+			int choice = random.nextInt(randomAccess ? 7 : 6);
+			if (remaining < 30000 && !randomAccess) {
+				break; // no seeking back, so this sequence is done
+			} else if (remaining < 30000) {
+				choice = 6;
+			}
+			switch (choice) {
+				case 0:
+					updateLong(crc, in.read());
+					break;
+				case 1:
+					updateLong(crc, in.readBytes(1 + random.nextInt(8)));
+					break;
+				case 2:
+					// mostly small reads, but some larger than the read window
+					int length = random.nextInt(10) == 0 ? random.nextInt(20000) : random.nextInt(64);
+					int off = random.nextInt(16);
+					byte[] bytes = new byte[off + length];
+					in.read(bytes, off, length);
+					assertArrayEquals(Arrays.copyOfRange(contents, (int) offset, (int) offset + length),
+							Arrays.copyOfRange(bytes, off, off + length));
+					crc.update(bytes);
+					break;
+				case 3:
+					in.skipBytes(random.nextInt(10) == 0 ? random.nextInt(20000) : random.nextInt(100));
+					break;
+				case 4:
+					crc.update(in.readString(random.nextInt(12)).getBytes("UTF-8"));
+					break;
+				case 5:
+					updateLong(crc, Double.doubleToLongBits(in.readFixedPoint(16, 16)));
+					break;
+				case 6:
+					long position = random.nextInt(3) == 0 ? offset + random.nextInt(100) - 50 :
+							random.nextInt(FILE_LENGTH - 30000);
+					in.seek(Math.max(0, Math.min(position, FILE_LENGTH - 30000)));
+					break;
+			}
+		}
+		return crc.getValue();
+	}
+}
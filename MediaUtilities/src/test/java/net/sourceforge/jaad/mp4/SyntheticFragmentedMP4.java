@@ -0,0 +1,246 @@
+package net.sourceforge.jaad.mp4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static net.sourceforge.jaad.mp4.SyntheticMP4.box;
+import static net.sourceforge.jaad.mp4.SyntheticMP4.concat;
+import static net.sourceforge.jaad.mp4.SyntheticMP4.fullBox;
+import static net.sourceforge.jaad.mp4.SyntheticMP4.intBytes;
+
+/**
+ * Generates fragmented M4A files for tests of movie fragment parsing, each with an equivalent non-fragmented file
+ * that has exactly the same samples. Every track has the same number of samples and the same durations (as in
+ * SyntheticMP4: 1024, then 960, then 1024 again), but its own random sample sizes and data, so frames can be told
+ * apart. Some samples can be kept in the movie box's sample table, with the rest split into fragments of random
+ * length, each fragment's media data box holding the samples of every track in turn.
+ */
+public final class SyntheticFragmentedMP4 {
+
+	/** Give each track fragment's decoding time in a 'tfdt' box */
+	public static final int TFDT = 1;
+
+	/** Add a movie fragment random access box ('mfra') at the end of the file */
+	public static final int MFRA = 2;
+
+	/**
+	 * Set default-base-is-moof in each track fragment header, so that every track's data offset is relative to its
+	 * 'moof'; otherwise, each track's data follows that of the previous track fragment (and the first track's is
+	 * relative to the 'moof', as there is no base offset)
+	 */
+	public static final int BASE_IS_MOOF = 4;
+
+	private SyntheticFragmentedMP4() {
+	}
+
+	/**
+	 * Write a fragmented file and an equivalent non-fragmented one.
+	 *
+	 * @param features    any of TFDT, MFRA and BASE_IS_MOOF
+	 * @param moovSamples the number of samples in the movie box (the rest are in fragments)
+	 */
+	public static void create(File fragmented, File plain, Random random, int samples, int tracks, int moovSamples,
+							  int features) throws IOException {
+		int[] durations = new int[samples];
+		for (int i = 0; i < samples; i++) {
+			durations[i] = i >= samples / 3 && i < 2 * (samples / 3) ? 960 : 1024;
+		}
+		long[] times = new long[samples + 1];
+		for (int i = 0; i < samples; i++) {
+			times[i + 1] = times[i] + durations[i];
+		}
+		int[][] sizes = new int[tracks][samples];
+		byte[][][] data = new byte[tracks][samples][];
+		for (int track = 0; track < tracks; track++) {
+			for (int i = 0; i < samples; i++) {
+				sizes[track][i] = 50 + random.nextInt(250);
+				data[track][i] = new byte[sizes[track][i]];
+				random.nextBytes(data[track][i]);
+			}
+		}
+
+		// the first sample of each fragment, plus the end of the last one
+		List<Integer> fragmentStarts = new ArrayList<>();
+		for (int sample = moovSamples; sample < samples; sample += 10 + random.nextInt(50)) {
+			fragmentStarts.add(sample);
+		}
+		fragmentStarts.add(samples);
+
+		byte[] ftyp = box("ftyp", "M4A ".getBytes("US-ASCII"), new byte[4], "M4A mp42isom".getBytes("US-ASCII"));
+		writePlain(plain, ftyp, samples, tracks, durations, sizes, data);
+
+		try (OutputStream out = new FileOutputStream(fragmented)) {
+			// the movie box, then its samples in one chunk for each track
+			byte[] trex = new byte[0];
+			for (int track = 1; track <= tracks; track++) {
+				trex = concat(trex, fullBox("trex", 0, intBytes(track), intBytes(1), intBytes(1024), intBytes(0),
+						intBytes(0)));
+			}
+			byte[] mvex = box("mvex", trex);
+			long[] chunkOffsets = new long[tracks];
+			byte[] moov = moov(times[samples], tracks, moovSamples, durations, sizes, chunkOffsets, mvex);
+			long position = ftyp.length + moov.length + 8;
+			for (int track = 0; track < tracks; track++) {
+				chunkOffsets[track] = position;
+				for (int i = 0; i < moovSamples; i++) {
+					position += sizes[track][i];
+				}
+			}
+			moov = moov(times[samples], tracks, moovSamples, durations, sizes, chunkOffsets, mvex);
+			out.write(ftyp);
+			out.write(moov);
+			out.write(intBytes((int) (position - ftyp.length - moov.length)));
+			out.write("mdat".getBytes("US-ASCII"));
+			for (int track = 0; track < tracks; track++) {
+				for (int i = 0; i < moovSamples; i++) {
+					out.write(data[track][i]);
+				}
+			}
+
+			// the fragments, each a 'moof' followed by an 'mdat'
+			int fragments = fragmentStarts.size() - 1;
+			long[] moofOffsets = new long[fragments];
+			for (int f = 0; f < fragments; f++) {
+				int first = fragmentStarts.get(f);
+				int end = fragmentStarts.get(f + 1);
+				moofOffsets[f] = position;
+				int moofSize = moof(f, first, end, tracks, features, times, durations, sizes, 0).length;
+				byte[] moof = moof(f, first, end, tracks, features, times, durations, sizes, moofSize + 8);
+				out.write(moof);
+				int mdatSize = 8;
+				for (int track = 0; track < tracks; track++) {
+					for (int i = first; i < end; i++) {
+						mdatSize += sizes[track][i];
+					}
+				}
+				out.write(intBytes(mdatSize));
+				out.write("mdat".getBytes("US-ASCII"));
+				for (int track = 0; track < tracks; track++) {
+					for (int i = first; i < end; i++) {
+						out.write(data[track][i]);
+					}
+				}
+				position += moof.length + mdatSize;
+			}
+
+			if ((features & MFRA) != 0) {
+				byte[] tfras = new byte[0];
+				for (int track = 1; track <= tracks; track++) {
+					ByteArrayOutputStream entries = new ByteArrayOutputStream();
+					DataOutputStream entry = new DataOutputStream(entries);
+					entry.writeInt(track);
+					entry.writeInt(0); // one byte each for the traf, trun and sample numbers
+					entry.writeInt(fragments);
+					for (int f = 0; f < fragments; f++) {
+						entry.writeLong(times[fragmentStarts.get(f)]);
+						entry.writeLong(moofOffsets[f]);
+						entry.write(new byte[]{ (byte) track, 1, 1 });
+					}
+					tfras = concat(tfras, fullBox("tfra", 0x01000000, entries.toByteArray())); // version 1
+				}
+				out.write(box("mfra", tfras, fullBox("mfro", 0, intBytes(8 + tfras.length + 16))));
+			}
+		}
+	}
+
+	private static byte[] moof(int sequence, int first, int end, int tracks, int features, long[] times,
+							   int[] durations, int[][] sizes, int dataStart) throws IOException {
+		byte[] trafs = new byte[0];
+		int trackDataStart = dataStart; // relative to the moof
+		for (int track = 1; track <= tracks; track++) {
+			boolean baseIsMoof = (features & BASE_IS_MOOF) != 0;
+			byte[] tfhd = fullBox("tfhd", baseIsMoof ? 0x20000 : 0, intBytes(track));
+			byte[] tfdt = (features & TFDT) != 0 ? fullBox("tfdt", 0x01000000, longBytes(times[first])) : new byte[0];
+
+			// without a base offset, the second and later tracks' data follows on from the previous track's
+			ByteArrayOutputStream entries = new ByteArrayOutputStream();
+			DataOutputStream entry = new DataOutputStream(entries);
+			entry.writeInt(end - first);
+			entry.writeInt(baseIsMoof || track == 1 ? trackDataStart : 0);
+			for (int i = first; i < end; i++) {
+				entry.writeInt(durations[i]);
+				entry.writeInt(sizes[track - 1][i]);
+				trackDataStart += sizes[track - 1][i];
+			}
+			byte[] trun = fullBox("trun", 0x301, entries.toByteArray()); // data offset, sample durations and sizes
+			trafs = concat(trafs, box("traf", tfhd, tfdt, trun));
+		}
+		return box("moof", fullBox("mfhd", 0, intBytes(sequence + 1)), trafs);
+	}
+
+	private static byte[] moov(long duration, int tracks, int samples, int[] durations, int[][] sizes,
+							   long[] chunkOffsets, byte[] extra) throws IOException {
+		byte[][] contents = new byte[tracks + 2][];
+		contents[0] = SyntheticMP4.mvhd(duration, tracks + 1);
+		for (int track = 1; track <= tracks; track++) {
+			contents[track] = SyntheticMP4.trak(track, duration, stbl(samples, durations, sizes[track - 1],
+					chunkOffsets[track - 1]));
+		}
+		contents[tracks + 1] = extra;
+		return box("moov", contents);
+	}
+
+	/**
+	 * @return a sample table with the first given number of samples, all in one chunk
+	 */
+	private static byte[] stbl(int samples, int[] durations, int[] sizes, long chunkOffset) throws IOException {
+		ByteArrayOutputStream stts = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(stts);
+		out.writeInt(samples);
+		for (int i = 0; i < samples; i++) {
+			out.writeInt(1);
+			out.writeInt(durations[i]);
+		}
+		ByteArrayOutputStream stsz = new ByteArrayOutputStream();
+		out = new DataOutputStream(stsz);
+		out.writeInt(0); // sample sizes vary
+		out.writeInt(samples);
+		for (int i = 0; i < samples; i++) {
+			out.writeInt(sizes[i]);
+		}
+		byte[] stsc = samples > 0 ? concat(intBytes(1), intBytes(1), intBytes(samples), intBytes(1)) : intBytes(0);
+		byte[] stco = samples > 0 ? concat(intBytes(1), intBytes((int) chunkOffset)) : intBytes(0);
+		return box("stbl", SyntheticMP4.sampleDescription(), fullBox("stts", 0, stts.toByteArray()),
+				fullBox("stsc", 0, stsc), fullBox("stsz", 0, stsz.toByteArray()), fullBox("stco", 0, stco));
+	}
+
+	private static void writePlain(File file, byte[] ftyp, int samples, int tracks, int[] durations, int[][] sizes,
+								   byte[][][] data) throws IOException {
+		long duration = 0;
+		for (int d : durations) {
+			duration += d;
+		}
+		long[] chunkOffsets = new long[tracks];
+		byte[] moov = moov(duration, tracks, samples, durations, sizes, chunkOffsets, new byte[0]);
+		long position = ftyp.length + moov.length + 8;
+		for (int track = 0; track < tracks; track++) {
+			chunkOffsets[track] = position;
+			for (int size : sizes[track]) {
+				position += size;
+			}
+		}
+		moov = moov(duration, tracks, samples, durations, sizes, chunkOffsets, new byte[0]);
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(ftyp);
+			out.write(moov);
+			out.write(intBytes((int) (position - ftyp.length - moov.length)));
+			out.write("mdat".getBytes("US-ASCII"));
+			for (int track = 0; track < tracks; track++) {
+				for (int i = 0; i < samples; i++) {
+					out.write(data[track][i]);
+				}
+			}
+		}
+	}
+
+	private static byte[] longBytes(long value) {
+		return concat(intBytes((int) (value >> 32)), intBytes((int) value));
+	}
+}
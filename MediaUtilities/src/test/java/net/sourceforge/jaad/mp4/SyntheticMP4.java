@@ -0,0 +1,197 @@
+package net.sourceforge.jaad.mp4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * Generates M4A files of AAC audio (44.1 kHz stereo) for MP4 parsing tests and benchmarks, as there is no
+ * encoder available. The sample table has the structure of a real recording, but is laid out so that every part of
+ * the parser is used: three chunk groups with different numbers of samples per chunk, three runs of sample durations,
+ * and a gap between each chunk. Sample sizes are random (as with AAC frames), and the media data is all zeros. Files
+ * can also have many tracks (all sharing the same media data), to give a movie box made up of many small boxes.
+ */
+public final class SyntheticMP4 {
+
+	public static final int SAMPLE_RATE = 44100;
+
+	// { first chunk, samples per chunk }
+	private static final int[][] CHUNK_GROUPS = { { 1, 3 }, { 4, 5 }, { 9, 1 } };
+	private static final int CHUNK_GAP = 7;
+
+	private SyntheticMP4() {
+	}
+
+	/**
+	 * Write a file with one track of the given number of samples.
+	 */
+	public static void create(File file, Random random, int samples) throws IOException {
+		create(file, random, samples, 1);
+	}
+
+	/**
+	 * Write a file with the given number of tracks, each with the given number of samples.
+	 */
+	public static void create(File file, Random random, int samples, int tracks) throws IOException {
+		int[] sizes = new int[samples];
+		for (int i = 0; i < samples; i++) {
+			sizes[i] = 200 + random.nextInt(400);
+		}
+
+		// the first sample of each chunk, plus the end of the last chunk
+		int chunks = 0;
+		int[] chunkStarts = new int[samples + 1];
+		for (int sample = 0, group = 0; sample < samples; chunks++) {
+			if (group + 1 < CHUNK_GROUPS.length && CHUNK_GROUPS[group + 1][0] <= chunks + 1) {
+				group++;
+			}
+			chunkStarts[chunks] = sample;
+			sample = Math.min(samples, sample + CHUNK_GROUPS[group][1]);
+		}
+		chunkStarts[chunks] = samples;
+
+		byte[] ftyp = box("ftyp", "M4A ".getBytes("US-ASCII"), new byte[4], "M4A mp42isom".getBytes("US-ASCII"));
+		long[] chunkOffsets = new long[chunks];
+		byte[] moov = moov(samples, sizes, chunkOffsets, tracks); // the offsets don't change its length
+
+		long position = ftyp.length + moov.length + 8;
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			position += CHUNK_GAP;
+			chunkOffsets[chunk] = position;
+			for (int sample = chunkStarts[chunk]; sample < chunkStarts[chunk + 1]; sample++) {
+				position += sizes[sample];
+			}
+		}
+		moov = moov(samples, sizes, chunkOffsets, tracks);
+
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+			out.write(ftyp);
+			out.write(moov);
+			out.writeInt((int) (position - ftyp.length - moov.length));
+			out.writeBytes("mdat");
+			out.setLength(position);
+		}
+	}
+
+	private static byte[] moov(int samples, int[] sizes, long[] chunkOffsets, int tracks) throws IOException {
+		long duration = samples * 1024L;
+
+		ByteArrayOutputStream entries = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(entries);
+		out.writeInt(3);
+		out.writeInt(samples / 3);
+		out.writeInt(1024);
+		out.writeInt(samples / 3);
+		out.writeInt(960);
+		out.writeInt(samples - 2 * (samples / 3));
+		out.writeInt(1024);
+		byte[] stts = fullBox("stts", 0, entries.toByteArray());
+
+		entries.reset();
+		out.writeInt(CHUNK_GROUPS.length);
+		for (int[] group : CHUNK_GROUPS) {
+			out.writeInt(group[0]);
+			out.writeInt(group[1]);
+			out.writeInt(1); // sample description index
+		}
+		byte[] stsc = fullBox("stsc", 0, entries.toByteArray());
+
+		entries.reset();
+		out.writeInt(0); // sample sizes vary
+		out.writeInt(samples);
+		for (int size : sizes) {
+			out.writeInt(size);
+		}
+		byte[] stsz = fullBox("stsz", 0, entries.toByteArray());
+
+		entries.reset();
+		out.writeInt(chunkOffsets.length);
+		for (long offset : chunkOffsets) {
+			out.writeInt((int) offset);
+		}
+		byte[] stco = fullBox("stco", 0, entries.toByteArray());
+
+		byte[] stbl = box("stbl", sampleDescription(), stts, stsc, stsz, stco);
+		byte[][] contents = new byte[tracks + 1][];
+		contents[0] = mvhd(duration, tracks + 1);
+		for (int track = 1; track <= tracks; track++) {
+			contents[track] = trak(track, duration, stbl);
+		}
+		return box("moov", contents);
+	}
+
+	/**
+	 * @return an 'stsd' box describing AAC LC, 44.1 kHz stereo
+	 */
+	static byte[] sampleDescription() throws IOException {
+		byte[] decoderSpecificInfo = descriptor(5, new byte[]{ 0x12, 0x10 });
+		byte[] decoderConfig = descriptor(4, concat(new byte[]{ 0x40, 0x15 }, new byte[11], decoderSpecificInfo));
+		byte[] esDescriptor = descriptor(3, concat(new byte[]{ 0, 1, 0 }, decoderConfig, descriptor(6, new byte[]{ 2 })));
+		ByteArrayOutputStream entries = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(entries);
+		out.write(new byte[6]);
+		out.writeShort(1); // data reference index
+		out.write(new byte[8]);
+		out.writeShort(2); // channels
+		out.writeShort(16); // sample size
+		out.writeInt(0);
+		out.writeInt(SAMPLE_RATE << 16);
+		byte[] mp4a = box("mp4a", entries.toByteArray(), fullBox("esds", 0, esDescriptor));
+		return fullBox("stsd", 0, intBytes(1), mp4a);
+	}
+
+	static byte[] mvhd(long duration, int nextTrackID) throws IOException {
+		return fullBox("mvhd", 0, new byte[8], intBytes(SAMPLE_RATE), intBytes((int) duration),
+				new byte[]{ 0, 1, 0, 0, 1, 0 }, new byte[70], intBytes(nextTrackID));
+	}
+
+	/**
+	 * @return a 'trak' box for a sound track with the given sample table ('stbl' box)
+	 */
+	static byte[] trak(int trackID, long duration, byte[] stbl) throws IOException {
+		byte[] dinf = box("dinf", fullBox("dref", 0, intBytes(1), fullBox("url ", 1, new byte[0])));
+		byte[] minf = box("minf", fullBox("smhd", 0, new byte[4]), dinf, stbl);
+
+		byte[] mdhd = fullBox("mdhd", 0, new byte[8], intBytes(SAMPLE_RATE), intBytes((int) duration),
+				new byte[]{ 0x55, (byte) 0xc4, 0, 0 });
+		byte[] hdlr = fullBox("hdlr", 0, new byte[4], "soun".getBytes("US-ASCII"), new byte[12],
+				"snd\0".getBytes("US-ASCII"));
+		byte[] mdia = box("mdia", mdhd, hdlr, minf);
+		byte[] tkhd = fullBox("tkhd", 3, new byte[8], intBytes(trackID), new byte[4], intBytes((int) duration),
+				new byte[12], new byte[]{ 1, 0, 0, 0 }, new byte[44]);
+		return box("trak", tkhd, mdia);
+	}
+
+	static byte[] box(String type, byte[]... contents) throws IOException {
+		byte[] data = concat(contents);
+		ByteArrayOutputStream box = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(box);
+		out.writeInt(8 + data.length);
+		out.writeBytes(type);
+		out.write(data);
+		return box.toByteArray();
+	}
+
+	static byte[] fullBox(String type, int flags, byte[]... contents) throws IOException {
+		return box(type, intBytes(flags), concat(contents)); // version 0
+	}
+
+	private static byte[] descriptor(int tag, byte[] contents) {
+		return concat(new byte[]{ (byte) tag, (byte) contents.length }, contents);
+	}
+
+	static byte[] intBytes(int value) {
+		return new byte[]{ (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value };
+	}
+
+	static byte[] concat(byte[]... arrays) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] array : arrays) {
+			out.write(array, 0, array.length);
+		}
+		return out.toByteArray();
+	}
+}
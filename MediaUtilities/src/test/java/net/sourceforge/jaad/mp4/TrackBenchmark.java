@@ -0,0 +1,75 @@
+package net.sourceforge.jaad.mp4;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import ac.robinson.test.Benchmark;
+import net.sourceforge.jaad.mp4.api.Track;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Time to open a long recording and read its first frame, and to seek within it, with the sample table kept as
+ * primitive arrays. Run with ./gradlew test -Dbenchmark=true
+ */
+public class TrackBenchmark {
+
+	private static final int SAMPLE_COUNT = 300000; // about 2 hours of 44.1 kHz AAC
+	private static final int SEEKS = 1000;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private File file;
+	private double duration;
+
+	@Before
+	public void setUp() throws IOException {
+		Benchmark.assumeEnabled();
+		file = temporaryFolder.newFile();
+		SyntheticMP4.create(file, new Random(1), SAMPLE_COUNT);
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			duration = new MP4Container(randomAccessFile).getMovie().getDuration();
+		}
+	}
+
+	@Test
+	public void openToFirstFrame() throws Exception {
+		Benchmark.Result result = Benchmark.measure(3, 10, () -> {
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+				assertNotNull(open(randomAccessFile).readNextFrame());
+			}
+		});
+		Benchmark.report("MP4 open to first frame", "primitive arrays: %s", result);
+	}
+
+	@Test
+	public void seek() throws Exception {
+		Random random = new Random(2);
+		final double[] timestamps = new double[SEEKS];
+		for (int i = 0; i < SEEKS; i++) {
+			timestamps[i] = random.nextDouble() * duration;
+		}
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			final Track track = open(randomAccessFile);
+			Benchmark.Result result = Benchmark.measure(3, 10, () -> {
+				for (double timestamp : timestamps) {
+					track.seek(timestamp);
+				}
+			});
+			Benchmark.report("MP4 seeks", "primitive arrays: %s for %d", result, SEEKS);
+		}
+	}
+
+	private static Track open(RandomAccessFile randomAccessFile) throws IOException {
+		return new MP4Container(randomAccessFile).getMovie().getTracks().get(0);
+	}
+}
@@ -0,0 +1,229 @@
+package net.sourceforge.jaad.mp4.api;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Random;
+
+import net.sourceforge.jaad.mp4.MP4Container;
+import net.sourceforge.jaad.mp4.SyntheticFragmentedMP4;
+
+import static net.sourceforge.jaad.mp4.SyntheticFragmentedMP4.BASE_IS_MOOF;
+import static net.sourceforge.jaad.mp4.SyntheticFragmentedMP4.MFRA;
+import static net.sourceforge.jaad.mp4.SyntheticFragmentedMP4.TFDT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that fragmented files (see SyntheticFragmentedMP4) give exactly the same frames and seek results as an
+ * equivalent non-fragmented file: with and without 'tfdt' and 'mfra' boxes, with data offsets relative to each 'moof'
+ * or following on from the previous track fragment, with and without samples in the movie box itself, and when read
+ * from a RandomAccessFile (windowed or memory-mapped) or an InputStream.
+ */
+public class MovieFragmentsTest {
+
+	private static final int SAMPLES = 3000;
+	private static final int TRACKS = 2;
+	private static final int[] MOOV_SAMPLES = { 0, 100 };
+
+	private enum Source {RANDOM_ACCESS_FILE, MEMORY_MAPPED, INPUT_STREAM}
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void framesMatchNonFragmentedFile() throws IOException {
+		Random random = new Random(1);
+		for (int features = 0; features <= (TFDT | MFRA | BASE_IS_MOOF); features++) {
+			for (int moovSamples : MOOV_SAMPLES) {
+				for (int tracks = 1; tracks <= TRACKS; tracks++) {
+					File[] files = createFiles(random, tracks, moovSamples, features);
+					for (Source source : Source.values()) {
+						if (tracks > 1 && source == Source.INPUT_STREAM) {
+							// without random access, a movie's frames can only be read in time order if its tracks' data
+							// is interleaved, which it isn't in these files (singleTrackMatchesNonFragmentedFile covers this)
+							continue;
+						}
+						String message = describe(features, moovSamples) + ", " + tracks + " track(s), " + source;
+						try (Opened expected = new Opened(files[1], Source.RANDOM_ACCESS_FILE);
+								Opened actual = new Opened(files[0], source)) {
+							assertEquals(message, expected.movie.getDuration(), actual.movie.getDuration(), 0);
+							Frame frame;
+							int count = 0;
+							while ((frame = expected.movie.readNextFrame()) != null) {
+								assertFrameEquals(message + ", frame " + count, frame, actual.movie.readNextFrame());
+								count++;
+							}
+							assertEquals(tracks * SAMPLES, count);
+							assertNull(message, actual.movie.readNextFrame());
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void singleTrackMatchesNonFragmentedFile() throws IOException {
+		Random random = new Random(2);
+		for (int features : new int[]{ 0, TFDT | MFRA | BASE_IS_MOOF }) {
+			for (int moovSamples : MOOV_SAMPLES) {
+				File[] files = createFiles(random, TRACKS, moovSamples, features);
+				for (Source source : Source.values()) {
+					for (int track = 0; track < TRACKS; track++) {
+						String message = describe(features, moovSamples) + ", " + source + ", track " + track;
+						try (Opened expected = new Opened(files[1], Source.RANDOM_ACCESS_FILE);
+								Opened actual = new Opened(files[0], source)) {
+							assertTracksEqual(message, expected.tracks().get(track), actual.tracks().get(track), 0);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void seeksMatchNonFragmentedFile() throws IOException {
+		Random random = new Random(3);
+		for (int features = 0; features <= (TFDT | MFRA | BASE_IS_MOOF); features++) {
+			for (int moovSamples : MOOV_SAMPLES) {
+				File[] files = createFiles(random, TRACKS, moovSamples, features);
+				for (Source source : new Source[]{ Source.RANDOM_ACCESS_FILE, Source.MEMORY_MAPPED }) {
+					try (Opened expected = new Opened(files[1], Source.RANDOM_ACCESS_FILE);
+							Opened actual = new Opened(files[0], source)) {
+						double duration = expected.movie.getDuration();
+						for (int i = 0; i < 200; i++) {
+							Track expectedTrack = expected.tracks().get(i % TRACKS);
+							Track actualTrack = actual.tracks().get(i % TRACKS);
+							double timestamp = (random.nextDouble() * 1.1 - 0.05) * duration; // also before and after
+							String message = describe(features, moovSamples) + ", " + source + ", seek " + i + " to " +
+									timestamp;
+							assertEquals(message, expectedTrack.seek(timestamp), actualTrack.seek(timestamp), 0);
+							for (int frame = 0; frame < 3; frame++) {
+								assertFrameEquals(message, expectedTrack.readNextFrame(), actualTrack.readNextFrame());
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void movieBoxSamplesAreKeptAfterRandomAccessSeek() throws IOException {
+		File[] files = createFiles(new Random(4), TRACKS, 100, TFDT | MFRA);
+		try (Opened expected = new Opened(files[1], Source.RANDOM_ACCESS_FILE);
+				Opened actual = new Opened(files[0], Source.RANDOM_ACCESS_FILE)) {
+			Track expectedTrack = expected.tracks().get(0);
+			Track actualTrack = actual.tracks().get(0);
+			double duration = expected.movie.getDuration();
+
+			// jump forwards to a random access point, then back into the movie box's samples, then forwards again
+			for (double timestamp : new double[]{ duration * 0.8, 1, duration * 0.5, 0.5, duration * 0.9, 0 }) {
+				assertEquals("seek to " + timestamp, expectedTrack.seek(timestamp), actualTrack.seek(timestamp), 0);
+				assertFrameEquals("seek to " + timestamp, expectedTrack.readNextFrame(), actualTrack.readNextFrame());
+			}
+			assertTracksEqual("after seeking", expectedTrack, actualTrack, 1);
+		}
+	}
+
+	@Test
+	public void unreadTracksAreNotIndexed() throws IOException {
+		File[] files = createFiles(new Random(5), TRACKS, 0, TFDT | MFRA | BASE_IS_MOOF);
+		for (Source source : Source.values()) {
+			try (Opened expected = new Opened(files[1], Source.RANDOM_ACCESS_FILE);
+					Opened actual = new Opened(files[0], source)) {
+				Track unread = actual.tracks().get(1);
+				assertTracksEqual(source.toString(), expected.tracks().get(0), actual.tracks().get(0), 0);
+
+				double duration = expected.movie.getDuration();
+				if (source == Source.INPUT_STREAM) {
+					// only the samples whose data has not yet been skipped are kept
+					assertTrue(source + ": " + unread.getFirstIndexedTime(), unread.getFirstIndexedTime() > duration / 2);
+				} else {
+					// nothing is kept, but reading the track indexes its samples again
+					assertEquals(source.toString(), -1, unread.getFirstIndexedTime(), 0);
+					assertTracksEqual(source.toString(), expected.tracks().get(1), unread, 0);
+				}
+			}
+		}
+	}
+
+	private File[] createFiles(Random random, int tracks, int moovSamples, int features) throws IOException {
+		File fragmented = temporaryFolder.newFile();
+		File plain = temporaryFolder.newFile();
+		SyntheticFragmentedMP4.create(fragmented, plain, random, SAMPLES, tracks, moovSamples, features);
+		return new File[]{ fragmented, plain };
+	}
+
+	private static String describe(int features, int moovSamples) {
+		return ((features & TFDT) != 0 ? "tfdt" : "no tfdt") + ", " + ((features & MFRA) != 0 ? "mfra" : "no mfra") +
+				", " + ((features & BASE_IS_MOOF) != 0 ? "base is moof" : "implicit offsets") + ", " + moovSamples +
+				" samples in moov";
+	}
+
+	/**
+	 * Read the rest of both tracks, checking that they are identical. The expected track has already read the given
+	 * number of frames.
+	 */
+	private static void assertTracksEqual(String message, Track expected, Track actual, int read) throws IOException {
+		Frame frame;
+		int count = read;
+		while ((frame = expected.readNextFrame()) != null) {
+			assertFrameEquals(message + ", frame " + count, frame, actual.readNextFrame());
+			count++;
+		}
+		assertEquals(message, SAMPLES, count);
+		assertNull(message, actual.readNextFrame());
+	}
+
+	private static void assertFrameEquals(String message, Frame expected, Frame actual) {
+		if (expected == null) {
+			assertNull(message, actual);
+			return;
+		}
+		assertNotNull(message, actual);
+		assertEquals(message, expected.getTime(), actual.getTime(), 0);
+		assertEquals(message, expected.getSize(), actual.getSize());
+		assertArrayEquals(message, expected.getData(), actual.getData());
+	}
+
+	private static class Opened implements Closeable {
+		private final Closeable file;
+		final Movie movie;
+
+		Opened(File input, Source source) throws IOException {
+			MP4Container container;
+			if (source == Source.INPUT_STREAM) {
+				BufferedInputStream stream = new BufferedInputStream(new FileInputStream(input));
+				file = stream;
+				container = new MP4Container(stream);
+			} else {
+				RandomAccessFile randomAccessFile = new RandomAccessFile(input, "r");
+				file = randomAccessFile;
+				container = new MP4Container(randomAccessFile, source == Source.MEMORY_MAPPED);
+			}
+			movie = container.getMovie();
+		}
+
+		List<Track> tracks() {
+			return movie.getTracks();
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+}
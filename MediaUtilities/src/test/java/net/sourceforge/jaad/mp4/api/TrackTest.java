@@ -0,0 +1,101 @@
+package net.sourceforge.jaad.mp4.api;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import net.sourceforge.jaad.mp4.MP4Container;
+import net.sourceforge.jaad.mp4.SyntheticMP4;
+
+import static ac.robinson.test.Checksums.updateLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that the sample table, kept as primitive arrays, gives exactly the same sequence of frame offsets, sizes,
+ * times and data as the original list of Frame objects, and that seeking moves to the last frame starting at or before
+ * the timestamp. The expected checksums were produced once by reading the same files with the original Track.
+ */
+public class TrackTest {
+
+	private static final int[] SAMPLES = { 1000, 30000 };
+
+	// CRC32 of every frame's offset, size, time and data, for each file in SAMPLES, from the original Track
+	private static final long[] FRAME_CHECKSUMS = { 0x0dc5a449L, 0xf5b40c37L };
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void framesMatchOriginal() throws IOException {
+		for (int i = 0; i < SAMPLES.length; i++) {
+			File file = temporaryFolder.newFile();
+			SyntheticMP4.create(file, new Random(i + 1), SAMPLES[i]);
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+				Track track = open(randomAccessFile);
+				CRC32 crc = new CRC32();
+				int count = 0;
+				Frame frame;
+				while ((frame = track.readNextFrame()) != null) {
+					updateLong(crc, frame.getOffset());
+					updateLong(crc, frame.getSize());
+					updateLong(crc, Double.doubleToLongBits(frame.getTime()));
+					crc.update(frame.getData());
+					count++;
+				}
+				assertEquals(SAMPLES[i], count);
+				assertEquals(SAMPLES[i] + " samples", Long.toHexString(FRAME_CHECKSUMS[i]),
+						Long.toHexString(crc.getValue()));
+			}
+		}
+	}
+
+	@Test
+	public void seekMovesToTheLastFrameAtOrBeforeTheTimestamp() throws IOException {
+		File file = temporaryFolder.newFile();
+		SyntheticMP4.create(file, new Random(3), SAMPLES[0]);
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			Track track = open(randomAccessFile);
+			double[] times = new double[SAMPLES[0]];
+			for (int i = 0; i < times.length; i++) {
+				times[i] = track.readNextFrame().getTime();
+			}
+			assertNull(track.readNextFrame());
+
+			Random random = new Random(4);
+			double duration = times[times.length - 1] + 1;
+			for (int seek = 0; seek < 500; seek++) {
+				int expected = random.nextInt(times.length);
+				double timestamp;
+				switch (seek % 3) {
+					case 0:
+						timestamp = times[expected]; // exactly at the start of a frame
+						break;
+					case 1:
+						timestamp = expected + 1 < times.length ? (times[expected] + times[expected + 1]) / 2 :
+								duration; // between two frames, or past the end
+						break;
+					default:
+						expected = 0;
+						timestamp = -random.nextDouble(); // before the first frame
+						break;
+				}
+				assertEquals("seek to " + timestamp, times[expected], track.seek(timestamp), 0);
+				Frame frame = track.readNextFrame();
+				assertNotNull(frame);
+				assertEquals("seek to " + timestamp, times[expected], frame.getTime(), 0);
+			}
+		}
+	}
+
+	private static Track open(RandomAccessFile randomAccessFile) throws IOException {
+		return new MP4Container(randomAccessFile).getMovie().getTracks().get(0);
+	}
+}
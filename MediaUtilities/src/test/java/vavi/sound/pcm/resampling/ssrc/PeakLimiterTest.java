@@ -0,0 +1,162 @@
+package vavi.sound.pcm.resampling.ssrc;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the limiter never lets a sample exceed its ceiling, leaves signals below the ceiling exactly as they were
+ * (only delayed), returns the delayed frames on flush, and treats all channels alike.
+ */
+public class PeakLimiterTest {
+
+	private static final int RATE = 48000;
+	private static final double CEILING = 0.9;
+
+	@Test
+	public void signalBelowCeilingIsUnchanged() {
+		Random random = new Random(1);
+		for (int nch = 1; nch <= 2; nch++) {
+			double[] input = new double[nch * RATE];
+			for (int i = 0; i < input.length; i++) {
+				input[i] = (random.nextDouble() * 2 - 1) * CEILING;
+			}
+			input[nch * 1000] = CEILING; // exactly at the ceiling is not above it
+			input[nch * 2000 + nch - 1] = -CEILING;
+			double[] output = limit(new PeakLimiter(nch, RATE, CEILING), input, nch, random);
+			assertEquals(Arrays.toString(Arrays.copyOf(output, 8)), 0, compare(input, output));
+		}
+	}
+
+	@Test
+	public void peaksAboveCeilingAreLimited() {
+		Random random = new Random(2);
+		for (int nch = 1; nch <= 2; nch++) {
+			int frames = RATE;
+			double[] sine = new double[nch * frames]; // a full-scale sine, well above the ceiling
+			double[] square = new double[nch * frames]; // with the overshoot of a band-limited square wave
+			double[] spikes = new double[nch * frames]; // isolated single-sample peaks in a quiet signal
+			for (int i = 0; i < frames; i++) {
+				for (int ch = 0; ch < nch; ch++) {
+					sine[i * nch + ch] = Math.sin(2 * Math.PI * 997 * i / RATE + ch);
+					double s = 0;
+					for (int harmonic = 1; harmonic < 40; harmonic += 2) {
+						s += 4 / Math.PI * Math.sin(2 * Math.PI * 300 * harmonic * i / RATE) / harmonic;
+					}
+					square[i * nch + ch] = s;
+					spikes[i * nch + ch] = 0.1 * (random.nextDouble() * 2 - 1);
+				}
+				if (random.nextInt(500) == 0) {
+					spikes[i * nch + random.nextInt(nch)] = (random.nextBoolean() ? 1 : -1) * (1 + random.nextDouble());
+				}
+			}
+			for (double[] input : new double[][]{ sine, square, spikes }) {
+				double[] output = limit(new PeakLimiter(nch, RATE, CEILING), input, nch, random);
+				double peak = 0;
+				for (double sample : output) {
+					peak = Math.max(peak, Math.abs(sample));
+				}
+				assertTrue("peak " + peak, peak <= CEILING);
+				assertTrue("peak " + peak + " is much lower than needed", peak > CEILING * 0.99);
+			}
+		}
+	}
+
+	@Test
+	public void signalIsUnchangedOnceGainRecovers() {
+		double[] input = new double[2 * 2 * RATE];
+		for (int i = 0; i < 2 * RATE; i++) {
+			input[i * 2] = 0.5 * Math.sin(2 * Math.PI * 440 * i / RATE);
+			input[i * 2 + 1] = 0.5 * Math.cos(2 * Math.PI * 440 * i / RATE);
+		}
+		input[2 * 100] = 2; // a single peak near the start
+		double[] output = limit(new PeakLimiter(2, RATE, CEILING), input, 2, new Random(3));
+		assertTrue(Math.abs(output[2 * 100]) <= CEILING);
+
+		// the gain is released with a time constant of 50 ms, so a second later the signal should be untouched
+		int start = 2 * RATE;
+		double[] later = Arrays.copyOfRange(output, start, output.length);
+		assertEquals(0, compare(Arrays.copyOfRange(input, start, input.length), later));
+	}
+
+	@Test
+	public void channelsShareTheGain() {
+		double[] input = new double[2 * RATE / 10];
+		for (int i = 0; i < input.length / 2; i++) {
+			input[i * 2] = 2 * Math.sin(2 * Math.PI * 440 * i / RATE); // only the left channel exceeds the ceiling
+			input[i * 2 + 1] = 0.25;
+		}
+		double[] output = limit(new PeakLimiter(2, RATE, CEILING), input, 2, new Random(4));
+		for (int i = 0; i < input.length / 2; i++) {
+			double gain = output[i * 2 + 1] / input[i * 2 + 1];
+			assertEquals("frame " + i, input[i * 2] * gain, output[i * 2], 1e-12);
+		}
+	}
+
+	@Test
+	public void flushReturnsTheDelayedFrames() {
+		Random random = new Random(5);
+		for (int nch = 1; nch <= 2; nch++) {
+			for (int frames : new int[]{ 0, 1, 50, 95, 96, 97, 1000, 4095 }) {
+				PeakLimiter limiter = new PeakLimiter(nch, RATE, CEILING);
+				int delay = limiter.getDelay();
+				assertEquals((int) (RATE * 0.002), delay);
+
+				double[] buffer = new double[nch * Math.max(frames, delay)];
+				int written = 0;
+				for (int done = 0; done < frames; ) {
+					int count = Math.min(frames - done, 1 + random.nextInt(64));
+					written += limiter.process(new double[nch * count], count);
+					done += count;
+				}
+				assertEquals(frames + " frames", Math.max(0, frames - delay), written);
+
+				// flushing outputs the rest of the input, and never the silence that pushes it out of the delay line
+				assertEquals(frames + " frames", Math.min(frames, delay), limiter.flush(buffer));
+			}
+		}
+	}
+
+	/**
+	 * Pass the whole input through the limiter in blocks of random length (as SSRC.Stream does), then flush it.
+	 *
+	 * @return the output, which has exactly the same length as the input
+	 */
+	private static double[] limit(PeakLimiter limiter, double[] input, int nch, Random random) {
+		double[] output = new double[input.length + nch * limiter.getDelay()];
+		int frames = input.length / nch;
+		int written = 0;
+		for (int done = 0; done < frames; ) {
+			int count = Math.min(frames - done, 1 + random.nextInt(2048));
+			double[] block = Arrays.copyOfRange(input, done * nch, (done + count) * nch);
+			int produced = limiter.process(block, count);
+			System.arraycopy(block, 0, output, written * nch, produced * nch);
+			written += produced;
+			done += count;
+		}
+		double[] block = new double[nch * limiter.getDelay()];
+		int produced = limiter.flush(block);
+		System.arraycopy(block, 0, output, written * nch, produced * nch);
+		written += produced;
+		assertEquals(limiter.getDelay(), produced);
+		assertEquals(frames, written);
+		return Arrays.copyOf(output, input.length);
+	}
+
+	/**
+	 * @return the number of samples that differ
+	 */
+	private static int compare(double[] expected, double[] actual) {
+		int differences = 0;
+		for (int i = 0; i < expected.length; i++) {
+			if (Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(actual[i])) {
+				differences++;
+			}
+		}
+		return differences;
+	}
+}
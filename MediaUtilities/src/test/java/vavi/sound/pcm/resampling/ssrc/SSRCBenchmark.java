@@ -0,0 +1,117 @@
+package vavi.sound.pcm.resampling.ssrc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import ac.robinson.test.Benchmark;
+
+/**
+ * Benchmarks of SSRC's streaming conversions. Run with ./gradlew test -Dbenchmark=true
+ */
+public class SSRCBenchmark {
+
+	private static final int CLIPS = 50;
+
+	@Before
+	public void setUp() {
+		Benchmark.assumeEnabled();
+	}
+
+	/**
+	 * Resampling 50 three-second mono clips between the same pair of rates (as in a narrative export), with the filters
+	 * designed once and then reused from the cache, or designed again for every clip. Setup is the time to create each
+	 * clip's stream, which is when its filters are designed or fetched from the cache.
+	 */
+	@Test
+	public void filterCache() throws Exception {
+		final byte[][] clips = new byte[CLIPS][];
+		Random random = new Random(1);
+		for (int i = 0; i < CLIPS; i++) {
+			clips[i] = SSRCTest.createPCM(random, 3 * 44100, 1);
+		}
+		final int[][] ratePairs = { { 44100, 48000 }, { 48000, 44100 }, { 22050, 44100 } };
+		for (final int[] rates : ratePairs) {
+			for (final boolean fast : new boolean[]{ false, true }) {
+				String name = String.format("SSRC filter cache, %d to %d%s", rates[0], rates[1], fast ? " (fast)" : "");
+				for (final boolean cache : new boolean[]{ false, true }) {
+					Benchmark.Result setup = Benchmark.measure(2, 9, () -> {
+						SSRC.clearFilterCache();
+						for (int i = 0; i < CLIPS; i++) {
+							if (!cache) {
+								SSRC.clearFilterCache();
+							}
+							new SSRC.Stream(new ByteArrayInputStream(clips[i]), ByteOrder.LITTLE_ENDIAN, rates[0],
+									rates[1], 16, 16, 1, 0, 0, 0, fast).close();
+						}
+					});
+					Benchmark.Result total = Benchmark.measure(1, 5, () -> {
+						SSRC.clearFilterCache();
+						for (byte[] clip : clips) {
+							if (!cache) {
+								SSRC.clearFilterCache();
+							}
+							SSRCTest.resample(clip, rates[0], rates[1], 1, fast);
+						}
+					});
+					Benchmark.report(name, "%s: setup %.3f ms per clip (median), conversion %s",
+							cache ? "cached" : "designed for every clip", setup.medianMillis() / CLIPS, total);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Converting one 60-second stream from 44.1 to 48 kHz, in mono and in stereo (as PCMPipeline now outputs), with its
+	 * channels and blocks filtered on the calling thread only or on a pool of 1, 2, 4 or 8 threads.
+	 */
+	@Test
+	public void parallelStream() throws Exception {
+		final byte[] mono = SSRCTest.createPCM(new Random(2), 60 * 44100, 1);
+		final byte[] stereo = SSRCTest.createPCM(new Random(3), 60 * 44100, 2);
+		for (final int nch : new int[]{ 1, 2 }) {
+			final byte[] pcm = nch == 1 ? mono : stereo;
+			String name = "SSRC single stream, " + (nch == 1 ? "mono" : "stereo");
+			Benchmark.Result serial = Benchmark.measure(1, 5, () -> SSRCTest.resample(pcm, 44100, 48000, nch, false));
+			Benchmark.report(name, "no pool: %s; %.0fx real time", serial, 60 / (serial.medianNanos / 1e9));
+
+			for (final int threads : new int[]{ 1, 2, 4, 8 }) {
+				final ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					Benchmark.Result result = Benchmark.measure(1, 5, () -> SSRCTest.read(new SSRC.Stream(
+							new ByteArrayInputStream(pcm), ByteOrder.LITTLE_ENDIAN, 44100, 48000, 16, 16, nch, 0, 0, 0,
+							false, pool)));
+					// allocation is only measured on the calling thread, so is an underestimate here
+					Benchmark.report(name, "%d thread(s): %s; %.0fx real time; %.2fx no pool (%d processors available)",
+							threads, result, 60 / (result.medianNanos / 1e9), serial.medianNanos /
+									(double) result.medianNanos, Runtime.getRuntime().availableProcessors());
+				} finally {
+					pool.shutdown();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Converting 30 seconds of stereo for each common pair of rates, with both the standard and the fast profile's
+	 * filters.
+	 */
+	@Test
+	public void ratePairs() throws Exception {
+		final int[][] ratePairs = { { 44100, 48000 }, { 48000, 44100 }, { 22050, 44100 }, { 44100, 22050 },
+				{ 16000, 48000 }, { 48000, 16000 } };
+		for (final int[] rates : ratePairs) {
+			final byte[] pcm = SSRCTest.createPCM(new Random(4), 30 * rates[0], 2);
+			for (final boolean fast : new boolean[]{ false, true }) {
+				String name = String.format("SSRC %d to %d, %s filters", rates[0], rates[1], fast ? "fast" : "standard");
+				Benchmark.Result result = Benchmark.measure(2, 7, () -> SSRCTest.resample(pcm, rates[0], rates[1], 2,
+						fast));
+				Benchmark.report(name, "%s; %.0fx real time", result, 30 / (result.medianNanos / 1e9));
+			}
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package vavi.sound.pcm.resampling.ssrc;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that SSRC's conversions are unchanged by keeping its input and filter taps in flat per-channel buffers: both
+ * streaming and whole-file conversions must match checksums of the output of SSRC as it was before (with 2-D buffers).
+ * Output must also be the same whether filters were just designed or come from the cache (including after eviction),
+ * and each channel must be converted independently of the others.
+ */
+public class SSRCTest {
+
+	// more pairs than the cache holds, so that the first few are evicted and redesigned
+	private static final int[][] RATE_PAIRS = { { 44100, 48000 }, { 48000, 44100 }, { 22050, 44100 },
+			{ 44100, 22050 }, { 16000, 44100 }, { 44100, 16000 }, { 8000, 48000 }, { 48000, 8000 }, { 32000, 48000 },
+			{ 48000, 32000 }, { 11025, 44100 }, { 44100, 11025 } };
+
+	private static final int[][] TEST_RATE_PAIRS = { { 44100, 48000 }, { 48000, 44100 }, { 22050, 44100 },
+			{ 44100, 22050 }, { 8000, 48000 }, { 48000, 8000 }, { 44100, 44100 } };
+
+	// CRC32 of the 16-bit output for each of TEST_RATE_PAIRS, with the standard then the fast filters, produced once by
+	// SSRC with 2-D buffers (streamed and whole-file conversions gave the same output, as no limiting or dither applies)
+	private static final long[] MONO_CHECKSUMS = { 0xc541316fL, 0x9d92bd3aL, 0xac55f81cL, 0x9c123bd3L, 0x54f367b6L,
+			0xd8161eacL, 0xd0ddbc12L, 0xefa17cf5L, 0x5e1be638L, 0x389dc02dL, 0x1eb72de1L, 0xae33b309L, 0x24cce27dL,
+			0x24cce27dL };
+	private static final long[] STEREO_CHECKSUMS = { 0xb0c8fc0fL, 0xe8c45beaL, 0xd3cdc614L, 0x585991b3L, 0x1e6cc9daL,
+			0xa5801140L, 0xe5b79df3L, 0x23ffd751L, 0xa4f3f469L, 0x9f72a226L, 0xe08aa6aeL, 0x68083dd4L, 0x50e1dddaL,
+			0x50e1dddaL };
+
+	@Test
+	public void outputMatchesChecksums() throws IOException {
+		Random random = new Random(3);
+		for (int nch = 1; nch <= 2; nch++) {
+			byte[] pcm = createPCM(random, 22050, nch);
+			long[] checksums = nch == 1 ? MONO_CHECKSUMS : STEREO_CHECKSUMS;
+			int c = 0;
+			for (int[] rates : TEST_RATE_PAIRS) {
+				for (boolean fast : new boolean[]{ false, true }) {
+					String message = rates[0] + " to " + rates[1] + ", " + nch + " channel(s), fast: " + fast;
+					String expected = Long.toHexString(checksums[c++]);
+
+					ByteArrayOutputStream output = new ByteArrayOutputStream();
+					new SSRC(null, new ByteArrayInputStream(pcm), output, ByteOrder.LITTLE_ENDIAN, rates[0], rates[1],
+							16, 16, nch, pcm.length, 0, 0, 0, false, false, fast, true);
+					assertTrue(message, output.size() > 0);
+					assertEquals(message, expected, Long.toHexString(checksum(output.toByteArray())));
+
+					byte[] streamed = resample(pcm, rates[0], rates[1], nch, fast);
+					assertEquals(message + ", streamed", expected, Long.toHexString(checksum(streamed)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void cachedFiltersMatchNewDesigns() throws IOException {
+		byte[] pcm = createPCM(new Random(1), 22050, 1);
+		for (boolean fast : new boolean[]{ false, true }) {
+			for (int[] rates : RATE_PAIRS) {
+				SSRC.clearFilterCache();
+				byte[] expected = resample(pcm, rates[0], rates[1], 1, fast);
+				assertTrue(expected.length > 0);
+				byte[] cached = resample(pcm, rates[0], rates[1], 1, fast);
+				assertArrayEquals(rates[0] + " to " + rates[1], expected, cached);
+			}
+
+			// every pair again, now that the cache has been filled (and some pairs evicted) by the others
+			SSRC.clearFilterCache();
+			byte[][] expected = new byte[RATE_PAIRS.length][];
+			for (int i = 0; i < RATE_PAIRS.length; i++) {
+				expected[i] = resample(pcm, RATE_PAIRS[i][0], RATE_PAIRS[i][1], 1, fast);
+			}
+			for (int i = 0; i < RATE_PAIRS.length; i++) {
+				byte[] actual = resample(pcm, RATE_PAIRS[i][0], RATE_PAIRS[i][1], 1, fast);
+				assertArrayEquals(RATE_PAIRS[i][0] + " to " + RATE_PAIRS[i][1], expected[i], actual);
+			}
+		}
+	}
+
+	@Test
+	public void stereoChannelsMatchMono() throws IOException {
+		// the signals peak well below full scale, so the limiter (which links the channels) never acts
+		Random random = new Random(2);
+		byte[] left = createPCM(random, 22050, 1);
+		byte[] right = createPCM(random, 22050, 1);
+		byte[] stereo = new byte[left.length * 2];
+		for (int i = 0; i < left.length; i += 2) {
+			System.arraycopy(left, i, stereo, i * 2, 2);
+			System.arraycopy(right, i, stereo, i * 2 + 2, 2);
+		}
+		for (int[] rates : new int[][]{ { 44100, 48000 }, { 48000, 44100 }, { 44100, 44100 } }) {
+			byte[] expectedLeft = resample(left, rates[0], rates[1], 1, false);
+			byte[] expectedRight = resample(right, rates[0], rates[1], 1, false);
+			byte[] actual = resample(stereo, rates[0], rates[1], 2, false);
+			byte[] actualLeft = new byte[actual.length / 2];
+			byte[] actualRight = new byte[actual.length / 2];
+			for (int i = 0; i < actualLeft.length; i += 2) {
+				System.arraycopy(actual, i * 2, actualLeft, i, 2);
+				System.arraycopy(actual, i * 2 + 2, actualRight, i, 2);
+			}
+			assertArrayEquals(rates[0] + " to " + rates[1] + ", left", expectedLeft, actualLeft);
+			assertArrayEquals(rates[0] + " to " + rates[1] + ", right", expectedRight, actualRight);
+		}
+	}
+
+	@Test
+	public void parallelOutputMatchesSingleThread() throws IOException {
+		Random random = new Random(5);
+		int[] channels = { 1, 2, 6 };
+		byte[][] signals = new byte[channels.length][];
+		for (int i = 0; i < channels.length; i++) {
+			signals[i] = createPCM(random, 22050, channels[i]);
+		}
+		for (int threads : new int[]{ 1, 2, 3, 4, 8 }) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				for (int c = 0; c < channels.length; c++) {
+					byte[] pcm = signals[c];
+					int nch = channels[c];
+					for (int[] rates : TEST_RATE_PAIRS) {
+						for (boolean fast : new boolean[]{ false, true }) {
+							String message = rates[0] + " to " + rates[1] + ", " + nch + " channel(s), fast: " + fast +
+									", " + threads + " thread(s)";
+							byte[] expected = resample(pcm, rates[0], rates[1], nch, fast);
+							byte[] actual = read(new SSRC.Stream(new ByteArrayInputStream(pcm),
+									ByteOrder.LITTLE_ENDIAN, rates[0], rates[1], 16, 16, nch, 0, 0, 0, fast, pool));
+							assertArrayEquals(message, expected, actual);
+						}
+					}
+				}
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void interSamplePeaksAreLimited() throws IOException {
+		// a sine at a quarter of the sampling rate, phased so that every sample is at full scale but the peaks between
+		// them are 3 dB higher - resampling reconstructs those peaks, so this signal clips without the limiter
+		int frames = 22050;
+		ByteBuffer loud = ByteBuffer.allocate(frames * 2).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer quiet = ByteBuffer.allocate(frames * 2).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < frames; i++) {
+			double sample = Math.sqrt(2) * Math.sin(Math.PI * i / 2 + Math.PI / 4);
+			loud.putShort((short) Math.round(sample * Short.MAX_VALUE));
+			quiet.putShort((short) Math.round(sample * Short.MAX_VALUE / 4)); // the same signal, 12 dB lower
+		}
+		int max = 0x7fffff;
+		int[] unclipped = to24Bit(resample(quiet.array(), 44100, 48000, 1, 24, false));
+		int[] limited = to24Bit(resample(loud.array(), 44100, 48000, 1, 24, false));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new SSRC(null, new ByteArrayInputStream(loud.array()), output, ByteOrder.LITTLE_ENDIAN, 44100, 48000, 16, 24,
+				1, frames * 2, 0, 0, 0, false, false, false, true);
+		int[] clipped = to24Bit(output.toByteArray());
+		assertEquals(unclipped.length, limited.length);
+		assertEquals(unclipped.length, clipped.length);
+
+		// the whole-file conversion clips, but the streamed output stays within full scale and peaks close to it
+		int peak = 0, clippedCount = 0;
+		for (int i = 0; i < limited.length; i++) {
+			assertTrue("sample " + i + ": " + limited[i], limited[i] <= max && limited[i] >= -max);
+			peak = Math.max(peak, Math.abs(limited[i]));
+			clippedCount += clipped[i] >= max || clipped[i] <= -max ? 1 : 0;
+		}
+		assertTrue(clippedCount + " samples clipped", clippedCount > limited.length / 4);
+		assertTrue("peak " + peak, peak > max * 0.99);
+
+		// once the limiter has settled (10 ms), its output is the unclipped signal with a constant gain, not a distorted
+		// version of it
+		int start = 480, end = limited.length - 480;
+		int[] expected = new int[end - start], actual = new int[end - start], hardClipped = new int[end - start];
+		double gain = (double) max / (Math.sqrt(2) * Short.MAX_VALUE / 4 * 256);
+		for (int i = start; i < end; i++) {
+			expected[i - start] = (int) Math.round(unclipped[i] * gain);
+			actual[i - start] = limited[i];
+			hardClipped[i - start] = clipped[i];
+		}
+		assertTrue("limited: " + getSignalToError(expected, actual) + " dB", getSignalToError(expected, actual) > 60);
+		assertTrue("clipped: " + getSignalToError(expected, hardClipped) + " dB",
+				getSignalToError(expected, hardClipped) < 20);
+	}
+
+	/**
+	 * @return frames of 16-bit little-endian PCM: a few tones (at different levels in each channel) with some noise,
+	 * peaking at around half of full scale
+	 */
+	static byte[] createPCM(Random random, int frames, int nch) {
+		ByteBuffer pcm = ByteBuffer.allocate(frames * nch * 2).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < frames; i++) {
+			for (int ch = 0; ch < nch; ch++) {
+				double t = i / 44100.0;
+				double sample = 0.2 * Math.sin(2 * Math.PI * 440 * t) + 0.15 * Math.sin(2 * Math.PI * 3150 * t + ch) +
+						0.1 / (ch + 1) * Math.sin(2 * Math.PI * 9000 * t) + 0.02 * random.nextGaussian();
+				pcm.putShort((short) Math.round(sample * Short.MAX_VALUE));
+			}
+		}
+		return pcm.array();
+	}
+
+	/**
+	 * Resample 16-bit little-endian PCM with a streaming conversion, without dither (so that the output is repeatable).
+	 */
+	static byte[] resample(byte[] pcm, int sfrq, int dfrq, int nch, boolean fast) throws IOException {
+		return resample(pcm, sfrq, dfrq, nch, 16, fast);
+	}
+
+	/**
+	 * As above, to dbps-bit output.
+	 */
+	static byte[] resample(byte[] pcm, int sfrq, int dfrq, int nch, int dbps, boolean fast) throws IOException {
+		return read(new SSRC.Stream(new ByteArrayInputStream(pcm), ByteOrder.LITTLE_ENDIAN, sfrq, dfrq, 16, dbps, nch,
+				0, 0, 0, fast));
+	}
+
+	/**
+	 * Read the whole of the given stream, then close it.
+	 */
+	static byte[] read(InputStream stream) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (InputStream input = stream) {
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = input.read(buffer)) > 0) {
+				output.write(buffer, 0, count);
+			}
+		}
+		return output.toByteArray();
+	}
+
+	static long checksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+
+	static int[] to24Bit(byte[] pcm) {
+		int[] samples = new int[pcm.length / 3];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = (pcm[i * 3] & 0xff) | ((pcm[i * 3 + 1] & 0xff) << 8) | (pcm[i * 3 + 2] << 16);
+		}
+		return samples;
+	}
+
+	/**
+	 * @return the ratio of the power of the expected signal to that of the difference between the signals, in dB
+	 */
+	static double getSignalToError(int[] expected, int[] actual) {
+		double signal = 0, error = 0;
+		for (int i = 0; i < expected.length; i++) {
+			signal += (double) expected[i] * expected[i];
+			error += (double) (expected[i] - actual[i]) * (expected[i] - actual[i]);
+		}
+		return error == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(signal / error);
+	}
+}